@@ -3,9 +3,11 @@ package com.cosek.edms;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableJpaAuditing(auditorAwareRef = "auditorAware")
+@EnableScheduling
 public class EdmsApplication {
 	public static void main(String[] args) {
 		SpringApplication.run(EdmsApplication.class, args);
@@ -1,6 +1,7 @@
 package com.cosek.edms.advice;
 
 import com.cosek.edms.exception.NotFoundException;
+import com.cosek.edms.exception.QuotaExceededException;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -31,4 +32,12 @@ public class ApplicationExceptionHandler {
         errors.put("message", ex.getMessage());
         return errors;
     }
+
+    @ResponseStatus(HttpStatus.INSUFFICIENT_STORAGE)
+    @ExceptionHandler(QuotaExceededException.class)
+    public Map<String, String> handleQuotaExceeded(QuotaExceededException ex) {
+        Map<String, String> errors = new HashMap<>();
+        errors.put("message", ex.getMessage());
+        return errors;
+    }
 }
@@ -2,10 +2,12 @@ package com.cosek.edms.authentication;
 
 import com.cosek.edms.config.JwtService;
 import com.cosek.edms.exception.NotFoundException;
+import com.cosek.edms.permission.PermissionAccessIndex;
 import com.cosek.edms.role.Role;
 import com.cosek.edms.role.RoleRepository;
 import com.cosek.edms.user.User;
 import com.cosek.edms.user.UserRepository;
+import com.cosek.edms.user.UserSearchIndex;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -13,6 +15,7 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
@@ -24,6 +27,8 @@ public class AuthenticationService {
     private final PasswordEncoder passwordEncoder;
     private final JwtService jwtService;
     private final AuthenticationManager authenticationManager;
+    private final UserSearchIndex userSearchIndex;
+    private final PermissionAccessIndex permissionAccessIndex;
 
     public AuthenticationResponse register(RegisterRequest request, Long roleID) {
 
@@ -43,6 +48,8 @@ public class AuthenticationService {
                 .roles(roles)
                 .build();
         userRepository.save(user);
+        userSearchIndex.put(user);
+        permissionAccessIndex.refreshUsers(List.of(user.getId()));
         return generateToken(user, roles);
     }
 
@@ -2,158 +2,118 @@ package com.cosek.edms.config;
 
 import com.cosek.edms.permission.Permission;
 import com.cosek.edms.permission.PermissionRepository;
-import com.cosek.edms.role.Role;
 import com.cosek.edms.role.RoleRepository;
-import com.cosek.edms.user.User;
 import com.cosek.edms.user.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
-
-import static com.cosek.edms.helper.Constants.*;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @Component
 @RequiredArgsConstructor
 public class DatabaseInitializer {
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseInitializer.class);
+    private static final int BATCH_SIZE = 500;
+
     private final PermissionRepository permissionRepository;
     private final RoleRepository roleRepository;
     private final UserRepository userRepository;
     private final BCryptPasswordEncoder passwordEncoder;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
 
     @Bean
     CommandLineRunner initDatabase() {
-        return args -> {
-            List<Permission> permissions = initializePermissions();
-            Role superAdminRole = initializeSuperAdminRole(permissions);
-            Role adminRole = initializeAdminRole(permissions);
-            Role userRole = initializeUserRole(permissions);
-            initializeAdminUser(superAdminRole);
-            initializeAdmUser(adminRole);
-            initializeUser(userRole);
-
-        };
-    }
-
-    private List<Permission> initializePermissions() {
-        return Arrays.asList(
-                // Existing permissions
-                ensurePermission(READ_PERMISSION),
-                ensurePermission(CREATE_PERMISSION),
-                ensurePermission(UPDATE_PERMISSION),
-                ensurePermission(DELETE_PERMISSION),
-                ensurePermission(READ_ROLE),
-                ensurePermission(CREATE_ROLE),
-                ensurePermission(UPDATE_ROLE),
-                ensurePermission(DELETE_ROLE),
-                ensurePermission(CREATE_USER),
-                ensurePermission(READ_USER),
-                ensurePermission(UPDATE_USER),
-                ensurePermission(DELETE_USER),
-
-                // New Dashboard permissions
-                ensurePermission(READ_DASHBOARD),
-                ensurePermission(CREATE_DASHBOARD),
-                ensurePermission(UPDATE_DASHBOARD),
-                ensurePermission(DELETE_DASHBOARD),
-
-                // New Files permissions
-                ensurePermission(READ_FILES),
-                ensurePermission(CREATE_FILES),
-                ensurePermission(UPDATE_FILES),
-                ensurePermission(DELETE_FILES),
-
-                // New Folders permissions
-                ensurePermission(READ_FOLDERS),
-                ensurePermission(CREATE_FOLDERS),
-                ensurePermission(UPDATE_FOLDERS),
-                ensurePermission(DELETE_FOLDERS),
-
-                // New Case Studies permissions
-                ensurePermission(READ_CASESTUDIES),
-                ensurePermission(CREATE_CASESTUDIES),
-                ensurePermission(UPDATE_CASESTUDIES),
-                ensurePermission(DELETE_CASESTUDIES),
-
-                // New Requests permissions
-                ensurePermission(READ_REQUESTS),
-                ensurePermission(CREATE_REQUESTS),
-                ensurePermission(UPDATE_REQUESTS),
-                ensurePermission(DELETE_REQUESTS),
-
-                ensurePermission(READ_DEPARTMENTS),
-                ensurePermission(CREATE_DEPARTMENTS),
-                ensurePermission(UPDATE_DEPARTMENTS),
-                ensurePermission(DELETE_DEPARTMENTS)
-        );
+        return args -> seed(SeedManifest.defaults());
     }
 
-    private Permission ensurePermission(String permissionName) {
-        return permissionRepository.findByName(permissionName)
-                .orElseGet(() -> permissionRepository.save(new Permission(null, permissionName, new HashSet<>())));
+    public void seed(SeedManifest manifest) {
+        long started = System.nanoTime();
+        int[] created = transactionTemplate.execute(status -> apply(manifest));
+        logger.info("Startup seeding created {} permissions, {} roles and {} users in {} ms",
+                created[0], created[1], created[2], TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
     }
 
-    private Role initializeSuperAdminRole(List<Permission> permissions) {
-        return roleRepository.findByName(SUPER_ADMIN)
-                .orElseGet(() -> roleRepository.save(
-                        new Role(null, SUPER_ADMIN, null, new HashSet<>(permissions))
-                ));
-    }
-
-    private Role initializeAdminRole(List<Permission> permissions) {
-        Set<Permission> adminPermissions = permissions.stream()
-                .filter(permission -> List.of(
-                        CREATE_USER, READ_USER, UPDATE_USER, DELETE_USER,
-                        CREATE_ROLE, READ_ROLE, UPDATE_ROLE, DELETE_ROLE,CREATE_FILES
-                ).contains(permission.getName()))
-                .collect(Collectors.toSet());
-
-        return roleRepository.findByName(ADMIN)
-                .orElseGet(() -> roleRepository.save(
-                        new Role(null, ADMIN, null, adminPermissions)
-                ));
-    }
-
-    private Role initializeUserRole(List<Permission> permissions) {
-        Set<Permission> userPermissions = permissions.stream()
-                .filter(permission -> permission.getName().equals(READ_USER))
-                .collect(Collectors.toSet());
-
-        return roleRepository.findByName(USER)
-                .orElseGet(() -> roleRepository.save(
-                        new Role(null, USER, null, userPermissions)
-                ));
-    }
-
-    private void initializeAdminUser(Role superAdminRole) {
-        HashSet<Role> roles = new HashSet<>();
-        roles.add(superAdminRole);
-        userRepository.findByEmail(ADMIN_EMAIL).orElseGet(() -> {
-            User admin = User.builder()
-                    .first_name(ADMIN_FIRST_NAME)
-                    .last_name(ADMIN_LAST_NAME)
-                    .email(ADMIN_EMAIL)
-                    .password(passwordEncoder.encode(ADMIN_PASSWORD))
-                    .phone(ADMIN_PHONE)
-                    .address(ADMIN_COUNTRY)
-                    .roles(roles)
-                    .build();
-            return userRepository.save(admin);
-        });
-    }
-    private void initializeAdmUser(Role adminRole) {
-        HashSet<Role> roles = new HashSet<>();
-        roles.add(adminRole);
-    }
-    private void initializeUser(Role userRole) {
-        HashSet<Role> roles = new HashSet<>();
-        roles.add(userRole);
+    /**
+     * Each step reads what exists with one query and writes only what is missing, in batches.
+     * Roles and users have IDENTITY ids, which Hibernate cannot batch, so they go through JDBC
+     * and their ids are read back with one query; permissions use a sequence and batch as entities.
+     */
+    private int[] apply(SeedManifest manifest) {
+        Map<String, Long> permissionIds = new HashMap<>();
+        permissionRepository.findAllIdsAndNames()
+                .forEach(row -> permissionIds.putIfAbsent((String) row[1], (Long) row[0]));
+        List<Permission> newPermissions = manifest.permissions().stream()
+                .distinct()
+                .filter(name -> !permissionIds.containsKey(name))
+                .map(name -> new Permission(null, name, new HashSet<>()))
+                .toList();
+        permissionRepository.saveAll(newPermissions)
+                .forEach(permission -> permissionIds.put(permission.getName(), permission.getId()));
+
+        // Roles that already exist keep whatever grants an administrator has given them
+        Map<String, Long> roleIds = new HashMap<>();
+        roleRepository.findAllIdsAndNames().forEach(row -> roleIds.putIfAbsent((String) row[1], (Long) row[0]));
+        List<SeedManifest.RoleSeed> newRoles = manifest.roles().stream()
+                .filter(role -> !roleIds.containsKey(role.name()))
+                .toList();
+        jdbcTemplate.batchUpdate("INSERT INTO roles (name) VALUES (?)", newRoles, BATCH_SIZE,
+                (ps, role) -> ps.setString(1, role.name()));
+        if (!newRoles.isEmpty()) {
+            roleRepository.findAllIdsAndNames().forEach(row -> roleIds.putIfAbsent((String) row[1], (Long) row[0]));
+        }
+
+        List<Long[]> grants = new ArrayList<>();
+        newRoles.forEach(role -> role.permissions().stream().distinct()
+                .forEach(permission -> grants.add(new Long[]{roleIds.get(role.name()), permissionIds.get(permission)})));
+        jdbcTemplate.batchUpdate("INSERT INTO role_permission (role_id, permission_id) VALUES (?, ?)",
+                grants, BATCH_SIZE, (ps, grant) -> {
+                    ps.setLong(1, grant[0]);
+                    ps.setLong(2, grant[1]);
+                });
+
+        Set<String> existingEmails = new HashSet<>();
+        userRepository.findIdsByEmails(manifest.users().stream().map(SeedManifest.UserSeed::email).toList())
+                .forEach(row -> existingEmails.add(((String) row[1]).toLowerCase(Locale.ROOT)));
+        List<SeedManifest.UserSeed> newUsers = manifest.users().stream()
+                .filter(user -> !existingEmails.contains(user.email().toLowerCase(Locale.ROOT)))
+                .toList();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate("INSERT INTO users (first_name, last_name, email, phone, address, password, created_date, last_modified_date) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)", newUsers, BATCH_SIZE, (ps, user) -> {
+                    ps.setString(1, user.firstName());
+                    ps.setString(2, user.lastName());
+                    ps.setString(3, user.email());
+                    ps.setString(4, user.phone());
+                    ps.setString(5, user.address());
+                    ps.setString(6, passwordEncoder.encode(user.password()));
+                    ps.setTimestamp(7, now);
+                    ps.setTimestamp(8, now);
+                });
+        if (!newUsers.isEmpty()) {
+            Map<String, Long> userIds = new HashMap<>();
+            userRepository.findIdsByEmails(newUsers.stream().map(SeedManifest.UserSeed::email).toList())
+                    .forEach(row -> userIds.put(((String) row[1]).toLowerCase(Locale.ROOT), (Long) row[0]));
+            List<Long[]> memberships = new ArrayList<>();
+            newUsers.forEach(user -> user.roles().stream().distinct()
+                    .forEach(role -> memberships.add(new Long[]{userIds.get(user.email().toLowerCase(Locale.ROOT)), roleIds.get(role)})));
+            jdbcTemplate.batchUpdate("INSERT INTO user_role (user_id, role_id) VALUES (?, ?)",
+                    memberships, BATCH_SIZE, (ps, membership) -> {
+                        ps.setLong(1, membership[0]);
+                        ps.setLong(2, membership[1]);
+                    });
+        }
+
+        return new int[]{newPermissions.size(), newRoles.size(), newUsers.size()};
     }
 }
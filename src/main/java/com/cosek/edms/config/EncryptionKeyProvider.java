@@ -0,0 +1,43 @@
+package com.cosek.edms.config;
+
+import com.cosek.edms.helper.EncryptionUtil;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKey;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+
+// Loads (or creates on first start) the storage encryption key once, at startup
+@Component
+public class EncryptionKeyProvider {
+    private final Path keyFile;
+    private SecretKey key;
+
+    public EncryptionKeyProvider(@Value("${edms.crypto.key-file:./secrets/keyfile.key}") String keyFile) {
+        this.keyFile = Paths.get(keyFile);
+    }
+
+    @PostConstruct
+    public void load() throws Exception {
+        if (Files.exists(keyFile)) {
+            key = EncryptionUtil.getSecretKey(Files.readAllBytes(keyFile));
+            return;
+        }
+        if (keyFile.getParent() != null) {
+            Files.createDirectories(keyFile.getParent());
+        }
+        key = EncryptionUtil.generateSecretKey();
+        Files.write(keyFile, key.getEncoded());
+        if (keyFile.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.setPosixFilePermissions(keyFile, PosixFilePermissions.fromString("rw-------"));
+        }
+    }
+
+    public SecretKey getKey() {
+        return key;
+    }
+}
@@ -0,0 +1,73 @@
+package com.cosek.edms.config;
+
+import com.cosek.edms.helper.TransactionHooks;
+import com.cosek.edms.user.User;
+import com.cosek.edms.user.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches authenticated principals so the JWT filter does not reload the user,
+ * roles and permissions on every request. Mutations evict the affected users.
+ */
+@Component
+@RequiredArgsConstructor
+public class PrincipalCache {
+    private static final long TTL_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final UserRepository userRepository;
+
+    private final Map<String, CachedPrincipal> byEmail = new ConcurrentHashMap<>();
+    private final Map<Long, String> emailById = new ConcurrentHashMap<>();
+
+    public User load(String email) {
+        String key = email.toLowerCase(Locale.ROOT);
+        CachedPrincipal cached = byEmail.get(key);
+        if (cached != null && System.nanoTime() - cached.loadedAt() < TTL_NANOS) {
+            return cached.user();
+        }
+
+        User user = userRepository.findByEmail(email)
+                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+        byEmail.put(key, new CachedPrincipal(user, System.nanoTime()));
+        emailById.put(user.getId(), key);
+        return user;
+    }
+
+    // Evicts now and again after commit, so a request racing the transaction cannot re-cache stale rows
+    public void evictUsers(Collection<Long> userIds) {
+        List<Long> ids = List.copyOf(userIds);
+        evict(ids);
+        TransactionHooks.afterCommit(() -> evict(ids));
+    }
+
+    public void evictAll() {
+        clear();
+        TransactionHooks.afterCommit(this::clear);
+    }
+
+    private void evict(Collection<Long> userIds) {
+        for (Long userId : userIds) {
+            String email = emailById.remove(userId);
+            if (email != null) {
+                byEmail.remove(email);
+            }
+        }
+    }
+
+    private void clear() {
+        byEmail.clear();
+        emailById.clear();
+    }
+
+    private record CachedPrincipal(User user, long loadedAt) {
+    }
+}
@@ -1,5 +1,6 @@
 package com.cosek.edms.config;
 
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -48,11 +49,14 @@ public class SecurityConfiguration {
                 .authorizeHttpRequests(request ->
                         request.requestMatchers(AUTH_ROUTE)
                                 .permitAll()
+                                // Streamed downloads finish on an async dispatch of an already authorized request
+                                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                                 // User permissions
-                                .requestMatchers(HttpMethod.GET, "/api/v1/users","/api/v1/users/{id}").hasAuthority(READ_USER)
-                                .requestMatchers(HttpMethod.POST, "/api/v1/users/create-users").hasAuthority(CREATE_USER)
+                                .requestMatchers(HttpMethod.GET, "/api/v1/users","/api/v1/users/search","/api/v1/users/{id}").hasAuthority(READ_USER)
+                                .requestMatchers(HttpMethod.POST, "/api/v1/users/create-users","/api/v1/users/create-multiple").hasAuthority(CREATE_USER)
                                 .requestMatchers(HttpMethod.PUT, "/api/v1/users/{userID}/roles/{roleID}","/api/v1/users/update/{id}","/api/v1/users/roles-update/{id}").hasAuthority(UPDATE_USER)
-                                .requestMatchers(HttpMethod.DELETE, "/api/v1/users/{id}").hasAuthority(DELETE_USER)
+                                .requestMatchers(HttpMethod.PUT, "/api/v1/users/roles/assign-multiple","/api/v1/users/roles/revoke-multiple").hasAuthority(UPDATE_USER)
+                                .requestMatchers(HttpMethod.DELETE, "/api/v1/users/{id}","/api/v1/users/delete-multiple").hasAuthority(DELETE_USER)
 
 
                                 .requestMatchers(HttpMethod.POST, "/api/v1/departments/create-department").hasAuthority(CREATE_DEPARTMENTS)
@@ -66,10 +70,11 @@ public class SecurityConfiguration {
                                 .requestMatchers(HttpMethod.PUT, "/api/v1/roles/add-permission").hasAuthority(UPDATE_ROLE)
                                 .requestMatchers(HttpMethod.PUT, "/api/v1/roles/remove-permission").hasAuthority(UPDATE_ROLE)
                                 .requestMatchers(HttpMethod.PUT, "/api/v1/roles/update-permissions").hasAuthority(UPDATE_ROLE)
+                                .requestMatchers(HttpMethod.PUT, "/api/v1/roles/update-permissions-multiple").hasAuthority(UPDATE_ROLE)
                                 .requestMatchers(HttpMethod.DELETE, "/api/v1/roles/**").hasAuthority(DELETE_ROLE)
 
                                 // Permission management permissions
-                                .requestMatchers(HttpMethod.GET, "/api/v1/permissions/all").hasAuthority(READ_PERMISSION)
+                                .requestMatchers(HttpMethod.GET, "/api/v1/permissions/all","/api/v1/permissions/{name}/users").hasAuthority(READ_PERMISSION)
                                 .requestMatchers(HttpMethod.POST, "/api/v1/permissions/add").hasAuthority(CREATE_PERMISSION)
                                 .requestMatchers(HttpMethod.POST, "/api/v1/permissions/remove").hasAuthority(DELETE_PERMISSION)
 
@@ -80,7 +85,11 @@ public class SecurityConfiguration {
                                 .requestMatchers(HttpMethod.DELETE, "/api/v1/case-studies/delete/{id}").hasAuthority(DELETE_CASESTUDIES)
 
                                 // Files permissions
-                                .requestMatchers(HttpMethod.GET, "/api/v1/files/{id}").hasAuthority(READ_FILES)
+                                // Before {id}, which would otherwise claim the path
+                                .requestMatchers(HttpMethod.GET, "/api/v1/files/trash").hasAuthority(DELETE_FILES)
+                                .requestMatchers(HttpMethod.GET, "/api/v1/files/filter").hasAuthority(READ_FILES)
+                                .requestMatchers(HttpMethod.GET, "/api/v1/files/{id}","/api/v1/files/{id}/content","/api/v1/files/{id}/thumbnail","/api/v1/files/{id}/text").hasAuthority(READ_FILES)
+                                .requestMatchers(HttpMethod.GET, "/api/v1/files/{id}/versions","/api/v1/files/{id}/versions/{version}/content").hasAuthority(READ_FILES)
                                 .requestMatchers(HttpMethod.GET, "/api/v1/files/all").hasAuthority(READ_FILES)
                                 .requestMatchers(HttpMethod.GET, "/api/v1/files/all/{id}").hasAuthority(READ_FILES)
                                 .requestMatchers(HttpMethod.POST, "/api/v1/files/add").hasAuthority(CREATE_FILES)
@@ -88,10 +97,36 @@ public class SecurityConfiguration {
                                 .requestMatchers(HttpMethod.PUT, "/api/v1/files/update-multiple").hasAuthority(UPDATE_FILES)
                                 .requestMatchers(HttpMethod.DELETE, "/api/v1/files/delete/{id}").hasAuthority(DELETE_FILES)
                                 .requestMatchers(HttpMethod.DELETE, "/api/v1/files/delete-multiple").hasAuthority(DELETE_FILES)
+                                .requestMatchers(HttpMethod.POST, "/api/v1/files/restore").hasAuthority(DELETE_FILES)
+                                .requestMatchers(HttpMethod.POST, "/api/v1/files/uploads","/api/v1/files/uploads/{id}/commit").hasAuthority(CREATE_FILES)
+                                .requestMatchers(HttpMethod.GET, "/api/v1/files/uploads/{id}").hasAuthority(CREATE_FILES)
+                                .requestMatchers(HttpMethod.PUT, "/api/v1/files/uploads/{id}/parts/{index}").hasAuthority(CREATE_FILES)
+                                .requestMatchers(HttpMethod.DELETE, "/api/v1/files/uploads/{id}").hasAuthority(CREATE_FILES)
 
+                                // Derivative queue
+                                .requestMatchers(HttpMethod.GET, "/api/v1/derivatives/metrics").hasAuthority(READ_DASHBOARD)
+
+                                // Content search
+                                .requestMatchers(HttpMethod.GET, "/api/v1/search").hasAuthority(READ_FILES)
+                                .requestMatchers(HttpMethod.GET, "/api/v1/search/stats").hasAuthority(MANAGE_SEARCH_INDEX)
+                                .requestMatchers(HttpMethod.POST, "/api/v1/search/rebuild").hasAuthority(MANAGE_SEARCH_INDEX)
+
+                                // Encryption keys
+                                .requestMatchers(HttpMethod.GET, "/api/v1/keys/status").hasAuthority(MANAGE_KEYS)
+                                .requestMatchers(HttpMethod.POST, "/api/v1/keys/rotate").hasAuthority(MANAGE_KEYS)
+
+                                // Integrity scrubber
+                                .requestMatchers(HttpMethod.GET, "/api/v1/integrity/status", "/api/v1/integrity/reports").hasAuthority(MANAGE_INTEGRITY)
+                                .requestMatchers(HttpMethod.POST, "/api/v1/integrity/reports/{id}/resolve").hasAuthority(MANAGE_INTEGRITY)
+
+                                // Department quotas
+                                .requestMatchers(HttpMethod.GET, "/api/v1/quotas", "/api/v1/quotas/{departmentId}").hasAuthority(MANAGE_QUOTAS)
+                                .requestMatchers(HttpMethod.PUT, "/api/v1/quotas/{departmentId}").hasAuthority(MANAGE_QUOTAS)
 
                                 // Folders permissions
                                 .requestMatchers(HttpMethod.GET, "/api/v1/folders/{id}").hasAuthority(READ_FOLDERS)
+                                .requestMatchers(HttpMethod.GET, "/api/v1/folders/{id}/subtree", "/api/v1/folders/{id}/size").hasAuthority(READ_FOLDERS)
+                                .requestMatchers(HttpMethod.GET, "/api/v1/folders/{id}/archive").hasAuthority(READ_FILES)
                                 .requestMatchers(HttpMethod.GET, "/api/v1/folders/all").hasAuthority(READ_FOLDERS)
                                 .requestMatchers(HttpMethod.POST, "/api/v1/folders/add").hasAuthority(CREATE_FOLDERS)
                                 .requestMatchers(HttpMethod.PUT, "/api/v1/folders/update/{id}").hasAuthority(UPDATE_FOLDERS)
@@ -99,6 +134,9 @@ public class SecurityConfiguration {
                                 .requestMatchers(HttpMethod.DELETE, "/api/v1/folders/delete/{id}").hasAuthority(DELETE_FOLDERS)
                                 .requestMatchers(HttpMethod.DELETE, "/api/v1/folders/delete-multiple").hasAuthority(DELETE_FOLDERS)
                                 .requestMatchers(HttpMethod.GET, "/api/v1/folders/departments/{departmentId}").hasAuthority(READ_FOLDERS)
+                                .requestMatchers(HttpMethod.GET, "/api/v1/folders/{id}/grants").hasAuthority(MANAGE_FOLDER_ACCESS)
+                                .requestMatchers(HttpMethod.POST, "/api/v1/folders/{id}/grants").hasAuthority(MANAGE_FOLDER_ACCESS)
+                                .requestMatchers(HttpMethod.DELETE, "/api/v1/folders/grants/{grantId}").hasAuthority(MANAGE_FOLDER_ACCESS)
 
                                 // Dashboard permissions
                                 .requestMatchers(HttpMethod.GET, "/api/v1/dashboard/**").hasAuthority(READ_DASHBOARD)
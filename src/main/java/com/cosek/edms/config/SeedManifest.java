@@ -0,0 +1,55 @@
+package com.cosek.edms.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.cosek.edms.helper.Constants.*;
+
+/**
+ * Declares the permissions, roles and bootstrap users every installation starts with.
+ * DatabaseInitializer applies it idempotently on startup.
+ */
+public record SeedManifest(List<String> permissions, List<RoleSeed> roles, List<UserSeed> users) {
+
+    public record RoleSeed(String name, List<String> permissions) {
+    }
+
+    public record UserSeed(String firstName, String lastName, String email, String password,
+                           String phone, String address, List<String> roles) {
+    }
+
+    public static SeedManifest defaults() {
+        List<String> permissions = List.of(
+                READ_PERMISSION, CREATE_PERMISSION, UPDATE_PERMISSION, DELETE_PERMISSION,
+                READ_ROLE, CREATE_ROLE, UPDATE_ROLE, DELETE_ROLE,
+                READ_USER, CREATE_USER, UPDATE_USER, DELETE_USER,
+                READ_DASHBOARD, CREATE_DASHBOARD, UPDATE_DASHBOARD, DELETE_DASHBOARD,
+                READ_FILES, CREATE_FILES, UPDATE_FILES, DELETE_FILES, MANAGE_SEARCH_INDEX, MANAGE_KEYS, MANAGE_INTEGRITY, MANAGE_QUOTAS,
+                READ_FOLDERS, CREATE_FOLDERS, UPDATE_FOLDERS, DELETE_FOLDERS, MANAGE_FOLDER_ACCESS,
+                READ_CASESTUDIES, CREATE_CASESTUDIES, UPDATE_CASESTUDIES, DELETE_CASESTUDIES,
+                READ_REQUESTS, CREATE_REQUESTS, UPDATE_REQUESTS, DELETE_REQUESTS,
+                READ_DEPARTMENTS, CREATE_DEPARTMENTS, UPDATE_DEPARTMENTS, DELETE_DEPARTMENTS
+        );
+
+        List<RoleSeed> roles = List.of(
+                new RoleSeed(SUPER_ADMIN, new ArrayList<>(permissions)),
+                new RoleSeed(ADMIN, List.of(
+                        READ_USER,
+                        READ_FILES, CREATE_FILES, UPDATE_FILES, DELETE_FILES,
+                        READ_FOLDERS, CREATE_FOLDERS, UPDATE_FOLDERS, DELETE_FOLDERS,
+                        READ_CASESTUDIES, CREATE_CASESTUDIES, UPDATE_CASESTUDIES, DELETE_CASESTUDIES,
+                        READ_DEPARTMENTS
+                )),
+                new RoleSeed(USER, List.of(
+                        READ_FILES, CREATE_FILES, READ_FOLDERS, READ_CASESTUDIES, READ_DEPARTMENTS
+                ))
+        );
+
+        List<UserSeed> users = List.of(
+                new UserSeed(ADMIN_FIRST_NAME, ADMIN_LAST_NAME, ADMIN_EMAIL, ADMIN_PASSWORD,
+                        ADMIN_PHONE, ADMIN_COUNTRY, List.of(SUPER_ADMIN))
+        );
+
+        return new SeedManifest(permissions, roles, users);
+    }
+}
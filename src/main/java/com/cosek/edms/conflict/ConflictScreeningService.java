@@ -0,0 +1,107 @@
+package com.cosek.edms.conflict;
+
+import com.cosek.edms.conflict.Models.ConflictScreening;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a hash index of the conflict-of-interest register keyed by normalized
+ * declarant name (and name + department), so memo preparers can be screened
+ * without querying the register.
+ */
+@Service
+@RequiredArgsConstructor
+public class ConflictScreeningService {
+    private final ConflictRepository repository;
+
+    private final Map<String, Set<Long>> byName = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> byNameAndDepartment = new ConcurrentHashMap<>();
+    private final Map<Long, ConflictOfInterest> indexed = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void loadIndex() {
+        repository.findAll().forEach(this::index);
+    }
+
+    public synchronized void index(ConflictOfInterest conflict) {
+        if (conflict == null || conflict.getId() == null) {
+            return;
+        }
+        remove(conflict.getId());
+
+        String name = normalize(conflict.getName());
+        if (name.isEmpty()) {
+            return;
+        }
+        indexed.put(conflict.getId(), copyOf(conflict));
+        byName.computeIfAbsent(name, key -> ConcurrentHashMap.newKeySet()).add(conflict.getId());
+        byNameAndDepartment.computeIfAbsent(key(name, normalize(conflict.getDepartment())),
+                key -> ConcurrentHashMap.newKeySet()).add(conflict.getId());
+    }
+
+    public synchronized void remove(Long conflictId) {
+        ConflictOfInterest previous = indexed.remove(conflictId);
+        if (previous == null) {
+            return;
+        }
+        String name = normalize(previous.getName());
+        unlink(byName, name, conflictId);
+        unlink(byNameAndDepartment, key(name, normalize(previous.getDepartment())), conflictId);
+    }
+
+    // Matches on name + department; a memo without a department is matched on name alone
+    public ConflictScreening screen(String preparedBy, String department) {
+        String name = normalize(preparedBy);
+        String dept = normalize(department);
+
+        Set<Long> matches = name.isEmpty()
+                ? Collections.emptySet()
+                : dept.isEmpty()
+                ? byName.getOrDefault(name, Collections.emptySet())
+                : byNameAndDepartment.getOrDefault(key(name, dept), Collections.emptySet());
+
+        List<Long> conflictIds = new ArrayList<>(matches);
+        Collections.sort(conflictIds);
+        return ConflictScreening.builder()
+                .preparedBy(preparedBy)
+                .department(department)
+                .flagged(!conflictIds.isEmpty())
+                .conflictIds(conflictIds)
+                .build();
+    }
+
+    static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        String stripped = Normalizer.normalize(value, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "");
+        return stripped.toLowerCase(Locale.ROOT)
+                .replaceAll("[^\\p{Alnum}]+", " ")
+                .trim();
+    }
+
+    private static String key(String name, String department) {
+        return name + '|' + department;
+    }
+
+    private static void unlink(Map<String, Set<Long>> index, String key, Long conflictId) {
+        index.computeIfPresent(key, (k, ids) -> {
+            ids.remove(conflictId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private static ConflictOfInterest copyOf(ConflictOfInterest conflict) {
+        return ConflictOfInterest.builder()
+                .id(conflict.getId())
+                .name(conflict.getName())
+                .department(conflict.getDepartment())
+                .build();
+    }
+}
@@ -12,6 +12,9 @@ public class ConflictService {
     @Autowired
     private ConflictRepository repository;
 
+    @Autowired
+    private ConflictScreeningService screeningService;
+
     public List<ConflictOfInterest> getAllConflicts() {
         return repository.findAll();
     }
@@ -21,7 +24,9 @@ public class ConflictService {
     }
 
     public ConflictOfInterest createConflict(ConflictOfInterest conflict) {
-        return repository.save(conflict);
+        ConflictOfInterest saved = repository.save(conflict);
+        screeningService.index(saved);
+        return saved;
     }
 
     public ConflictOfInterest updateConflict(Long id, ConflictOfInterest conflictDetails) {
@@ -32,12 +37,15 @@ public class ConflictService {
                     conflict.setDepartment(conflictDetails.getDepartment());
                     conflict.setNatureOfInterest(conflictDetails.getNatureOfInterest());
                     conflict.setDate(conflictDetails.getDate());
-                    return repository.save(conflict);
+                    ConflictOfInterest saved = repository.save(conflict);
+                    screeningService.index(saved);
+                    return saved;
                 })
                 .orElseThrow(() -> new RuntimeException("Conflict not found with id " + id));
     }
 
     public void deleteConflict(Long id) {
         repository.deleteById(id);
+        screeningService.remove(id);
     }
 }
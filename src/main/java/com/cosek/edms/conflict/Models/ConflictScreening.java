@@ -0,0 +1,20 @@
+package com.cosek.edms.conflict.Models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ConflictScreening {
+    private Long memoId;
+    private String preparedBy;
+    private String department;
+    private boolean flagged;
+    private List<Long> conflictIds;   // Declarations that matched the preparer
+}
@@ -0,0 +1,116 @@
+package com.cosek.edms.crypto;
+
+import com.cosek.edms.helper.EncryptionUtil;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Envelope encryption: every blob is sealed with its own data key, and only that key,
+ * wrapped with AES-GCM under a versioned master key, is stored. Unwrapped keys are
+ * cached briefly, so streaming a file does not pay for an unwrap on every range read.
+ */
+@Service
+@RequiredArgsConstructor
+public class DataKeyService {
+    private static final int NONCE_SIZE = 12;
+    private static final int TAG_SIZE = 16;
+    private static final byte[] AAD_PREFIX = {'E', 'D', 'M', 'K'};
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final MasterKeyRing masterKeyRing;
+
+    @Value("${edms.crypto.data-key-cache-ttl:PT5M}")
+    private Duration cacheTtl;
+
+    @Value("${edms.crypto.data-key-cache-size:10000}")
+    private int cacheSize;
+
+    // Keyed by the wrapped bytes; a rewrapped key simply becomes a new entry and the old one ages out
+    private final Map<String, CachedKey> cache = new ConcurrentHashMap<>();
+
+    public record DataKey(SecretKey key, WrappedKey wrapped) {
+    }
+
+    public DataKey generate() {
+        try {
+            SecretKey key = EncryptionUtil.generateSecretKey();
+            return new DataKey(key, wrap(key, masterKeyRing.currentVersion()));
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not generate a data key", e);
+        }
+    }
+
+    public SecretKey unwrap(WrappedKey wrapped) {
+        String cacheKey = wrapped.version() + ":" + Base64.getEncoder().encodeToString(wrapped.key());
+        CachedKey cached = cache.get(cacheKey);
+        long now = System.nanoTime();
+        if (cached != null && now - cached.loadedAt() < cacheTtl.toNanos()) {
+            return cached.key();
+        }
+        SecretKey key = open(wrapped);
+        if (cache.size() >= cacheSize) {
+            cache.clear();
+        }
+        cache.put(cacheKey, new CachedKey(key, now));
+        return key;
+    }
+
+    // Same data key under the current master key; the content it seals is not touched
+    public WrappedKey rewrap(WrappedKey wrapped) {
+        return wrap(open(wrapped), masterKeyRing.currentVersion());
+    }
+
+    private WrappedKey wrap(SecretKey key, int version) {
+        try {
+            byte[] nonce = new byte[NONCE_SIZE];
+            RANDOM.nextBytes(nonce);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, masterKeyRing.key(version), new GCMParameterSpec(TAG_SIZE * 8, nonce));
+            cipher.updateAAD(aad(version));
+            byte[] sealed = cipher.doFinal(key.getEncoded());
+            return new WrappedKey(ByteBuffer.allocate(NONCE_SIZE + sealed.length).put(nonce).put(sealed).array(), version);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not wrap a data key", e);
+        }
+    }
+
+    private SecretKey open(WrappedKey wrapped) {
+        byte[] bytes = wrapped.key();
+        if (bytes == null || bytes.length <= NONCE_SIZE + TAG_SIZE) {
+            throw new IllegalStateException("Wrapped data key is malformed");
+        }
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, masterKeyRing.key(wrapped.version()),
+                    new GCMParameterSpec(TAG_SIZE * 8, bytes, 0, NONCE_SIZE));
+            cipher.updateAAD(aad(wrapped.version()));
+            return EncryptionUtil.getSecretKey(cipher.doFinal(Arrays.copyOfRange(bytes, NONCE_SIZE, bytes.length)));
+        } catch (AEADBadTagException e) {
+            throw new IllegalStateException("Wrapped data key failed authentication under master key version " + wrapped.version(), e);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not unwrap a data key", e);
+        }
+    }
+
+    // Binds the wrapped key to its version, so it cannot be passed off as wrapped under another one
+    private static byte[] aad(int version) {
+        return ByteBuffer.allocate(AAD_PREFIX.length + 4).put(AAD_PREFIX).putInt(version).array();
+    }
+
+    private record CachedKey(SecretKey key, long loadedAt) {
+    }
+}
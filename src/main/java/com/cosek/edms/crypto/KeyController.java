@@ -0,0 +1,31 @@
+package com.cosek.edms.crypto;
+
+import com.cosek.edms.crypto.Models.KeyStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/v1/keys")
+@RequiredArgsConstructor
+public class KeyController {
+    private final KeyRotationService keyRotationService;
+
+    @GetMapping("/status")
+    public ResponseEntity<KeyStatus> getStatus() {
+        return ResponseEntity.ok(keyRotationService.getStatus());
+    }
+
+    // Returns once the new master key is in use; rewrapping carries on in the background
+    @PostMapping("/rotate")
+    public ResponseEntity<Map<String, Object>> rotate() throws Exception {
+        int version = keyRotationService.rotate();
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("currentVersion", version));
+    }
+}
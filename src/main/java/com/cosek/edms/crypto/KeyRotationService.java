@@ -0,0 +1,184 @@
+package com.cosek.edms.crypto;
+
+import com.cosek.edms.crypto.Models.KeyStatus;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Master key rotation. A new master key version takes over wrapping at once; the data
+ * keys wrapped under older versions are then rewrapped in small batches in the
+ * background. Only the key columns change, never the stored content. A key that cannot
+ * be rewrapped is logged, counted and passed over, and is tried again on the next run.
+ */
+@Service
+@RequiredArgsConstructor
+public class KeyRotationService {
+    private static final Logger logger = LoggerFactory.getLogger(KeyRotationService.class);
+
+    // Both tables carry the same key columns; each is rewrapped on its own
+    private static final List<KeyTable> TABLES = List.of(
+            new KeyTable("content_blobs", "hash"),
+            new KeyTable("upload_sessions", "id"));
+
+    private final MasterKeyRing masterKeyRing;
+    private final DataKeyService dataKeyService;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${edms.crypto.rewrap-batch-size:500}")
+    private int batchSize;
+
+    // Pause between batches, so a rotation does not compete with uploads for the tables
+    @Value("${edms.crypto.rewrap-pause:PT0.1S}")
+    private Duration pause;
+
+    private final ExecutorService rewrapper = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final LongAdder rewrapped = new LongAdder();
+    // Keys the latest run could not rewrap
+    private final LongAdder failed = new LongAdder();
+
+    private record KeyTable(String name, String idColumn) {
+        // Keyset page in id order, so rows that fail to rewrap are walked past rather than read again
+        String selectSql() {
+            return "SELECT TOP (?) " + idColumn + ", wrapped_key, key_version FROM " + name +
+                    " WHERE wrapped_key IS NOT NULL AND key_version < ? AND " + idColumn + " > ? ORDER BY " + idColumn;
+        }
+
+        // Guarded on the version read, so a row rewrapped or replaced meanwhile is left alone
+        String updateSql() {
+            return "UPDATE " + name + " SET wrapped_key = ?, key_version = ? WHERE " + idColumn + " = ? AND key_version = ?";
+        }
+    }
+
+    private record Row(String id, WrappedKey key) {
+    }
+
+    @PreDestroy
+    void stop() {
+        rewrapper.shutdownNow();
+    }
+
+    public int rotate() throws Exception {
+        int version = masterKeyRing.rotate();
+        logger.info("Rotated to master key version {}", version);
+        resume();
+        return version;
+    }
+
+    // Also picks up a rotation that was cut short by a restart
+    @Scheduled(fixedDelayString = "${edms.crypto.rewrap-interval:PT10M}", initialDelayString = "${edms.crypto.rewrap-interval:PT10M}")
+    public void resume() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            rewrapper.execute(() -> {
+                try {
+                    rewrapAll();
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+        }
+    }
+
+    public KeyStatus getStatus() {
+        Map<Integer, Long> blobs = countByVersion("content_blobs");
+        Map<Integer, Long> uploads = countByVersion("upload_sessions");
+        Long legacy = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM content_blobs WHERE wrapped_key IS NULL", Long.class);
+        return new KeyStatus(masterKeyRing.currentVersion(), blobs, uploads, legacy != null ? legacy : 0,
+                running.get(), rewrapped.sum(), failed.sum());
+    }
+
+    private void rewrapAll() {
+        failed.reset();
+        int total = 0;
+        try {
+            for (KeyTable table : TABLES) {
+                String after = "";
+                List<Row> rows;
+                do {
+                    rows = nextPage(table, after);
+                    if (rows.isEmpty()) {
+                        break;
+                    }
+                    total += rewrap(table, rows);
+                    after = rows.get(rows.size() - 1).id();
+                } while (rows.size() == batchSize && sleep());
+            }
+        } catch (RuntimeException e) {
+            logger.error("Rewrapping data keys failed after {} keys; the next run continues", total, e);
+            return;
+        }
+        if (total > 0) {
+            logger.info("Rewrapped {} data keys under master key version {}", total, masterKeyRing.currentVersion());
+        }
+        if (failed.sum() > 0) {
+            logger.warn("{} data keys could not be rewrapped and stay under their old master key version", failed.sum());
+        }
+    }
+
+    // Reads the current version per page, so a rotation during a run is followed straight away
+    private List<Row> nextPage(KeyTable table, String after) {
+        return jdbcTemplate.query(table.selectSql(),
+                (rs, index) -> new Row(rs.getString(1), new WrappedKey(rs.getBytes(2), rs.getInt(3))),
+                batchSize, masterKeyRing.currentVersion(), after);
+    }
+
+    private int rewrap(KeyTable table, List<Row> rows) {
+        List<Object[]> updates = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            try {
+                WrappedKey fresh = dataKeyService.rewrap(row.key());
+                updates.add(new Object[]{fresh.key(), fresh.version(), row.id(), row.key().version()});
+            } catch (RuntimeException e) {
+                failed.increment();
+                logger.warn("Could not rewrap the data key of {} {} under master key version {}",
+                        table.name(), row.id(), row.key().version(), e);
+            }
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(table.updateSql(), updates);
+            rewrapped.add(updates.size());
+        }
+        return updates.size();
+    }
+
+    private Map<Integer, Long> countByVersion(String table) {
+        Map<Integer, Long> counts = new TreeMap<>();
+        jdbcTemplate.query("SELECT key_version, COUNT(*) FROM " + table + " WHERE key_version IS NOT NULL GROUP BY key_version",
+                rs -> {
+                    counts.put(rs.getInt(1), rs.getLong(2));
+                });
+        return counts;
+    }
+
+    private boolean sleep() {
+        try {
+            Thread.sleep(pause.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
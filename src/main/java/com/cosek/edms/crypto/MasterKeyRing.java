@@ -0,0 +1,89 @@
+package com.cosek.edms.crypto;
+
+import com.cosek.edms.helper.EncryptionUtil;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Versioned master keys, one file per version. Only the newest wraps new data keys;
+ * older versions stay loaded so keys wrapped under them can be unwrapped until the
+ * rotation job has rewrapped them.
+ */
+@Component
+public class MasterKeyRing {
+    private static final Pattern FILE_PATTERN = Pattern.compile("master-(\\d+)\\.key");
+
+    private final Path directory;
+    private final Map<Integer, SecretKey> keys = new ConcurrentHashMap<>();
+    private volatile int currentVersion;
+
+    public MasterKeyRing(@Value("${edms.crypto.master-key-dir:./secrets/master-keys}") String directory) {
+        this.directory = Paths.get(directory);
+    }
+
+    @PostConstruct
+    public void load() throws Exception {
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Matcher matcher = FILE_PATTERN.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    int version = Integer.parseInt(matcher.group(1));
+                    keys.put(version, EncryptionUtil.getSecretKey(Files.readAllBytes(file)));
+                    currentVersion = Math.max(currentVersion, version);
+                }
+            }
+        }
+        if (keys.isEmpty()) {
+            rotate();
+        }
+    }
+
+    public int currentVersion() {
+        return currentVersion;
+    }
+
+    public SecretKey current() {
+        return key(currentVersion);
+    }
+
+    public SecretKey key(int version) {
+        SecretKey key = keys.get(version);
+        if (key == null) {
+            throw new IllegalStateException("Master key version " + version + " is not available");
+        }
+        return key;
+    }
+
+    // Writes the next version under a temporary name first, so a crash never leaves a partial key
+    public synchronized int rotate() throws Exception {
+        int version = currentVersion + 1;
+        SecretKey key = EncryptionUtil.generateSecretKey();
+        Path target = directory.resolve("master-" + version + ".key");
+        Path temp = directory.resolve("master-" + version + ".key.tmp");
+        Files.write(temp, key.getEncoded());
+        if (temp.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-------"));
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        keys.put(version, key);
+        currentVersion = version;
+        return version;
+    }
+}
@@ -0,0 +1,16 @@
+package com.cosek.edms.crypto.Models;
+
+import java.util.Map;
+
+// Wrapped keys per master key version; legacy blobs predate envelope encryption and cannot be rewrapped.
+// rewrapFailed counts the keys the latest run had to pass over
+public record KeyStatus(
+        int currentVersion,
+        Map<Integer, Long> blobsByVersion,
+        Map<Integer, Long> uploadsByVersion,
+        long legacyBlobs,
+        boolean rewrapping,
+        long rewrapped,
+        long rewrapFailed
+) {
+}
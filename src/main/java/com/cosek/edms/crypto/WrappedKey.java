@@ -0,0 +1,5 @@
+package com.cosek.edms.crypto;
+
+// A data key sealed under the master key of the given version; this is all that is ever stored
+public record WrappedKey(byte[] key, int version) {
+}
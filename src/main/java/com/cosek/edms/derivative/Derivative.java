@@ -0,0 +1,39 @@
+package com.cosek.edms.derivative;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// A generated rendition of some stored content, itself kept as a referenced blob
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "file_derivatives",
+        uniqueConstraints = @UniqueConstraint(name = "uq_file_derivatives", columnNames = {"source_hash", "kind"}))
+public class Derivative {
+    public enum Kind { THUMBNAIL, TEXT }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "source_hash", nullable = false, length = 64)
+    private String sourceHash;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Kind kind;
+
+    @Column(name = "content_hash", nullable = false, length = 64)
+    private String contentHash;
+
+    private String contentType;
+    private long size;
+    private LocalDateTime createdDate;
+}
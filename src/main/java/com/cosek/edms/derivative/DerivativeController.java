@@ -0,0 +1,20 @@
+package com.cosek.edms.derivative;
+
+import com.cosek.edms.derivative.Models.DerivativeMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/v1/derivatives")
+@RequiredArgsConstructor
+public class DerivativeController {
+    private final DerivativeService derivativeService;
+
+    @GetMapping("/metrics")
+    public ResponseEntity<DerivativeMetrics> getMetrics() {
+        return ResponseEntity.ok(derivativeService.getMetrics());
+    }
+}
@@ -0,0 +1,5 @@
+package com.cosek.edms.derivative;
+
+// Published once a derivative has been committed, so consumers can read it straight away
+public record DerivativeCreatedEvent(String sourceHash, Derivative.Kind kind) {
+}
@@ -0,0 +1,254 @@
+package com.cosek.edms.derivative;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Renders derivatives from content held in memory. Unsupported or undecodable
+ * input is reported with IllegalArgumentException, which is not retried.
+ */
+@Component
+public class DerivativeGenerator {
+    public static final String THUMBNAIL_TYPE = "image/png";
+    public static final String TEXT_TYPE = "text/plain;charset=UTF-8";
+
+    private static final Set<String> TEXT_TYPES = Set.of("text/plain", "text/csv", "text/html");
+
+    @Value("${edms.derivatives.thumbnail-size:256}")
+    private int thumbnailSize;
+
+    static {
+        // Decoding happens in memory; the disk cache would spill plaintext next to the encrypted store
+        ImageIO.setUseCache(false);
+    }
+
+    public static Set<Derivative.Kind> kindsFor(String contentType) {
+        MimeType type = parse(contentType);
+        if (type == null) {
+            return Set.of();
+        }
+        if ("image".equals(type.getType())) {
+            return Set.of(Derivative.Kind.THUMBNAIL);
+        }
+        return TEXT_TYPES.contains(type.getType() + "/" + type.getSubtype()) ? Set.of(Derivative.Kind.TEXT) : Set.of();
+    }
+
+    // Fits the image into a thumbnailSize square; large sources are subsampled while decoding
+    public void thumbnail(byte[] source, OutputStream out) throws IOException {
+        BufferedImage image;
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(source))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IllegalArgumentException("Unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, longest / (thumbnailSize * 2));
+                param.setSourceSubsampling(step, step, 0, 0);
+                image = reader.read(0, param);
+            } catch (IIOException e) {
+                // Corrupt input fails the same way on every attempt
+                throw new IllegalArgumentException("Image could not be decoded: " + e.getMessage(), e);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        double scale = Math.min(1.0, (double) thumbnailSize / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = thumbnail.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        ImageIO.write(thumbnail, "png", out);
+    }
+
+    // Plain text and CSV pass through; HTML loses its markup, scripts and styles
+    public void extractText(byte[] source, String contentType, int maxChars, Writer out) throws IOException {
+        MimeType type = parse(contentType);
+        Charset charset = StandardCharsets.UTF_8;
+        if (type != null && type.getCharset() != null) {
+            charset = type.getCharset();
+        }
+        Reader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(source), charset));
+        Writer limited = new LimitedWriter(out, maxChars);
+        if (type != null && "html".equals(type.getSubtype())) {
+            stripHtml(in, limited);
+        } else {
+            in.transferTo(limited);
+        }
+        limited.flush();
+    }
+
+    private static void stripHtml(Reader in, Writer out) throws IOException {
+        StringBuilder tag = new StringBuilder();
+        StringBuilder entity = new StringBuilder();
+        String skipUntil = null;
+        boolean inTag = false;
+        boolean space = true;
+        int c;
+        while ((c = in.read()) != -1) {
+            if (inTag) {
+                if (c == '>') {
+                    inTag = false;
+                    String name = tagName(tag);
+                    if (skipUntil == null && ("script".equals(name) || "style".equals(name))) {
+                        skipUntil = "/" + name;
+                    } else if (skipUntil != null && skipUntil.equals(name)) {
+                        skipUntil = null;
+                    }
+                    if (!space && skipUntil == null) {
+                        out.write(' ');
+                        space = true;
+                    }
+                } else if (c == '<') {
+                    // A stray '<', as in script comparisons; the real tag starts here
+                    tag.setLength(0);
+                } else if (tag.length() < 16) {
+                    tag.append((char) c);
+                }
+                continue;
+            }
+            if (!entity.isEmpty() && (c == '<' || Character.isWhitespace(c))) {
+                // A bare ampersand, not an entity
+                out.write(entity.toString());
+                entity.setLength(0);
+                space = false;
+            }
+            if (c == '<') {
+                inTag = true;
+                tag.setLength(0);
+                continue;
+            }
+            if (skipUntil != null) {
+                continue;
+            }
+            if (c == '&' || !entity.isEmpty()) {
+                entity.append((char) c);
+                if (c != ';' && entity.length() < 10) {
+                    continue;
+                }
+                String decoded = decodeEntity(entity.toString());
+                entity.setLength(0);
+                out.write(decoded);
+                space = decoded.endsWith(" ");
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                if (!space) {
+                    out.write(' ');
+                    space = true;
+                }
+            } else {
+                out.write(c);
+                space = false;
+            }
+        }
+        out.write(entity.toString());
+    }
+
+    private static String tagName(StringBuilder tag) {
+        int end = 0;
+        while (end < tag.length() && !Character.isWhitespace(tag.charAt(end)) && tag.charAt(end) != '>') {
+            end++;
+        }
+        return tag.substring(0, end).toLowerCase(Locale.ROOT);
+    }
+
+    private static String decodeEntity(String entity) {
+        return switch (entity) {
+            case "&amp;" -> "&";
+            case "&lt;" -> "<";
+            case "&gt;" -> ">";
+            case "&quot;" -> "\"";
+            case "&apos;", "&#39;" -> "'";
+            case "&nbsp;" -> " ";
+            default -> {
+                if (entity.startsWith("&#") && entity.endsWith(";")) {
+                    try {
+                        String digits = entity.substring(2, entity.length() - 1);
+                        int codePoint = digits.startsWith("x") || digits.startsWith("X")
+                                ? Integer.parseInt(digits.substring(1), 16)
+                                : Integer.parseInt(digits);
+                        yield new String(Character.toChars(codePoint));
+                    } catch (IllegalArgumentException e) {
+                        yield entity;
+                    }
+                }
+                yield entity;
+            }
+        };
+    }
+
+    private static MimeType parse(String contentType) {
+        if (contentType == null || contentType.isBlank()) {
+            return null;
+        }
+        try {
+            return MimeType.valueOf(contentType.toLowerCase(Locale.ROOT));
+        } catch (InvalidMimeTypeException e) {
+            return null;
+        }
+    }
+
+    // Drops everything past the limit, so a huge document cannot blow up the derivative
+    private static class LimitedWriter extends FilterWriter {
+        private int remaining;
+
+        LimitedWriter(Writer out, int limit) {
+            super(out);
+            this.remaining = limit;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            if (remaining > 0) {
+                remaining--;
+                out.write(c);
+            }
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            int allowed = Math.min(length, remaining);
+            if (allowed > 0) {
+                remaining -= allowed;
+                out.write(buffer, offset, allowed);
+            }
+        }
+
+        @Override
+        public void write(String text, int offset, int length) throws IOException {
+            int allowed = Math.min(length, remaining);
+            if (allowed > 0) {
+                remaining -= allowed;
+                out.write(text, offset, allowed);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.cosek.edms.derivative;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Queue row; claimed, retried and finished with set-based SQL in DerivativeService
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "derivative_jobs",
+        uniqueConstraints = @UniqueConstraint(name = "uq_derivative_jobs", columnNames = {"source_hash", "kind"}),
+        indexes = @Index(name = "idx_derivative_jobs_queue", columnList = "status, priority, run_after"))
+public class DerivativeJob {
+    public enum Status { PENDING, RUNNING, FAILED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Derivatives belong to content, so files sharing a blob share them too
+    @Column(name = "source_hash", nullable = false, length = 64)
+    private String sourceHash;
+
+    @Column(name = "source_size", nullable = false)
+    private long sourceSize;
+
+    private String contentType;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Derivative.Kind kind;
+
+    // Higher runs first
+    @Column(nullable = false)
+    private int priority;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "run_after", nullable = false)
+    private LocalDateTime runAfter;
+
+    // A RUNNING job whose lease has passed is assumed lost with its worker and queued again
+    @Column(name = "locked_until")
+    private LocalDateTime lockedUntil;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    private LocalDateTime enqueuedAt;
+    private LocalDateTime startedAt;
+}
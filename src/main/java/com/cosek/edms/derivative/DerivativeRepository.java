@@ -0,0 +1,16 @@
+package com.cosek.edms.derivative;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface DerivativeRepository extends JpaRepository<Derivative, Long> {
+
+    Optional<Derivative> findBySourceHashAndKind(String sourceHash, Derivative.Kind kind);
+
+    List<Derivative> findBySourceHashInAndKind(Collection<String> sourceHashes, Derivative.Kind kind);
+}
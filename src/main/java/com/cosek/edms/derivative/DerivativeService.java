@@ -0,0 +1,361 @@
+package com.cosek.edms.derivative;
+
+import com.cosek.edms.derivative.Models.DerivativeMetrics;
+import com.cosek.edms.file.ContentStore;
+import com.cosek.edms.helper.TransactionHooks;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Durable queue of derivative work (thumbnails, extracted text) kept in derivative_jobs.
+ * Jobs are queued in the transaction that stores the content and claimed with READPAST,
+ * so several pollers or nodes never block on or double-claim a row. A fixed pool runs
+ * them off the request path; failures are retried with exponential backoff.
+ */
+@Service
+@RequiredArgsConstructor
+public class DerivativeService {
+    private static final Logger logger = LoggerFactory.getLogger(DerivativeService.class);
+
+    // Direct uploads are waited on by someone; resumable uploads are large and can wait
+    public static final int PRIORITY_INTERACTIVE = 10;
+    public static final int PRIORITY_BULK = 5;
+
+    private static final int SWEEP_BATCH_SIZE = 500;
+    private static final int MAX_ERROR_LENGTH = 1000;
+    private static final Duration MAX_BACKOFF = Duration.ofHours(1);
+
+    // Failed jobs hold the (source_hash, kind) slot, so new content for them gets its attempts back
+    private static final String REQUEUE_FAILED_SQL = "UPDATE derivative_jobs SET status = 'PENDING', attempts = 0, " +
+            "source_size = ?, content_type = ?, priority = ?, run_after = ?, enqueued_at = ?, locked_until = NULL " +
+            "WHERE source_hash = ? AND kind = ? AND status = 'FAILED'";
+    // Nothing is queued for content that already has the derivative or a job for it
+    private static final String ENQUEUE_SQL = "INSERT INTO derivative_jobs " +
+            "(source_hash, source_size, content_type, kind, priority, status, attempts, run_after, enqueued_at) " +
+            "SELECT ?, ?, ?, ?, ?, 'PENDING', 0, ?, ? " +
+            "WHERE NOT EXISTS (SELECT 1 FROM derivative_jobs WITH (UPDLOCK, HOLDLOCK) WHERE source_hash = ? AND kind = ?) " +
+            "AND NOT EXISTS (SELECT 1 FROM file_derivatives WHERE source_hash = ? AND kind = ?)";
+    private static final String PROMOTE_SQL = "UPDATE derivative_jobs SET priority = ? " +
+            "WHERE source_hash = ? AND kind = ? AND status = 'PENDING' AND priority < ?";
+    private static final String CLAIM_SQL = "WITH next AS (SELECT TOP (?) * FROM derivative_jobs WITH (ROWLOCK, UPDLOCK, READPAST) " +
+            "WHERE status = 'PENDING' AND run_after <= ? ORDER BY priority DESC, run_after, id) " +
+            "UPDATE next SET status = 'RUNNING', attempts = attempts + 1, started_at = ?, locked_until = ? " +
+            "OUTPUT inserted.id, inserted.source_hash, inserted.source_size, inserted.content_type, inserted.kind, " +
+            "inserted.attempts, inserted.enqueued_at";
+    private static final String RECLAIM_SQL = "UPDATE derivative_jobs SET status = 'PENDING', locked_until = NULL " +
+            "WHERE status = 'RUNNING' AND locked_until < ? AND attempts < ?";
+    // A job that keeps hanging or killing its worker is given up on like any other that exhausts its attempts
+    private static final String EXPIRE_SQL = "UPDATE derivative_jobs SET status = 'FAILED', locked_until = NULL, " +
+            "last_error = 'Lease expired on the last attempt' WHERE status = 'RUNNING' AND locked_until < ? AND attempts >= ?";
+    private static final String RETRY_SQL = "UPDATE derivative_jobs SET status = 'PENDING', run_after = ?, " +
+            "locked_until = NULL, last_error = ? WHERE id = ?";
+    private static final String FAIL_SQL = "UPDATE derivative_jobs SET status = 'FAILED', locked_until = NULL, " +
+            "last_error = ? WHERE id = ?";
+    private static final String DONE_SQL = "DELETE FROM derivative_jobs WHERE id = ?";
+    private static final String DEPTH_SQL = "SELECT status, COUNT(*), MIN(enqueued_at) FROM derivative_jobs GROUP BY status";
+    // Derivatives outlive nothing: once the source blob is collected they are released too
+    private static final String ORPHAN_DERIVATIVES_SQL = "DELETE TOP (" + SWEEP_BATCH_SIZE + ") FROM file_derivatives " +
+            "OUTPUT deleted.content_hash " +
+            "WHERE NOT EXISTS (SELECT 1 FROM content_blobs b WHERE b.hash = file_derivatives.source_hash)";
+    private static final String ORPHAN_JOBS_SQL = "DELETE FROM derivative_jobs WHERE status <> 'RUNNING' " +
+            "AND NOT EXISTS (SELECT 1 FROM content_blobs b WHERE b.hash = derivative_jobs.source_hash)";
+
+    private final DerivativeRepository derivativeRepository;
+    private final DerivativeGenerator derivativeGenerator;
+    private final ContentStore contentStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${edms.derivatives.workers:2}")
+    private int workerCount;
+
+    @Value("${edms.derivatives.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${edms.derivatives.retry-backoff:PT30S}")
+    private Duration retryBackoff;
+
+    @Value("${edms.derivatives.lease:PT10M}")
+    private Duration lease;
+
+    @Value("${edms.derivatives.max-image-bytes:33554432}")
+    private long maxImageBytes;
+
+    // Only the head of a text file is read; the extracted text is capped in characters as well
+    @Value("${edms.derivatives.max-text-bytes:4194304}")
+    private long maxTextBytes;
+
+    @Value("${edms.derivatives.max-text-chars:1000000}")
+    private int maxTextChars;
+
+    private ExecutorService workers;
+    private ExecutorService dispatcher;
+    private Semaphore slots;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder processingNanos = new LongAdder();
+    private final LongAccumulator maxProcessingNanos = new LongAccumulator(Long::max, 0);
+    private final LongAdder queueWaitMillis = new LongAdder();
+
+    private record ClaimedJob(long id, String sourceHash, long sourceSize, String contentType,
+                              Derivative.Kind kind, int attempts, LocalDateTime enqueuedAt) {
+    }
+
+    @PostConstruct
+    void start() {
+        workers = Executors.newFixedThreadPool(workerCount);
+        dispatcher = Executors.newSingleThreadExecutor();
+        slots = new Semaphore(workerCount);
+    }
+
+    @PreDestroy
+    void stop() {
+        // Jobs cut short here keep their lease and are picked up again once it runs out
+        dispatcher.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Queues whatever derivatives the content type supports. Joins the caller's transaction,
+     * so content that never commits queues nothing; workers are woken once it does.
+     */
+    public void enqueue(String sourceHash, long sourceSize, String contentType, int priority) {
+        Set<Derivative.Kind> kinds = DerivativeGenerator.kindsFor(contentType);
+        if (sourceHash == null || kinds.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (Derivative.Kind kind : kinds) {
+            if (jdbcTemplate.update(REQUEUE_FAILED_SQL, sourceSize, contentType, priority, now, now, sourceHash, kind.name()) > 0) {
+                continue;
+            }
+            int inserted = jdbcTemplate.update(ENQUEUE_SQL, sourceHash, sourceSize, contentType, kind.name(), priority,
+                    now, now, sourceHash, kind.name(), sourceHash, kind.name());
+            if (inserted == 0) {
+                jdbcTemplate.update(PROMOTE_SQL, priority, sourceHash, kind.name(), priority);
+            }
+        }
+        TransactionHooks.afterCommit(this::wake);
+    }
+
+    public Optional<Derivative> findDerivative(String sourceHash, Derivative.Kind kind) {
+        return sourceHash == null ? Optional.empty() : derivativeRepository.findBySourceHashAndKind(sourceHash, kind);
+    }
+
+    public void writeContent(Derivative derivative, OutputStream out) throws IOException {
+        contentStore.read(derivative.getContentHash(), out);
+    }
+
+    // Backstop for lost wake-ups, retries coming due and leases of crashed workers
+    @Scheduled(fixedDelayString = "${edms.derivatives.poll-interval:PT5S}")
+    public void poll() {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int expired = jdbcTemplate.update(EXPIRE_SQL, now, maxAttempts);
+        if (expired > 0) {
+            logger.warn("Gave up on {} derivative jobs whose final attempt never finished", expired);
+            failed.add(expired);
+        }
+        jdbcTemplate.update(RECLAIM_SQL, now, maxAttempts);
+        dispatch();
+    }
+
+    @Scheduled(fixedDelayString = "${edms.derivatives.sweep-interval:PT10M}", initialDelayString = "${edms.derivatives.sweep-interval:PT10M}")
+    public void sweepOrphans() {
+        int released = 0;
+        List<String> hashes;
+        do {
+            hashes = transactionTemplate.execute(status -> {
+                List<String> deleted = jdbcTemplate.queryForList(ORPHAN_DERIVATIVES_SQL, String.class);
+                contentStore.release(deleted);
+                return deleted;
+            });
+            released += hashes.size();
+        } while (hashes.size() == SWEEP_BATCH_SIZE);
+        int jobs = jdbcTemplate.update(ORPHAN_JOBS_SQL);
+        if (released > 0 || jobs > 0) {
+            logger.info("Released {} derivatives and dropped {} jobs of collected content", released, jobs);
+        }
+    }
+
+    public DerivativeMetrics getMetrics() {
+        Map<String, Long> depth = new TreeMap<>();
+        Arrays.stream(DerivativeJob.Status.values()).forEach(status -> depth.put(status.name(), 0L));
+        LocalDateTime[] oldestPending = {null};
+        jdbcTemplate.query(DEPTH_SQL, rs -> {
+            depth.put(rs.getString(1), rs.getLong(2));
+            if (DerivativeJob.Status.PENDING.name().equals(rs.getString(1)) && rs.getTimestamp(3) != null) {
+                oldestPending[0] = rs.getTimestamp(3).toLocalDateTime();
+            }
+        });
+        long runs = processed.sum();
+        long finished = completed.sum();
+        return new DerivativeMetrics(
+                depth,
+                oldestPending[0] == null ? 0 : Math.max(0, Duration.between(oldestPending[0], LocalDateTime.now()).toSeconds()),
+                workerCount - slots.availablePermits(),
+                workerCount,
+                finished,
+                retried.sum(),
+                failed.sum(),
+                runs == 0 ? 0 : processingNanos.sum() / 1_000_000.0 / runs,
+                maxProcessingNanos.get() / 1_000_000,
+                runs == 0 ? 0 : (double) queueWaitMillis.sum() / runs
+        );
+    }
+
+    private void wake() {
+        try {
+            dispatcher.execute(this::dispatch);
+        } catch (RuntimeException e) {
+            // Shutting down; the poller or the next node picks the job up
+            logger.debug("Derivative dispatcher rejected a wake-up", e);
+        }
+    }
+
+    // Claims no more than there are idle workers, so queued work stays visible to other nodes
+    private synchronized void dispatch() {
+        int idle = slots.availablePermits();
+        if (idle == 0) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<ClaimedJob> jobs = jdbcTemplate.query(CLAIM_SQL, (rs, row) -> new ClaimedJob(
+                        rs.getLong(1),
+                        rs.getString(2),
+                        rs.getLong(3),
+                        rs.getString(4),
+                        Derivative.Kind.valueOf(rs.getString(5)),
+                        rs.getInt(6),
+                        rs.getTimestamp(7).toLocalDateTime()),
+                idle, Timestamp.valueOf(now), Timestamp.valueOf(now), Timestamp.valueOf(now.plus(lease)));
+        for (ClaimedJob job : jobs) {
+            slots.acquireUninterruptibly();
+            workers.execute(() -> {
+                try {
+                    run(job);
+                } finally {
+                    slots.release();
+                    wake();
+                }
+            });
+        }
+    }
+
+    private void run(ClaimedJob job) {
+        long started = System.nanoTime();
+        queueWaitMillis.add(Math.max(0, Duration.between(job.enqueuedAt(), LocalDateTime.now()).toMillis()));
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            String contentType;
+            if (job.kind() == Derivative.Kind.THUMBNAIL) {
+                if (job.sourceSize() > maxImageBytes) {
+                    throw new IllegalArgumentException("Image is larger than " + maxImageBytes + " bytes");
+                }
+                derivativeGenerator.thumbnail(readSource(job, job.sourceSize()), out);
+                contentType = DerivativeGenerator.THUMBNAIL_TYPE;
+            } else {
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                derivativeGenerator.extractText(readSource(job, Math.min(job.sourceSize(), maxTextBytes)),
+                        job.contentType(), maxTextChars, writer);
+                writer.flush();
+                contentType = DerivativeGenerator.TEXT_TYPE;
+            }
+            complete(job, out.toByteArray(), contentType);
+            completed.increment();
+            eventPublisher.publishEvent(new DerivativeCreatedEvent(job.sourceHash(), job.kind()));
+        } catch (IllegalArgumentException e) {
+            // The same input fails the same way, so there is nothing to retry
+            jdbcTemplate.update(FAIL_SQL, truncate(e.getMessage()), job.id());
+            failed.increment();
+        } catch (Exception e) {
+            if (job.attempts() >= maxAttempts) {
+                logger.warn("Derivative job {} failed after {} attempts", job.id(), job.attempts(), e);
+                jdbcTemplate.update(FAIL_SQL, truncate(e.toString()), job.id());
+                failed.increment();
+            } else {
+                jdbcTemplate.update(RETRY_SQL, Timestamp.valueOf(LocalDateTime.now().plus(backoff(job.attempts()))),
+                        truncate(e.toString()), job.id());
+                retried.increment();
+            }
+        } finally {
+            long elapsed = System.nanoTime() - started;
+            processed.increment();
+            processingNanos.add(elapsed);
+            maxProcessingNanos.accumulate(elapsed);
+        }
+    }
+
+    private byte[] readSource(ClaimedJob job, long length) throws IOException {
+        if (length <= 0) {
+            return new byte[0];
+        }
+        ByteArrayOutputStream source = new ByteArrayOutputStream((int) length);
+        contentStore.readRange(job.sourceHash(), 0, length, source);
+        return source.toByteArray();
+    }
+
+    // Stores the rendition and retires the job in one transaction; a re-run replaces the earlier rendition
+    private void complete(ClaimedJob job, byte[] rendition, String contentType) throws IOException {
+        contentStore.store(new ByteArrayInputStream(rendition), contentType, blob -> {
+            Derivative derivative = derivativeRepository.findBySourceHashAndKind(job.sourceHash(), job.kind())
+                    .orElseGet(() -> Derivative.builder().sourceHash(job.sourceHash()).kind(job.kind()).build());
+            if (derivative.getContentHash() != null) {
+                contentStore.release(List.of(derivative.getContentHash()));
+            }
+            derivative.setContentHash(blob.contentHash());
+            derivative.setContentType(contentType);
+            derivative.setSize(blob.plainSize());
+            derivative.setCreatedDate(LocalDateTime.now());
+            derivativeRepository.save(derivative);
+            jdbcTemplate.update(DONE_SQL, job.id());
+            return derivative;
+        });
+    }
+
+    // Doubles per attempt up to an hour, with jitter so a burst of failures does not retry in step
+    private Duration backoff(int attempts) {
+        Duration delay = retryBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        if (delay.compareTo(MAX_BACKOFF) > 0) {
+            delay = MAX_BACKOFF;
+        }
+        return delay.plusMillis(ThreadLocalRandom.current().nextLong(delay.toMillis() / 5 + 1));
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() <= MAX_ERROR_LENGTH ? message : message.substring(0, MAX_ERROR_LENGTH);
+    }
+}
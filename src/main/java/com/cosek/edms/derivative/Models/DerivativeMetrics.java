@@ -0,0 +1,18 @@
+package com.cosek.edms.derivative.Models;
+
+import java.util.Map;
+
+// Queue depth comes from the table; the rest is counted by this node since startup
+public record DerivativeMetrics(
+        Map<String, Long> queueDepth,
+        long oldestPendingSeconds,
+        int activeWorkers,
+        int workers,
+        long completed,
+        long retried,
+        long failed,
+        double averageProcessingMillis,
+        long maxProcessingMillis,
+        double averageQueueWaitMillis
+) {
+}
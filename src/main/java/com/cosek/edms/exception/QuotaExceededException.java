@@ -0,0 +1,7 @@
+package com.cosek.edms.exception;
+
+public class QuotaExceededException extends RuntimeException {
+    public QuotaExceededException(String message) {
+        super(message);
+    }
+}
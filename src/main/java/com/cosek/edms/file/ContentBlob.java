@@ -0,0 +1,58 @@
+package com.cosek.edms.file;
+
+import com.cosek.edms.crypto.WrappedKey;
+import com.cosek.edms.helper.ContentCodec;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// One stored copy of a distinct plaintext, shared by every file record with the same content
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "content_blobs", indexes = {
+        @Index(name = "idx_content_blobs_released", columnList = "ref_count, released_at"),
+        @Index(name = "idx_content_blobs_key_version", columnList = "key_version")
+})
+public class ContentBlob {
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    @Column(nullable = false, unique = true, length = 64)
+    private String storageKey;
+
+    private long plainSize;
+    private long storedSize;
+
+    // How the plaintext was encoded before encryption; null on blobs older than compression
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private ContentCodec codec;
+
+    // The blob's data key, wrapped under master key key_version; both null on blobs sealed with the legacy key
+    @Column(name = "wrapped_key", length = 64)
+    private byte[] wrappedKey;
+
+    @Column(name = "key_version")
+    private Integer keyVersion;
+
+    @Column(name = "ref_count", nullable = false)
+    private int refCount;
+
+    // Set when the last reference goes away; the collector waits out a grace period from here
+    @Column(name = "released_at")
+    private LocalDateTime releasedAt;
+
+    private LocalDateTime createdDate;
+
+    public WrappedKey dataKey() {
+        return wrappedKey != null && keyVersion != null ? new WrappedKey(wrappedKey, keyVersion) : null;
+    }
+}
@@ -0,0 +1,14 @@
+package com.cosek.edms.file;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ContentBlobRepository extends JpaRepository<ContentBlob, String> {
+
+    // Keyset page in hash order, for walking every blob without offsets
+    List<ContentBlob> findByHashGreaterThanOrderByHash(String hash, Pageable pageable);
+}
@@ -0,0 +1,170 @@
+package com.cosek.edms.file;
+
+import com.cosek.edms.file.Models.StoredBlob;
+import com.cosek.edms.helper.ContentCodec;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Content-addressed layer over {@link FileStorage}: each distinct plaintext (by SHA-256)
+ * is stored once and reference counted. Releasing the last reference only marks the
+ * blob; the collector removes it once the grace period has passed.
+ */
+@Service
+@RequiredArgsConstructor
+public class ContentStore {
+    private static final Logger logger = LoggerFactory.getLogger(ContentStore.class);
+    private static final int GC_BATCH_SIZE = 500;
+
+    // The lock hints keep two uploads of the same content from both inserting
+    private static final String INSERT_SQL = "INSERT INTO content_blobs (hash, storage_key, plain_size, stored_size, codec, wrapped_key, key_version, " +
+            "ref_count, created_date) SELECT ?, ?, ?, ?, ?, ?, ?, 1, ? WHERE NOT EXISTS (SELECT 1 FROM content_blobs WITH (UPDLOCK, HOLDLOCK) WHERE hash = ?)";
+    private static final String ACQUIRE_SQL = "UPDATE content_blobs SET ref_count = ref_count + 1, released_at = NULL WHERE hash = ?";
+    private static final String RETAIN_SQL = "UPDATE content_blobs SET ref_count = ref_count + ?, released_at = NULL WHERE hash = ?";
+    private static final String RELEASE_SQL = "UPDATE content_blobs SET ref_count = ref_count - ?, " +
+            "released_at = CASE WHEN ref_count - ? <= 0 THEN ? ELSE released_at END WHERE hash = ?";
+    private static final String COLLECT_SQL = "DELETE TOP (" + GC_BATCH_SIZE + ") FROM content_blobs " +
+            "OUTPUT deleted.storage_key WHERE ref_count <= 0 AND released_at < ?";
+
+    private final FileStorage fileStorage;
+    private final ContentBlobRepository contentBlobRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${edms.files.blob-gc-grace:PT1H}")
+    private Duration gcGrace;
+
+    /**
+     * Streams the content to disk, then runs {@code persist} in one transaction with taking a
+     * reference on the blob. When identical content is already stored, the fresh copy is dropped.
+     */
+    public <T> T store(InputStream content, String contentType, Function<StoredBlob, T> persist) throws IOException {
+        return commit(fileStorage.write(content, contentType), persist);
+    }
+
+    // Same as store, for a blob that is already encrypted on disk; the blob is consumed either way
+    public <T> T commit(StoredBlob blob, Function<StoredBlob, T> persist) {
+        boolean[] inserted = {false};
+        boolean committed = false;
+        try {
+            T result = transactionTemplate.execute(status -> {
+                inserted[0] = acquire(blob);
+                return persist.apply(blob);
+            });
+            committed = true;
+            return result;
+        } finally {
+            if (!committed || !inserted[0]) {
+                discard(blob.storageKey());
+            }
+        }
+    }
+
+    // Further references on content that is already stored; must run inside the transaction that starts using it
+    public void retain(Collection<String> hashes) {
+        List<Map.Entry<String, Long>> rows = counted(hashes);
+        if (rows.isEmpty()) {
+            return;
+        }
+        int[][] updated = jdbcTemplate.batchUpdate(RETAIN_SQL, rows, rows.size(), (ps, row) -> {
+            ps.setLong(1, row.getValue());
+            ps.setString(2, row.getKey());
+        });
+        for (int i = 0; i < rows.size(); i++) {
+            if (updated[0][i] == 0) {
+                throw new IllegalStateException("Content " + rows.get(i).getKey() + " is not stored");
+            }
+        }
+    }
+
+    // Must run inside the transaction that stops using the content
+    public void release(Collection<String> hashes) {
+        List<Map.Entry<String, Long>> rows = counted(hashes);
+        if (rows.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(RELEASE_SQL, rows, rows.size(), (ps, row) -> {
+            ps.setLong(1, row.getValue());
+            ps.setLong(2, row.getValue());
+            ps.setTimestamp(3, now);
+            ps.setString(4, row.getKey());
+        });
+    }
+
+    public void read(String hash, OutputStream out) throws IOException {
+        ContentBlob blob = blob(hash);
+        fileStorage.read(blob.getStorageKey(), codec(blob), blob.dataKey(), out);
+    }
+
+    public void readRange(String hash, long offset, long length, OutputStream out) throws IOException {
+        ContentBlob blob = blob(hash);
+        fileStorage.readRange(blob.getStorageKey(), codec(blob), blob.dataKey(), offset, length, out);
+    }
+
+    // Each DELETE commits on its own before the files go, so a blob is never referenced without its data
+    @Scheduled(fixedDelayString = "${edms.files.blob-gc-interval:PT10M}", initialDelayString = "${edms.files.blob-gc-interval:PT10M}")
+    public void collectGarbage() {
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minus(gcGrace));
+        int removed = 0;
+        List<String> storageKeys;
+        do {
+            storageKeys = jdbcTemplate.queryForList(COLLECT_SQL, String.class, cutoff);
+            storageKeys.forEach(this::discard);
+            removed += storageKeys.size();
+        } while (storageKeys.size() == GC_BATCH_SIZE);
+        if (removed > 0) {
+            logger.info("Removed {} unreferenced blobs", removed);
+        }
+    }
+
+    // Sorted, so concurrent updates lock rows in the same order
+    private static List<Map.Entry<String, Long>> counted(Collection<String> hashes) {
+        Map<String, Long> counts = hashes.stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.groupingBy(hash -> hash, TreeMap::new, Collectors.counting()));
+        return new ArrayList<>(counts.entrySet());
+    }
+
+    private boolean acquire(StoredBlob blob) {
+        int inserted = jdbcTemplate.update(INSERT_SQL, blob.contentHash(), blob.storageKey(), blob.plainSize(),
+                blob.storedSize(), blob.codec().name(), blob.dataKey().key(), blob.dataKey().version(), Timestamp.valueOf(LocalDateTime.now()), blob.contentHash());
+        if (inserted == 0) {
+            jdbcTemplate.update(ACQUIRE_SQL, blob.contentHash());
+        }
+        return inserted > 0;
+    }
+
+    private ContentBlob blob(String hash) throws IOException {
+        return contentBlobRepository.findById(hash)
+                .orElseThrow(() -> new IOException("Content " + hash + " is not stored"));
+    }
+
+    private static ContentCodec codec(ContentBlob blob) {
+        return blob.getCodec() != null ? blob.getCodec() : ContentCodec.NONE;
+    }
+
+    private void discard(String storageKey) {
+        try {
+            fileStorage.delete(storageKey);
+        } catch (IOException e) {
+            logger.warn("Could not remove stored blob {}", storageKey, e);
+        }
+    }
+}
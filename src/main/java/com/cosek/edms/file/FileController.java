@@ -0,0 +1,242 @@
+package com.cosek.edms.file;
+
+import com.cosek.edms.derivative.Derivative;
+import com.cosek.edms.exception.NotFoundException;
+import com.cosek.edms.file.Models.FileUpdateRequest;
+import com.cosek.edms.version.FileVersion;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.*;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/v1/files")
+@RequiredArgsConstructor
+public class FileController {
+    private final FileService fileService;
+
+    @GetMapping("/all")
+    public ResponseEntity<List<FileRecord>> findAll() {
+        return ResponseEntity.ok(fileService.findAllFiles());
+    }
+
+    @GetMapping("/all/{folderId}")
+    public ResponseEntity<List<FileRecord>> findFilesInFolder(
+            @PathVariable Long folderId,
+            @RequestParam(defaultValue = "false") boolean recursive
+    ) {
+        try {
+            return ResponseEntity.ok(fileService.findFilesInFolder(folderId, recursive));
+        } catch (NotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    // Repeat filter for AND: ?filter=docType:contract&filter=amount>=1000
+    @GetMapping("/filter")
+    public ResponseEntity<List<FileRecord>> findByMetadata(
+            @RequestParam(required = false) List<String> filter,
+            @RequestParam(required = false) Integer limit
+    ) {
+        try {
+            return ResponseEntity.ok(fileService.findByMetadata(filter, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<FileRecord> findFile(@PathVariable Long id) {
+        try {
+            return ResponseEntity.ok(fileService.findFile(id));
+        } catch (NotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    // Decrypts on the fly into the response; a single byte range only touches the chunks it covers
+    @GetMapping("/{id}/content")
+    public ResponseEntity<StreamingResponseBody> download(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange
+    ) {
+        FileRecord record;
+        try {
+            record = fileService.findFile(id);
+        } catch (NotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+        long size = record.getSize();
+        String etag = "\"" + record.getContentHash() + "\"";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(mediaType(record.getContentType()));
+        headers.setETag(etag);
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.setContentDisposition(ContentDisposition.attachment()
+                .filename(record.getName() != null ? record.getName() : "file-" + record.getId(), StandardCharsets.UTF_8)
+                .build());
+
+        // A stale If-Range validator, or a range we do not serve, falls back to the whole file
+        HttpRange requested = singleRange(range);
+        if (requested == null || (ifRange != null && !ifRange.equals(etag))) {
+            return ResponseEntity.ok().headers(headers).contentLength(size)
+                    .body(out -> fileService.writeContent(record, out));
+        }
+        long start;
+        long end;
+        try {
+            start = requested.getRangeStart(size);
+            end = requested.getRangeEnd(size);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                    .build();
+        }
+        long length = end - start + 1;
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size)
+                .contentLength(length)
+                .body(out -> fileService.writeContent(record, start, length, out));
+    }
+
+    @GetMapping("/{id}/versions")
+    public ResponseEntity<List<FileVersion>> findVersions(@PathVariable Long id) {
+        try {
+            return ResponseEntity.ok(fileService.findVersions(id));
+        } catch (NotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    // The whole version only; older versions are rebuilt as they stream, so ranges are not offered
+    @GetMapping("/{id}/versions/{version}/content")
+    public ResponseEntity<StreamingResponseBody> downloadVersion(@PathVariable Long id, @PathVariable int version) {
+        FileVersion found;
+        try {
+            found = fileService.findVersion(id, version);
+        } catch (NotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+        String name = found.getName() != null ? found.getName() : "file-" + id;
+        return ResponseEntity.ok()
+                .contentType(mediaType(found.getContentType()))
+                .eTag("\"" + found.getContentHash() + "\"")
+                .contentLength(found.getSize())
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(name, StandardCharsets.UTF_8).build().toString())
+                .body(out -> fileService.writeVersion(found, out));
+    }
+
+    // Derivatives are produced in the background, so they are 404 until their job has run
+    @GetMapping("/{id}/thumbnail")
+    public ResponseEntity<StreamingResponseBody> thumbnail(@PathVariable Long id) {
+        return derivative(id, Derivative.Kind.THUMBNAIL);
+    }
+
+    @GetMapping("/{id}/text")
+    public ResponseEntity<StreamingResponseBody> text(@PathVariable Long id) {
+        return derivative(id, Derivative.Kind.TEXT);
+    }
+
+    @PostMapping(value = "/add", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<FileRecord> addFile(
+            @RequestPart("file") MultipartFile file,
+            @RequestPart(value = "metadata", required = false) Map<String, Object> metadata,
+            @RequestParam(required = false) Long folderId
+    ) throws IOException {
+        try {
+            return new ResponseEntity<>(fileService.addFile(file, metadata, folderId), HttpStatus.CREATED);
+        } catch (NotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @PutMapping(value = "/update/{id}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<FileRecord> updateFile(
+            @PathVariable Long id,
+            @RequestPart("file") MultipartFile file,
+            @RequestPart(value = "metadata", required = false) Map<String, Object> metadata
+    ) throws IOException {
+        try {
+            return ResponseEntity.ok(fileService.replaceContent(id, file, metadata));
+        } catch (NotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    @PutMapping("/update-multiple")
+    public ResponseEntity<List<FileRecord>> updateFiles(@RequestBody List<FileUpdateRequest> updates) {
+        try {
+            return ResponseEntity.ok(fileService.updateFiles(updates));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @DeleteMapping("/delete/{id}")
+    public ResponseEntity<Map<String, Object>> deleteFile(@PathVariable Long id) {
+        return ResponseEntity.ok(fileService.deleteFiles(List.of(id)));
+    }
+
+    @DeleteMapping("/delete-multiple")
+    public ResponseEntity<Map<String, Object>> deleteFiles(@RequestBody List<Long> ids) {
+        return ResponseEntity.ok(fileService.deleteFiles(ids));
+    }
+
+    @GetMapping("/trash")
+    public ResponseEntity<List<FileRecord>> findDeleted() {
+        return ResponseEntity.ok(fileService.findDeletedFiles());
+    }
+
+    @PostMapping("/restore")
+    public ResponseEntity<Map<String, Object>> restoreFiles(@RequestBody List<Long> ids) {
+        return ResponseEntity.ok(fileService.restoreFiles(ids));
+    }
+
+    private ResponseEntity<StreamingResponseBody> derivative(Long id, Derivative.Kind kind) {
+        Derivative derivative;
+        try {
+            derivative = fileService.findDerivative(fileService.findFile(id), kind).orElse(null);
+        } catch (NotFoundException e) {
+            derivative = null;
+        }
+        if (derivative == null) {
+            return ResponseEntity.notFound().build();
+        }
+        Derivative found = derivative;
+        return ResponseEntity.ok()
+                .contentType(mediaType(found.getContentType()))
+                .eTag("\"" + found.getContentHash() + "\"")
+                .contentLength(found.getSize())
+                .body(out -> fileService.writeDerivative(found, out));
+    }
+
+    private static HttpRange singleRange(String header) {
+        if (header == null) {
+            return null;
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(header);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static MediaType mediaType(String contentType) {
+        try {
+            return contentType != null ? MediaType.parseMediaType(contentType) : MediaType.APPLICATION_OCTET_STREAM;
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+}
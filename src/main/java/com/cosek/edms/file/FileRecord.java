@@ -0,0 +1,76 @@
+package com.cosek.edms.file;
+
+import com.cosek.edms.helper.JsonMapConverter;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.SQLRestriction;
+import org.springframework.data.annotation.CreatedBy;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.LastModifiedBy;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "files", indexes = {
+        @Index(name = "idx_files_folder", columnList = "folder_id"),
+        @Index(name = "idx_files_deleted", columnList = "deleted_at")
+})
+@EntityListeners(AuditingEntityListener.class)
+// Deleted files stay as tombstones until the purger removes them; entity queries never see them
+@SQLRestriction("deleted_at IS NULL")
+public class FileRecord {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String name;
+    private String contentType;
+
+    @Column(name = "folder_id")
+    private Long folderId;
+
+    // Plaintext size, as served to clients
+    private long size;
+
+    // SHA-256 of the plaintext; the content itself lives in the shared content_blobs store
+    @Column(nullable = false, length = 64)
+    private String contentHash;
+
+    @Builder.Default
+    @Convert(converter = JsonMapConverter.class)
+    @Column(columnDefinition = "nvarchar(max)")
+    private Map<String, Object> metadata = new HashMap<>();
+
+    @Column(name = "deleted_at")
+    private LocalDateTime deletedAt;
+
+    @Column(name = "deleted_by")
+    private Long deletedBy;
+
+    @CreatedDate
+    @Column(name = "createdDate", nullable = true, updatable = false)
+    private LocalDateTime createdDate;
+
+    @LastModifiedDate
+    @Column(name = "lastModifiedDate", nullable = true)
+    private LocalDateTime lastModifiedDateTime;
+
+    @LastModifiedBy
+    @Column(name = "lastModifiedBy", nullable = true)
+    private Long lastModifiedBy;
+
+    @CreatedBy
+    @Column(name = "createdBy", nullable = true, updatable = false)
+    private Long createdBy;
+}
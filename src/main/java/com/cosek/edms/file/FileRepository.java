@@ -0,0 +1,66 @@
+package com.cosek.edms.file;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface FileRepository extends JpaRepository<FileRecord, Long> {
+
+    List<FileRecord> findByFolderId(Long folderId);
+
+    // Holds the row until the transaction ends, so concurrent replaces take turns on the content hash
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT f FROM FileRecord f WHERE f.id = :id")
+    Optional<FileRecord> findByIdForUpdate(@Param("id") Long id);
+
+    @Query("SELECT f FROM FileRecord f, FolderPath p WHERE p.id.descendantId = f.folderId AND p.id.ancestorId = :folderId")
+    List<FileRecord> findInSubtree(@Param("folderId") Long folderId);
+
+    @Query("SELECT COUNT(f), COALESCE(SUM(f.size), 0) FROM FileRecord f, FolderPath p " +
+            "WHERE p.id.descendantId = f.folderId AND p.id.ancestorId = :folderId")
+    List<Object[]> sumSubtree(@Param("folderId") Long folderId);
+
+    // Overlapping subtrees still yield one hash per file; tombstones count, as the folder takes them along
+    @Query(value = "SELECT content_hash FROM files WHERE folder_id IN " +
+            "(SELECT descendant_id FROM folder_paths WHERE ancestor_id IN (:folderIds))", nativeQuery = true)
+    List<String> findContentHashesInSubtrees(@Param("folderIds") Collection<Long> folderIds);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM files WHERE folder_id IN " +
+            "(SELECT descendant_id FROM folder_paths WHERE ancestor_id IN (:folderIds))", nativeQuery = true)
+    int deleteInSubtrees(@Param("folderIds") Collection<Long> folderIds);
+
+    @Query(value = "SELECT id FROM files WHERE folder_id IN " +
+            "(SELECT descendant_id FROM folder_paths WHERE ancestor_id IN (:folderIds))", nativeQuery = true)
+    List<Long> findIdsInSubtrees(@Param("folderIds") Collection<Long> folderIds);
+
+    @Query("SELECT f.id FROM FileRecord f WHERE f.contentHash = :contentHash")
+    List<Long> findIdsByContentHash(@Param("contentHash") String contentHash);
+
+    @Query("SELECT f.id FROM FileRecord f ORDER BY f.id")
+    List<Long> findAllIds();
+
+    // Native, so the tombstone restriction on the entity does not hide them
+    @Query(value = "SELECT * FROM files WHERE deleted_at IS NOT NULL ORDER BY deleted_at DESC", nativeQuery = true)
+    List<FileRecord> findDeleted();
+
+    @Query(value = "SELECT DISTINCT folder_id FROM files " +
+            "WHERE id IN (:ids) AND deleted_at IS NOT NULL AND folder_id IS NOT NULL", nativeQuery = true)
+    List<Long> findDeletedFolderIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT DISTINCT f.folderId FROM FileRecord f WHERE f.id IN :ids AND f.folderId IS NOT NULL")
+    List<Long> findFolderIds(@Param("ids") Collection<Long> ids);
+
+    // One hash per record, duplicates included, so each can be released as a reference
+    @Query("SELECT f.contentHash FROM FileRecord f WHERE f.id IN :ids")
+    List<String> findContentHashes(@Param("ids") Collection<Long> ids);
+}
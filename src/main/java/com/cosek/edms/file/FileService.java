@@ -0,0 +1,381 @@
+package com.cosek.edms.file;
+
+import com.cosek.edms.derivative.Derivative;
+import com.cosek.edms.derivative.DerivativeService;
+import com.cosek.edms.exception.NotFoundException;
+import com.cosek.edms.file.Models.FileUpdateRequest;
+import com.cosek.edms.file.Models.MetadataFilter;
+import com.cosek.edms.file.Models.StoredBlob;
+import com.cosek.edms.folder.FolderAccessIndex;
+import com.cosek.edms.folder.FolderAccessIndex.Acl;
+import com.cosek.edms.folder.FolderRepository;
+import com.cosek.edms.quota.QuotaService;
+import com.cosek.edms.search.SearchService;
+import com.cosek.edms.version.FileVersion;
+import com.cosek.edms.version.VersionService;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.cosek.edms.helper.Constants.SUCCESSFUL_DELETION;
+
+@Service
+@RequiredArgsConstructor
+public class FileService {
+    private static final Logger logger = LoggerFactory.getLogger(FileService.class);
+    private static final int IN_CLAUSE_LIMIT = 1000;
+    public static final int DEFAULT_FILTER_LIMIT = 100;
+    public static final int MAX_FILTER_LIMIT = 1000;
+
+    // TOP takes a parameter, so the batch size stays configurable
+    private static final String PURGE_SQL = "DELETE TOP (?) FROM files OUTPUT deleted.id, deleted.content_hash " +
+            "WHERE deleted_at IS NOT NULL AND deleted_at < ?";
+
+    private final FileRepository fileRepository;
+    private final FolderRepository folderRepository;
+    private final FolderAccessIndex folderAccessIndex;
+    private final DerivativeService derivativeService;
+    private final SearchService searchService;
+    private final MetadataIndex metadataIndex;
+    private final QuotaService quotaService;
+    private final VersionService versionService;
+    private final ContentStore contentStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AuditorAware<Long> auditorAware;
+
+    // How long a deleted file can still be restored
+    @Value("${edms.files.trash-retention:P7D}")
+    private Duration trashRetention;
+
+    @Value("${edms.files.purge-batch-size:500}")
+    private int purgeBatchSize;
+
+    // Pause between purge batches, so a large purge does not starve request traffic
+    @Value("${edms.files.purge-pause:PT1S}")
+    private Duration purgePause;
+
+    public List<FileRecord> findAllFiles() {
+        return folderAccessIndex.current().filterReadable(fileRepository.findAll(), FileRecord::getFolderId);
+    }
+
+    // Files in folders the caller cannot read are reported as missing rather than forbidden
+    public FileRecord findFile(Long id) throws NotFoundException {
+        FileRecord record = fileRepository.findById(id)
+                .orElseThrow(() -> new NotFoundException("File not found"));
+        if (record.getDeletedAt() != null || !folderAccessIndex.current().canRead(record.getFolderId())) {
+            throw new NotFoundException("File not found");
+        }
+        return record;
+    }
+
+    // Direct children only, unless recursive, which reads the whole subtree through folder_paths
+    public List<FileRecord> findFilesInFolder(Long folderId, boolean recursive) throws NotFoundException {
+        Acl acl = folderAccessIndex.current();
+        if (!acl.canRead(folderId) || !folderRepository.existsById(folderId)) {
+            throw new NotFoundException("Folder not found");
+        }
+        return recursive
+                ? acl.filterReadable(fileRepository.findInSubtree(folderId), FileRecord::getFolderId)
+                : fileRepository.findByFolderId(folderId);
+    }
+
+    public FileRecord addFile(MultipartFile file, Map<String, Object> metadata, Long folderId) throws IOException, NotFoundException {
+        if (folderId != null && !folderRepository.existsById(folderId)) {
+            throw new NotFoundException("Folder not found");
+        }
+        requireWrite(folderAccessIndex.current(), Collections.singleton(folderId));
+        // Refused before any bytes are stored when the department is at its quota
+        try (QuotaService.Reservation reservation = quotaService.reserveForFolder(folderId, file.getSize())) {
+            return store(file, blob -> {
+                FileRecord saved = fileRepository.save(FileRecord.builder()
+                        .name(file.getOriginalFilename())
+                        .contentType(file.getContentType())
+                        .folderId(folderId)
+                        .size(blob.plainSize())
+                        .contentHash(blob.contentHash())
+                        .metadata(metadata != null ? new HashMap<>(metadata) : new HashMap<>())
+                        .build());
+                metadataIndex.index(saved);
+                versionService.recordInitial(saved);
+                reservation.commitOnSuccess();
+                derivativeService.enqueue(saved.getContentHash(), saved.getSize(), saved.getContentType(),
+                        DerivativeService.PRIORITY_INTERACTIVE);
+                searchService.indexFiles(List.of(saved.getId()));
+                return saved;
+            });
+        }
+    }
+
+    // The previous content is released in the same transaction that points the record at the new one
+    public FileRecord replaceContent(Long id, MultipartFile file, Map<String, Object> metadata) throws NotFoundException, IOException {
+        FileRecord record = findFile(id);
+        requireWrite(folderAccessIndex.current(), Collections.singleton(record.getFolderId()));
+        // The old content stays on as a revision, so the new content is charged in full;
+        // the next reconcile counts the revision at its stored size once it is compacted
+        try (QuotaService.Reservation reservation = quotaService.reserveForFolder(record.getFolderId(), file.getSize())) {
+            return store(file, blob -> {
+                // The hash to release is read under the row lock; a concurrent replace would otherwise release it twice
+                FileRecord current = fileRepository.findByIdForUpdate(id)
+                        .orElseThrow(() -> new IllegalStateException("File " + id + " was deleted during the upload"));
+                String previousHash = current.getContentHash();
+                // Files stored before versioning get their first version from the content being replaced
+                versionService.recordInitial(current);
+                current.setName(file.getOriginalFilename() != null ? file.getOriginalFilename() : current.getName());
+                current.setContentType(file.getContentType());
+                current.setSize(blob.plainSize());
+                current.setContentHash(blob.contentHash());
+                if (metadata != null) {
+                    current.setMetadata(new HashMap<>(metadata));
+                }
+                FileRecord saved = fileRepository.save(current);
+                if (metadata != null) {
+                    metadataIndex.index(saved);
+                }
+                versionService.recordReplacement(saved);
+                reservation.commitOnSuccess();
+                contentStore.release(List.of(previousHash));
+                derivativeService.enqueue(saved.getContentHash(), saved.getSize(), saved.getContentType(),
+                        DerivativeService.PRIORITY_INTERACTIVE);
+                searchService.indexFiles(List.of(saved.getId()));
+                return saved;
+            });
+        }
+    }
+
+    @Transactional
+    public List<FileRecord> updateFiles(List<FileUpdateRequest> updates) {
+        Map<Long, FileUpdateRequest> byId = updates.stream()
+                .filter(update -> update.getId() != null)
+                .collect(Collectors.toMap(FileUpdateRequest::getId, Function.identity(), (first, second) -> second, LinkedHashMap::new));
+        Set<Long> folderIds = byId.values().stream()
+                .map(FileUpdateRequest::getFolderId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        if (folderRepository.findAllById(folderIds).size() != folderIds.size()) {
+            throw new IllegalArgumentException("Unknown folder in update");
+        }
+        List<FileRecord> records = fileRepository.findAllById(byId.keySet());
+        // Moving needs write access on both sides
+        Set<Long> touched = new HashSet<>(folderIds);
+        records.forEach(record -> touched.add(record.getFolderId()));
+        requireWrite(folderAccessIndex.current(), touched);
+        records.forEach(record -> {
+            FileUpdateRequest update = byId.get(record.getId());
+            if (update.getName() != null) {
+                record.setName(update.getName());
+            }
+            if (update.getFolderId() != null) {
+                record.setFolderId(update.getFolderId());
+            }
+            if (update.getMetadata() != null) {
+                record.setMetadata(new HashMap<>(update.getMetadata()));
+            }
+        });
+        List<FileRecord> saved = fileRepository.saveAll(records);
+        metadataIndex.index(saved.stream().filter(record -> byId.get(record.getId()).getMetadata() != null).toList());
+        // Names are indexed; a move or metadata change costs no more than a re-read
+        searchService.indexFiles(saved.stream().map(FileRecord::getId).toList());
+        return saved;
+    }
+
+    /**
+     * Files whose metadata matches every filter, found through the file_metadata indexes.
+     * Matches are read a keyset page at a time until enough readable ones are found, so
+     * unreadable or unloadable ones do not shorten the result.
+     */
+    public List<FileRecord> findByMetadata(List<String> filters, Integer limit) {
+        List<MetadataFilter> parsed = filters == null ? List.of() : filters.stream().map(MetadataFilter::parse).toList();
+        int capped = limit == null ? DEFAULT_FILTER_LIMIT : Math.max(1, Math.min(limit, MAX_FILTER_LIMIT));
+        Acl acl = folderAccessIndex.current();
+        List<FileRecord> results = new ArrayList<>();
+        long after = 0;
+        List<Long> ids;
+        do {
+            ids = metadataIndex.findFileIds(parsed, after, capped);
+            if (ids.isEmpty()) {
+                break;
+            }
+            after = ids.get(ids.size() - 1);
+            List<FileRecord> page = fileRepository.findAllById(ids);
+            page.sort(Comparator.comparing(FileRecord::getId));
+            for (FileRecord record : acl.filterReadable(page, FileRecord::getFolderId)) {
+                results.add(record);
+                if (results.size() == capped) {
+                    return results;
+                }
+            }
+        } while (ids.size() == capped);
+        return results;
+    }
+
+    public void writeContent(FileRecord record, OutputStream out) throws IOException {
+        contentStore.read(record.getContentHash(), out);
+    }
+
+    public void writeContent(FileRecord record, long offset, long length, OutputStream out) throws IOException {
+        contentStore.readRange(record.getContentHash(), offset, length, out);
+    }
+
+    // Newest first; requires the file itself to be readable
+    public List<FileVersion> findVersions(Long id) throws NotFoundException {
+        return versionService.findVersions(findFile(id).getId());
+    }
+
+    public FileVersion findVersion(Long id, int versionNumber) throws NotFoundException {
+        return versionService.findVersion(findFile(id).getId(), versionNumber);
+    }
+
+    // Older versions are rebuilt from their nearest snapshot as they stream
+    public void writeVersion(FileVersion version, OutputStream out) throws IOException {
+        versionService.writeContent(version, out);
+    }
+
+    public Optional<Derivative> findDerivative(FileRecord record, Derivative.Kind kind) {
+        return derivativeService.findDerivative(record.getContentHash(), kind);
+    }
+
+    public void writeDerivative(Derivative derivative, OutputStream out) throws IOException {
+        derivativeService.writeContent(derivative, out);
+    }
+
+    /**
+     * Tombstones the files with one UPDATE per chunk and returns; the rows and their
+     * content references stay until purgeDeleted runs after the retention period.
+     */
+    @Transactional
+    public Map<String, Object> deleteFiles(List<Long> ids) {
+        List<Long> fileIds = distinctIds(ids);
+        Acl acl = folderAccessIndex.current();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        SqlParameterValue deletedBy = new SqlParameterValue(Types.BIGINT, auditorAware.getCurrentAuditor().orElse(null));
+        int deleted = 0;
+        for (int from = 0; from < fileIds.size(); from += IN_CLAUSE_LIMIT) {
+            List<Long> chunk = fileIds.subList(from, Math.min(from + IN_CLAUSE_LIMIT, fileIds.size()));
+            requireWrite(acl, fileRepository.findFolderIds(chunk));
+            List<Object> args = new ArrayList<>(chunk.size() + 2);
+            args.add(now);
+            args.add(deletedBy);
+            args.addAll(chunk);
+            deleted += jdbcTemplate.update("UPDATE files SET deleted_at = ?, deleted_by = ? WHERE id IN (" +
+                    placeholders(chunk.size()) + ") AND deleted_at IS NULL", args.toArray());
+        }
+        searchService.removeFiles(fileIds);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("messages", SUCCESSFUL_DELETION);
+        response.put("ids", fileIds);
+        response.put("deleted", deleted);
+        response.put("restorableUntil", now.toLocalDateTime().plus(trashRetention));
+        return response;
+    }
+
+    public List<FileRecord> findDeletedFiles() {
+        return folderAccessIndex.current().filterReadable(fileRepository.findDeleted(), FileRecord::getFolderId);
+    }
+
+    // Files past the retention period are not restored, purged yet or not; the count says how many came back
+    @Transactional
+    public Map<String, Object> restoreFiles(List<Long> ids) {
+        List<Long> fileIds = distinctIds(ids);
+        Acl acl = folderAccessIndex.current();
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minus(trashRetention));
+        int restored = 0;
+        for (int from = 0; from < fileIds.size(); from += IN_CLAUSE_LIMIT) {
+            List<Long> chunk = fileIds.subList(from, Math.min(from + IN_CLAUSE_LIMIT, fileIds.size()));
+            requireWrite(acl, fileRepository.findDeletedFolderIds(chunk));
+            List<Object> args = new ArrayList<>(chunk);
+            args.add(cutoff);
+            restored += jdbcTemplate.update("UPDATE files SET deleted_at = NULL, deleted_by = NULL WHERE id IN (" +
+                    placeholders(chunk.size()) + ") AND deleted_at IS NOT NULL AND deleted_at >= ?", args.toArray());
+        }
+        searchService.indexFiles(fileIds);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("ids", fileIds);
+        response.put("restored", restored);
+        return response;
+    }
+
+    /**
+     * Removes tombstones past the retention period in batches, releasing their content in
+     * the same transaction. Blob files go once the store's own collector finds them unreferenced.
+     */
+    @Scheduled(fixedDelayString = "${edms.files.purge-interval:PT5M}", initialDelayString = "${edms.files.purge-interval:PT5M}")
+    public void purgeDeleted() {
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minus(trashRetention));
+        int purged = 0;
+        List<String> hashes;
+        do {
+            hashes = transactionTemplate.execute(status -> {
+                List<Map<String, Object>> removed = jdbcTemplate.queryForList(PURGE_SQL, purgeBatchSize, cutoff);
+                List<Long> ids = removed.stream().map(row -> ((Number) row.get("id")).longValue()).toList();
+                metadataIndex.remove(ids);
+                versionService.removeFiles(ids);
+                List<String> released = removed.stream().map(row -> (String) row.get("content_hash")).toList();
+                contentStore.release(released);
+                return released;
+            });
+            purged += hashes.size();
+        } while (hashes.size() == purgeBatchSize && pause());
+        if (purged > 0) {
+            logger.info("Purged {} deleted files", purged);
+        }
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(purgePause.toMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static List<Long> distinctIds(List<Long> ids) {
+        return ids == null ? List.of() : ids.stream().filter(Objects::nonNull).distinct().toList();
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static void requireWrite(Acl acl, Collection<Long> folderIds) {
+        for (Long folderId : folderIds) {
+            if (!acl.canWrite(folderId)) {
+                throw new AccessDeniedException("No write access to folder " + folderId);
+            }
+        }
+    }
+
+    private FileRecord store(MultipartFile file, Function<StoredBlob, FileRecord> persist) throws IOException {
+        // Multipart parts are spooled to disk by the container, so this streams from the temp file
+        try (InputStream in = file.getInputStream()) {
+            return contentStore.store(in, file.getContentType(), persist);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.cosek.edms.file;
+
+import com.cosek.edms.config.EncryptionKeyProvider;
+import com.cosek.edms.crypto.DataKeyService;
+import com.cosek.edms.crypto.WrappedKey;
+import com.cosek.edms.file.Models.StoredBlob;
+import com.cosek.edms.helper.BlockCompression;
+import com.cosek.edms.helper.ChunkedCipher;
+import com.cosek.edms.helper.ContentCodec;
+import com.cosek.edms.helper.EncryptionUtil;
+import com.cosek.edms.helper.HashUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKey;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterOutputStream;
+
+/**
+ * Encrypted blob store on the local disk. Content is sealed in chunked AES-GCM
+ * straight into a FileChannel, so no file is ever held in heap as a whole.
+ * Compressible content is deflated in independent blocks on the way in, before
+ * encryption, so ranges of it still seek. Each blob and
+ * upload gets its own data key; callers keep the wrapped key and hand it back to read.
+ */
+@Component
+public class FileStorage {
+    private static final Pattern KEY_PATTERN = Pattern.compile("[0-9a-f]{32}");
+    private static final int INFLATE_BUFFER_SIZE = 64 * 1024;
+
+    private final Path root;
+    private final Path uploads;
+    private final EncryptionKeyProvider keyProvider;
+    private final DataKeyService dataKeyService;
+    private final boolean compression;
+    private final int compressionLevel;
+
+    public FileStorage(@Value("${edms.files.storage-dir:./storage/files}") String root,
+                       @Value("${edms.files.upload-dir:./storage/uploads}") String uploads,
+                       @Value("${edms.files.compression-enabled:true}") boolean compression,
+                       @Value("${edms.files.compression-level:1}") int compressionLevel,
+                       EncryptionKeyProvider keyProvider,
+                       DataKeyService dataKeyService) {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+        this.uploads = Paths.get(uploads).toAbsolutePath().normalize();
+        this.compression = compression;
+        this.compressionLevel = compressionLevel;
+        this.keyProvider = keyProvider;
+        this.dataKeyService = dataKeyService;
+    }
+
+    // Written under a temporary name and moved into place, so a blob is either complete or absent.
+    // The SHA-256 of the plaintext is computed in the same pass.
+    public StoredBlob write(InputStream plaintext, String contentType) throws IOException {
+        MessageDigest digest = sha256();
+        String key = UUID.randomUUID().toString().replace("-", "");
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        Path partial = target.resolveSibling(key + ".part");
+
+        // The head of the stream doubles as the compression probe and is put back in front
+        DigestInputStream digesting = new DigestInputStream(plaintext, digest);
+        byte[] sample = digesting.readNBytes(ContentCodec.SAMPLE_SIZE);
+        ContentCodec codec = compression ? ContentCodec.select(contentType, sample, sample.length) : ContentCodec.NONE;
+        InputStream source = new SequenceInputStream(new ByteArrayInputStream(sample), digesting);
+
+        DataKeyService.DataKey dataKey = dataKeyService.generate();
+        long plainSize;
+        long storedSize;
+        BlockCompression.Deflating deflating = codec == ContentCodec.DEFLATE_BLOCKS
+                ? new BlockCompression.Deflating(source, compressionLevel) : null;
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            InputStream sealed = deflating == null ? source : deflating;
+            plainSize = ChunkedCipher.encrypt(dataKey.key(), Channels.newChannel(sealed), channel);
+            if (deflating != null) {
+                plainSize = deflating.plainSize();
+            }
+            channel.force(false);
+            storedSize = channel.size();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        } finally {
+            if (deflating != null) {
+                deflating.close();
+            }
+        }
+        Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+        return new StoredBlob(key, HashUtil.encode(digest.digest()), plainSize, storedSize, codec, dataKey.wrapped());
+    }
+
+    // A null data key marks a blob written before envelope encryption, sealed with the legacy key
+    public void read(String key, ContentCodec codec, WrappedKey dataKey, OutputStream plaintext) throws IOException {
+        SecretKey secret = secret(dataKey);
+        if (codec == ContentCodec.DEFLATE_BLOCKS) {
+            readBlocks(key, secret, null, 0, plaintext);
+            return;
+        }
+        if (codec != ContentCodec.DEFLATE) {
+            read(key, secret, plaintext);
+            return;
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            InflaterOutputStream inflating = new InflaterOutputStream(plaintext, inflater, INFLATE_BUFFER_SIZE);
+            read(key, secret, inflating);
+            inflating.finish();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // Blobs deflated as one stream cannot seek, so they are inflated from the start and cut off once the range is out
+    public void readRange(String key, ContentCodec codec, WrappedKey dataKey, long offset, long length, OutputStream plaintext) throws IOException {
+        if (codec == ContentCodec.DEFLATE_BLOCKS) {
+            readBlocks(key, secret(dataKey), offset, length, plaintext);
+            return;
+        }
+        if (codec != ContentCodec.DEFLATE) {
+            readRange(key, secret(dataKey), offset, length, plaintext);
+            return;
+        }
+        RangeOutputStream range = new RangeOutputStream(plaintext, offset, length);
+        try {
+            read(key, codec, dataKey, range);
+        } catch (RangeComplete e) {
+            return;
+        }
+        if (range.remaining > 0) {
+            throw new IOException("Requested range extends past the end of the content");
+        }
+    }
+
+    private void read(String key, SecretKey secret, OutputStream plaintext) throws IOException {
+        try (FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ)) {
+            if (isChunkedFormat(channel)) {
+                ChunkedCipher.decrypt(secret, channel, Channels.newChannel(plaintext));
+                return;
+            }
+            // Blobs written before the chunked format are a single AES stream
+            EncryptionUtil.decrypt(secret, Channels.newInputStream(channel), plaintext);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Error decrypting file content", e);
+        }
+    }
+
+    // Only the chunks covering the range are read and decrypted
+    private void readRange(String key, SecretKey secret, long offset, long length, OutputStream plaintext) throws IOException {
+        try (FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ)) {
+            if (isChunkedFormat(channel)) {
+                ChunkedCipher.decryptRange(secret, channel, offset, length, Channels.newChannel(plaintext));
+                return;
+            }
+            // The old single-stream format cannot seek, so it is decrypted from the start and trimmed
+            EncryptionUtil.decrypt(secret, Channels.newInputStream(channel), new RangeOutputStream(plaintext, offset, length));
+        } catch (RangeComplete e) {
+            // the rest of the stream lies past the range
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Error decrypting file content", e);
+        }
+    }
+
+    // Only the chunks holding the block index and the blocks covering the range are decrypted; a null offset reads it all
+    private void readBlocks(String key, SecretKey secret, Long offset, long length, OutputStream plaintext) throws IOException {
+        try (FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ)) {
+            BlockCompression.RangeReader compressed = (from, count, out) ->
+                    ChunkedCipher.decryptRange(secret, channel, from, count, Channels.newChannel(out));
+            long compressedSize = ChunkedCipher.plainSize(channel);
+            if (offset == null) {
+                BlockCompression.inflate(compressed, compressedSize, plaintext);
+            } else {
+                BlockCompression.inflate(compressed, compressedSize, offset, length, plaintext);
+            }
+        }
+    }
+
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    // Resumable uploads are sealed in place into a sparse file laid out for the final size
+    // Returns the upload's wrapped data key, which the session keeps and the adopted blob inherits
+    public WrappedKey createUpload(String uploadKey, long plainSize) throws IOException {
+        Files.createDirectories(uploads);
+        DataKeyService.DataKey dataKey = dataKeyService.generate();
+        try (FileChannel channel = FileChannel.open(resolveUpload(uploadKey),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.READ, StandardOpenOption.SPARSE)) {
+            ChunkedCipher.initRandomAccess(dataKey.key(), channel, plainSize);
+        }
+        return dataKey.wrapped();
+    }
+
+    public void writeUpload(String uploadKey, WrappedKey dataKey, long plainSize, long offset, long length, InputStream plaintext) throws IOException {
+        try (FileChannel channel = FileChannel.open(resolveUpload(uploadKey), StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            ChunkedCipher.sealAt(secret(dataKey), channel, plainSize, offset, length, Channels.newChannel(plaintext));
+        }
+    }
+
+    public void readUpload(String uploadKey, WrappedKey dataKey, long offset, long length, OutputStream plaintext) throws IOException {
+        try (FileChannel channel = FileChannel.open(resolveUpload(uploadKey), StandardOpenOption.READ)) {
+            ChunkedCipher.decryptRange(secret(dataKey), channel, offset, length, Channels.newChannel(plaintext));
+        }
+    }
+
+    // Moves a finished upload into the blob store under a fresh storage key
+    public StoredBlob adoptUpload(String uploadKey, WrappedKey dataKey, String contentHash, long plainSize) throws IOException {
+        Path source = resolveUpload(uploadKey);
+        String key = UUID.randomUUID().toString().replace("-", "");
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.WRITE)) {
+            channel.force(false);
+        }
+        long storedSize = Files.size(source);
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target);
+        }
+        // Parts are sealed in place as they arrive, which leaves no point at which to compress
+        return new StoredBlob(key, contentHash, plainSize, storedSize, ContentCodec.NONE, dataKey);
+    }
+
+    public void deleteUpload(String uploadKey) throws IOException {
+        Files.deleteIfExists(resolveUpload(uploadKey));
+    }
+
+    private SecretKey secret(WrappedKey dataKey) {
+        return dataKey == null ? keyProvider.getKey() : dataKeyService.unwrap(dataKey);
+    }
+
+    // Keys are spread over 256 sub-directories to keep directory listings short
+    private Path resolve(String key) {
+        if (key == null || !KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid storage key: " + key);
+        }
+        return root.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private Path resolveUpload(String uploadKey) {
+        if (uploadKey == null || !KEY_PATTERN.matcher(uploadKey).matches()) {
+            throw new IllegalArgumentException("Invalid upload key: " + uploadKey);
+        }
+        return uploads.resolve(uploadKey + ".upload");
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static boolean isChunkedFormat(FileChannel channel) throws IOException {
+        ByteBuffer prefix = ByteBuffer.allocate(5);
+        channel.read(prefix, 0);
+        return ChunkedCipher.isChunkedFormat(Arrays.copyOf(prefix.array(), prefix.position()));
+    }
+
+    // Thrown once a range has been written in full, to stop decrypting the rest
+    private static class RangeComplete extends IOException {
+        RangeComplete() {
+            super("Range complete");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    private static class RangeOutputStream extends FilterOutputStream {
+        private long skip;
+        private long remaining;
+
+        RangeOutputStream(OutputStream out, long offset, long length) {
+            super(out);
+            this.skip = offset;
+            this.remaining = length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0) {
+                throw new RangeComplete();
+            }
+            int skipped = (int) Math.min(skip, len);
+            skip -= skipped;
+            int take = (int) Math.min(remaining, len - skipped);
+            if (take > 0) {
+                out.write(b, off + skipped, take);
+                remaining -= take;
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.cosek.edms.file;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One scalar of a file's metadata, flattened to a dotted key. The JSON column stays the
+ * source of truth; these rows exist so metadata filters run as indexed lookups.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "file_metadata", indexes = {
+        @Index(name = "idx_file_metadata_file", columnList = "file_id"),
+        @Index(name = "idx_file_metadata_text", columnList = "meta_key, value_text, file_id"),
+        @Index(name = "idx_file_metadata_number", columnList = "meta_key, value_number, file_id")
+})
+public class MetadataEntry {
+    public enum ValueType {
+        STRING,
+        NUMBER,
+        BOOLEAN
+    }
+
+    public static final int MAX_KEY_LENGTH = 200;
+    public static final int MAX_VALUE_LENGTH = 400;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "file_id", nullable = false)
+    private Long fileId;
+
+    @Column(name = "meta_key", nullable = false, length = MAX_KEY_LENGTH)
+    private String key;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "value_type", nullable = false, length = 16)
+    private ValueType valueType;
+
+    // Every value in canonical text form: numbers without trailing zeros, booleans as true/false
+    @Column(name = "value_text", nullable = false, length = MAX_VALUE_LENGTH)
+    private String valueText;
+
+    // Set for numbers only, for range filters
+    @Column(name = "value_number")
+    private Double valueNumber;
+}
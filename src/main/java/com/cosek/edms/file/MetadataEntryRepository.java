@@ -0,0 +1,19 @@
+package com.cosek.edms.file;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+
+@Repository
+public interface MetadataEntryRepository extends JpaRepository<MetadataEntry, Long> {
+
+    // Runs before the files themselves go, while the subquery can still find them
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM file_metadata WHERE file_id IN (SELECT id FROM files WHERE folder_id IN " +
+            "(SELECT descendant_id FROM folder_paths WHERE ancestor_id IN (:folderIds)))", nativeQuery = true)
+    int deleteInSubtrees(@Param("folderIds") Collection<Long> folderIds);
+}
@@ -0,0 +1,210 @@
+package com.cosek.edms.file;
+
+import com.cosek.edms.file.Models.MetadataFilter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.*;
+
+/**
+ * Keeps file_metadata in step with the metadata JSON of each file. Writes happen in the
+ * caller's transaction, so a committed file never disagrees with its rows, and filters
+ * become EXISTS lookups on the (key, value) indexes instead of a scan that parses every row.
+ */
+@Component
+@RequiredArgsConstructor
+public class MetadataIndex {
+    private static final Logger logger = LoggerFactory.getLogger(MetadataIndex.class);
+
+    public static final int MAX_FILTERS = 10;
+    private static final int MAX_DEPTH = 4;
+    // Bounds the rows one file can produce; keys past it are not filterable
+    private static final int MAX_ENTRIES = 200;
+    private static final int IN_CLAUSE_LIMIT = 1000;
+    private static final int BACKFILL_PAGE = 500;
+
+    private static final String INSERT_SQL = "INSERT INTO file_metadata (file_id, meta_key, value_type, value_text, value_number) " +
+            "VALUES (?, ?, ?, ?, ?)";
+    private static final int[] INSERT_TYPES = {Types.BIGINT, Types.NVARCHAR, Types.VARCHAR, Types.NVARCHAR, Types.DOUBLE};
+    private static final TypeReference<HashMap<String, Object>> MAP_TYPE = new TypeReference<>() {
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MetadataEntryRepository metadataEntryRepository;
+    private final ObjectMapper objectMapper;
+
+    public void index(FileRecord record) {
+        index(List.of(record));
+    }
+
+    // Replaces the rows of each file with the flattened scalars of its current metadata
+    public void index(Collection<FileRecord> records) {
+        remove(records.stream().map(FileRecord::getId).toList());
+        List<Object[]> rows = new ArrayList<>();
+        for (FileRecord record : records) {
+            flatten(record.getId(), record.getMetadata(), rows);
+        }
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows, INSERT_TYPES);
+        }
+    }
+
+    public void remove(List<Long> fileIds) {
+        for (int from = 0; from < fileIds.size(); from += IN_CLAUSE_LIMIT) {
+            List<Long> chunk = fileIds.subList(from, Math.min(from + IN_CLAUSE_LIMIT, fileIds.size()));
+            jdbcTemplate.update("DELETE FROM file_metadata WHERE file_id IN (" + placeholders(chunk.size()) + ")", chunk.toArray());
+        }
+    }
+
+    /**
+     * Up to {@code limit} IDs of live files matching every filter, in id order and above
+     * {@code after}, so callers page through matches by passing the last id they saw.
+     * Equality compares canonical text, so 7, 7.0 and "7" all match key:7; ranges only
+     * consider numeric values.
+     */
+    public List<Long> findFileIds(List<MetadataFilter> filters, long after, int limit) {
+        if (filters.isEmpty()) {
+            throw new IllegalArgumentException("At least one filter is required");
+        }
+        if (filters.size() > MAX_FILTERS) {
+            throw new IllegalArgumentException("At most " + MAX_FILTERS + " filters are allowed");
+        }
+        StringBuilder sql = new StringBuilder("SELECT TOP (?) f.id FROM files f WHERE f.deleted_at IS NULL AND f.id > ?");
+        List<Object> args = new ArrayList<>();
+        args.add(limit);
+        args.add(after);
+        for (MetadataFilter filter : filters) {
+            sql.append(" AND EXISTS (SELECT 1 FROM file_metadata m WHERE m.file_id = f.id AND m.meta_key = ?");
+            args.add(filter.key());
+            if (filter.operator() == MetadataFilter.Operator.EQ) {
+                String canonical = canonicalNumber(filter.value());
+                if (canonical != null && !canonical.equals(filter.value())) {
+                    sql.append(" AND m.value_text IN (?, ?))");
+                    args.add(filter.value());
+                    args.add(canonical);
+                } else {
+                    sql.append(" AND m.value_text = ?)");
+                    args.add(filter.value());
+                }
+            } else {
+                sql.append(" AND m.value_number ").append(filter.operator().sql()).append(" ?)");
+                args.add(Double.parseDouble(filter.value()));
+            }
+        }
+        sql.append(" ORDER BY f.id");
+        return jdbcTemplate.queryForList(sql.toString(), Long.class, args.toArray());
+    }
+
+    // Fills the table for files written before it existed; tombstones included, so a restore finds its rows
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        if (metadataEntryRepository.count() > 0) {
+            return;
+        }
+        long cursor = 0;
+        int indexed = 0;
+        List<Map<String, Object>> page;
+        do {
+            page = jdbcTemplate.queryForList("SELECT TOP (?) id, metadata FROM files WHERE id > ? " +
+                    "AND metadata IS NOT NULL AND metadata <> '{}' ORDER BY id", BACKFILL_PAGE, cursor);
+            List<Object[]> rows = new ArrayList<>();
+            for (Map<String, Object> row : page) {
+                long id = ((Number) row.get("id")).longValue();
+                cursor = id;
+                try {
+                    flatten(id, objectMapper.readValue((String) row.get("metadata"), MAP_TYPE), rows);
+                } catch (JsonProcessingException e) {
+                    logger.warn("Skipping unreadable metadata of file {}", id, e);
+                }
+            }
+            if (!rows.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(INSERT_SQL, rows, INSERT_TYPES));
+            }
+            indexed += page.size();
+        } while (page.size() == BACKFILL_PAGE);
+        if (indexed > 0) {
+            logger.info("Indexed metadata of {} existing files", indexed);
+        }
+    }
+
+    private static void flatten(Long fileId, Map<String, Object> metadata, List<Object[]> rows) {
+        if (metadata != null && !metadata.isEmpty()) {
+            int limit = rows.size() + MAX_ENTRIES;
+            flatten(fileId, null, metadata, 0, rows, limit);
+        }
+    }
+
+    // Nested objects become dotted keys; every scalar in an array is a row under the array's key
+    private static void flatten(Long fileId, String key, Object value, int depth, List<Object[]> rows, int limit) {
+        if (value == null || rows.size() >= limit || depth > MAX_DEPTH) {
+            return;
+        }
+        if (value instanceof Map<?, ?> map) {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                String child = key == null ? String.valueOf(entry.getKey()) : key + "." + entry.getKey();
+                flatten(fileId, child, entry.getValue(), depth + 1, rows, limit);
+            }
+            return;
+        }
+        if (key == null || key.length() > MetadataEntry.MAX_KEY_LENGTH) {
+            return;
+        }
+        if (value instanceof Collection<?> items) {
+            for (Object item : items) {
+                flatten(fileId, key, item, depth + 1, rows, limit);
+            }
+            return;
+        }
+        MetadataEntry.ValueType type;
+        String text;
+        Double number = null;
+        if (value instanceof Number n) {
+            text = canonicalNumber(n.toString());
+            if (text == null) {
+                return;
+            }
+            type = MetadataEntry.ValueType.NUMBER;
+            number = n.doubleValue();
+        } else if (value instanceof Boolean b) {
+            type = MetadataEntry.ValueType.BOOLEAN;
+            text = b.toString();
+        } else {
+            type = MetadataEntry.ValueType.STRING;
+            text = value.toString();
+        }
+        // Longer values are free text rather than something anyone filters on by equality
+        if (text.length() <= MetadataEntry.MAX_VALUE_LENGTH) {
+            rows.add(new Object[]{fileId, key, type.name(), text, number});
+        }
+    }
+
+    // Null when the text is not a finite number
+    private static String canonicalNumber(String text) {
+        try {
+            BigDecimal value = new BigDecimal(text.trim()).stripTrailingZeros();
+            // 1e999999 is a valid number, but not one worth writing out in full
+            if ((long) value.precision() + Math.abs((long) value.scale()) > MetadataEntry.MAX_VALUE_LENGTH) {
+                return null;
+            }
+            return value.toPlainString();
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
@@ -0,0 +1,20 @@
+package com.cosek.edms.file.Models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class FileUpdateRequest {
+    private Long id;
+    private String name;
+    // Moves the file into this folder when set
+    private Long folderId;
+    private Map<String, Object> metadata;
+}
@@ -0,0 +1,53 @@
+package com.cosek.edms.file.Models;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One condition of a metadata query, written as key:value for equality or with
+ * &gt;, &gt;=, &lt; or &lt;= for numeric ranges. Nested keys use dots, as in party.name:Acme.
+ */
+public record MetadataFilter(String key, Operator operator, String value) {
+    public enum Operator {
+        EQ(":"),
+        GTE(">="),
+        LTE("<="),
+        GT(">"),
+        LT("<");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String sql() {
+            return this == EQ ? "=" : symbol;
+        }
+    }
+
+    private static final Pattern SYNTAX = Pattern.compile("^([^:<>]+)(:|>=|<=|>|<)(.*)$");
+
+    public static MetadataFilter parse(String filter) {
+        Matcher matcher = filter == null ? null : SYNTAX.matcher(filter);
+        if (matcher == null || !matcher.matches() || matcher.group(1).isBlank()) {
+            throw new IllegalArgumentException("Filters look like key:value, key>number or key<=number");
+        }
+        Operator operator = switch (matcher.group(2)) {
+            case ":" -> Operator.EQ;
+            case ">=" -> Operator.GTE;
+            case "<=" -> Operator.LTE;
+            case ">" -> Operator.GT;
+            default -> Operator.LT;
+        };
+        String value = matcher.group(3).trim();
+        if (operator != Operator.EQ) {
+            try {
+                Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Range filter on " + matcher.group(1).trim() + " needs a number");
+            }
+        }
+        return new MetadataFilter(matcher.group(1).trim(), operator, value);
+    }
+}
@@ -0,0 +1,8 @@
+package com.cosek.edms.file.Models;
+
+import com.cosek.edms.crypto.WrappedKey;
+import com.cosek.edms.helper.ContentCodec;
+
+public record StoredBlob(String storageKey, String contentHash, long plainSize, long storedSize, ContentCodec codec,
+                         WrappedKey dataKey) {
+}
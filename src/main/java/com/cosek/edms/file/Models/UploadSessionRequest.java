@@ -0,0 +1,22 @@
+package com.cosek.edms.file.Models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class UploadSessionRequest {
+    private String fileName;
+    private String contentType;
+    private Long folderId;
+    private Long totalSize;
+    private Integer partSize;
+    private String sha256;
+    private Map<String, Object> metadata;
+}
@@ -0,0 +1,25 @@
+package com.cosek.edms.file.Models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class UploadStatus {
+    private String id;
+    private String fileName;
+    private long totalSize;
+    private int partSize;
+    private int partCount;
+    // Inclusive [first, last] runs of received part indexes
+    private List<int[]> receivedRanges;
+    private int missingParts;
+    private LocalDateTime expiresAt;
+}
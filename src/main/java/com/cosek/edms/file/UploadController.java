@@ -0,0 +1,71 @@
+package com.cosek.edms.file;
+
+import com.cosek.edms.exception.NotFoundException;
+import com.cosek.edms.file.Models.UploadSessionRequest;
+import com.cosek.edms.file.Models.UploadStatus;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+// Resumable uploads: create a session, PUT parts in any order, check what arrived, then commit
+@RestController
+@RequestMapping("/api/v1/files/uploads")
+@RequiredArgsConstructor
+public class UploadController {
+    private final UploadService uploadService;
+
+    @PostMapping
+    public ResponseEntity<UploadStatus> createSession(@RequestBody UploadSessionRequest request) throws IOException {
+        return new ResponseEntity<>(uploadService.createSession(request), HttpStatus.CREATED);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<UploadStatus> getStatus(@PathVariable String id) throws NotFoundException {
+        return ResponseEntity.ok(uploadService.getStatus(id));
+    }
+
+    // Raw body rather than multipart, so parts are not subject to the multipart size limits
+    @PutMapping(value = "/{id}/parts/{index}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<UploadStatus> putPart(
+            @PathVariable String id,
+            @PathVariable int index,
+            HttpServletRequest request
+    ) throws NotFoundException, IOException {
+        try (InputStream content = request.getInputStream()) {
+            return ResponseEntity.ok(uploadService.putPart(id, index, content));
+        }
+    }
+
+    @PostMapping("/{id}/commit")
+    public ResponseEntity<FileRecord> commit(@PathVariable String id) throws NotFoundException, IOException {
+        return new ResponseEntity<>(uploadService.commit(id), HttpStatus.CREATED);
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> abort(@PathVariable String id) throws NotFoundException, IOException {
+        uploadService.abort(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    @ExceptionHandler(NotFoundException.class)
+    public ResponseEntity<Map<String, String>> handleNotFound(NotFoundException e) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", e.getMessage()));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleInvalid(IllegalArgumentException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", e.getMessage()));
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<Map<String, String>> handleConflict(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", e.getMessage()));
+    }
+}
@@ -0,0 +1,384 @@
+package com.cosek.edms.file;
+
+import com.cosek.edms.crypto.WrappedKey;
+import com.cosek.edms.derivative.DerivativeService;
+import com.cosek.edms.exception.NotFoundException;
+import com.cosek.edms.folder.FolderAccessIndex;
+import com.cosek.edms.folder.FolderRepository;
+import com.cosek.edms.quota.QuotaService;
+import com.cosek.edms.search.SearchService;
+import com.cosek.edms.version.VersionService;
+import com.cosek.edms.file.Models.StoredBlob;
+import com.cosek.edms.file.Models.UploadSessionRequest;
+import com.cosek.edms.file.Models.UploadStatus;
+import com.cosek.edms.helper.ChunkedCipher;
+import com.cosek.edms.helper.HashUtil;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Resumable uploads: parts may arrive in any order and in parallel, each sealed straight
+ * into its place in a sparse encrypted file. The content hash is advanced part by part
+ * as a contiguous prefix becomes available, so committing only has to hash what is left.
+ */
+@Service
+@RequiredArgsConstructor
+public class UploadService {
+    private static final Logger logger = LoggerFactory.getLogger(UploadService.class);
+    private static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+    private static final int MAX_PART_SIZE = 64 * 1024 * 1024;
+
+    private static final String RECEIVED_SQL = "INSERT INTO upload_session_parts (session_id, part_index) SELECT ?, ? " +
+            "WHERE NOT EXISTS (SELECT 1 FROM upload_session_parts WITH (UPDLOCK, HOLDLOCK) WHERE session_id = ? AND part_index = ?)";
+    private static final String TOUCH_SQL = "UPDATE upload_sessions SET expires_at = ? WHERE id = ?";
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final FileRepository fileRepository;
+    private final FolderRepository folderRepository;
+    private final FolderAccessIndex folderAccessIndex;
+    private final DerivativeService derivativeService;
+    private final SearchService searchService;
+    private final MetadataIndex metadataIndex;
+    private final QuotaService quotaService;
+    private final VersionService versionService;
+    private final FileStorage fileStorage;
+    private final ContentStore contentStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final AuditorAware<Long> auditorAware;
+
+    private final Map<String, HashCursor> cursors = new ConcurrentHashMap<>();
+
+    @Value("${edms.files.upload-ttl:PT24H}")
+    private Duration sessionTtl;
+
+    public UploadStatus createSession(UploadSessionRequest request) throws IOException {
+        if (request.getFileName() == null || request.getFileName().isBlank()) {
+            throw new IllegalArgumentException("fileName is required");
+        }
+        if (request.getTotalSize() == null || request.getTotalSize() < 0) {
+            throw new IllegalArgumentException("totalSize must be zero or more");
+        }
+        if (request.getFolderId() != null && !folderRepository.existsById(request.getFolderId())) {
+            throw new IllegalArgumentException("Folder " + request.getFolderId() + " does not exist");
+        }
+        if (!folderAccessIndex.current().canWrite(request.getFolderId())) {
+            throw new AccessDeniedException("No write access to folder " + request.getFolderId());
+        }
+        int partSize = request.getPartSize() != null ? request.getPartSize() : DEFAULT_PART_SIZE;
+        // Parts must start on a cipher chunk boundary so each one can be sealed independently
+        if (partSize < ChunkedCipher.CHUNK_SIZE || partSize > MAX_PART_SIZE || partSize % ChunkedCipher.CHUNK_SIZE != 0) {
+            throw new IllegalArgumentException("partSize must be a multiple of " + ChunkedCipher.CHUNK_SIZE
+                    + " between " + ChunkedCipher.CHUNK_SIZE + " and " + MAX_PART_SIZE);
+        }
+        long partCount = (request.getTotalSize() + partSize - 1) / partSize;
+        if (partCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("totalSize is too large for partSize");
+        }
+
+        // The declared size counts against the quota from here until the session commits or expires
+        Long departmentId = quotaService.departmentOf(request.getFolderId());
+        try (QuotaService.Reservation reservation = quotaService.reserve(departmentId, request.getTotalSize())) {
+            UploadSession session = openSession(request, departmentId, partSize, (int) partCount);
+            reservation.commitOnSuccess();
+            return status(session, List.of());
+        }
+    }
+
+    private UploadSession openSession(UploadSessionRequest request, Long departmentId, int partSize, int partCount) throws IOException {
+        String id = UUID.randomUUID().toString().replace("-", "");
+        WrappedKey dataKey = fileStorage.createUpload(id, request.getTotalSize());
+        UploadSession session = UploadSession.builder()
+                .id(id)
+                .wrappedKey(dataKey.key())
+                .keyVersion(dataKey.version())
+                .fileName(request.getFileName())
+                .contentType(request.getContentType())
+                .folderId(request.getFolderId())
+                .departmentId(departmentId)
+                .totalSize(request.getTotalSize())
+                .partSize(partSize)
+                .partCount(partCount)
+                .expectedHash(request.getSha256())
+                .metadata(request.getMetadata() != null ? new HashMap<>(request.getMetadata()) : new HashMap<>())
+                .expiresAt(LocalDateTime.now().plus(sessionTtl))
+                .build();
+        try {
+            session = uploadSessionRepository.save(session);
+        } catch (RuntimeException e) {
+            fileStorage.deleteUpload(id);
+            throw e;
+        }
+        cursors.put(id, new HashCursor());
+        return session;
+    }
+
+    public UploadStatus getStatus(String id) throws NotFoundException {
+        UploadSession session = ownedSession(id);
+        return status(session, uploadSessionRepository.findReceivedParts(id));
+    }
+
+    public UploadStatus putPart(String id, int index, InputStream content) throws NotFoundException, IOException {
+        UploadSession session = ownedSession(id);
+        // Usually a no-op, as the session reserved its size; catches a limit lowered below usage meanwhile
+        quotaService.requireWithinQuota(session.getDepartmentId());
+        if (index < 0 || index >= session.getPartCount()) {
+            throw new IllegalArgumentException("Part index must be between 0 and " + (session.getPartCount() - 1));
+        }
+        HashCursor cursor = cursors.computeIfAbsent(id, key -> new HashCursor());
+        cursor.claim(index);
+        // The next part in order is hashed while it streams in; any other part is hashed from disk later
+        boolean inline = cursor.lock.tryLock();
+        try {
+            if (inline && cursor.nextPart() != index) {
+                cursor.lock.unlock();
+                inline = false;
+            }
+            long offset = (long) index * session.getPartSize();
+            long length = Math.min(session.getPartSize(), session.getTotalSize() - offset);
+            MessageDigest partDigest = inline ? cursor.cloneDigest() : null;
+            InputStream source = inline ? new DigestInputStream(content, partDigest) : content;
+
+            fileStorage.writeUpload(id, session.dataKey(), session.getTotalSize(), offset, length, source);
+            if (content.read() != -1) {
+                throw new IllegalArgumentException("Part " + index + " is longer than " + length + " bytes");
+            }
+            jdbcTemplate.update(RECEIVED_SQL, id, index, id, index);
+            jdbcTemplate.update(TOUCH_SQL, Timestamp.valueOf(LocalDateTime.now().plus(sessionTtl)), id);
+            if (inline) {
+                cursor.hashed(partDigest);
+            }
+        } finally {
+            if (inline) {
+                cursor.lock.unlock();
+            }
+            cursor.release(index);
+        }
+
+        List<Integer> received = uploadSessionRepository.findReceivedParts(id);
+        if (cursor.lock.tryLock()) {
+            try {
+                advance(session, cursor, received);
+            } finally {
+                cursor.lock.unlock();
+            }
+        }
+        return status(session, received);
+    }
+
+    public FileRecord commit(String id) throws NotFoundException, IOException {
+        UploadSession session = ownedSession(id);
+        List<Integer> received = uploadSessionRepository.findReceivedParts(id);
+        if (received.size() != session.getPartCount()) {
+            throw new IllegalStateException((session.getPartCount() - received.size()) + " parts have not been received");
+        }
+        HashCursor cursor = cursors.computeIfAbsent(id, key -> new HashCursor());
+        cursor.lock.lock();
+        boolean committed = false;
+        try {
+            // From here on parts are refused, so the bytes adopted below are the ones that were hashed
+            cursor.beginCommit();
+            advance(session, cursor, received);
+            if (cursor.nextPart() != session.getPartCount()) {
+                throw new IllegalStateException("Parts " + cursor.nextPart() + " onwards have not been hashed");
+            }
+            String hash = HashUtil.encode(cursor.cloneDigest().digest());
+            if (session.getExpectedHash() != null && !session.getExpectedHash().equals(hash)) {
+                throw new IllegalArgumentException("Uploaded content does not match the expected SHA-256");
+            }
+            StoredBlob blob = fileStorage.adoptUpload(id, session.dataKey(), hash, session.getTotalSize());
+            FileRecord saved = contentStore.commit(blob, stored -> {
+                FileRecord record = fileRepository.save(FileRecord.builder()
+                        .name(session.getFileName())
+                        .contentType(session.getContentType())
+                        .folderId(session.getFolderId())
+                        .size(stored.plainSize())
+                        .contentHash(stored.contentHash())
+                        .metadata(new HashMap<>(session.getMetadata()))
+                        .build());
+                metadataIndex.index(record);
+                versionService.recordInitial(record);
+                uploadSessionRepository.deleteById(id);
+                derivativeService.enqueue(record.getContentHash(), record.getSize(), record.getContentType(),
+                        DerivativeService.PRIORITY_BULK);
+                searchService.indexFiles(List.of(record.getId()));
+                return record;
+            });
+            cursors.remove(id);
+            committed = true;
+            return saved;
+        } finally {
+            if (!committed) {
+                cursor.endCommit();
+            }
+            cursor.lock.unlock();
+        }
+    }
+
+    public void abort(String id) throws NotFoundException, IOException {
+        ownedSession(id);
+        discard(id);
+    }
+
+    @Scheduled(fixedDelayString = "${edms.files.upload-sweep-interval:PT15M}")
+    public void expireSessions() {
+        List<String> expired = uploadSessionRepository.findExpiredIds(LocalDateTime.now());
+        for (String id : expired) {
+            try {
+                discard(id);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Could not expire upload session {}", id, e);
+            }
+        }
+        if (!expired.isEmpty()) {
+            logger.info("Expired {} upload sessions", expired.size());
+        }
+    }
+
+    private void discard(String id) throws IOException {
+        uploadSessionRepository.deleteById(id);
+        fileStorage.deleteUpload(id);
+        cursors.remove(id);
+    }
+
+    // Caller holds the cursor lock
+    private void advance(UploadSession session, HashCursor cursor, List<Integer> received) throws IOException {
+        Set<Integer> available = new HashSet<>(received);
+        while (available.contains(cursor.nextPart())) {
+            int part = cursor.nextPart();
+            // A part being rewritten is hashed once its upload has finished
+            if (!cursor.startHashing(part)) {
+                return;
+            }
+            long offset = (long) part * session.getPartSize();
+            long length = Math.min(session.getPartSize(), session.getTotalSize() - offset);
+            MessageDigest digest = cursor.cloneDigest();
+            try {
+                fileStorage.readUpload(session.getId(), session.dataKey(), offset, length, new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+            } catch (IOException | RuntimeException e) {
+                cursor.stopHashing();
+                throw e;
+            }
+            cursor.hashed(digest);
+        }
+    }
+
+    private UploadSession ownedSession(String id) throws NotFoundException {
+        Long current = auditorAware.getCurrentAuditor().orElse(null);
+        return uploadSessionRepository.findById(id)
+                .filter(session -> Objects.equals(session.getCreatedBy(), current))
+                .orElseThrow(() -> new NotFoundException("Upload session not found"));
+    }
+
+    private static UploadStatus status(UploadSession session, List<Integer> received) {
+        List<int[]> ranges = new ArrayList<>();
+        for (int index : received) {
+            int[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && last[1] == index - 1) {
+                last[1] = index;
+            } else {
+                ranges.add(new int[]{index, index});
+            }
+        }
+        return UploadStatus.builder()
+                .id(session.getId())
+                .fileName(session.getFileName())
+                .totalSize(session.getTotalSize())
+                .partSize(session.getPartSize())
+                .partCount(session.getPartCount())
+                .receivedRanges(ranges)
+                .missingParts(session.getPartCount() - received.size())
+                .expiresAt(session.getExpiresAt())
+                .build();
+    }
+
+    /**
+     * Running SHA-256 over the parts received in order. The lock is held while hashing; the
+     * part bookkeeping below is guarded by the cursor's monitor, so a part is never written
+     * while it is hashed and never rewritten once it has been.
+     */
+    private static class HashCursor {
+        private final ReentrantLock lock = new ReentrantLock();
+        private MessageDigest digest = FileStorage.sha256();
+        private int nextPart;
+        private int hashing = -1;
+        private final Set<Integer> writing = new HashSet<>();
+        private boolean committing;
+
+        synchronized void claim(int index) {
+            if (committing) {
+                throw new IllegalStateException("The upload is being committed");
+            }
+            if (index < nextPart || index == hashing) {
+                throw new IllegalStateException("Part " + index + " has already been received and hashed");
+            }
+            if (!writing.add(index)) {
+                throw new IllegalStateException("Part " + index + " is already being uploaded");
+            }
+        }
+
+        synchronized void release(int index) {
+            writing.remove(index);
+        }
+
+        synchronized int nextPart() {
+            return nextPart;
+        }
+
+        synchronized boolean startHashing(int index) {
+            if (writing.contains(index)) {
+                return false;
+            }
+            hashing = index;
+            return true;
+        }
+
+        synchronized void stopHashing() {
+            hashing = -1;
+        }
+
+        synchronized void hashed(MessageDigest partDigest) {
+            digest = partDigest;
+            nextPart++;
+            hashing = -1;
+        }
+
+        synchronized void beginCommit() {
+            if (!writing.isEmpty()) {
+                throw new IllegalStateException("Parts are still being uploaded");
+            }
+            committing = true;
+        }
+
+        synchronized void endCommit() {
+            committing = false;
+        }
+
+        synchronized MessageDigest cloneDigest() {
+            try {
+                return (MessageDigest) digest.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException("SHA-256 digest cannot be cloned", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.cosek.edms.file;
+
+import com.cosek.edms.crypto.WrappedKey;
+import com.cosek.edms.helper.JsonMapConverter;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.CreatedBy;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "upload_sessions", indexes = @Index(name = "idx_upload_sessions_expires", columnList = "expires_at"))
+@EntityListeners(AuditingEntityListener.class)
+public class UploadSession {
+    // Also names the sparse file the parts are sealed into
+    @Id
+    @Column(length = 32)
+    private String id;
+
+    private String fileName;
+    private String contentType;
+
+    @Column(name = "folder_id")
+    private Long folderId;
+
+    // Department charged for the declared size while the session is open
+    @Column(name = "department_id")
+    private Long departmentId;
+
+    private long totalSize;
+    private int partSize;
+    private int partCount;
+
+    // Optional SHA-256 (base64url) the client expects the assembled content to have
+    private String expectedHash;
+
+    // Data key the upload file is sealed with, wrapped like a blob's; the adopted blob takes it over
+    @Column(name = "wrapped_key", length = 64)
+    private byte[] wrappedKey;
+
+    @Column(name = "key_version")
+    private Integer keyVersion;
+
+    @Builder.Default
+    @Convert(converter = JsonMapConverter.class)
+    @Column(columnDefinition = "nvarchar(max)")
+    private Map<String, Object> metadata = new HashMap<>();
+
+    // Written with set-based inserts as parts arrive; mapped here for reads and the schema
+    @ElementCollection(fetch = FetchType.LAZY)
+    @CollectionTable(name = "upload_session_parts", joinColumns = @JoinColumn(name = "session_id"))
+    @Column(name = "part_index")
+    private Set<Integer> receivedParts;
+
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
+    @CreatedDate
+    @Column(name = "createdDate", nullable = true, updatable = false)
+    private LocalDateTime createdDate;
+
+    @CreatedBy
+    @Column(name = "createdBy", nullable = true, updatable = false)
+    private Long createdBy;
+
+    public WrappedKey dataKey() {
+        return wrappedKey != null && keyVersion != null ? new WrappedKey(wrappedKey, keyVersion) : null;
+    }
+}
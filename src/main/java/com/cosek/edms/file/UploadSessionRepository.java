@@ -0,0 +1,19 @@
+package com.cosek.edms.file;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    @Query(value = "SELECT part_index FROM upload_session_parts WHERE session_id = :id ORDER BY part_index", nativeQuery = true)
+    List<Integer> findReceivedParts(@Param("id") String id);
+
+    @Query("SELECT s.id FROM UploadSession s WHERE s.expiresAt < :now")
+    List<String> findExpiredIds(@Param("now") LocalDateTime now);
+}
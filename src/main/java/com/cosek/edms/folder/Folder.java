@@ -0,0 +1,55 @@
+package com.cosek.edms.folder;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.CreatedBy;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.LastModifiedBy;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "folders", indexes = {
+        @Index(name = "idx_folders_parent", columnList = "parent_id"),
+        @Index(name = "idx_folders_department", columnList = "department_id")
+})
+@EntityListeners(AuditingEntityListener.class)
+public class Folder {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private String name;
+
+    // Kept for direct-children listings; ancestry queries go through folder_paths
+    @Column(name = "parent_id")
+    private Long parentId;
+
+    @Column(name = "department_id")
+    private Long departmentId;
+
+    @CreatedDate
+    @Column(name = "createdDate", nullable = true, updatable = false)
+    private LocalDateTime createdDate;
+
+    @LastModifiedDate
+    @Column(name = "lastModifiedDate", nullable = true)
+    private LocalDateTime lastModifiedDateTime;
+
+    @LastModifiedBy
+    @Column(name = "lastModifiedBy", nullable = true)
+    private Long lastModifiedBy;
+
+    @CreatedBy
+    @Column(name = "createdBy", nullable = true, updatable = false)
+    private Long createdBy;
+}
@@ -0,0 +1,155 @@
+package com.cosek.edms.folder;
+
+import com.cosek.edms.helper.TransactionHooks;
+import com.cosek.edms.role.Role;
+import com.cosek.edms.user.User;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.cosek.edms.helper.Constants.MANAGE_FOLDER_ACCESS;
+
+/**
+ * Precomputed folder access per user. Grants inherited through ancestor folders, role
+ * grants and department ownership are resolved with one query into read and write
+ * bitmaps of folder IDs, so a listing is checked in a single in-memory pass.
+ * Published bitmaps are never mutated; updates swap in fresh copies.
+ */
+@Component
+@RequiredArgsConstructor
+public class FolderAccessIndex {
+    private static final int WRITE = 2;
+
+    private final FolderGrantRepository folderGrantRepository;
+
+    private final Map<Long, Acl> byUser = new ConcurrentHashMap<>();
+    // Bumped by every change, so a load that raced one is used once but not cached
+    private final AtomicLong changes = new AtomicLong();
+
+    /**
+     * Effective access of one user. Files outside any folder are governed by the
+     * route permissions alone, so a null folder ID is always allowed.
+     */
+    public record Acl(Long userId, Set<Long> roleIds, Long departmentId, boolean unrestricted,
+                      BitSet readable, BitSet writable) {
+
+        public boolean canRead(Long folderId) {
+            return folderId == null || unrestricted || readable.get(bit(folderId));
+        }
+
+        public boolean canWrite(Long folderId) {
+            return folderId == null || unrestricted || writable.get(bit(folderId));
+        }
+
+        public <T> List<T> filterReadable(Collection<T> items, Function<T, Long> folderOf) {
+            if (unrestricted) {
+                return new ArrayList<>(items);
+            }
+            List<T> visible = new ArrayList<>(items.size());
+            for (T item : items) {
+                if (canRead(folderOf.apply(item))) {
+                    visible.add(item);
+                }
+            }
+            return visible;
+        }
+
+        private Acl withFolder(long folderId, boolean read, boolean write) {
+            BitSet readCopy = (BitSet) readable.clone();
+            BitSet writeCopy = write ? (BitSet) writable.clone() : writable;
+            readCopy.set(bit(folderId), read || write);
+            if (write) {
+                writeCopy.set(bit(folderId));
+            }
+            return new Acl(userId, roleIds, departmentId, unrestricted, readCopy, writeCopy);
+        }
+    }
+
+    // The caller's access; anything without an authenticated user sees no folders
+    public Acl current() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof User user)) {
+            return new Acl(null, Set.of(), null, false, new BitSet(), new BitSet());
+        }
+        boolean unrestricted = authentication.getAuthorities().stream()
+                .anyMatch(authority -> MANAGE_FOLDER_ACCESS.equals(authority.getAuthority()));
+        Set<Long> roleIds = user.getRoles() == null ? Set.of()
+                : user.getRoles().stream().map(Role::getId).collect(Collectors.toUnmodifiableSet());
+
+        // Membership changes arrive as a fresh principal, so a mismatch here means the entry is stale
+        Acl cached = byUser.get(user.getId());
+        if (cached != null && cached.unrestricted() == unrestricted && cached.roleIds().equals(roleIds)
+                && Objects.equals(cached.departmentId(), user.getDepartmentId())) {
+            return cached;
+        }
+        return load(user.getId(), roleIds, user.getDepartmentId(), unrestricted);
+    }
+
+    // Grants only affect the users behind their principal
+    public void grantChanged(FolderGrant.PrincipalType principalType, Long principalId) {
+        TransactionHooks.afterCommit(() -> {
+            changes.incrementAndGet();
+            byUser.values().removeIf(acl -> switch (principalType) {
+                case USER -> acl.userId().equals(principalId);
+                case ROLE -> acl.roleIds().contains(principalId);
+                case DEPARTMENT -> principalId.equals(acl.departmentId());
+            });
+        });
+    }
+
+    // A new leaf inherits its parent's access, and department members can read it
+    public void folderCreated(Long folderId, Long parentId, Long departmentId) {
+        TransactionHooks.afterCommit(() -> {
+            changes.incrementAndGet();
+            byUser.replaceAll((userId, acl) -> {
+                boolean write = parentId != null && acl.writable().get(bit(parentId));
+                boolean read = write || (parentId != null && acl.readable().get(bit(parentId)))
+                        || (departmentId != null && departmentId.equals(acl.departmentId()));
+                return read ? acl.withFolder(folderId, true, write) : acl;
+            });
+        });
+    }
+
+    // Moves, department reassignments and deletes can reach any user, so every entry reloads lazily
+    public void structureChanged() {
+        TransactionHooks.afterCommit(() -> {
+            changes.incrementAndGet();
+            byUser.clear();
+        });
+    }
+
+    private Acl load(Long userId, Set<Long> roleIds, Long departmentId, boolean unrestricted) {
+        long seen = changes.get();
+        BitSet readable = new BitSet();
+        BitSet writable = new BitSet();
+        if (!unrestricted) {
+            // IN () is not valid SQL and an untyped null does not bind as bigint; no ID is negative
+            Collection<Long> roles = roleIds.isEmpty() ? List.of(-1L) : roleIds;
+            Long department = departmentId != null ? departmentId : -1L;
+            for (Object[] row : folderGrantRepository.findEffectiveAccess(userId, roles, department)) {
+                int folder = bit(((Number) row[0]).longValue());
+                int access = ((Number) row[1]).intValue();
+                readable.set(folder);
+                if (access >= WRITE) {
+                    writable.set(folder);
+                }
+            }
+        }
+        Acl acl = new Acl(userId, roleIds, departmentId, unrestricted, readable, writable);
+        if (changes.get() == seen) {
+            byUser.put(userId, acl);
+        }
+        return acl;
+    }
+
+    private static int bit(long folderId) {
+        return Math.toIntExact(folderId);
+    }
+}
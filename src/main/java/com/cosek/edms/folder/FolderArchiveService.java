@@ -0,0 +1,274 @@
+package com.cosek.edms.folder;
+
+import com.cosek.edms.exception.NotFoundException;
+import com.cosek.edms.file.ContentStore;
+import com.cosek.edms.file.FileRecord;
+import com.cosek.edms.file.FileRepository;
+import com.cosek.edms.folder.FolderAccessIndex.Acl;
+import com.cosek.edms.helper.ContentCodec;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams a folder subtree as a ZIP straight into the response. Member files are read
+ * and decrypted a few entries ahead on a small pool while the current one is written,
+ * each through a bounded queue of chunks, so memory stays at a handful of buffers per
+ * file in flight and nothing is spooled to disk.
+ */
+@Service
+@RequiredArgsConstructor
+public class FolderArchiveService {
+    private static final Logger logger = LoggerFactory.getLogger(FolderArchiveService.class);
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final Chunk END = new Chunk(new byte[0], 0);
+
+    private final FolderRepository folderRepository;
+    private final FileRepository fileRepository;
+    private final FolderAccessIndex folderAccessIndex;
+    private final ContentStore contentStore;
+
+    // Files read ahead of the one being written
+    @Value("${edms.archive.prefetch-files:4}")
+    private int prefetchFiles;
+
+    // Decrypted chunks a file in flight may hold before its reader waits
+    @Value("${edms.archive.buffers-per-file:4}")
+    private int buffersPerFile;
+
+    public record Archive(String fileName, List<Entry> entries) {
+    }
+
+    // A directory entry when record is null
+    public record Entry(String path, FileRecord record) {
+    }
+
+    /**
+     * Resolves the readable subtree and the entry layout. This runs on the request thread,
+     * where the caller's access is known; the archive itself is written later.
+     */
+    public Archive plan(Long folderId) throws NotFoundException {
+        Acl acl = folderAccessIndex.current();
+        List<Folder> subtree = folderRepository.findSubtree(folderId);
+        if (subtree.isEmpty() || !acl.canRead(folderId)) {
+            throw new NotFoundException("Folder not found");
+        }
+        Map<Long, List<FileRecord>> filesByFolder = acl.filterReadable(fileRepository.findInSubtree(folderId), FileRecord::getFolderId)
+                .stream()
+                .collect(Collectors.groupingBy(FileRecord::getFolderId));
+
+        // Parents come before children, so each folder's path is known when it is reached
+        Map<Long, String> paths = new HashMap<>();
+        Map<String, Set<String>> taken = new HashMap<>();
+        List<Entry> entries = new ArrayList<>();
+        for (Folder folder : subtree) {
+            String parent = folder.getId().equals(folderId) ? "" : paths.get(folder.getParentId());
+            if (parent == null) {
+                continue;
+            }
+            String path = parent + unique(taken, parent, segment(folder.getName(), "folder-" + folder.getId())) + "/";
+            paths.put(folder.getId(), path);
+            if (!acl.canRead(folder.getId())) {
+                continue;
+            }
+            List<FileRecord> files = filesByFolder.getOrDefault(folder.getId(), List.of());
+            if (files.isEmpty()) {
+                // Keeps empty folders in the archive
+                entries.add(new Entry(path, null));
+            }
+            files.stream()
+                    .sorted(Comparator.comparing(FileRecord::getName, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)))
+                    .forEach(file -> entries.add(new Entry(
+                            path + unique(taken, path, segment(file.getName(), "file-" + file.getId())), file)));
+        }
+        return new Archive(paths.get(folderId).replaceAll("/$", "") + ".zip", entries);
+    }
+
+    public void write(Archive archive, OutputStream out) throws IOException {
+        List<Entry> entries = archive.entries();
+        int ahead = Math.max(1, prefetchFiles);
+        int threads = Math.max(1, Math.min(ahead, entries.size()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "archive-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<Prefetch> window = new ArrayDeque<>();
+        int next = 0;
+        try {
+            ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out, CHUNK_SIZE));
+            for (Entry entry : entries) {
+                ZipEntry zipEntry = new ZipEntry(entry.path());
+                if (entry.record() == null) {
+                    zip.putNextEntry(zipEntry);
+                    zip.closeEntry();
+                    continue;
+                }
+                // Keep up to prefetch-files files decrypting ahead, counting the current one
+                while (window.size() < ahead && next < entries.size()) {
+                    Entry upcoming = entries.get(next++);
+                    if (upcoming.record() != null) {
+                        window.add(prefetch(pool, upcoming));
+                    }
+                }
+                Prefetch current = window.poll();
+                FileRecord record = entry.record();
+                if (record.getLastModifiedDateTime() != null) {
+                    zipEntry.setTime(record.getLastModifiedDateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+                }
+                // Already compressed content is stored in deflate's raw blocks rather than squeezed again
+                zip.setLevel(ContentCodec.isCompressedType(record.getContentType()) ? Deflater.NO_COMPRESSION : Deflater.BEST_SPEED);
+                zip.putNextEntry(zipEntry);
+                current.drainTo(zip);
+                zip.closeEntry();
+            }
+            zip.finish();
+            zip.flush();
+        } catch (IOException | RuntimeException e) {
+            // Usually the client going away; the archive is cut short either way
+            logger.debug("Folder archive {} stopped", archive.fileName(), e);
+            throw e;
+        } finally {
+            for (Prefetch pending : window) {
+                pending.task.cancel(true);
+            }
+            pool.shutdownNow();
+        }
+    }
+
+    private Prefetch prefetch(ExecutorService pool, Entry entry) {
+        Prefetch prefetch = new Prefetch(entry.path(), buffersPerFile);
+        prefetch.task = pool.submit(() -> {
+            try {
+                contentStore.read(entry.record().getContentHash(), prefetch);
+                prefetch.finish();
+            } catch (InterruptedIOException e) {
+                // Cancelled with the archive
+            } catch (IOException | RuntimeException e) {
+                prefetch.fail(e);
+            }
+        });
+        return prefetch;
+    }
+
+    // Windows and most unzip tools reject these in entry names; slashes would create stray directories
+    private static String segment(String name, String fallback) {
+        if (name == null) {
+            return fallback;
+        }
+        String cleaned = name.replaceAll("[\\\\/:*?\"<>|\\p{Cntrl}]", "_").trim();
+        return cleaned.isEmpty() || cleaned.equals(".") || cleaned.equals("..") ? fallback : cleaned;
+    }
+
+    // Siblings with the same name, ignoring case, get a counter before the extension
+    private static String unique(Map<String, Set<String>> taken, String parent, String name) {
+        Set<String> names = taken.computeIfAbsent(parent, key -> new HashSet<>());
+        String candidate = name;
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        for (int n = 2; !names.add(candidate.toLowerCase(Locale.ROOT)); n++) {
+            candidate = base + " (" + n + ")" + extension;
+        }
+        return candidate;
+    }
+
+    private record Chunk(byte[] data, int length) {
+    }
+
+    // Written by a prefetch thread, drained by the archive writer; full queues hold the reader back
+    private static class Prefetch extends OutputStream {
+        private final String path;
+        private final BlockingQueue<Chunk> chunks;
+        private final Queue<byte[]> free = new ConcurrentLinkedQueue<>();
+        private byte[] buffer = new byte[CHUNK_SIZE];
+        private int count;
+        private volatile Exception failure;
+        private Future<?> task;
+
+        Prefetch(String path, int buffers) {
+            this.path = path;
+            this.chunks = new ArrayBlockingQueue<>(Math.max(1, buffers));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int copied = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, copied);
+                count += copied;
+                off += copied;
+                len -= copied;
+                if (count == buffer.length) {
+                    publish();
+                }
+            }
+        }
+
+        void finish() throws IOException {
+            if (count > 0) {
+                publish();
+            }
+            put(END);
+        }
+
+        void fail(Exception e) {
+            failure = e;
+            try {
+                put(END);
+            } catch (InterruptedIOException ignored) {
+                // Cancelled; nobody is waiting for this file any more
+            }
+        }
+
+        void drainTo(OutputStream out) throws IOException {
+            try {
+                for (Chunk chunk = chunks.take(); chunk != END; chunk = chunks.take()) {
+                    out.write(chunk.data(), 0, chunk.length());
+                    free.offer(chunk.data());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Folder archive interrupted");
+            }
+            if (failure != null) {
+                throw new IOException("Could not read " + path, failure);
+            }
+        }
+
+        private void publish() throws IOException {
+            put(new Chunk(buffer, count));
+            byte[] recycled = free.poll();
+            buffer = recycled != null ? recycled : new byte[CHUNK_SIZE];
+            count = 0;
+        }
+
+        private void put(Chunk chunk) throws InterruptedIOException {
+            try {
+                chunks.put(chunk);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Prefetch cancelled");
+            }
+        }
+    }
+}
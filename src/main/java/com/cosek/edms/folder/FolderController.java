@@ -0,0 +1,116 @@
+package com.cosek.edms.folder;
+
+import com.cosek.edms.exception.NotFoundException;
+import com.cosek.edms.folder.Models.FolderBulkUpdateRequest;
+import com.cosek.edms.folder.Models.FolderGrantRequest;
+import com.cosek.edms.folder.Models.FolderRequest;
+import com.cosek.edms.folder.Models.FolderSize;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/v1/folders")
+@RequiredArgsConstructor
+public class FolderController {
+    private final FolderService folderService;
+    private final FolderArchiveService folderArchiveService;
+
+    @GetMapping("/all")
+    public ResponseEntity<List<Folder>> findAll() {
+        return ResponseEntity.ok(folderService.findAllFolders());
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Folder> findFolder(@PathVariable Long id) throws NotFoundException {
+        return ResponseEntity.ok(folderService.findFolder(id));
+    }
+
+    @GetMapping("/{id}/subtree")
+    public ResponseEntity<List<Folder>> findSubtree(@PathVariable Long id) throws NotFoundException {
+        return ResponseEntity.ok(folderService.findSubtree(id));
+    }
+
+    @GetMapping("/{id}/size")
+    public ResponseEntity<FolderSize> getSubtreeSize(@PathVariable Long id) throws NotFoundException {
+        return ResponseEntity.ok(folderService.getSubtreeSize(id));
+    }
+
+    // Streams as it is built, so there is no Content-Length and the first bytes go out immediately
+    @GetMapping("/{id}/archive")
+    public ResponseEntity<StreamingResponseBody> downloadArchive(@PathVariable Long id) throws NotFoundException {
+        FolderArchiveService.Archive archive = folderArchiveService.plan(id);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header("Content-Disposition", ContentDisposition.attachment()
+                        .filename(archive.fileName(), StandardCharsets.UTF_8)
+                        .build()
+                        .toString())
+                .body(out -> folderArchiveService.write(archive, out));
+    }
+
+    @GetMapping("/{id}/grants")
+    public ResponseEntity<List<FolderGrant>> findGrants(@PathVariable Long id) throws NotFoundException {
+        return ResponseEntity.ok(folderService.findGrants(id));
+    }
+
+    @PostMapping("/{id}/grants")
+    public ResponseEntity<FolderGrant> grantAccess(@PathVariable Long id, @RequestBody FolderGrantRequest request) throws NotFoundException {
+        return ResponseEntity.ok(folderService.grantAccess(id, request));
+    }
+
+    @DeleteMapping("/grants/{grantId}")
+    public ResponseEntity<Void> revokeGrant(@PathVariable Long grantId) throws NotFoundException {
+        folderService.revokeGrant(grantId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/departments/{departmentId}")
+    public ResponseEntity<List<Folder>> findDepartmentFolders(@PathVariable Long departmentId) {
+        return ResponseEntity.ok(folderService.findDepartmentFolders(departmentId));
+    }
+
+    @PostMapping("/add")
+    public ResponseEntity<Folder> createFolder(@RequestBody FolderRequest request) throws NotFoundException {
+        return new ResponseEntity<>(folderService.createFolder(request), HttpStatus.CREATED);
+    }
+
+    @PutMapping("/update/{id}")
+    public ResponseEntity<Folder> updateFolder(@PathVariable Long id, @RequestBody FolderRequest request) throws NotFoundException {
+        return ResponseEntity.ok(folderService.updateFolder(id, request));
+    }
+
+    @PutMapping("/update-multiple")
+    public ResponseEntity<Map<String, Object>> updateFolders(@RequestBody FolderBulkUpdateRequest request) throws NotFoundException {
+        return ResponseEntity.ok(folderService.updateFolders(request));
+    }
+
+    @DeleteMapping("/delete/{id}")
+    public ResponseEntity<Map<String, Object>> deleteFolder(@PathVariable Long id) {
+        return ResponseEntity.ok(folderService.deleteFolders(List.of(id)));
+    }
+
+    @DeleteMapping("/delete-multiple")
+    public ResponseEntity<Map<String, Object>> deleteFolders(@RequestBody List<Long> ids) {
+        return ResponseEntity.ok(folderService.deleteFolders(ids));
+    }
+
+    @ExceptionHandler(NotFoundException.class)
+    public ResponseEntity<Map<String, String>> handleNotFound(NotFoundException e) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", e.getMessage()));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleInvalid(IllegalArgumentException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", e.getMessage()));
+    }
+}
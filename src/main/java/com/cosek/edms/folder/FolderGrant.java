@@ -0,0 +1,55 @@
+package com.cosek.edms.folder;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.CreatedBy;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import java.time.LocalDateTime;
+
+// Access to a folder and everything below it, for a user, every member of a role or a whole department
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "folder_grants",
+        uniqueConstraints = @UniqueConstraint(name = "uq_folder_grants",
+                columnNames = {"folder_id", "principal_type", "principal_id"}),
+        indexes = @Index(name = "idx_folder_grants_principal", columnList = "principal_type, principal_id"))
+@EntityListeners(AuditingEntityListener.class)
+public class FolderGrant {
+    public enum PrincipalType { USER, ROLE, DEPARTMENT }
+
+    public enum Access { READ, WRITE }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "folder_id", nullable = false)
+    private Long folderId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "principal_type", nullable = false, length = 16)
+    private PrincipalType principalType;
+
+    @Column(name = "principal_id", nullable = false)
+    private Long principalId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 8)
+    private Access access;
+
+    @CreatedDate
+    @Column(name = "createdDate", nullable = true, updatable = false)
+    private LocalDateTime createdDate;
+
+    @CreatedBy
+    @Column(name = "createdBy", nullable = true, updatable = false)
+    private Long createdBy;
+}
@@ -0,0 +1,39 @@
+package com.cosek.edms.folder;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface FolderGrantRepository extends JpaRepository<FolderGrant, Long> {
+
+    List<FolderGrant> findByFolderId(Long folderId);
+
+    Optional<FolderGrant> findByFolderIdAndPrincipalTypeAndPrincipalId(
+            Long folderId, FolderGrant.PrincipalType principalType, Long principalId);
+
+    // Every folder a user reaches through a grant on it or an ancestor, or through department
+    // ownership, with the strongest access that applies: 1 = read, 2 = write
+    @Query(value = "SELECT folder_id, MAX(access) FROM (" +
+            "SELECT p.descendant_id AS folder_id, CASE g.access WHEN 'WRITE' THEN 2 ELSE 1 END AS access " +
+            "FROM folder_grants g JOIN folder_paths p ON p.ancestor_id = g.folder_id " +
+            "WHERE (g.principal_type = 'USER' AND g.principal_id = :userId) " +
+            "OR (g.principal_type = 'ROLE' AND g.principal_id IN (:roleIds)) " +
+            "OR (g.principal_type = 'DEPARTMENT' AND g.principal_id = :departmentId) " +
+            "UNION ALL SELECT id, 1 FROM folders WHERE department_id = :departmentId" +
+            ") reachable GROUP BY folder_id", nativeQuery = true)
+    List<Object[]> findEffectiveAccess(@Param("userId") Long userId,
+                                       @Param("roleIds") Collection<Long> roleIds,
+                                       @Param("departmentId") Long departmentId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM folder_grants WHERE folder_id IN " +
+            "(SELECT descendant_id FROM folder_paths WHERE ancestor_id IN (:ids))", nativeQuery = true)
+    int deleteInSubtrees(@Param("ids") Collection<Long> ids);
+}
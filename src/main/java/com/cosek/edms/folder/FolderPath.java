@@ -0,0 +1,36 @@
+package com.cosek.edms.folder;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Closure table: one row for every (ancestor, descendant) pair, including each folder
+ * with itself at depth 0, so subtree and ancestry questions are single indexed lookups.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "folder_paths", indexes = @Index(name = "idx_folder_paths_descendant", columnList = "descendant_id, ancestor_id"))
+public class FolderPath {
+    @EmbeddedId
+    private Key id;
+
+    private int depth;
+
+    @Embeddable
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        @Column(name = "ancestor_id")
+        private Long ancestorId;
+
+        @Column(name = "descendant_id")
+        private Long descendantId;
+    }
+}
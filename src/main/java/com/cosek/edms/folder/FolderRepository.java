@@ -0,0 +1,78 @@
+package com.cosek.edms.folder;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface FolderRepository extends JpaRepository<Folder, Long> {
+
+    List<Folder> findByDepartmentId(Long departmentId);
+
+    @Query("SELECT f FROM Folder f, FolderPath p WHERE p.id.descendantId = f.id AND p.id.ancestorId = :id ORDER BY p.depth, f.name")
+    List<Folder> findSubtree(@Param("id") Long id);
+
+    @Query("SELECT COUNT(p) FROM FolderPath p WHERE p.id.ancestorId = :id")
+    long countSubtree(@Param("id") Long id);
+
+    @Query("SELECT COUNT(p) FROM FolderPath p WHERE p.id.ancestorId = :ancestorId AND p.id.descendantId = :descendantId")
+    long countPath(@Param("ancestorId") Long ancestorId, @Param("descendantId") Long descendantId);
+
+    // Members of the set that sit below another member; they travel with that member's subtree
+    @Query(value = "SELECT DISTINCT descendant_id FROM folder_paths " +
+            "WHERE ancestor_id IN (:ids) AND descendant_id IN (:ids) AND depth > 0", nativeQuery = true)
+    List<Long> findNestedIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "INSERT INTO folder_paths (ancestor_id, descendant_id, depth) " +
+            "SELECT ancestor_id, :id, depth + 1 FROM folder_paths WHERE descendant_id = :parentId " +
+            "UNION ALL SELECT :id, :id, 0", nativeQuery = true)
+    int insertPaths(@Param("id") Long id, @Param("parentId") Long parentId);
+
+    // Separate root variants: a null parameter binds untyped, which SQL Server rejects for bigint
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "INSERT INTO folder_paths (ancestor_id, descendant_id, depth) VALUES (:id, :id, 0)", nativeQuery = true)
+    int insertRootPath(@Param("id") Long id);
+
+    // Cuts every path that enters the subtree from outside it; paths inside the subtree stay
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM folder_paths " +
+            "WHERE descendant_id IN (SELECT descendant_id FROM folder_paths WHERE ancestor_id = :id) " +
+            "AND ancestor_id NOT IN (SELECT descendant_id FROM folder_paths WHERE ancestor_id = :id)", nativeQuery = true)
+    int detachSubtree(@Param("id") Long id);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "INSERT INTO folder_paths (ancestor_id, descendant_id, depth) " +
+            "SELECT above.ancestor_id, below.descendant_id, above.depth + below.depth + 1 " +
+            "FROM folder_paths above CROSS JOIN folder_paths below " +
+            "WHERE above.descendant_id = :parentId AND below.ancestor_id = :id", nativeQuery = true)
+    int attachSubtree(@Param("id") Long id, @Param("parentId") Long parentId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE folders SET parent_id = :parentId WHERE id IN (:ids)", nativeQuery = true)
+    int updateParent(@Param("ids") Collection<Long> ids, @Param("parentId") Long parentId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE folders SET parent_id = NULL WHERE id IN (:ids)", nativeQuery = true)
+    int clearParent(@Param("ids") Collection<Long> ids);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE f SET f.department_id = :departmentId FROM folders f " +
+            "JOIN folder_paths p ON p.descendant_id = f.id WHERE p.ancestor_id IN (:ids)", nativeQuery = true)
+    int updateSubtreeDepartment(@Param("ids") Collection<Long> ids, @Param("departmentId") Long departmentId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM folders WHERE id IN " +
+            "(SELECT descendant_id FROM folder_paths WHERE ancestor_id IN (:ids))", nativeQuery = true)
+    int deleteSubtreeFolders(@Param("ids") Collection<Long> ids);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM folder_paths WHERE descendant_id IN " +
+            "(SELECT descendant_id FROM folder_paths WHERE ancestor_id IN (:ids))", nativeQuery = true)
+    int deleteSubtreePaths(@Param("ids") Collection<Long> ids);
+}
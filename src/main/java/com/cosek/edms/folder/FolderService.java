@@ -0,0 +1,304 @@
+package com.cosek.edms.folder;
+
+import com.cosek.edms.exception.NotFoundException;
+import com.cosek.edms.file.ContentStore;
+import com.cosek.edms.file.FileRepository;
+import com.cosek.edms.file.MetadataEntryRepository;
+import com.cosek.edms.folder.FolderAccessIndex.Acl;
+import com.cosek.edms.folder.Models.FolderBulkUpdateRequest;
+import com.cosek.edms.folder.Models.FolderGrantRequest;
+import com.cosek.edms.folder.Models.FolderRequest;
+import com.cosek.edms.folder.Models.FolderSize;
+import com.cosek.edms.search.SearchService;
+import com.cosek.edms.version.VersionService;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+import static com.cosek.edms.helper.Constants.SUCCESSFUL_DELETION;
+
+@Service
+@RequiredArgsConstructor
+public class FolderService {
+    private static final int IN_CLAUSE_LIMIT = 1000;
+
+    private final FolderRepository folderRepository;
+    private final FileRepository fileRepository;
+    private final MetadataEntryRepository metadataEntryRepository;
+    private final ContentStore contentStore;
+    private final VersionService versionService;
+    private final FolderGrantRepository folderGrantRepository;
+    private final FolderAccessIndex folderAccessIndex;
+    private final SearchService searchService;
+
+    public List<Folder> findAllFolders() {
+        return folderAccessIndex.current().filterReadable(folderRepository.findAll(), Folder::getId);
+    }
+
+    // Folders the caller cannot read are reported as missing rather than forbidden
+    public Folder findFolder(Long id) throws NotFoundException {
+        if (!folderAccessIndex.current().canRead(id)) {
+            throw new NotFoundException("Folder not found");
+        }
+        return loadFolder(id);
+    }
+
+    public List<Folder> findDepartmentFolders(Long departmentId) {
+        return folderAccessIndex.current().filterReadable(folderRepository.findByDepartmentId(departmentId), Folder::getId);
+    }
+
+    // The folder itself first, then its descendants by depth
+    public List<Folder> findSubtree(Long id) throws NotFoundException {
+        Acl acl = folderAccessIndex.current();
+        List<Folder> subtree = folderRepository.findSubtree(id);
+        if (subtree.isEmpty() || !acl.canRead(id)) {
+            throw new NotFoundException("Folder not found");
+        }
+        return acl.filterReadable(subtree, Folder::getId);
+    }
+
+    public FolderSize getSubtreeSize(Long id) throws NotFoundException {
+        if (!folderAccessIndex.current().canRead(id)) {
+            throw new NotFoundException("Folder not found");
+        }
+        long folders = folderRepository.countSubtree(id);
+        if (folders == 0) {
+            throw new NotFoundException("Folder not found");
+        }
+        Object[] files = fileRepository.sumSubtree(id).get(0);
+        return new FolderSize(id, folders, ((Number) files[0]).longValue(), ((Number) files[1]).longValue());
+    }
+
+    @Transactional
+    public Folder createFolder(FolderRequest request) throws NotFoundException {
+        if (request.getName() == null || request.getName().isBlank()) {
+            throw new IllegalArgumentException("name is required");
+        }
+        Acl acl = folderAccessIndex.current();
+        Long departmentId = request.getDepartmentId();
+        Long inherited = null;
+        if (request.getParentId() != null) {
+            Folder parent = findFolder(request.getParentId());
+            requireWrite(acl, List.of(parent.getId()));
+            inherited = parent.getDepartmentId();
+        }
+        if (departmentId != null && !departmentId.equals(inherited)) {
+            requireDepartment(acl, departmentId);
+        }
+        departmentId = departmentId != null ? departmentId : inherited;
+        Folder saved = folderRepository.save(Folder.builder()
+                .name(request.getName())
+                .parentId(request.getParentId())
+                .departmentId(departmentId)
+                .build());
+        if (request.getParentId() != null) {
+            folderRepository.insertPaths(saved.getId(), request.getParentId());
+        } else {
+            folderRepository.insertRootPath(saved.getId());
+        }
+        if (request.getParentId() == null && !acl.unrestricted() && acl.userId() != null) {
+            // Nothing above a new root folder grants access to it, so its creator gets write access
+            folderGrantRepository.save(FolderGrant.builder()
+                    .folderId(saved.getId())
+                    .principalType(FolderGrant.PrincipalType.USER)
+                    .principalId(acl.userId())
+                    .access(FolderGrant.Access.WRITE)
+                    .build());
+            // folderCreated only derives access from the parent and department, not from this grant
+            folderAccessIndex.grantChanged(FolderGrant.PrincipalType.USER, acl.userId());
+        }
+        folderAccessIndex.folderCreated(saved.getId(), request.getParentId(), departmentId);
+        return saved;
+    }
+
+    // PUT semantics: a null parentId moves the folder to the root; a department change covers the subtree
+    @Transactional
+    public Folder updateFolder(Long id, FolderRequest request) throws NotFoundException {
+        Folder folder = findFolder(id);
+        Acl acl = folderAccessIndex.current();
+        requireWrite(acl, List.of(id));
+        boolean moved = !Objects.equals(folder.getParentId(), request.getParentId());
+        boolean departmentChanged = request.getDepartmentId() != null
+                && !request.getDepartmentId().equals(folder.getDepartmentId());
+        if (departmentChanged) {
+            requireDepartment(acl, request.getDepartmentId());
+        }
+        if (moved) {
+            checkMoveTarget(List.of(id), request.getParentId());
+        }
+        if (request.getName() != null && !request.getName().isBlank()) {
+            folder.setName(request.getName());
+        }
+        folder.setParentId(request.getParentId());
+        folderRepository.save(folder);
+
+        if (moved) {
+            move(id, request.getParentId());
+        }
+        if (departmentChanged) {
+            folderRepository.updateSubtreeDepartment(List.of(id), request.getDepartmentId());
+        }
+        if (moved || departmentChanged) {
+            folderAccessIndex.structureChanged();
+        }
+        return loadFolder(id);
+    }
+
+    @Transactional
+    public Map<String, Object> updateFolders(FolderBulkUpdateRequest request) throws NotFoundException {
+        Set<Long> ids = distinctIds(request.getIds());
+        if (ids.size() > IN_CLAUSE_LIMIT) {
+            throw new IllegalArgumentException("At most " + IN_CLAUSE_LIMIT + " folders can be updated at once");
+        }
+        Acl acl = folderAccessIndex.current();
+        requireWrite(acl, ids);
+        if (request.getDepartmentId() != null) {
+            requireDepartment(acl, request.getDepartmentId());
+        }
+        int moved = 0;
+        int updated = 0;
+        if (!ids.isEmpty() && (request.getParentId() != null || request.isMoveToRoot())) {
+            Long parentId = request.isMoveToRoot() ? null : request.getParentId();
+            // Folders nested under another listed folder already move with it
+            Set<Long> roots = new LinkedHashSet<>(ids);
+            roots.removeAll(folderRepository.findNestedIds(ids));
+            checkMoveTarget(roots, parentId);
+            for (Long root : roots) {
+                move(root, parentId);
+            }
+            moved = parentId != null
+                    ? folderRepository.updateParent(roots, parentId)
+                    : folderRepository.clearParent(roots);
+        }
+        if (!ids.isEmpty() && request.getDepartmentId() != null) {
+            updated = folderRepository.updateSubtreeDepartment(ids, request.getDepartmentId());
+        }
+        if (moved > 0 || updated > 0) {
+            folderAccessIndex.structureChanged();
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("ids", ids);
+        response.put("moved", moved);
+        response.put("updated", updated);
+        return response;
+    }
+
+    // Whole subtrees go in a fixed number of statements per chunk, files included
+    @Transactional
+    public Map<String, Object> deleteFolders(List<Long> ids) {
+        Set<Long> folderIds = distinctIds(ids);
+        requireWrite(folderAccessIndex.current(), folderIds);
+        List<Long> idList = new ArrayList<>(folderIds);
+        List<String> hashes = new ArrayList<>();
+        List<Long> fileIds = new ArrayList<>();
+        int deleted = 0;
+        for (int from = 0; from < idList.size(); from += IN_CLAUSE_LIMIT) {
+            List<Long> chunk = idList.subList(from, Math.min(from + IN_CLAUSE_LIMIT, idList.size()));
+            fileIds.addAll(fileRepository.findIdsInSubtrees(chunk));
+            hashes.addAll(fileRepository.findContentHashesInSubtrees(chunk));
+            metadataEntryRepository.deleteInSubtrees(chunk);
+            fileRepository.deleteInSubtrees(chunk);
+            folderGrantRepository.deleteInSubtrees(chunk);
+            deleted += folderRepository.deleteSubtreeFolders(chunk);
+            folderRepository.deleteSubtreePaths(chunk);
+        }
+        versionService.removeFiles(fileIds);
+        contentStore.release(hashes);
+        searchService.removeFiles(fileIds);
+        folderAccessIndex.structureChanged();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("messages", SUCCESSFUL_DELETION);
+        response.put("ids", folderIds);
+        response.put("deleted", deleted);
+        response.put("filesDeleted", hashes.size());
+        return response;
+    }
+
+    public List<FolderGrant> findGrants(Long folderId) throws NotFoundException {
+        findFolder(folderId);
+        return folderGrantRepository.findByFolderId(folderId);
+    }
+
+    // One grant per principal and folder; granting again replaces the access level
+    @Transactional
+    public FolderGrant grantAccess(Long folderId, FolderGrantRequest request) throws NotFoundException {
+        if (request.getPrincipalType() == null || request.getPrincipalId() == null || request.getAccess() == null) {
+            throw new IllegalArgumentException("principalType, principalId and access are required");
+        }
+        loadFolder(folderId);
+        FolderGrant grant = folderGrantRepository.findByFolderIdAndPrincipalTypeAndPrincipalId(
+                        folderId, request.getPrincipalType(), request.getPrincipalId())
+                .orElseGet(() -> FolderGrant.builder()
+                        .folderId(folderId)
+                        .principalType(request.getPrincipalType())
+                        .principalId(request.getPrincipalId())
+                        .build());
+        grant.setAccess(request.getAccess());
+        FolderGrant saved = folderGrantRepository.save(grant);
+        folderAccessIndex.grantChanged(saved.getPrincipalType(), saved.getPrincipalId());
+        return saved;
+    }
+
+    @Transactional
+    public void revokeGrant(Long grantId) throws NotFoundException {
+        FolderGrant grant = folderGrantRepository.findById(grantId)
+                .orElseThrow(() -> new NotFoundException("Grant not found"));
+        folderGrantRepository.delete(grant);
+        folderAccessIndex.grantChanged(grant.getPrincipalType(), grant.getPrincipalId());
+    }
+
+    private Folder loadFolder(Long id) throws NotFoundException {
+        return folderRepository.findById(id)
+                .orElseThrow(() -> new NotFoundException("Folder not found"));
+    }
+
+    private static void requireWrite(Acl acl, Collection<Long> folderIds) {
+        for (Long folderId : folderIds) {
+            if (!acl.canWrite(folderId)) {
+                throw new AccessDeniedException("No write access to folder " + folderId);
+            }
+        }
+    }
+
+    // Department members read its folders and its quota pays for them, so only the caller's own department can be assigned
+    private static void requireDepartment(Acl acl, Long departmentId) {
+        if (!acl.unrestricted() && !departmentId.equals(acl.departmentId())) {
+            throw new AccessDeniedException("Only folder access managers can assign folders to department " + departmentId);
+        }
+    }
+
+    private void checkMoveTarget(Collection<Long> ids, Long parentId) throws NotFoundException {
+        if (parentId == null) {
+            return;
+        }
+        findFolder(parentId);
+        requireWrite(folderAccessIndex.current(), List.of(parentId));
+        for (Long id : ids) {
+            if (folderRepository.countPath(id, parentId) > 0) {
+                throw new IllegalArgumentException("Folder " + id + " cannot be moved into its own subtree");
+            }
+        }
+    }
+
+    private void move(Long id, Long parentId) {
+        folderRepository.detachSubtree(id);
+        if (parentId != null) {
+            folderRepository.attachSubtree(id, parentId);
+        }
+    }
+
+    private static Set<Long> distinctIds(List<Long> ids) {
+        Set<Long> distinct = new LinkedHashSet<>();
+        if (ids != null) {
+            ids.stream().filter(Objects::nonNull).forEach(distinct::add);
+        }
+        return distinct;
+    }
+}
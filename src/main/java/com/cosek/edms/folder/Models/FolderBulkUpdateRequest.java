@@ -0,0 +1,20 @@
+package com.cosek.edms.folder.Models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Applied to the whole subtree of every listed folder; null fields are left unchanged
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class FolderBulkUpdateRequest {
+    private List<Long> ids;
+    private Long parentId;
+    private boolean moveToRoot;
+    private Long departmentId;
+}
@@ -0,0 +1,17 @@
+package com.cosek.edms.folder.Models;
+
+import com.cosek.edms.folder.FolderGrant;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class FolderGrantRequest {
+    private FolderGrant.PrincipalType principalType;
+    private Long principalId;
+    private FolderGrant.Access access;
+}
@@ -0,0 +1,16 @@
+package com.cosek.edms.folder.Models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class FolderRequest {
+    private String name;
+    private Long parentId;
+    private Long departmentId;
+}
@@ -0,0 +1,5 @@
+package com.cosek.edms.folder.Models;
+
+// Totals for a folder and everything below it
+public record FolderSize(Long folderId, long folders, long files, long bytes) {
+}
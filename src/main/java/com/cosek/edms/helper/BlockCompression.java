@@ -0,0 +1,300 @@
+package com.cosek.edms.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Seekable deflate format for {@link ContentCodec#DEFLATE_BLOCKS}. The plaintext is cut
+ * into fixed 64 KiB blocks that are deflated independently, followed by a trailer holding
+ * each block's compressed length, the plaintext size and the block count. A range read
+ * loads the trailer, then reads and inflates only the blocks covering the range.
+ */
+public final class BlockCompression {
+    public static final int BLOCK_SIZE = 64 * 1024;
+    // plainSize(8) blockCount(4)
+    static final int FOOTER_SIZE = 12;
+
+    private BlockCompression() {
+    }
+
+    // Reads length bytes of the compressed stream starting at offset
+    @FunctionalInterface
+    public interface RangeReader {
+        void read(long offset, long length, OutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes {@code length} plaintext bytes starting at {@code offset} of a stream whose
+     * compressed form is {@code compressedSize} bytes, served by {@code compressed}.
+     */
+    public static void inflate(RangeReader compressed, long compressedSize, long offset, long length, OutputStream out) throws IOException {
+        inflate(compressed, Index.read(compressed, compressedSize), offset, length, out);
+    }
+
+    public static void inflate(RangeReader compressed, long compressedSize, OutputStream out) throws IOException {
+        Index index = Index.read(compressed, compressedSize);
+        inflate(compressed, index, 0, index.plainSize(), out);
+    }
+
+    private static void inflate(RangeReader compressed, Index index, long offset, long length, OutputStream out) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > index.plainSize()) {
+            throw new IOException("Requested range extends past the end of the content");
+        }
+        if (length == 0) {
+            return;
+        }
+        int first = (int) (offset / BLOCK_SIZE);
+        int last = (int) ((offset + length - 1) / BLOCK_SIZE);
+        BlockInflater blocks = new BlockInflater(index, first, offset - (long) first * BLOCK_SIZE, length, out);
+        try {
+            compressed.read(index.start(first), index.start(last + 1) - index.start(first), blocks);
+            blocks.finish();
+        } finally {
+            blocks.end();
+        }
+    }
+
+    // Compressed block offsets, prefix sums of the lengths in the trailer
+    record Index(long plainSize, long[] starts) {
+        static Index read(RangeReader compressed, long compressedSize) throws IOException {
+            if (compressedSize < FOOTER_SIZE) {
+                throw new IOException("Compressed content is truncated");
+            }
+            DataInputStream footer = new DataInputStream(new ByteArrayInputStream(
+                    readRange(compressed, compressedSize - FOOTER_SIZE, FOOTER_SIZE)));
+            long plainSize = footer.readLong();
+            int blockCount = footer.readInt();
+            long lengthsSize = 4L * blockCount;
+            if (plainSize < 0 || blockCount != (plainSize + BLOCK_SIZE - 1) / BLOCK_SIZE
+                    || lengthsSize > compressedSize - FOOTER_SIZE) {
+                throw new IOException("Compressed content has a corrupt block index");
+            }
+            ByteBuffer lengths = ByteBuffer.wrap(readRange(compressed, compressedSize - FOOTER_SIZE - lengthsSize, lengthsSize));
+            long[] starts = new long[blockCount + 1];
+            for (int i = 0; i < blockCount; i++) {
+                int blockLength = lengths.getInt();
+                if (blockLength <= 0) {
+                    throw new IOException("Compressed content has a corrupt block index");
+                }
+                starts[i + 1] = starts[i] + blockLength;
+            }
+            if (starts[blockCount] != compressedSize - FOOTER_SIZE - lengthsSize) {
+                throw new IOException("Compressed content has a corrupt block index");
+            }
+            return new Index(plainSize, starts);
+        }
+
+        long start(int block) {
+            return starts[block];
+        }
+
+        int plainLength(int block) {
+            return (int) Math.min(BLOCK_SIZE, plainSize - (long) block * BLOCK_SIZE);
+        }
+    }
+
+    private static byte[] readRange(RangeReader compressed, long offset, long length) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) length);
+        compressed.read(offset, length, buffer);
+        if (buffer.size() != length) {
+            throw new IOException("Compressed content is truncated");
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Deflates the source block by block as it is read, then appends the trailer.
+     * Closing it releases the deflater and closes the source.
+     */
+    public static final class Deflating extends InputStream {
+        private final InputStream in;
+        private final Deflater deflater;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private byte[] output = new byte[BLOCK_SIZE + BLOCK_SIZE / 8];
+        private int[] lengths = new int[64];
+        private int blockCount;
+        private long plainSize;
+        private int position;
+        private int limit;
+        private boolean done;
+
+        public Deflating(InputStream in, int level) {
+            this.in = in;
+            this.deflater = new Deflater(level, true);
+        }
+
+        public long plainSize() {
+            return plainSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position == limit) {
+                if (done) {
+                    return -1;
+                }
+                fill();
+            }
+            int count = Math.min(len, limit - position);
+            System.arraycopy(output, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return limit - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            in.close();
+        }
+
+        // One block of the source, or the trailer once the source is exhausted
+        private void fill() throws IOException {
+            int read = in.readNBytes(block, 0, BLOCK_SIZE);
+            position = 0;
+            limit = 0;
+            if (read > 0) {
+                plainSize += read;
+                deflater.reset();
+                deflater.setInput(block, 0, read);
+                deflater.finish();
+                while (!deflater.finished()) {
+                    if (limit == output.length) {
+                        output = Arrays.copyOf(output, output.length * 2);
+                    }
+                    limit += deflater.deflate(output, limit, output.length - limit);
+                }
+                if (blockCount == lengths.length) {
+                    lengths = Arrays.copyOf(lengths, blockCount * 2);
+                }
+                lengths[blockCount++] = limit;
+            }
+            if (read < BLOCK_SIZE) {
+                trailer();
+            }
+        }
+
+        private void trailer() {
+            int size = 4 * blockCount + FOOTER_SIZE;
+            ByteBuffer trailer = ByteBuffer.allocate(size);
+            for (int i = 0; i < blockCount; i++) {
+                trailer.putInt(lengths[i]);
+            }
+            trailer.putLong(plainSize).putInt(blockCount);
+            if (output.length - limit < size) {
+                output = Arrays.copyOf(output, limit + size);
+            }
+            System.arraycopy(trailer.array(), 0, output, limit, size);
+            limit += size;
+            done = true;
+        }
+    }
+
+    // Collects each block's compressed bytes as they stream in and writes the part of its plaintext inside the range
+    private static final class BlockInflater extends OutputStream {
+        private final Index index;
+        private final OutputStream out;
+        private final Inflater inflater = new Inflater(true);
+        // One spare byte, so a block inflating past its size is caught rather than cut off
+        private final byte[] plain = new byte[BLOCK_SIZE + 1];
+        private byte[] compressed = new byte[BLOCK_SIZE];
+        private int block;
+        private int filled;
+        private long skip;
+        private long remaining;
+
+        BlockInflater(Index index, int first, long skip, long length, OutputStream out) {
+            this.index = index;
+            this.block = first;
+            this.skip = skip;
+            this.remaining = length;
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (remaining == 0) {
+                    throw new IOException("Compressed content runs past the requested blocks");
+                }
+                int blockLength = (int) (index.start(block + 1) - index.start(block));
+                if (compressed.length < blockLength) {
+                    compressed = Arrays.copyOf(compressed, blockLength);
+                }
+                int take = Math.min(len, blockLength - filled);
+                System.arraycopy(b, off, compressed, filled, take);
+                filled += take;
+                off += take;
+                len -= take;
+                if (filled == blockLength) {
+                    emit(blockLength);
+                }
+            }
+        }
+
+        void finish() throws IOException {
+            if (remaining > 0) {
+                throw new IOException("Compressed content is truncated");
+            }
+        }
+
+        void end() {
+            inflater.end();
+        }
+
+        private void emit(int blockLength) throws IOException {
+            int expected = index.plainLength(block);
+            inflater.reset();
+            inflater.setInput(compressed, 0, blockLength);
+            int inflated = 0;
+            try {
+                while (!inflater.finished()) {
+                    int count = inflater.inflate(plain, inflated, plain.length - inflated);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary() || inflated == plain.length)) {
+                        break;
+                    }
+                    inflated += count;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Compressed block " + block + " is corrupt", e);
+            }
+            if (!inflater.finished() || inflated != expected) {
+                throw new IOException("Compressed block " + block + " does not inflate to its size");
+            }
+            int from = (int) skip;
+            int count = (int) Math.min(remaining, expected - from);
+            out.write(plain, from, count);
+            remaining -= count;
+            skip = 0;
+            filled = 0;
+            block++;
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package com.cosek.edms.helper;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
+
+/**
+ * Chunked AES-GCM stream format. Content is sealed in independent chunks, each with
+ * its own nonce and a tag that also covers the chunk index and whether it is the final
+ * chunk, so chunks cannot be reordered, dropped or truncated without failing authentication.
+ *
+ * Layout: magic(4) version(1) chunkSize(4) noncePrefix(8), then per chunk
+ * [nonce(12)] ciphertext(up to chunkSize) + tag(16). The last chunk may be empty.
+ * Version 1 derives each nonce from the prefix and chunk index, for content sealed once
+ * front to back. Version 2 stores a random nonce with every chunk, so chunks can be
+ * sealed in any order and safely sealed again, as resumable uploads need.
+ */
+public final class ChunkedCipher {
+    public static final byte VERSION = 1;
+    public static final byte VERSION_RANDOM_ACCESS = 2;
+    public static final int CHUNK_SIZE = 64 * 1024;
+    public static final int TAG_SIZE = 16;
+    public static final int NONCE_SIZE = 12;
+    public static final int HEADER_SIZE = 17;
+
+    private static final byte[] MAGIC = {'E', 'D', 'M', 'C'};
+    private static final int NONCE_PREFIX_SIZE = 8;
+    private static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+    private static final int BUFFER_SIZE = CHUNK_SIZE + NONCE_SIZE + TAG_SIZE;
+    private static final int PARALLELISM = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    private static final int POOLED_BUFFERS = 256;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM is not available", e);
+        }
+    });
+    // Direct buffers are costly to allocate, so chunk-sized ones are recycled across calls
+    private static final Queue<ByteBuffer> BUFFERS = new ConcurrentLinkedQueue<>();
+
+    private ChunkedCipher() {
+    }
+
+    public static boolean isChunkedFormat(byte[] prefix) {
+        return prefix.length >= MAGIC.length + 1
+                && Arrays.equals(prefix, 0, MAGIC.length, MAGIC, 0, MAGIC.length)
+                && (prefix[MAGIC.length] == VERSION || prefix[MAGIC.length] == VERSION_RANDOM_ACCESS);
+    }
+
+    // Returns the number of plaintext bytes consumed
+    public static long encrypt(SecretKey key, ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        Header header = new Header(VERSION, CHUNK_SIZE, randomBytes(NONCE_PREFIX_SIZE));
+        writeFully(out, header.toBuffer());
+
+        // One extra plaintext slot holds the read-ahead chunk that tells whether the batch ends the stream
+        ByteBuffer[] plain = new ByteBuffer[PARALLELISM + 1];
+        ByteBuffer[] sealed = new ByteBuffer[PARALLELISM + 1];
+        Arrays.setAll(plain, i -> acquire());
+        Arrays.setAll(sealed, i -> acquire());
+        try {
+            long index = 0;
+            long total = 0;
+            int held = 0;
+            boolean eof = false;
+            while (true) {
+                while (held <= PARALLELISM && !eof) {
+                    ByteBuffer chunk = plain[held].clear().limit(CHUNK_SIZE);
+                    readFully(in, chunk);
+                    chunk.flip();
+                    eof = chunk.remaining() < CHUNK_SIZE;
+                    // An empty read only becomes a chunk of its own when the whole stream is empty
+                    if (chunk.hasRemaining() || held == 0) {
+                        held++;
+                    }
+                }
+                int sealing = eof ? held : PARALLELISM;
+                long first = index;
+                boolean finalBatch = eof;
+                if (sealing == 1) {
+                    seal(key, header, first, finalBatch, plain[0], sealed[0]);
+                } else {
+                    IntStream.range(0, sealing).parallel().forEach(i ->
+                            seal(key, header, first + i, finalBatch && i == sealing - 1, plain[i], sealed[i]));
+                }
+                for (int i = 0; i < sealing; i++) {
+                    total += plain[i].limit();
+                    writeFully(out, sealed[i]);
+                }
+                index += sealing;
+                if (eof) {
+                    return total;
+                }
+                ByteBuffer carried = plain[PARALLELISM];
+                plain[PARALLELISM] = plain[0];
+                plain[0] = carried;
+                held = 1;
+            }
+        } finally {
+            Arrays.stream(plain).forEach(ChunkedCipher::release);
+            Arrays.stream(sealed).forEach(ChunkedCipher::release);
+        }
+    }
+
+    public static void decrypt(SecretKey key, ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        Header header = readHeader(in);
+        int recordSize = header.recordSize();
+        ByteBuffer current = buffer(recordSize);
+        ByteBuffer next = buffer(recordSize);
+        ByteBuffer plain = buffer(recordSize);
+        try {
+            readFully(in, current.clear().limit(recordSize));
+            current.flip();
+            for (long index = 0; ; index++) {
+                boolean last = current.remaining() < recordSize;
+                if (!last) {
+                    readFully(in, next.clear().limit(recordSize));
+                    next.flip();
+                    last = !next.hasRemaining();
+                }
+                open(key, header, index, last, current, plain);
+                writeFully(out, plain);
+                if (last) {
+                    return;
+                }
+                ByteBuffer swap = current;
+                current = next;
+                next = swap;
+            }
+        } finally {
+            release(current);
+            release(next);
+            release(plain);
+        }
+    }
+
+    /**
+     * Decrypts {@code length} plaintext bytes starting at {@code offset}, reading only the
+     * chunks that cover the range. The final-chunk flag is derived from the stored size.
+     */
+    public static void decryptRange(SecretKey key, FileChannel in, long offset, long length, WritableByteChannel out) throws IOException {
+        Header header = readHeader(in);
+        int chunkSize = header.chunkSize();
+        long recordSize = header.recordSize();
+        long lastIndex = Math.max(0, (in.size() - HEADER_SIZE + recordSize - 1) / recordSize - 1);
+
+        ByteBuffer sealed = buffer((int) recordSize);
+        ByteBuffer plain = buffer((int) recordSize);
+        try {
+            long index = offset / chunkSize;
+            int skip = (int) (offset % chunkSize);
+            long remaining = length;
+            while (remaining > 0 && index <= lastIndex) {
+                readFully(in, sealed.clear().limit((int) recordSize), HEADER_SIZE + index * recordSize);
+                open(key, header, index, index == lastIndex, sealed.flip(), plain);
+                plain.position(Math.min(skip, plain.limit()));
+                if (plain.remaining() > remaining) {
+                    plain.limit(plain.position() + (int) remaining);
+                }
+                remaining -= plain.remaining();
+                writeFully(out, plain);
+                skip = 0;
+                index++;
+            }
+            if (remaining > 0) {
+                throw new IOException("Requested range extends past the end of the content");
+            }
+        } finally {
+            release(sealed);
+            release(plain);
+        }
+    }
+
+    // Plaintext bytes held by a chunked file, from its size and the header's chunk layout
+    public static long plainSize(FileChannel in) throws IOException {
+        Header header = readHeader(in);
+        long recordSize = header.recordSize();
+        long sealed = in.size() - HEADER_SIZE;
+        long records = Math.max(1, (sealed + recordSize - 1) / recordSize);
+        long plain = sealed - records * (recordSize - header.chunkSize());
+        if (plain < 0) {
+            throw new IOException("Encrypted content is truncated");
+        }
+        return plain;
+    }
+
+    // Size of a version 2 file holding plainSize bytes
+    public static long randomAccessSize(long plainSize) {
+        long chunks = Math.max(1, (plainSize + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        return HEADER_SIZE + plainSize + chunks * (NONCE_SIZE + TAG_SIZE);
+    }
+
+    /**
+     * Lays out an empty version 2 file for plainSize bytes: the header is written and the
+     * file extended to its final (sparse) size, so chunks can be sealed into it in any order.
+     */
+    public static void initRandomAccess(SecretKey key, FileChannel out, long plainSize) throws IOException {
+        Header header = new Header(VERSION_RANDOM_ACCESS, CHUNK_SIZE, randomBytes(NONCE_PREFIX_SIZE));
+        writeFully(out, header.toBuffer(), 0);
+        if (plainSize == 0) {
+            sealAt(key, out, 0, 0, 0, Channels.newChannel(InputStream.nullInputStream()));
+            return;
+        }
+        writeFully(out, ByteBuffer.allocate(1), randomAccessSize(plainSize) - 1);
+    }
+
+    /**
+     * Seals {@code length} bytes read from {@code in} as the chunks starting at {@code offset},
+     * which must fall on a chunk boundary, of a file laid out by {@link #initRandomAccess}.
+     */
+    public static void sealAt(SecretKey key, FileChannel out, long plainSize, long offset, long length, ReadableByteChannel in) throws IOException {
+        if (offset % CHUNK_SIZE != 0 || offset + length > plainSize) {
+            throw new IllegalArgumentException("Range does not fit the chunk layout");
+        }
+        Header header = readHeader(out);
+        if (header.version() != VERSION_RANDOM_ACCESS) {
+            throw new IOException("Chunks can only be sealed in place into a version 2 file");
+        }
+        long lastIndex = Math.max(0, (plainSize + CHUNK_SIZE - 1) / CHUNK_SIZE - 1);
+        ByteBuffer plain = acquire();
+        ByteBuffer sealed = acquire();
+        try {
+            long index = offset / CHUNK_SIZE;
+            long remaining = length;
+            do {
+                int size = (int) Math.min(CHUNK_SIZE, remaining);
+                readFully(in, plain.clear().limit(size));
+                if (plain.hasRemaining()) {
+                    throw new IOException("Content ended before the expected length");
+                }
+                seal(key, header, index, index == lastIndex, plain.flip(), sealed);
+                writeFully(out, sealed, HEADER_SIZE + index * header.recordSize());
+                remaining -= size;
+                index++;
+            } while (remaining > 0);
+        } finally {
+            release(plain);
+            release(sealed);
+        }
+    }
+
+    public static Header readHeader(ReadableByteChannel in) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(in, header);
+        return parseHeader(header.flip());
+    }
+
+    public static Header readHeader(FileChannel in) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(in, header, 0);
+        return parseHeader(header.flip());
+    }
+
+    private static Header parseHeader(ByteBuffer header) throws IOException {
+        byte[] prefix = new byte[MAGIC.length + 1];
+        if (header.remaining() < HEADER_SIZE || !isChunkedFormat(header.get(prefix).array())) {
+            throw new IOException("Not a chunked encrypted stream");
+        }
+        int chunkSize = header.getInt();
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IOException("Invalid chunk size " + chunkSize);
+        }
+        byte[] noncePrefix = new byte[NONCE_PREFIX_SIZE];
+        header.get(noncePrefix);
+        return new Header(prefix[MAGIC.length], chunkSize, noncePrefix);
+    }
+
+    static void open(SecretKey key, Header header, long index, boolean last, ByteBuffer sealed, ByteBuffer plain) throws IOException {
+        int overhead = header.recordSize() - header.chunkSize();
+        if (sealed.remaining() < overhead) {
+            throw new IOException("Encrypted content is truncated");
+        }
+        try {
+            byte[] nonce;
+            if (header.version() == VERSION_RANDOM_ACCESS) {
+                nonce = new byte[NONCE_SIZE];
+                sealed.get(nonce);
+            } else {
+                nonce = nonce(header.noncePrefix(), index);
+            }
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * 8, nonce));
+            cipher.updateAAD(aad(header.version(), index, last));
+            plain.clear();
+            cipher.doFinal(sealed, plain);
+            plain.flip();
+        } catch (AEADBadTagException e) {
+            throw new IOException("Encrypted chunk " + index + " failed authentication", e);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Error decrypting chunk " + index, e);
+        }
+    }
+
+    private static void seal(SecretKey key, Header header, long index, boolean last, ByteBuffer plain, ByteBuffer sealed) {
+        try {
+            sealed.clear();
+            byte[] nonce;
+            if (header.version() == VERSION_RANDOM_ACCESS) {
+                nonce = randomBytes(NONCE_SIZE);
+                sealed.put(nonce);
+            } else {
+                nonce = nonce(header.noncePrefix(), index);
+            }
+            Cipher cipher = CIPHERS.get();
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * 8, nonce));
+            cipher.updateAAD(aad(header.version(), index, last));
+            cipher.doFinal(plain.duplicate(), sealed);
+            sealed.flip();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Error encrypting chunk " + index, e);
+        }
+    }
+
+    private static byte[] nonce(byte[] noncePrefix, long index) {
+        if (index > 0xFFFFFFFFL) {
+            throw new IllegalStateException("Stream exceeds the maximum number of chunks");
+        }
+        return ByteBuffer.allocate(NONCE_SIZE).put(noncePrefix).putInt((int) index).array();
+    }
+
+    private static byte[] aad(byte version, long index, boolean last) {
+        return ByteBuffer.allocate(10).put(version).putLong(index).put((byte) (last ? 1 : 0)).array();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        RANDOM.nextBytes(bytes);
+        return bytes;
+    }
+
+    static void readFully(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining() && in.read(buffer) >= 0) {
+            // keep reading until the buffer is full or the stream ends
+        }
+    }
+
+    static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        int read;
+        while (buffer.hasRemaining() && (read = in.read(buffer, position)) >= 0) {
+            position += read;
+        }
+    }
+
+    static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    static void writeFully(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += out.write(buffer, position);
+        }
+    }
+
+    private static ByteBuffer buffer(int recordSize) {
+        return recordSize <= BUFFER_SIZE ? acquire() : ByteBuffer.allocateDirect(recordSize);
+    }
+
+    static ByteBuffer acquire() {
+        ByteBuffer buffer = BUFFERS.poll();
+        return buffer != null ? buffer.clear() : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    static void release(ByteBuffer buffer) {
+        if (buffer.isDirect() && buffer.capacity() == BUFFER_SIZE && BUFFERS.size() < POOLED_BUFFERS) {
+            BUFFERS.offer(buffer);
+        }
+    }
+
+    public record Header(byte version, int chunkSize, byte[] noncePrefix) {
+        int recordSize() {
+            return chunkSize + TAG_SIZE + (version == VERSION_RANDOM_ACCESS ? NONCE_SIZE : 0);
+        }
+
+        ByteBuffer toBuffer() {
+            return ByteBuffer.allocate(HEADER_SIZE).put(MAGIC).put(version).putInt(chunkSize).put(noncePrefix).flip();
+        }
+    }
+}
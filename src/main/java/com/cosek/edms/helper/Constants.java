@@ -33,11 +33,25 @@ public class Constants {
     public static final String UPDATE_FILES = "UPDATE_FILES";
     public static final String DELETE_FILES = "DELETE_FILES";
 
+    // Rebuilds the content index and reads its statistics
+    public static final String MANAGE_SEARCH_INDEX = "MANAGE_SEARCH_INDEX";
+
+    // Rotates the master encryption key and reads key status
+    public static final String MANAGE_KEYS = "MANAGE_KEYS";
+
+    // Reviews and resolves corruption found by the integrity scrubber
+    public static final String MANAGE_INTEGRITY = "MANAGE_INTEGRITY";
+
+    // Sets department storage quotas and reads their usage
+    public static final String MANAGE_QUOTAS = "MANAGE_QUOTAS";
+
     // New Folders permissions
     public static final String READ_FOLDERS = "READ_FOLDERS";
     public static final String CREATE_FOLDERS = "CREATE_FOLDERS";
     public static final String UPDATE_FOLDERS = "UPDATE_FOLDERS";
     public static final String DELETE_FOLDERS = "DELETE_FOLDERS";
+    // Grants folder access to others and sees every folder regardless of grants
+    public static final String MANAGE_FOLDER_ACCESS = "MANAGE_FOLDER_ACCESS";
 
     // New Case Studies permissions
     public static final String READ_CASESTUDIES = "READ_CASESTUDIES";
@@ -0,0 +1,83 @@
+package com.cosek.edms.helper;
+
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Compression applied to content before it is encrypted; ciphertext does not compress,
+ * so this is the only point where it can happen. The codec is chosen per blob and
+ * stored with it, and reads undo it while streaming.
+ */
+public enum ContentCodec {
+    NONE,
+    // One deflate stream over the whole content; only read now, since a range has to inflate from the start
+    DEFLATE,
+    // Independently deflated blocks with an index, so ranges seek; see BlockCompression
+    DEFLATE_BLOCKS;
+
+    public static final int SAMPLE_SIZE = 64 * 1024;
+
+    // Below this a probe says little and the saving would be a few bytes at most
+    private static final int MIN_SAMPLE = 512;
+    // Compressed output must be at most this share of the sample to be worth inflating on every read
+    private static final double MAX_RATIO = 0.9;
+
+    // Already compressed; a second pass only costs CPU
+    private static final Set<String> COMPRESSED_TYPES = Set.of(
+            "image/jpeg", "image/png", "image/gif", "image/webp", "image/heic", "image/avif",
+            "application/zip", "application/gzip", "application/x-gzip", "application/x-7z-compressed",
+            "application/x-rar-compressed", "application/vnd.rar", "application/x-bzip2", "application/x-xz",
+            "application/zstd");
+
+    /**
+     * Skips formats that are compressed already and otherwise decides on a fast deflate
+     * pass over the first bytes, so a mislabelled upload cannot force a useless codec.
+     */
+    public static ContentCodec select(String contentType, byte[] sample, int length) {
+        if (isCompressedType(contentType)) {
+            return NONE;
+        }
+        return probe(sample, length) ? DEFLATE_BLOCKS : NONE;
+    }
+
+    // Formats whose payload is compressed already: images, archives, video and audio
+    public static boolean isCompressedType(String contentType) {
+        MimeType type = parse(contentType);
+        return type != null && (COMPRESSED_TYPES.contains(type.getType() + "/" + type.getSubtype())
+                || "video".equals(type.getType()) || "audio".equals(type.getType()));
+    }
+
+    private static boolean probe(byte[] sample, int length) {
+        if (length < MIN_SAMPLE) {
+            return false;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(sample, 0, length);
+            deflater.finish();
+            byte[] out = new byte[length];
+            int compressed = 0;
+            while (!deflater.finished() && compressed < length) {
+                compressed += deflater.deflate(out, 0, out.length);
+            }
+            return deflater.finished() && compressed <= length * MAX_RATIO;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static MimeType parse(String contentType) {
+        if (contentType == null || contentType.isBlank()) {
+            return null;
+        }
+        try {
+            return MimeType.valueOf(contentType.toLowerCase(Locale.ROOT));
+        } catch (InvalidMimeTypeException e) {
+            return null;
+        }
+    }
+}
@@ -13,4 +13,14 @@ public class HashUtil {
         byte[] hash = digest.digest(input.getBytes(StandardCharsets.UTF_8));
         return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
     }
+
+    public static String generateHash(byte[] content) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest(content));
+    }
+
+    // Same encoding as generateHash, for digests computed incrementally over a stream
+    public static String encode(byte[] digest) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    }
 }
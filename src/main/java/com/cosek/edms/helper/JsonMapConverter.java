@@ -1,6 +1,5 @@
 package com.cosek.edms.helper;
 
-import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -10,6 +9,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.persistence.AttributeConverter;
 import jakarta.persistence.Converter;
 
+/**
+ * Maps stored JSON to a LazyJsonMap, so the text is parsed only when the metadata is
+ * actually read; listings that never touch it skip the parse entirely.
+ */
 @Converter
 public class JsonMapConverter implements AttributeConverter<Map<String, Object>, String> {
 
@@ -20,6 +23,9 @@ public class JsonMapConverter implements AttributeConverter<Map<String, Object>,
         if (attribute == null) {
             return null;
         }
+        if (attribute instanceof LazyJsonMap lazy && lazy.json() != null) {
+            return lazy.json();
+        }
 
         try {
             return objectMapper.writeValueAsString(attribute);
@@ -33,11 +39,6 @@ public class JsonMapConverter implements AttributeConverter<Map<String, Object>,
         if (dbData == null) {
             return new HashMap<>();
         }
-
-        try {
-            return objectMapper.readValue(dbData, Map.class);
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Error converting JSON string to map: " + e.getMessage(), e);
-        }
+        return new LazyJsonMap(objectMapper, dbData);
     }
 }
@@ -0,0 +1,96 @@
+package com.cosek.edms.helper;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Map over a JSON object that is only parsed when it is first read. Loading a row no
+ * longer pays for the parse, and an untouched map is written back as the original text.
+ * The parsed form is kept, so later reads on the same entity cost nothing.
+ */
+public class LazyJsonMap extends AbstractMap<String, Object> {
+    private static final TypeReference<HashMap<String, Object>> TYPE = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper;
+    private String json;
+    private Map<String, Object> parsed;
+
+    LazyJsonMap(ObjectMapper objectMapper, String json) {
+        this.objectMapper = objectMapper;
+        this.json = json;
+    }
+
+    // The stored text while the map is untouched, otherwise null
+    String json() {
+        return parsed == null ? json : null;
+    }
+
+    private Map<String, Object> parsed() {
+        if (parsed == null) {
+            try {
+                parsed = objectMapper.readValue(json, TYPE);
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("Error converting JSON string to map: " + e.getMessage(), e);
+            }
+            json = null;
+        }
+        return parsed;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return parsed().entrySet();
+    }
+
+    @Override
+    public int size() {
+        return parsed().size();
+    }
+
+    @Override
+    public Object get(Object key) {
+        return parsed().get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return parsed().containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        return parsed().put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return parsed().remove(key);
+    }
+
+    @Override
+    public void clear() {
+        parsed().clear();
+    }
+
+    // Dirty checking compares snapshots; two untouched maps are compared as text without parsing
+    @Override
+    public boolean equals(Object other) {
+        if (other instanceof LazyJsonMap lazy && json != null && lazy.json != null) {
+            return json.equals(lazy.json) || super.equals(other);
+        }
+        return super.equals(other);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(parsed());
+    }
+}
@@ -0,0 +1,39 @@
+package com.cosek.edms.helper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blocking token bucket. Callers may take more than is available and then wait off the
+ * debt, so large requests are paced correctly instead of being refused.
+ */
+public class TokenBucket {
+    private final double permitsPerNano;
+    private final long capacity;
+    private double tokens;
+    private long refilledAt;
+
+    public TokenBucket(long permitsPerSecond, long capacity) {
+        if (permitsPerSecond <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Rate and capacity must be positive");
+        }
+        this.permitsPerNano = permitsPerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.refilledAt = System.nanoTime();
+    }
+
+    public void acquire(long permits) throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * permitsPerNano);
+            refilledAt = now;
+            tokens -= permits;
+            waitNanos = tokens >= 0 ? 0 : (long) Math.ceil(-tokens / permitsPerNano);
+        }
+        // Sleeps outside the lock; the debt already holds back whoever comes next
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
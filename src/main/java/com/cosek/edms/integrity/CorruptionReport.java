@@ -0,0 +1,45 @@
+package com.cosek.edms.integrity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// One open report per blob; detecting the same problem again only moves lastDetectedAt
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "corruption_reports", indexes = @Index(name = "idx_corruption_reports_hash", columnList = "content_hash, resolved_at"))
+public class CorruptionReport {
+    public enum Kind { MISSING, AUTHENTICATION_FAILED, HASH_MISMATCH, SIZE_MISMATCH, UNREADABLE }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "content_hash", nullable = false, length = 64)
+    private String contentHash;
+
+    @Column(nullable = false, length = 64)
+    private String storageKey;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private Kind kind;
+
+    @Column(length = 1000)
+    private String detail;
+
+    private LocalDateTime firstDetectedAt;
+    private LocalDateTime lastDetectedAt;
+
+    @Column(name = "resolved_at")
+    private LocalDateTime resolvedAt;
+
+    private Long resolvedBy;
+}
@@ -0,0 +1,17 @@
+package com.cosek.edms.integrity;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface CorruptionReportRepository extends JpaRepository<CorruptionReport, Long> {
+
+    Optional<CorruptionReport> findFirstByContentHashAndResolvedAtIsNull(String contentHash);
+
+    List<CorruptionReport> findByResolvedAtIsNullOrderByLastDetectedAtDesc();
+
+    List<CorruptionReport> findAllByOrderByLastDetectedAtDesc();
+}
@@ -0,0 +1,38 @@
+package com.cosek.edms.integrity;
+
+import com.cosek.edms.exception.NotFoundException;
+import com.cosek.edms.integrity.Models.ScrubStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/v1/integrity")
+@RequiredArgsConstructor
+public class IntegrityController {
+    private final IntegrityScrubber integrityScrubber;
+
+    @GetMapping("/status")
+    public ResponseEntity<ScrubStatus> getStatus() {
+        return ResponseEntity.ok(integrityScrubber.getStatus());
+    }
+
+    @GetMapping("/reports")
+    public ResponseEntity<List<CorruptionReport>> findReports(@RequestParam(defaultValue = "false") boolean includeResolved) {
+        return ResponseEntity.ok(integrityScrubber.findReports(includeResolved));
+    }
+
+    @PostMapping("/reports/{id}/resolve")
+    public ResponseEntity<CorruptionReport> resolve(@PathVariable Long id) throws NotFoundException {
+        return ResponseEntity.ok(integrityScrubber.resolve(id));
+    }
+
+    @ExceptionHandler(NotFoundException.class)
+    public ResponseEntity<Map<String, String>> handleNotFound(NotFoundException e) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", e.getMessage()));
+    }
+}
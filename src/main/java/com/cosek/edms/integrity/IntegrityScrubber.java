@@ -0,0 +1,251 @@
+package com.cosek.edms.integrity;
+
+import com.cosek.edms.exception.NotFoundException;
+import com.cosek.edms.file.ContentBlob;
+import com.cosek.edms.file.ContentBlobRepository;
+import com.cosek.edms.file.FileStorage;
+import com.cosek.edms.helper.HashUtil;
+import com.cosek.edms.helper.TokenBucket;
+import com.cosek.edms.integrity.Models.ScrubStatus;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.AEADBadTagException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Re-reads every stored blob, which checks each chunk's GCM tag, and compares the
+ * plaintext with the recorded SHA-256 and size. Reads are paced by a token bucket on
+ * stored bytes so the scrubber stays in the background, and the position is saved
+ * after every batch, so a restart continues the pass instead of starting over.
+ */
+@Service
+@RequiredArgsConstructor
+public class IntegrityScrubber {
+    private static final Logger logger = LoggerFactory.getLogger(IntegrityScrubber.class);
+    private static final int MAX_DETAIL_LENGTH = 1000;
+
+    private final ContentBlobRepository contentBlobRepository;
+    private final ScrubCheckpointRepository checkpointRepository;
+    private final CorruptionReportRepository reportRepository;
+    private final FileStorage fileStorage;
+    private final AuditorAware<Long> auditorAware;
+
+    @Value("${edms.scrub.enabled:true}")
+    private boolean enabled;
+
+    @Value("${edms.scrub.bytes-per-second:8388608}")
+    private long bytesPerSecond;
+
+    @Value("${edms.scrub.batch-size:100}")
+    private int batchSize;
+
+    // Minimum time from the start of one pass to the start of the next
+    @Value("${edms.scrub.pass-interval:P7D}")
+    private Duration passInterval;
+
+    private TokenBucket bucket;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @PostConstruct
+    void start() {
+        // One second of budget as burst, so the pace holds over any window longer than that
+        bucket = new TokenBucket(bytesPerSecond, bytesPerSecond);
+    }
+
+    @PreDestroy
+    void stop() {
+        worker.shutdownNow();
+    }
+
+    // Only hands the pass to the scrubber's own thread; a long throttled pass must not hold the scheduler
+    @Scheduled(fixedDelayString = "${edms.scrub.check-interval:PT1H}", initialDelayString = "${edms.scrub.initial-delay:PT5M}")
+    public void trigger() {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            worker.execute(() -> {
+                try {
+                    runPass();
+                } catch (RuntimeException e) {
+                    logger.error("Integrity scrub stopped; it resumes from the last checkpoint", e);
+                } finally {
+                    running.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+        }
+    }
+
+    public ScrubStatus getStatus() {
+        ScrubCheckpoint checkpoint = checkpoint();
+        return new ScrubStatus(enabled, running.get(), bytesPerSecond, checkpoint.getCursorHash(),
+                checkpoint.getPassStartedAt(), checkpoint.getLastPassCompletedAt(), checkpoint.getPassesCompleted(),
+                checkpoint.getBlobsChecked(), checkpoint.getBytesChecked(), checkpoint.getCorruptionsFound(),
+                reportRepository.findByResolvedAtIsNullOrderByLastDetectedAtDesc().size());
+    }
+
+    public List<CorruptionReport> findReports(boolean includeResolved) {
+        return includeResolved
+                ? reportRepository.findAllByOrderByLastDetectedAtDesc()
+                : reportRepository.findByResolvedAtIsNullOrderByLastDetectedAtDesc();
+    }
+
+    @Transactional
+    public CorruptionReport resolve(Long id) throws NotFoundException {
+        CorruptionReport report = reportRepository.findById(id)
+                .orElseThrow(() -> new NotFoundException("Report not found"));
+        if (report.getResolvedAt() == null) {
+            report.setResolvedAt(LocalDateTime.now());
+            report.setResolvedBy(auditorAware.getCurrentAuditor().orElse(null));
+        }
+        return reportRepository.save(report);
+    }
+
+    private void runPass() {
+        ScrubCheckpoint checkpoint = checkpoint();
+        LocalDateTime now = LocalDateTime.now();
+        if (checkpoint.getPassStartedAt() == null) {
+            if (checkpoint.getLastPassCompletedAt() != null && checkpoint.getLastPassCompletedAt().plus(passInterval).isAfter(now)) {
+                return;
+            }
+            checkpoint.setPassStartedAt(now);
+            checkpoint.setCursorHash("");
+            checkpoint.setBlobsChecked(0);
+            checkpoint.setBytesChecked(0);
+            checkpoint.setCorruptionsFound(0);
+            checkpoint = checkpointRepository.save(checkpoint);
+            logger.info("Integrity scrub pass started");
+        }
+
+        List<ContentBlob> batch;
+        do {
+            batch = contentBlobRepository.findByHashGreaterThanOrderByHash(checkpoint.getCursorHash(), PageRequest.of(0, batchSize));
+            for (ContentBlob blob : batch) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                checkpoint.setBytesChecked(checkpoint.getBytesChecked() + blob.getStoredSize());
+                checkpoint.setBlobsChecked(checkpoint.getBlobsChecked() + 1);
+                if (!verify(blob)) {
+                    checkpoint.setCorruptionsFound(checkpoint.getCorruptionsFound() + 1);
+                }
+                checkpoint.setCursorHash(blob.getHash());
+            }
+            checkpoint = checkpointRepository.save(checkpoint);
+        } while (batch.size() == batchSize);
+
+        checkpoint.setPassStartedAt(null);
+        checkpoint.setLastPassCompletedAt(LocalDateTime.now());
+        checkpoint.setPassesCompleted(checkpoint.getPassesCompleted() + 1);
+        checkpointRepository.save(checkpoint);
+        logger.info("Integrity scrub pass finished: {} blobs, {} corrupt", checkpoint.getBlobsChecked(), checkpoint.getCorruptionsFound());
+    }
+
+    // Returns false when the blob was reported
+    private boolean verify(ContentBlob blob) {
+        ScrubSink sink = new ScrubSink(bucket, blob);
+        try {
+            fileStorage.read(blob.getStorageKey(), blob.getCodec(), blob.dataKey(), sink);
+        } catch (InterruptedIOException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        } catch (NoSuchFileException e) {
+            // Collected between the page read and now is not corruption
+            return !contentBlobRepository.existsById(blob.getHash())
+                    || report(blob, CorruptionReport.Kind.MISSING, "Stored file " + blob.getStorageKey() + " does not exist");
+        } catch (IOException e) {
+            boolean tag = e.getCause() instanceof AEADBadTagException;
+            return report(blob, tag ? CorruptionReport.Kind.AUTHENTICATION_FAILED : CorruptionReport.Kind.UNREADABLE, e.toString());
+        } catch (RuntimeException e) {
+            return report(blob, CorruptionReport.Kind.UNREADABLE, e.toString());
+        }
+        if (sink.size != blob.getPlainSize()) {
+            return report(blob, CorruptionReport.Kind.SIZE_MISMATCH, "Expected " + blob.getPlainSize() + " bytes, read " + sink.size);
+        }
+        String hash = HashUtil.encode(sink.digest.digest());
+        if (!hash.equals(blob.getHash())) {
+            return report(blob, CorruptionReport.Kind.HASH_MISMATCH, "Content hashes to " + hash);
+        }
+        return true;
+    }
+
+    private boolean report(ContentBlob blob, CorruptionReport.Kind kind, String detail) {
+        LocalDateTime now = LocalDateTime.now();
+        CorruptionReport report = reportRepository.findFirstByContentHashAndResolvedAtIsNull(blob.getHash())
+                .orElseGet(() -> CorruptionReport.builder()
+                        .contentHash(blob.getHash())
+                        .storageKey(blob.getStorageKey())
+                        .firstDetectedAt(now)
+                        .build());
+        report.setKind(kind);
+        report.setDetail(detail != null && detail.length() > MAX_DETAIL_LENGTH ? detail.substring(0, MAX_DETAIL_LENGTH) : detail);
+        report.setLastDetectedAt(now);
+        reportRepository.save(report);
+        logger.warn("Integrity scrub found {} in blob {}: {}", kind, blob.getHash(), detail);
+        return false;
+    }
+
+    private ScrubCheckpoint checkpoint() {
+        return checkpointRepository.findById(ScrubCheckpoint.ID)
+                .orElseGet(() -> ScrubCheckpoint.builder().id(ScrubCheckpoint.ID).cursorHash("").build());
+    }
+
+    // Digests and counts the plaintext; charges the bucket for the stored bytes behind it
+    private static class ScrubSink extends OutputStream {
+        private final TokenBucket bucket;
+        private final double storedPerPlain;
+        private final MessageDigest digest;
+        private long size;
+
+        ScrubSink(TokenBucket bucket, ContentBlob blob) {
+            this.bucket = bucket;
+            this.storedPerPlain = blob.getPlainSize() > 0 ? (double) blob.getStoredSize() / blob.getPlainSize() : 1.0;
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                bucket.acquire((long) Math.ceil(len * storedPerPlain));
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Integrity scrub interrupted");
+            }
+            digest.update(b, off, len);
+            size += len;
+        }
+    }
+}
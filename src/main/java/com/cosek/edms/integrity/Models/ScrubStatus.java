@@ -0,0 +1,18 @@
+package com.cosek.edms.integrity.Models;
+
+import java.time.LocalDateTime;
+
+public record ScrubStatus(
+        boolean enabled,
+        boolean running,
+        long bytesPerSecond,
+        String cursorHash,
+        LocalDateTime passStartedAt,
+        LocalDateTime lastPassCompletedAt,
+        long passesCompleted,
+        long blobsChecked,
+        long bytesChecked,
+        long corruptionsFound,
+        long openReports
+) {
+}
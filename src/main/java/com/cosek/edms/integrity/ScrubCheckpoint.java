@@ -0,0 +1,40 @@
+package com.cosek.edms.integrity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Single row; the scrubber walks content_blobs in hash order and saves its place here after every batch
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "scrub_checkpoints")
+public class ScrubCheckpoint {
+    public static final long ID = 1L;
+
+    @Id
+    private Long id;
+
+    // Last hash checked in the current pass; empty before the first blob
+    @Column(name = "cursor_hash", nullable = false, length = 64)
+    private String cursorHash;
+
+    @Column(name = "pass_started_at")
+    private LocalDateTime passStartedAt;
+
+    @Column(name = "last_pass_completed_at")
+    private LocalDateTime lastPassCompletedAt;
+
+    private long passesCompleted;
+
+    // Counted for the current pass
+    private long blobsChecked;
+    private long bytesChecked;
+    private long corruptionsFound;
+}
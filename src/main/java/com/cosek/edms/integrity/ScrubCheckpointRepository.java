@@ -0,0 +1,8 @@
+package com.cosek.edms.integrity;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ScrubCheckpointRepository extends JpaRepository<ScrubCheckpoint, Long> {
+}
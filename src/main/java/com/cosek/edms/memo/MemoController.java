@@ -1,5 +1,6 @@
 package com.cosek.edms.memo;
 
+import com.cosek.edms.conflict.Models.ConflictScreening;
 import com.cosek.edms.memo.Models.MemoRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -36,6 +37,7 @@ public class MemoController {
         Memo memo = Memo.builder()
                 .activityName(memoRequest.getActivityName())
                 .preparedBy(memoRequest.getPreparedBy())
+                .department(memoRequest.getDepartment())
                 .activityPurpose(memoRequest.getActivityPurpose())
                 .activitySummary(memoRequest.getActivitySummary())
                 .quantity(memoRequest.getQuantity())
@@ -49,10 +51,16 @@ public class MemoController {
     }
 
 
+    // Re-screen every memo against the current conflict register
+    @PostMapping("/screen-all")
+    public ResponseEntity<List<ConflictScreening>> screenAllMemos() {
+        return ResponseEntity.ok(memoService.screenAllMemos());
+    }
+
     @PutMapping("update/{id}")
     public ResponseEntity<Memo> updateMemo(@PathVariable Long id, @RequestBody Memo memo) {
         Memo updatedMemo = memoService.updateMemo(id, memo);
-        return ResponseEntity.ok(updatedMemo);
+        return updatedMemo != null ? ResponseEntity.ok(updatedMemo) : ResponseEntity.notFound().build();
     }
 
     @DeleteMapping("/{id}")
@@ -1,18 +1,24 @@
 package com.cosek.edms.memo;
 
+import com.cosek.edms.conflict.ConflictScreeningService;
+import com.cosek.edms.conflict.Models.ConflictScreening;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Service
 public class MemoService {
 
     private final MemoRepository memoRepository;
+    private final ConflictScreeningService screeningService;
 
     @Autowired
-    public MemoService(MemoRepository memoRepository) {
+    public MemoService(MemoRepository memoRepository, ConflictScreeningService screeningService) {
         this.memoRepository = memoRepository;
+        this.screeningService = screeningService;
     }
 
     public List<Memo> getAllMemos() {
@@ -24,15 +30,69 @@ public class MemoService {
     }
 
     public Memo createMemo(Memo memo) {
-        return memoRepository.save(memo);
+        ConflictScreening screening = screeningService.screen(memo.getPreparedBy(), memo.getDepartment());
+        memo.setConflictFlagged(screening.isFlagged());
+
+        Memo saved = memoRepository.save(memo);
+        screening.setMemoId(saved.getId());
+        saved.setScreening(screening);
+        return saved;
     }
 
+    // Only client-editable fields are copied; the conflict flag is recomputed, never taken from the request
     public Memo updateMemo(Long id, Memo updatedMemo) {
-        updatedMemo.setId(id);
-        return memoRepository.save(updatedMemo);
+        Memo memo = memoRepository.findById(id).orElse(null);
+        if (memo == null) {
+            return null;
+        }
+        memo.setActivityName(updatedMemo.getActivityName());
+        memo.setPreparedBy(updatedMemo.getPreparedBy());
+        memo.setDepartment(updatedMemo.getDepartment());
+        memo.setActivityPurpose(updatedMemo.getActivityPurpose());
+        memo.setActivitySummary(updatedMemo.getActivitySummary());
+        memo.setQuantity(updatedMemo.getQuantity());
+        memo.setDuration(updatedMemo.getDuration());
+        memo.setActivityCost(updatedMemo.getActivityCost());
+        memo.setDate(updatedMemo.getDate());
+
+        ConflictScreening screening = screeningService.screen(memo.getPreparedBy(), memo.getDepartment());
+        memo.setConflictFlagged(screening.isFlagged());
+
+        Memo saved = memoRepository.save(memo);
+        screening.setMemoId(saved.getId());
+        saved.setScreening(screening);
+        return saved;
     }
 
     public void deleteMemo(Long id) {
         memoRepository.deleteById(id);
     }
+
+    public List<ConflictScreening> screenAllMemos() {
+        List<Memo> memos = memoRepository.findAll();
+
+        // Index lookups are read-only, so the history can be screened in parallel
+        List<ConflictScreening> screenings = memos.parallelStream()
+                .map(memo -> {
+                    ConflictScreening screening = screeningService.screen(memo.getPreparedBy(), memo.getDepartment());
+                    screening.setMemoId(memo.getId());
+                    return screening;
+                })
+                .collect(Collectors.toList());
+
+        // Persist only the flags that changed since the memo was last screened
+        List<Memo> changed = new ArrayList<>();
+        for (int i = 0; i < memos.size(); i++) {
+            Memo memo = memos.get(i);
+            boolean flagged = screenings.get(i).isFlagged();
+            if (memo.isConflictFlagged() != flagged) {
+                memo.setConflictFlagged(flagged);
+                changed.add(memo);
+            }
+        }
+        if (!changed.isEmpty()) {
+            memoRepository.saveAll(changed);
+        }
+        return screenings;
+    }
 }
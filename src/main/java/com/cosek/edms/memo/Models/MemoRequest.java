@@ -16,6 +16,7 @@ public class MemoRequest {
 
     private String activityName;
     private String preparedBy;
+    private String department;
     private String activityPurpose;
     private String activitySummary;
     private int quantity;
@@ -1,5 +1,6 @@
 package com.cosek.edms.memo;
 
+import com.cosek.edms.conflict.Models.ConflictScreening;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -22,10 +23,16 @@ import java.time.LocalDate;
 
    private String activityName;
    private String preparedBy;
+   private String department;
    private String activityPurpose;
    private String activitySummary;
    private int quantity;
    private int duration;
    private double activityCost;
    private LocalDate date;
+
+   private boolean conflictFlagged;
+
+   @Transient
+   private ConflictScreening screening;
 }
@@ -0,0 +1,158 @@
+package com.cosek.edms.permission;
+
+import com.cosek.edms.helper.TransactionHooks;
+import com.cosek.edms.role.RbacSnapshot;
+import com.cosek.edms.role.RbacSnapshotService;
+import com.cosek.edms.user.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reverse index answering "which users effectively hold permission X".
+ * Role membership and permission holders are kept as bitmaps of user IDs.
+ * Published bitmaps are never mutated; updates swap in fresh copies.
+ */
+@Component
+@RequiredArgsConstructor
+public class PermissionAccessIndex {
+    private static final int IN_CLAUSE_LIMIT = 1000;
+
+    private final UserRepository userRepository;
+    private final RbacSnapshotService rbacSnapshotService;
+
+    private final Map<Long, Set<Long>> rolesByUser = new ConcurrentHashMap<>();
+    private final Map<Long, BitSet> usersByRole = new ConcurrentHashMap<>();
+    private final Map<String, BitSet> usersByPermission = new ConcurrentHashMap<>();
+    private Map<String, Set<Long>> appliedRoleIdsByPermission = Map.of();
+    private volatile long appliedRbacVersion = -1;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        rolesByUser.clear();
+        usersByRole.clear();
+        for (Object[] link : userRepository.findRoleLinks()) {
+            rolesByUser.computeIfAbsent((Long) link[0], id -> new HashSet<>()).add((Long) link[1]);
+            usersByRole.computeIfAbsent((Long) link[1], id -> new BitSet()).set(bit((Long) link[0]));
+        }
+        usersByPermission.clear();
+        appliedRoleIdsByPermission = Map.of();
+        appliedRbacVersion = -1;
+        syncWithRbac();
+    }
+
+    // Re-reads role membership for the given users once the surrounding transaction commits
+    public void refreshUsers(Collection<Long> userIds) {
+        List<Long> ids = List.copyOf(userIds);
+        TransactionHooks.afterCommit(() -> applyMembership(ids));
+    }
+
+    public int countHolders(String permissionName) {
+        return holders(permissionName).cardinality();
+    }
+
+    public List<Long> findHolders(String permissionName, int page, int size) {
+        BitSet holders = holders(permissionName);
+        List<Long> userIds = new ArrayList<>(size);
+        int bit = holders.nextSetBit(0);
+        for (long skip = (long) page * size; bit >= 0 && skip > 0; skip--) {
+            bit = holders.nextSetBit(bit + 1);
+        }
+        while (bit >= 0 && userIds.size() < size) {
+            userIds.add((long) bit);
+            bit = holders.nextSetBit(bit + 1);
+        }
+        return userIds;
+    }
+
+    private BitSet holders(String permissionName) {
+        if (rbacSnapshotService.current().getVersion() != appliedRbacVersion) {
+            syncWithRbac();
+        }
+        return usersByPermission.getOrDefault(permissionName, new BitSet());
+    }
+
+    private synchronized void applyMembership(List<Long> userIds) {
+        Map<Long, Set<Long>> fresh = new HashMap<>();
+        userIds.forEach(id -> fresh.put(id, new HashSet<>()));
+        for (int from = 0; from < userIds.size(); from += IN_CLAUSE_LIMIT) {
+            List<Long> chunk = userIds.subList(from, Math.min(from + IN_CLAUSE_LIMIT, userIds.size()));
+            for (Object[] link : userRepository.findRoleLinks(chunk)) {
+                fresh.get((Long) link[0]).add((Long) link[1]);
+            }
+        }
+
+        Map<Long, BitSet> changedRoles = new HashMap<>();
+        fresh.forEach((userId, roles) -> {
+            Set<Long> previous = rolesByUser.getOrDefault(userId, Set.of());
+            for (Long roleId : previous) {
+                if (!roles.contains(roleId)) {
+                    copyForWrite(changedRoles, roleId).clear(bit(userId));
+                }
+            }
+            for (Long roleId : roles) {
+                if (!previous.contains(roleId)) {
+                    copyForWrite(changedRoles, roleId).set(bit(userId));
+                }
+            }
+            if (roles.isEmpty()) {
+                rolesByUser.remove(userId);
+            } else {
+                rolesByUser.put(userId, roles);
+            }
+        });
+        if (changedRoles.isEmpty()) {
+            return;
+        }
+        usersByRole.putAll(changedRoles);
+
+        // Only permissions granted through a changed role need their holder bitmap recomputed
+        appliedRoleIdsByPermission.forEach((permission, roleIds) -> {
+            if (!Collections.disjoint(roleIds, changedRoles.keySet())) {
+                usersByPermission.put(permission, union(roleIds));
+            }
+        });
+    }
+
+    private synchronized void syncWithRbac() {
+        RbacSnapshot snapshot = rbacSnapshotService.current();
+        if (snapshot.getVersion() == appliedRbacVersion) {
+            return;
+        }
+        Map<String, Set<Long>> roleIdsByPermission = snapshot.getRoleIdsByPermission();
+        roleIdsByPermission.forEach((permission, roleIds) -> {
+            if (!roleIds.equals(appliedRoleIdsByPermission.get(permission))) {
+                usersByPermission.put(permission, union(roleIds));
+            }
+        });
+        usersByPermission.keySet().retainAll(roleIdsByPermission.keySet());
+        appliedRoleIdsByPermission = roleIdsByPermission;
+        appliedRbacVersion = snapshot.getVersion();
+    }
+
+    private BitSet union(Set<Long> roleIds) {
+        BitSet users = new BitSet();
+        roleIds.forEach(roleId -> {
+            BitSet members = usersByRole.get(roleId);
+            if (members != null) {
+                users.or(members);
+            }
+        });
+        return users;
+    }
+
+    private BitSet copyForWrite(Map<Long, BitSet> changed, Long roleId) {
+        return changed.computeIfAbsent(roleId, id -> {
+            BitSet current = usersByRole.get(id);
+            return current == null ? new BitSet() : (BitSet) current.clone();
+        });
+    }
+
+    private static int bit(Long userId) {
+        return Math.toIntExact(userId);
+    }
+}
@@ -2,14 +2,23 @@ package com.cosek.edms.permission;
 
 import com.cosek.edms.permission.Models.PermissionRequest;
 import com.cosek.edms.permission.Models.RoleRequest;
+import com.cosek.edms.role.Models.PermissionView;
+import com.cosek.edms.role.RbacSnapshot;
+import com.cosek.edms.role.RbacSnapshotService;
 import com.cosek.edms.role.Role;
 import com.cosek.edms.role.RoleService;
+import com.cosek.edms.user.Models.UserSummary;
 import com.cosek.edms.user.User;
+import com.cosek.edms.user.UserSearchIndex;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -25,16 +34,51 @@ public class PermissionController {
     @Autowired
     private RoleService roleService;
 
+    @Autowired
+    private RbacSnapshotService rbacSnapshotService;
+
+    @Autowired
+    private PermissionAccessIndex permissionAccessIndex;
+
+    @Autowired
+    private UserSearchIndex userSearchIndex;
+
 
     @GetMapping("/all")
-    public ResponseEntity<List<Permission>> getAllPermissions() {
-        return ResponseEntity.ok(permissionService.getAllPermissions());
+    public ResponseEntity<List<PermissionView>> getAllPermissions(WebRequest webRequest) {
+        RbacSnapshot snapshot = rbacSnapshotService.current();
+        if (webRequest.checkNotModified(snapshot.getPermissionsEtag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(snapshot.getPermissionsEtag()).build();
+        }
+        return ResponseEntity.ok().eTag(snapshot.getPermissionsEtag()).body(snapshot.getPermissions());
     }
 
     @PostMapping("/role")
-    public ResponseEntity<List<Permission>> getPermissionsByRole(@RequestBody RoleRequest roleRequest) {
-        List<Permission> permissions = permissionService.getPermissionsByRole(roleRequest.getRoleName());
-        return ResponseEntity.ok(permissions);
+    public ResponseEntity<List<PermissionView>> getPermissionsByRole(
+            @RequestBody RoleRequest roleRequest,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch
+    ) {
+        RbacSnapshot snapshot = rbacSnapshotService.current();
+        String etag = snapshot.getPermissionsForRoleEtag(roleRequest.getRoleName());
+        // Compared by hand: checkNotModified treats If-None-Match on a POST as a failed precondition
+        if (etag.equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(snapshot.getPermissionsForRole(roleRequest.getRoleName()));
+    }
+
+    // Users who effectively hold a permission through any of their roles
+    @GetMapping("/{name}/users")
+    public ResponseEntity<Page<UserSummary>> getPermissionHolders(
+            @PathVariable String name,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size
+    ) {
+        PageRequest paging = PageRequest.of(page, size);
+        List<UserSummary> holders = permissionAccessIndex.findHolders(name, page, size).stream()
+                .map(userSearchIndex::getSummary)
+                .toList();
+        return ResponseEntity.ok(new PageImpl<>(holders, paging, permissionAccessIndex.countHolders(name)));
     }
 
     // Add Permission to Role
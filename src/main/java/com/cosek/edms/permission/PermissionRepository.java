@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,4 +17,10 @@ public interface PermissionRepository extends JpaRepository<Permission, Long> {
     @Query("SELECT p FROM Permission p JOIN p.roles r WHERE r.name = :roleName")
     List<Permission> findPermissionsByRole(@Param("roleName") String roleName);
 
+    @Query("SELECT p.id FROM Permission p WHERE p.id IN :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT p.id, p.name FROM Permission p ORDER BY p.id")
+    List<Object[]> findAllIdsAndNames();
+
 }
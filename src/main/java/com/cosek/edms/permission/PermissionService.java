@@ -1,6 +1,7 @@
 package com.cosek.edms.permission;
 
 import com.cosek.edms.exception.NotFoundException;
+import com.cosek.edms.role.RbacSnapshotService;
 import com.cosek.edms.role.Role;
 import com.cosek.edms.role.RoleRepository;
 import com.cosek.edms.user.User;
@@ -23,8 +24,13 @@ public class PermissionService {
     @Autowired
     private RoleRepository roleRepository;
 
+    @Autowired
+    private RbacSnapshotService rbacSnapshotService;
+
     public Permission createPermission(Permission permission) {
-        return permissionRepository.save(permission);
+        Permission saved = permissionRepository.save(permission);
+        rbacSnapshotService.markChanged();
+        return saved;
     }
 
     public Permission findOnePermission(Long permID) throws NotFoundException {
@@ -35,7 +41,9 @@ public class PermissionService {
     public Permission updatePermission(Long permID, Permission request) throws NotFoundException {
         Permission permission = findOnePermission(permID);
         permission.setName(request.getName());
-        return permissionRepository.save(permission);
+        Permission saved = permissionRepository.save(permission);
+        rbacSnapshotService.markChanged();
+        return saved;
     }
 
     public List<Permission> getAllPermissions() {
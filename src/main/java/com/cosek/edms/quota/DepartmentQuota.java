@@ -0,0 +1,32 @@
+package com.cosek.edms.quota;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// One row per department that has a limit; usage is what the last reconcile counted
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "department_quotas")
+public class DepartmentQuota {
+    @Id
+    @Column(name = "department_id")
+    private Long departmentId;
+
+    // Null means unlimited
+    @Column(name = "limit_bytes")
+    private Long limitBytes;
+
+    @Column(name = "used_bytes", nullable = false)
+    private long usedBytes;
+
+    @Column(name = "reconciled_at")
+    private LocalDateTime reconciledAt;
+}
@@ -0,0 +1,8 @@
+package com.cosek.edms.quota;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface DepartmentQuotaRepository extends JpaRepository<DepartmentQuota, Long> {
+}
@@ -0,0 +1,15 @@
+package com.cosek.edms.quota.Models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class QuotaRequest {
+    // Null removes the limit
+    private Long limitBytes;
+}
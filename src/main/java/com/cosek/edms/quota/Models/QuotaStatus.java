@@ -0,0 +1,12 @@
+package com.cosek.edms.quota.Models;
+
+import java.time.LocalDateTime;
+
+// usedBytes includes uploads in flight and reserved upload sessions; limitBytes is null when unlimited
+public record QuotaStatus(
+        Long departmentId,
+        Long limitBytes,
+        long usedBytes,
+        LocalDateTime reconciledAt
+) {
+}
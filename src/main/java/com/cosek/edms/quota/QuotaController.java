@@ -0,0 +1,38 @@
+package com.cosek.edms.quota;
+
+import com.cosek.edms.quota.Models.QuotaRequest;
+import com.cosek.edms.quota.Models.QuotaStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/v1/quotas")
+@RequiredArgsConstructor
+public class QuotaController {
+    private final QuotaService quotaService;
+
+    @GetMapping
+    public ResponseEntity<List<QuotaStatus>> findAll() {
+        return ResponseEntity.ok(quotaService.findAll());
+    }
+
+    @GetMapping("/{departmentId}")
+    public ResponseEntity<QuotaStatus> getStatus(@PathVariable Long departmentId) {
+        return ResponseEntity.ok(quotaService.getStatus(departmentId));
+    }
+
+    @PutMapping("/{departmentId}")
+    public ResponseEntity<QuotaStatus> setLimit(@PathVariable Long departmentId, @RequestBody QuotaRequest request) {
+        return ResponseEntity.ok(quotaService.setLimit(departmentId, request));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleInvalid(IllegalArgumentException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", e.getMessage()));
+    }
+}
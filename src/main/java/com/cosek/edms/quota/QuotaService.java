@@ -0,0 +1,230 @@
+package com.cosek.edms.quota;
+
+import com.cosek.edms.exception.QuotaExceededException;
+import com.cosek.edms.folder.Folder;
+import com.cosek.edms.folder.FolderRepository;
+import com.cosek.edms.helper.TransactionHooks;
+import com.cosek.edms.quota.Models.QuotaRequest;
+import com.cosek.edms.quota.Models.QuotaStatus;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-department storage quotas, checked in memory. Usage is a reconciled base plus
+ * striped counters, so concurrent uploads never contend on one row or one lock, and
+ * the files table is only summed by the periodic reconcile. Usage counts plaintext
+ * bytes of files in the department's folders, tombstones included until they are
+ * purged, the stored bytes of their earlier revisions (a snapshot's blob, or a delta's
+ * once compacted), plus the declared size of open upload sessions.
+ */
+@Service
+@RequiredArgsConstructor
+public class QuotaService {
+    private static final Logger logger = LoggerFactory.getLogger(QuotaService.class);
+
+    // The newest revision is the file's current content, already counted by its size
+    private static final String USAGE_SQL = "SELECT department_id, SUM(bytes) AS used FROM (" +
+            "SELECT fo.department_id, f.size AS bytes FROM files f JOIN folders fo ON fo.id = f.folder_id " +
+            "UNION ALL SELECT fo.department_id, b.stored_size FROM file_versions v " +
+            "JOIN files f ON f.id = v.file_id JOIN folders fo ON fo.id = f.folder_id " +
+            "JOIN content_blobs b ON b.hash = CASE WHEN v.storage = 'DELTA' THEN v.delta_hash ELSE v.content_hash END " +
+            "WHERE EXISTS (SELECT 1 FROM file_versions n WHERE n.file_id = v.file_id AND n.version_number > v.version_number) " +
+            "UNION ALL SELECT s.department_id, s.total_size FROM upload_sessions s" +
+            ") charged WHERE department_id IS NOT NULL GROUP BY department_id";
+
+    private final DepartmentQuotaRepository departmentQuotaRepository;
+    private final FolderRepository folderRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<Long, Usage> usage = new ConcurrentHashMap<>();
+
+    private static class Usage {
+        // Counted by the last reconcile
+        volatile long base;
+        // Committed since the reconcile started; decreases wait for the next one
+        final LongAdder committed = new LongAdder();
+        // Reserved by writes that have not committed yet
+        final LongAdder inFlight = new LongAdder();
+        volatile Long limit;
+        volatile LocalDateTime reconciledAt;
+
+        long used() {
+            return base + committed.sum() + inFlight.sum();
+        }
+    }
+
+    /**
+     * Bytes held against a department while a write is under way. Settle it with
+     * commitOnSuccess inside the transaction that stores the rows, and close it in a
+     * finally block; closing an unsettled reservation gives the bytes back.
+     */
+    public static final class Reservation implements AutoCloseable {
+        private static final Reservation NONE = new Reservation(null, 0);
+
+        private final Usage usage;
+        private final long bytes;
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        private Reservation(Usage usage, long bytes) {
+            this.usage = usage;
+            this.bytes = bytes;
+        }
+
+        public void commitOnSuccess() {
+            if (usage != null) {
+                TransactionHooks.afterCommit(this::commit);
+            }
+        }
+
+        private void commit() {
+            if (settled.compareAndSet(false, true)) {
+                // Counted twice for an instant rather than not at all
+                usage.committed.add(bytes);
+                usage.inFlight.add(-bytes);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (usage != null && settled.compareAndSet(false, true)) {
+                usage.inFlight.add(-bytes);
+            }
+        }
+    }
+
+    // The folder's department pays; files outside any folder or department are not metered
+    public Reservation reserveForFolder(Long folderId, long bytes) {
+        if (folderId == null) {
+            return Reservation.NONE;
+        }
+        return reserve(folderRepository.findById(folderId).map(Folder::getDepartmentId).orElse(null), bytes);
+    }
+
+    // Added before the check, so racing writers can only be refused too eagerly, never let past the limit
+    public Reservation reserve(Long departmentId, long bytes) {
+        if (departmentId == null || bytes <= 0) {
+            return Reservation.NONE;
+        }
+        Usage current = usage(departmentId);
+        current.inFlight.add(bytes);
+        Long limit = current.limit;
+        if (limit != null && current.used() > limit) {
+            current.inFlight.add(-bytes);
+            throw exceeded(departmentId, limit);
+        }
+        return new Reservation(current, bytes);
+    }
+
+    // In-memory check for work already reserved, such as each part of an upload session
+    public void requireWithinQuota(Long departmentId) {
+        if (departmentId == null) {
+            return;
+        }
+        Usage current = usage.get(departmentId);
+        Long limit = current != null ? current.limit : null;
+        if (limit != null && current.used() > limit) {
+            throw exceeded(departmentId, limit);
+        }
+    }
+
+    public Long departmentOf(Long folderId) {
+        return folderId == null ? null : folderRepository.findById(folderId).map(Folder::getDepartmentId).orElse(null);
+    }
+
+    public List<QuotaStatus> findAll() {
+        return usage.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(entry -> status(entry.getKey(), entry.getValue()))
+                .toList();
+    }
+
+    public QuotaStatus getStatus(Long departmentId) {
+        return status(departmentId, usage(departmentId));
+    }
+
+    @Transactional
+    public QuotaStatus setLimit(Long departmentId, QuotaRequest request) {
+        Long limit = request.getLimitBytes();
+        if (limit != null && limit < 0) {
+            throw new IllegalArgumentException("limitBytes must be zero or more");
+        }
+        Usage current = usage(departmentId);
+        DepartmentQuota quota = departmentQuotaRepository.findById(departmentId)
+                .orElseGet(() -> DepartmentQuota.builder().departmentId(departmentId).build());
+        quota.setLimitBytes(limit);
+        quota.setUsedBytes(current.base);
+        quota.setReconciledAt(current.reconciledAt);
+        departmentQuotaRepository.save(quota);
+        TransactionHooks.afterCommit(() -> current.limit = limit);
+        return new QuotaStatus(departmentId, limit, current.used(), current.reconciledAt);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        for (DepartmentQuota quota : departmentQuotaRepository.findAll()) {
+            usage(quota.getDepartmentId()).limit = quota.getLimitBytes();
+        }
+        reconcile();
+    }
+
+    /**
+     * Recounts usage from the tables and stores it with each quota. What was committed
+     * before the count started is taken out of the counters; anything committed during it
+     * may be counted twice until the next run, which only errs towards refusing.
+     */
+    @Scheduled(fixedDelayString = "${edms.quota.reconcile-interval:PT5M}", initialDelayString = "${edms.quota.reconcile-interval:PT5M}")
+    public void reconcile() {
+        Map<Long, Long> before = new HashMap<>();
+        usage.forEach((departmentId, current) -> before.put(departmentId, current.committed.sum()));
+        Map<Long, Long> counted = new HashMap<>();
+        jdbcTemplate.query(USAGE_SQL, row -> {
+            counted.put(row.getLong("department_id"), row.getLong("used"));
+        });
+        LocalDateTime now = LocalDateTime.now();
+
+        Set<Long> departments = new HashSet<>(counted.keySet());
+        departments.addAll(usage.keySet());
+        for (Long departmentId : departments) {
+            Usage current = usage(departmentId);
+            current.base = counted.getOrDefault(departmentId, 0L);
+            current.committed.add(-before.getOrDefault(departmentId, 0L));
+            current.reconciledAt = now;
+        }
+
+        List<DepartmentQuota> quotas = departmentQuotaRepository.findAll();
+        for (DepartmentQuota quota : quotas) {
+            quota.setUsedBytes(counted.getOrDefault(quota.getDepartmentId(), 0L));
+            quota.setReconciledAt(now);
+            Long limit = quota.getLimitBytes();
+            if (limit != null && quota.getUsedBytes() > limit) {
+                logger.warn("Department {} uses {} bytes, over its quota of {}", quota.getDepartmentId(), quota.getUsedBytes(), limit);
+            }
+        }
+        departmentQuotaRepository.saveAll(quotas);
+    }
+
+    private Usage usage(Long departmentId) {
+        return usage.computeIfAbsent(departmentId, key -> new Usage());
+    }
+
+    private static QuotaStatus status(Long departmentId, Usage current) {
+        return new QuotaStatus(departmentId, current.limit, current.used(), current.reconciledAt);
+    }
+
+    private static QuotaExceededException exceeded(Long departmentId, long limit) {
+        return new QuotaExceededException("Department " + departmentId + " has reached its storage quota of " + limit + " bytes");
+    }
+}
@@ -0,0 +1,15 @@
+package com.cosek.edms.role.Models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkPermissionUpdateResponse {
+    private long version;                      // RBAC snapshot version after the update
+    private List<RolePermissionDelta> applied; // Only the grants and revokes that changed something
+}
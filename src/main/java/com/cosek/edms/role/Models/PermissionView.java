@@ -0,0 +1,4 @@
+package com.cosek.edms.role.Models;
+
+public record PermissionView(Long id, String name) {
+}
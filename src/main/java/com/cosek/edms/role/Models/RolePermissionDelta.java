@@ -0,0 +1,16 @@
+package com.cosek.edms.role.Models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RolePermissionDelta {
+    private Long roleId;
+    private List<Long> add;      // Permission IDs to grant
+    private List<Long> remove;   // Permission IDs to revoke
+}
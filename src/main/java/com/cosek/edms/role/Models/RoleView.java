@@ -0,0 +1,6 @@
+package com.cosek.edms.role.Models;
+
+import java.util.List;
+
+public record RoleView(Long id, String name, List<PermissionView> permissions) {
+}
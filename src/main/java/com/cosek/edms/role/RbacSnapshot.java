@@ -0,0 +1,35 @@
+package com.cosek.edms.role;
+
+import com.cosek.edms.role.Models.PermissionView;
+import com.cosek.edms.role.Models.RoleView;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable view of the role/permission graph. A new instance with a higher
+ * version replaces the old one after every committed RBAC change.
+ */
+@Getter
+@AllArgsConstructor
+public class RbacSnapshot {
+    private final long version;
+    private final List<RoleView> roles;
+    private final List<PermissionView> permissions;
+    private final Map<String, List<PermissionView>> permissionsByRole;
+    private final String rolesEtag;
+    private final String permissionsEtag;
+    private final Map<String, String> permissionsByRoleEtags;
+    private final Map<String, Set<Long>> roleIdsByPermission;
+
+    public List<PermissionView> getPermissionsForRole(String roleName) {
+        return permissionsByRole.getOrDefault(roleName, List.of());
+    }
+
+    public String getPermissionsForRoleEtag(String roleName) {
+        return permissionsByRoleEtags.getOrDefault(roleName, "\"empty\"");
+    }
+}
@@ -0,0 +1,101 @@
+package com.cosek.edms.role;
+
+import com.cosek.edms.config.PrincipalCache;
+import com.cosek.edms.helper.HashUtil;
+import com.cosek.edms.helper.TransactionHooks;
+import com.cosek.edms.permission.PermissionRepository;
+import com.cosek.edms.role.Models.PermissionView;
+import com.cosek.edms.role.Models.RoleView;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+@Service
+@RequiredArgsConstructor
+public class RbacSnapshotService {
+    private final RoleRepository roleRepository;
+    private final PermissionRepository permissionRepository;
+    private final PrincipalCache principalCache;
+    private final ObjectMapper objectMapper;
+
+    private final AtomicReference<RbacSnapshot> current = new AtomicReference<>();
+
+    public RbacSnapshot current() {
+        RbacSnapshot snapshot = current.get();
+        return snapshot != null ? snapshot : refresh();
+    }
+
+    // Call after saving an RBAC change; the snapshot is rebuilt once the change commits
+    public void markChanged() {
+        principalCache.evictAll();
+        TransactionHooks.afterCommit(this::refresh);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized RbacSnapshot refresh() {
+        // Scalar projections, so the EAGER role/permission collections are never loaded
+        Map<Long, PermissionView> permissions = new LinkedHashMap<>();
+        for (Object[] row : permissionRepository.findAllIdsAndNames()) {
+            permissions.put((Long) row[0], new PermissionView((Long) row[0], (String) row[1]));
+        }
+
+        Map<Long, String> roleNames = new LinkedHashMap<>();
+        Map<Long, List<PermissionView>> grants = new HashMap<>();
+        for (Object[] row : roleRepository.findRolePermissionIds()) {
+            Long roleId = (Long) row[0];
+            roleNames.put(roleId, (String) row[1]);
+            List<PermissionView> granted = grants.computeIfAbsent(roleId, id -> new ArrayList<>());
+            if (row[2] != null && permissions.containsKey((Long) row[2])) {
+                granted.add(permissions.get((Long) row[2]));
+            }
+        }
+
+        List<RoleView> roles = new ArrayList<>(roleNames.size());
+        Map<String, List<PermissionView>> byRole = new HashMap<>();
+        Map<String, String> byRoleEtags = new HashMap<>();
+        Map<String, Set<Long>> roleIdsByPermission = new HashMap<>();
+        roleNames.forEach((roleId, name) -> {
+            List<PermissionView> granted = List.copyOf(grants.get(roleId));
+            roles.add(new RoleView(roleId, name, granted));
+            // Lookup maps are keyed by name, so unnamed rows only appear in the full lists
+            if (name != null) {
+                byRole.put(name, granted);
+                byRoleEtags.put(name, etag(granted));
+            }
+            granted.stream()
+                    .filter(permission -> permission.name() != null)
+                    .forEach(permission -> roleIdsByPermission
+                            .computeIfAbsent(permission.name(), key -> new HashSet<>()).add(roleId));
+        });
+        roleIdsByPermission.replaceAll((name, roleIds) -> Set.copyOf(roleIds));
+
+        RbacSnapshot previous = current.get();
+        List<PermissionView> allPermissions = List.copyOf(permissions.values());
+        RbacSnapshot snapshot = new RbacSnapshot(
+                previous == null ? 1 : previous.getVersion() + 1,
+                List.copyOf(roles),
+                allPermissions,
+                Map.copyOf(byRole),
+                etag(roles),
+                etag(allPermissions),
+                Map.copyOf(byRoleEtags),
+                Map.copyOf(roleIdsByPermission)
+        );
+        current.set(snapshot);
+        return snapshot;
+    }
+
+    // Content-derived, so tags stay valid across restarts and only change with the data
+    private String etag(Object body) {
+        try {
+            return "\"" + HashUtil.generateHash(objectMapper.writeValueAsBytes(body)) + "\"";
+        } catch (Exception e) {
+            throw new IllegalStateException("Error computing RBAC snapshot ETag", e);
+        }
+    }
+}
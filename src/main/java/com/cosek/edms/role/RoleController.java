@@ -3,7 +3,10 @@ package com.cosek.edms.role;
 import com.cosek.edms.exception.NotFoundException;
 import com.cosek.edms.permission.Permission;
 import com.cosek.edms.role.Models.MultipleUpdate;
+import com.cosek.edms.role.Models.BulkPermissionUpdateResponse;
 import com.cosek.edms.role.Models.PermissionUpdateRequest;
+import com.cosek.edms.role.Models.RolePermissionDelta;
+import com.cosek.edms.role.Models.RoleView;
 import com.cosek.edms.role.Models.UserRoleRequest;
 import com.cosek.edms.user.User;
 import com.cosek.edms.user.UserRepository;
@@ -13,6 +16,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 import java.util.Map;
@@ -25,6 +29,7 @@ import java.util.stream.Collectors;
 public class RoleController {
     private final RoleService roleService;
     private final UserService userService;
+    private final RbacSnapshotService rbacSnapshotService;
 
 
     // Create a new role
@@ -34,11 +39,14 @@ public class RoleController {
         return new ResponseEntity<>(response, HttpStatusCode.valueOf(200));
     }
 
-    // List all roles
+    // List all roles, served from the RBAC snapshot
     @GetMapping("/roles/all")
-    public ResponseEntity<List<Role>> listRoles() {
-        List<Role> response = roleService.listRoles();
-        return new ResponseEntity<>(response, HttpStatusCode.valueOf(200));
+    public ResponseEntity<List<RoleView>> listRoles(WebRequest webRequest) {
+        RbacSnapshot snapshot = rbacSnapshotService.current();
+        if (webRequest.checkNotModified(snapshot.getRolesEtag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(snapshot.getRolesEtag()).build();
+        }
+        return ResponseEntity.ok().eTag(snapshot.getRolesEtag()).body(snapshot.getRoles());
     }
 
     // Add a permission to a role using @RequestBody
@@ -72,6 +80,21 @@ public class RoleController {
     }
 
 
+    @PutMapping("/roles/update-permissions-multiple")
+    public ResponseEntity<?> updatePermissionsForRoles(@RequestBody List<RolePermissionDelta> deltas) {
+        try {
+            List<RolePermissionDelta> applied = roleService.applyPermissionDeltas(deltas);
+            // The snapshot is rebuilt on commit, which has happened by the time the service returns
+            long version = rbacSnapshotService.current().getVersion();
+            return ResponseEntity.ok(new BulkPermissionUpdateResponse(version, applied));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (NotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
+
+
     @PostMapping("/assign-userType")
     public ResponseEntity<?> assignUserTypes(@RequestBody UserRoleRequest request) {
         try {
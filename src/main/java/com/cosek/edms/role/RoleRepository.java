@@ -5,6 +5,8 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -14,4 +16,16 @@ public interface RoleRepository extends JpaRepository<Role, Long> {
     @Query("SELECT r FROM Role r JOIN FETCH r.permissions WHERE r.name = :name")
     Optional<Role> findByNameWithPermissions(@Param("name") String name);
 
+    @Query("SELECT r.id, r.name FROM Role r")
+    List<Object[]> findAllIdsAndNames();
+
+    @Query("SELECT r.id, r.name, p.id FROM Role r LEFT JOIN r.permissions p ORDER BY r.id, p.id")
+    List<Object[]> findRolePermissionIds();
+
+    @Query(value = "SELECT role_id, permission_id FROM role_permission WHERE role_id IN (:roleIds)", nativeQuery = true)
+    List<Object[]> findPermissionLinks(@Param("roleIds") Collection<Long> roleIds);
+
+    @Query("SELECT r.id FROM Role r WHERE r.id IN :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
 }
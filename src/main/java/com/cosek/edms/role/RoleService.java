@@ -4,10 +4,11 @@ import com.cosek.edms.exception.NotFoundException;
 import com.cosek.edms.permission.Permission;
 import com.cosek.edms.permission.PermissionRepository;
 import com.cosek.edms.permission.PermissionService;
-import jakarta.annotation.PostConstruct;
+import com.cosek.edms.role.Models.RolePermissionDelta;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
@@ -17,13 +18,25 @@ import java.util.*;
 public class RoleService {
     private final RoleRepository roleRepository;
     private final PermissionService permissionService;
+    private final RbacSnapshotService rbacSnapshotService;
+    private final JdbcTemplate jdbcTemplate;
+
+    private static final int LINK_BATCH_SIZE = 500;
+
+    // The lock hints keep two concurrent grants of the same pair from both passing NOT EXISTS
+    private static final String GRANT_SQL = "INSERT INTO role_permission (role_id, permission_id) SELECT ?, ? " +
+            "WHERE NOT EXISTS (SELECT 1 FROM role_permission WITH (UPDLOCK, HOLDLOCK) " +
+            "WHERE role_id = ? AND permission_id = ?)";
+    private static final String REVOKE_SQL = "DELETE FROM role_permission WHERE role_id = ? AND permission_id = ?";
 
 
     @Autowired
     private PermissionRepository permissionRepository;
 
     public Role createRole(Role request) {
-        return roleRepository.save(request);
+        Role saved = roleRepository.save(request);
+        rbacSnapshotService.markChanged();
+        return saved;
     }
 
     public Role findOneRole(Long roleId) throws NotFoundException {
@@ -37,7 +50,9 @@ public class RoleService {
         Set<Permission> permissions = role.getPermissions();
         permissions.add(permission);
         role.setPermissions(permissions);
-        return roleRepository.save(role);
+        Role saved = roleRepository.save(role);
+        rbacSnapshotService.markChanged();
+        return saved;
     }
 
     public Role removePermissionFromRole(Long roleId, Long permId) throws NotFoundException {
@@ -65,7 +80,9 @@ public class RoleService {
         }
 
         // Save the role with updated permissions
-        return roleRepository.save(role);
+        Role saved = roleRepository.save(role);
+        rbacSnapshotService.markChanged();
+        return saved;
     }
 
 
@@ -107,7 +124,109 @@ public class RoleService {
         }
 
         // Save the role with updated permissions
-        return roleRepository.save(role);
+        Role saved = roleRepository.save(role);
+        rbacSnapshotService.markChanged();
+        return saved;
+    }
+
+    // Applies grant/revoke deltas to many roles as row-level INSERT/DELETE on role_permission
+    @Transactional
+    public List<RolePermissionDelta> applyPermissionDeltas(List<RolePermissionDelta> deltas) throws NotFoundException {
+        Map<Long, Set<Long>> grants = new LinkedHashMap<>();
+        Map<Long, Set<Long>> revokes = new LinkedHashMap<>();
+        for (RolePermissionDelta delta : deltas) {
+            if (delta.getRoleId() == null) {
+                throw new IllegalArgumentException("Role ID is required for every delta.");
+            }
+            Set<Long> granted = grants.computeIfAbsent(delta.getRoleId(), id -> new LinkedHashSet<>());
+            Set<Long> revoked = revokes.computeIfAbsent(delta.getRoleId(), id -> new LinkedHashSet<>());
+            if (delta.getAdd() != null) {
+                delta.getAdd().stream().filter(Objects::nonNull).forEach(granted::add);
+            }
+            if (delta.getRemove() != null) {
+                delta.getRemove().stream().filter(Objects::nonNull).forEach(revoked::add);
+            }
+            if (!Collections.disjoint(granted, revoked)) {
+                throw new IllegalArgumentException("Role " + delta.getRoleId() + " both adds and removes the same permission.");
+            }
+        }
+        if (grants.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Set<Long> missingRoles = new LinkedHashSet<>(grants.keySet());
+        missingRoles.removeAll(roleRepository.findExistingIds(grants.keySet()));
+        if (!missingRoles.isEmpty()) {
+            throw new NotFoundException("Role not found with ID: " + missingRoles);
+        }
+
+        Set<Long> permissionIds = new LinkedHashSet<>();
+        grants.values().forEach(permissionIds::addAll);
+        revokes.values().forEach(permissionIds::addAll);
+        if (!permissionIds.isEmpty()) {
+            Set<Long> missingPermissions = new LinkedHashSet<>(permissionIds);
+            missingPermissions.removeAll(permissionRepository.findExistingIds(permissionIds));
+            if (!missingPermissions.isEmpty()) {
+                throw new NotFoundException("Permission not found with ID: " + missingPermissions);
+            }
+        }
+
+        // Diff against the current links so only real changes reach the database
+        Map<Long, Set<Long>> current = new HashMap<>();
+        for (Object[] link : roleRepository.findPermissionLinks(grants.keySet())) {
+            current.computeIfAbsent(((Number) link[0]).longValue(), id -> new HashSet<>())
+                    .add(((Number) link[1]).longValue());
+        }
+        List<Long[]> toGrant = new ArrayList<>();
+        List<Long[]> toRevoke = new ArrayList<>();
+        grants.forEach((roleId, ids) -> ids.stream()
+                .filter(id -> !current.getOrDefault(roleId, Set.of()).contains(id))
+                .forEach(id -> toGrant.add(new Long[]{roleId, id})));
+        revokes.forEach((roleId, ids) -> ids.stream()
+                .filter(id -> current.getOrDefault(roleId, Set.of()).contains(id))
+                .forEach(id -> toRevoke.add(new Long[]{roleId, id})));
+
+        int[][] granted = jdbcTemplate.batchUpdate(GRANT_SQL, toGrant, LINK_BATCH_SIZE, (ps, link) -> {
+            ps.setLong(1, link[0]);
+            ps.setLong(2, link[1]);
+            ps.setLong(3, link[0]);
+            ps.setLong(4, link[1]);
+        });
+        int[][] revoked = jdbcTemplate.batchUpdate(REVOKE_SQL, toRevoke, LINK_BATCH_SIZE, (ps, link) -> {
+            ps.setLong(1, link[0]);
+            ps.setLong(2, link[1]);
+        });
+
+        // Report what actually changed; a concurrent editor may already have applied part of it
+        Map<Long, RolePermissionDelta> applied = new LinkedHashMap<>();
+        collectApplied(toGrant, granted, applied, true);
+        collectApplied(toRevoke, revoked, applied, false);
+        if (!applied.isEmpty()) {
+            rbacSnapshotService.markChanged();
+        }
+        return new ArrayList<>(applied.values());
+    }
+
+    private static void collectApplied(List<Long[]> links, int[][] counts, Map<Long, RolePermissionDelta> applied, boolean grant) {
+        int i = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                Long[] link = links.get(i++);
+                if (count == 0) {
+                    continue;
+                }
+                RolePermissionDelta delta = applied.computeIfAbsent(link[0],
+                        roleId -> new RolePermissionDelta(roleId, new ArrayList<>(), new ArrayList<>()));
+                (grant ? delta.getAdd() : delta.getRemove()).add(link[1]);
+            }
+        }
+    }
+
+    public Set<Long> findExistingRoleIds(Collection<Long> roleIds) {
+        if (roleIds.isEmpty()) {
+            return new HashSet<>();
+        }
+        return new HashSet<>(roleRepository.findExistingIds(roleIds));
     }
 
     public List<Role> listRoles() {
@@ -126,92 +245,14 @@ public class RoleService {
         return role.orElseThrow(() -> new IllegalArgumentException("Role not found: " + roleName));
     }
 
-    @PostConstruct
-    public void initializeRolesAndPermissions() {
-        // Files permissions
-        Permission readFiles = permissionRepository.findByName("READ_FILES")
-                .orElseGet(() -> permissionRepository.save(new Permission(null, "READ_FILES", new HashSet<>())));
-        Permission createFiles = permissionRepository.findByName("CREATE_FILES")
-                .orElseGet(() -> permissionRepository.save(new Permission(null, "CREATE_FILES", new HashSet<>())));
-        Permission updateFiles = permissionRepository.findByName("UPDATE_FILES")
-                .orElseGet(() -> permissionRepository.save(new Permission(null, "UPDATE_FILES", new HashSet<>())));
-        Permission deleteFiles = permissionRepository.findByName("DELETE_FILES")
-                .orElseGet(() -> permissionRepository.save(new Permission(null, "DELETE_FILES", new HashSet<>())));
-
-        // Folders permissions
-        Permission readFolders = permissionRepository.findByName("READ_FOLDERS")
-                .orElseGet(() -> permissionRepository.save(new Permission(null, "READ_FOLDERS", new HashSet<>())));
-        Permission createFolders = permissionRepository.findByName("CREATE_FOLDERS")
-                .orElseGet(() -> permissionRepository.save(new Permission(null, "CREATE_FOLDERS", new HashSet<>())));
-        Permission updateFolders = permissionRepository.findByName("UPDATE_FOLDERS")
-                .orElseGet(() -> permissionRepository.save(new Permission(null, "UPDATE_FOLDERS", new HashSet<>())));
-        Permission deleteFolders = permissionRepository.findByName("DELETE_FOLDERS")
-                .orElseGet(() -> permissionRepository.save(new Permission(null, "DELETE_FOLDERS", new HashSet<>())));
-
-        // Case Studies permissions
-        Permission readCaseStudies = permissionRepository.findByName("READ_CASESTUDIES")
-                .orElseGet(() -> permissionRepository.save(new Permission(null, "READ_CASESTUDIES", new HashSet<>())));
-        Permission createCaseStudies = permissionRepository.findByName("CREATE_CASESTUDIES")
-                .orElseGet(() -> permissionRepository.save(new Permission(null, "CREATE_CASESTUDIES", new HashSet<>())));
-        Permission updateCaseStudies = permissionRepository.findByName("UPDATE_CASESTUDIES")
-                .orElseGet(() -> permissionRepository.save(new Permission(null, "UPDATE_CASESTUDIES", new HashSet<>())));
-        Permission deleteCaseStudies = permissionRepository.findByName("DELETE_CASESTUDIES")
-                .orElseGet(() -> permissionRepository.save(new Permission(null, "DELETE_CASESTUDIES", new HashSet<>())));
-
-        // Existing User and Role Permissions
-        Permission createUser = permissionRepository.findByName("CREATE_USER")
-                .orElseGet(() -> permissionRepository.save(new Permission(null, "CREATE_USER", new HashSet<>())));
-        Permission deleteUser = permissionRepository.findByName("DELETE_USER")
-                .orElseGet(() -> permissionRepository.save(new Permission(null, "DELETE_USER", new HashSet<>())));
-        Permission readUser = permissionRepository.findByName("READ_USER")
-                .orElseGet(() -> permissionRepository.save(new Permission(null, "READ_USER", new HashSet<>())));
-
-
-        // Existing User and Role Permissions
-        Permission createDepartment = permissionRepository.findByName("CREATE_DEPARTMENT")
-                .orElseGet(() -> permissionRepository.save(new Permission(null, "CREATE_DEPARTMENT", new HashSet<>())));
-        Permission deleteDepartment = permissionRepository.findByName("DELETE_DEPARTMENT")
-                .orElseGet(() -> permissionRepository.save(new Permission(null, "DELETE_DEPARTMENT", new HashSet<>())));
-        Permission readDepartment = permissionRepository.findByName("READ_DEPARTMENT")
-                .orElseGet(() -> permissionRepository.save(new Permission(null, "READ_DEPARTMENT", new HashSet<>())));
-        Permission updateDepartment = permissionRepository.findByName("UPDATE_DEPARTMENT")
-                .orElseGet(() -> permissionRepository.save(new Permission(null, "UPDATE_DEPARTMENT", new HashSet<>())));
-
-        // Assign permissions to roles
-        Role adminRole = roleRepository.findByName("ADMIN")
-                .orElseGet(() -> {
-                    Role role = new Role();
-                    role.setName("ADMIN");
-                    role.setPermissions(new HashSet<>(Arrays.asList(
-                            readUser,
-                            readFiles, createFiles, updateFiles, deleteFiles,
-                            readFolders, createFolders, updateFolders, deleteFolders,
-                            readCaseStudies, createCaseStudies, updateCaseStudies, deleteCaseStudies,readDepartment
-                    )));
-                    return role;
-                });
-
-        Role userRole = roleRepository.findByName("USER")
-                .orElseGet(() -> {
-                    Role role = new Role();
-                    role.setName("USER");
-                    role.setPermissions(new HashSet<>(Arrays.asList(
-                            readFiles, readFolders, readCaseStudies,createFiles,readDepartment
-                    )));
-                    return role;
-                });
-
-        // Save roles
-        roleRepository.save(adminRole);
-        roleRepository.save(userRole);
-    }
-
     public Role addPermissionToRole(String roleName, String permissionName) {
         Role role = roleRepository.findByName(roleName).orElseThrow(() -> new RuntimeException("Role not found"));
         Permission permission = permissionRepository.findByName(permissionName).orElseThrow(() -> new RuntimeException("Permission not found"));
 
         role.getPermissions().add(permission);
-        return roleRepository.save(role);
+        Role saved = roleRepository.save(role);
+        rbacSnapshotService.markChanged();
+        return saved;
     }
 
     public Role removePermissionFromRole(String roleName, String permissionName) {
@@ -219,7 +260,9 @@ public class RoleService {
         Permission permission = permissionRepository.findByName(permissionName).orElseThrow(() -> new RuntimeException("Permission not found"));
 
         role.getPermissions().remove(permission);
-        return roleRepository.save(role);
+        Role saved = roleRepository.save(role);
+        rbacSnapshotService.markChanged();
+        return saved;
     }
 
 }
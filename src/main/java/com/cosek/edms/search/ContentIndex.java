@@ -0,0 +1,384 @@
+package com.cosek.edms.search;
+
+import com.cosek.edms.search.Models.IndexStats;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Segment-based inverted index over file contents. Updates collect in an in-memory
+ * buffer that is searched alongside the segments and flushed into a new immutable
+ * segment; deletes only flip bits. A background merge folds small segments together
+ * and expunges deleted documents. The manifest lists the live segments and is
+ * replaced atomically, so a crash leaves the last consistent set.
+ */
+@Component
+public class ContentIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ContentIndex.class);
+    private static final String MANIFEST = "segments.manifest";
+
+    // BM25 parameters
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    @Value("${edms.search.index-dir:./storage/index}")
+    private Path directory;
+
+    @Value("${edms.search.flush-docs:1000}")
+    private int flushDocs;
+
+    @Value("${edms.search.merge-factor:8}")
+    private int mergeFactor;
+
+    private final Map<Long, IndexedDocument> buffer = new ConcurrentHashMap<>();
+    // Where each file's live copy sits; buffered files are not in here
+    private final Map<Long, Segment> locations = new ConcurrentHashMap<>();
+    private final Set<Segment> dirtyDeletes = new HashSet<>();
+    private final AtomicLong generations = new AtomicLong();
+    private final AtomicBoolean merging = new AtomicBoolean();
+    private volatile List<Segment> segments = List.of();
+
+    record Hit(long fileId, String contentHash, double score) {
+    }
+
+    @PostConstruct
+    synchronized void open() throws IOException {
+        Files.createDirectories(directory);
+        List<Segment> opened = new ArrayList<>();
+        Path manifest = directory.resolve(MANIFEST);
+        if (Files.exists(manifest)) {
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    opened.add(Segment.open(directory, Long.parseLong(line.trim())));
+                }
+            }
+        }
+        long maxGeneration = opened.stream().mapToLong(Segment::generation).max().orElse(0);
+        generations.set(maxGeneration);
+        opened.forEach(this::locate);
+        segments = List.copyOf(opened);
+
+        // Leftovers of interrupted flushes and merges, and segments the manifest no longer lists
+        Set<String> keep = opened.stream()
+                .flatMap(segment -> Stream.of(
+                        Segment.segmentPath(directory, segment.generation()).getFileName().toString(),
+                        Segment.deletesPath(directory, segment.generation()).getFileName().toString()))
+                .collect(Collectors.toSet());
+        keep.add(MANIFEST);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                if (!keep.contains(file.getFileName().toString())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return buffer.isEmpty() && segments.stream().allMatch(segment -> segment.liveCount() == 0);
+    }
+
+    synchronized void update(IndexedDocument document) {
+        delete(document.fileId());
+        buffer.put(document.fileId(), document);
+        if (buffer.size() >= flushDocs) {
+            flushQuietly();
+        }
+    }
+
+    synchronized void remove(Collection<Long> fileIds) {
+        fileIds.forEach(this::delete);
+    }
+
+    @Scheduled(fixedDelayString = "${edms.search.flush-interval:PT5S}")
+    public void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            logger.error("Could not flush the content index", e);
+        }
+    }
+
+    public synchronized void flush() throws IOException {
+        if (!buffer.isEmpty()) {
+            Segment written = Segment.write(directory, generations.incrementAndGet(), buffer.values());
+            List<Segment> next = new ArrayList<>(segments);
+            next.add(written);
+            locate(written);
+            buffer.clear();
+            publish(next);
+        }
+        if (!dirtyDeletes.isEmpty()) {
+            for (Segment segment : dirtyDeletes) {
+                segment.persistDeletes();
+            }
+            dirtyDeletes.clear();
+        }
+    }
+
+    // Merges while there are too many segments, or one is mostly deleted documents
+    @Scheduled(fixedDelayString = "${edms.search.merge-interval:PT30S}")
+    public void mergeQuietly() {
+        if (!merging.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            while (mergeOnce()) {
+                // keep going until the policy is satisfied
+            }
+        } catch (IOException e) {
+            logger.error("Could not merge content index segments", e);
+        } finally {
+            merging.set(false);
+        }
+    }
+
+    // Sources with the deletions they had when the merge was planned
+    record Merge(List<Segment> sources, List<BitSet> snapshots) {
+    }
+
+    boolean mergeOnce() throws IOException {
+        Merge merge = planMerge();
+        // The expensive part runs unlocked; searches and updates carry on against the sources
+        return merge != null && commitMerge(merge, writeMerge(merge));
+    }
+
+    synchronized Merge planMerge() {
+        List<Segment> sources = pickMerge(segments);
+        return sources.isEmpty() ? null : new Merge(sources, sources.stream().map(Segment::deleted).toList());
+    }
+
+    Segment writeMerge(Merge merge) throws IOException {
+        return Segment.merge(directory, generations.incrementAndGet(), merge.sources(), merge.snapshots());
+    }
+
+    synchronized boolean commitMerge(Merge merge, Segment merged) throws IOException {
+        List<Segment> sources = merge.sources();
+        List<BitSet> snapshots = merge.snapshots();
+        if (!new HashSet<>(segments).containsAll(sources)) {
+            // A rebuild swapped the index out from under the merge
+            merged.deleteFiles();
+            return false;
+        }
+        // Deletes that reached the sources while the merge ran
+        for (int s = 0; s < sources.size(); s++) {
+            Segment source = sources.get(s);
+            BitSet late = (BitSet) source.deleted().clone();
+            late.andNot(snapshots.get(s));
+            for (int ordinal = late.nextSetBit(0); ordinal >= 0; ordinal = late.nextSetBit(ordinal + 1)) {
+                int target = merged.ordinalOf(source.fileId(ordinal));
+                if (target >= 0) {
+                    merged.delete(target);
+                }
+            }
+        }
+        Set<Segment> replaced = Collections.newSetFromMap(new IdentityHashMap<>());
+        replaced.addAll(sources);
+        for (int ordinal = 0; ordinal < merged.docCount(); ordinal++) {
+            if (!merged.isDeleted(ordinal)) {
+                locations.put(merged.fileId(ordinal), merged);
+            }
+        }
+        List<Segment> next = new ArrayList<>();
+        segments.stream().filter(segment -> !replaced.contains(segment)).forEach(next::add);
+        next.add(merged);
+        merged.persistDeletes();
+        publish(next);
+        dirtyDeletes.removeAll(replaced);
+        for (Segment source : sources) {
+            source.deleteFiles();
+        }
+        return true;
+    }
+
+    private List<Segment> pickMerge(List<Segment> current) {
+        if (current.size() > mergeFactor) {
+            return current.stream()
+                    .sorted(Comparator.comparingInt(Segment::liveCount))
+                    .limit(mergeFactor)
+                    .toList();
+        }
+        return current.stream()
+                .filter(segment -> segment.docCount() > 0 && segment.liveCount() * 2 < segment.docCount())
+                .limit(1)
+                .toList();
+    }
+
+    /**
+     * Replaces the whole index with freshly built segments. Anything indexed meanwhile is
+     * dropped with the old segments; the caller re-applies those changes afterwards.
+     */
+    synchronized void replaceAll(List<Segment> fresh) throws IOException {
+        List<Segment> previous = segments;
+        buffer.clear();
+        locations.clear();
+        dirtyDeletes.clear();
+        fresh.forEach(this::locate);
+        publish(new ArrayList<>(fresh));
+        for (Segment segment : previous) {
+            segment.deleteFiles();
+        }
+    }
+
+    Segment writeSegment(Collection<IndexedDocument> documents) throws IOException {
+        return Segment.write(directory, generations.incrementAndGet(), documents);
+    }
+
+    // Documents containing every term, best BM25 score first
+    List<Hit> search(List<String> terms) {
+        List<Segment> current = segments;
+        List<IndexedDocument> pending = List.copyOf(buffer.values());
+
+        // Collection statistics span all segments and the buffer, so scores compare across them
+        long documentCount = pending.size();
+        long totalLength = 0;
+        for (Segment segment : current) {
+            documentCount += segment.docCount();
+            totalLength += segment.totalLength();
+        }
+        for (IndexedDocument document : pending) {
+            totalLength += document.length();
+        }
+        double averageLength = documentCount == 0 ? 1 : Math.max(1.0, (double) totalLength / documentCount);
+        double[] idf = new double[terms.size()];
+        for (int t = 0; t < terms.size(); t++) {
+            String term = terms.get(t);
+            long docFreq = pending.stream().filter(document -> document.termFreqs().containsKey(term)).count();
+            for (Segment segment : current) {
+                docFreq += segment.docFreq(term);
+            }
+            if (docFreq == 0) {
+                return List.of();
+            }
+            idf[t] = Math.log(1 + (documentCount - docFreq + 0.5) / (docFreq + 0.5));
+        }
+
+        Map<Long, Hit> hits = new HashMap<>();
+        for (Segment segment : current) {
+            searchSegment(segment, terms, idf, averageLength, hits);
+        }
+        for (IndexedDocument document : pending) {
+            int[] freqs = new int[terms.size()];
+            boolean all = true;
+            for (int t = 0; t < terms.size() && all; t++) {
+                freqs[t] = document.termFreqs().getOrDefault(terms.get(t), 0);
+                all = freqs[t] > 0;
+            }
+            if (all) {
+                keepBest(hits, new Hit(document.fileId(), document.contentHash(),
+                        score(freqs, idf, document.length(), averageLength)));
+            }
+        }
+        List<Hit> ranked = new ArrayList<>(hits.values());
+        ranked.sort(Comparator.comparingDouble(Hit::score).reversed().thenComparingLong(Hit::fileId));
+        return ranked;
+    }
+
+    private static void searchSegment(Segment segment, List<String> terms, double[] idf, double averageLength,
+                                      Map<Long, Hit> hits) {
+        Segment.Postings[] postings = new Segment.Postings[terms.size()];
+        for (int t = 0; t < terms.size(); t++) {
+            postings[t] = segment.postings(terms.get(t));
+            if (postings[t] == null) {
+                return;
+            }
+        }
+        // Drive from the rarest term and advance the other lists to each of its ordinals
+        int lead = 0;
+        for (int t = 1; t < postings.length; t++) {
+            if (postings[t].size() < postings[lead].size()) {
+                lead = t;
+            }
+        }
+        int[] cursors = new int[postings.length];
+        int[] freqs = new int[postings.length];
+        BitSet deleted = segment.deleted();
+        for (int i = 0; i < postings[lead].size(); i++) {
+            int ordinal = postings[lead].ordinals()[i];
+            if (deleted.get(ordinal)) {
+                continue;
+            }
+            boolean all = true;
+            for (int t = 0; t < postings.length && all; t++) {
+                if (t == lead) {
+                    freqs[t] = postings[lead].freqs()[i];
+                    continue;
+                }
+                int[] ordinals = postings[t].ordinals();
+                int cursor = cursors[t];
+                while (cursor < postings[t].size() && ordinals[cursor] < ordinal) {
+                    cursor++;
+                }
+                cursors[t] = cursor;
+                all = cursor < postings[t].size() && ordinals[cursor] == ordinal;
+                if (all) {
+                    freqs[t] = postings[t].freqs()[cursor];
+                }
+            }
+            if (all) {
+                keepBest(hits, new Hit(segment.fileId(ordinal), segment.contentHash(ordinal),
+                        score(freqs, idf, segment.length(ordinal), averageLength)));
+            }
+        }
+    }
+
+    private static double score(int[] freqs, double[] idf, int length, double averageLength) {
+        double score = 0;
+        for (int t = 0; t < freqs.length; t++) {
+            score += idf[t] * freqs[t] * (K1 + 1) / (freqs[t] + K1 * (1 - B + B * length / averageLength));
+        }
+        return score;
+    }
+
+    // A file being re-indexed can briefly show up in both a segment and the buffer
+    private static void keepBest(Map<Long, Hit> hits, Hit hit) {
+        hits.merge(hit.fileId(), hit, (a, b) -> a.score() >= b.score() ? a : b);
+    }
+
+    public IndexStats stats() {
+        List<Segment> current = segments;
+        long documents = current.stream().mapToLong(Segment::liveCount).sum() + buffer.size();
+        long deleted = current.stream().mapToLong(segment -> segment.docCount() - segment.liveCount()).sum();
+        return new IndexStats(current.size(), documents, deleted, buffer.size());
+    }
+
+    private void delete(long fileId) {
+        buffer.remove(fileId);
+        Segment segment = locations.remove(fileId);
+        if (segment != null) {
+            segment.delete(segment.ordinalOf(fileId));
+            dirtyDeletes.add(segment);
+        }
+    }
+
+    private void locate(Segment segment) {
+        for (int ordinal = 0; ordinal < segment.docCount(); ordinal++) {
+            if (!segment.isDeleted(ordinal)) {
+                locations.put(segment.fileId(ordinal), segment);
+            }
+        }
+    }
+
+    private void publish(List<Segment> next) throws IOException {
+        Path manifest = directory.resolve(MANIFEST);
+        Path temp = directory.resolve(MANIFEST + ".tmp");
+        String body = next.stream().map(segment -> Long.toString(segment.generation())).collect(Collectors.joining("\n"));
+        Files.writeString(temp, body, StandardCharsets.UTF_8);
+        Files.move(temp, manifest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        segments = List.copyOf(next);
+    }
+}
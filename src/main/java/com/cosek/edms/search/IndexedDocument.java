@@ -0,0 +1,38 @@
+package com.cosek.edms.search;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// A file's analyzed content, as buffered before it is written into a segment
+record IndexedDocument(long fileId, String contentHash, Map<String, Integer> termFreqs, int length) {
+    private static final int MIN_TOKEN = 2;
+    private static final int MAX_TOKEN = 40;
+
+    static IndexedDocument of(long fileId, String contentHash, String... texts) {
+        Map<String, Integer> termFreqs = new HashMap<>();
+        int length = 0;
+        for (String text : texts) {
+            for (String token : tokenize(text)) {
+                termFreqs.merge(token, 1, Integer::sum);
+                length++;
+            }
+        }
+        return new IndexedDocument(fileId, contentHash, termFreqs, length);
+    }
+
+    // Accent-folded, lower-cased runs of letters and digits; very short and very long runs are dropped
+    static String[] tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return new String[0];
+        }
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT);
+        return Arrays.stream(folded.split("[^\\p{Alnum}]+"))
+                .filter(token -> token.length() >= MIN_TOKEN && token.length() <= MAX_TOKEN)
+                .toArray(String[]::new);
+    }
+}
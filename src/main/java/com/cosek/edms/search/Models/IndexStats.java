@@ -0,0 +1,10 @@
+package com.cosek.edms.search.Models;
+
+// Counts as of this node's in-memory view; buffered documents are not yet in a segment
+public record IndexStats(
+        int segments,
+        long documents,
+        long deletedDocuments,
+        int bufferedDocuments
+) {
+}
@@ -0,0 +1,11 @@
+package com.cosek.edms.search.Models;
+
+public record SearchResult(
+        Long id,
+        String name,
+        String contentType,
+        Long folderId,
+        long size,
+        double score
+) {
+}
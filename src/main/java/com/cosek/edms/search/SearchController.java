@@ -0,0 +1,37 @@
+package com.cosek.edms.search;
+
+import com.cosek.edms.search.Models.IndexStats;
+import com.cosek.edms.search.Models.SearchResult;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/v1/search")
+@RequiredArgsConstructor
+public class SearchController {
+    private final SearchService searchService;
+
+    @GetMapping
+    public ResponseEntity<List<SearchResult>> search(@RequestParam("q") String query,
+                                                     @RequestParam(value = "limit", required = false) Integer limit) {
+        return ResponseEntity.ok(searchService.search(query, limit));
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<IndexStats> getStats() {
+        return ResponseEntity.ok(searchService.getStats());
+    }
+
+    @PostMapping("/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuild() {
+        if (!searchService.startRebuild()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("message", "A rebuild is already running"));
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("message", "Rebuild started"));
+    }
+}
@@ -0,0 +1,283 @@
+package com.cosek.edms.search;
+
+import com.cosek.edms.derivative.Derivative;
+import com.cosek.edms.derivative.DerivativeCreatedEvent;
+import com.cosek.edms.derivative.DerivativeRepository;
+import com.cosek.edms.derivative.DerivativeService;
+import com.cosek.edms.file.FileRecord;
+import com.cosek.edms.file.FileRepository;
+import com.cosek.edms.folder.FolderAccessIndex.Acl;
+import com.cosek.edms.folder.FolderAccessIndex;
+import com.cosek.edms.helper.TransactionHooks;
+import com.cosek.edms.search.Models.IndexStats;
+import com.cosek.edms.search.Models.SearchResult;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the content index in step with the files table and answers searches over it.
+ * Changes are applied after commit on a single indexer thread, so they reach the index
+ * in commit order. Hits are checked against the database before they are returned:
+ * a file that is gone, holds different content or sits in an unreadable folder is dropped.
+ */
+@Service
+@RequiredArgsConstructor
+public class SearchService {
+    private static final Logger logger = LoggerFactory.getLogger(SearchService.class);
+
+    public static final int DEFAULT_LIMIT = 20;
+    public static final int MAX_LIMIT = 100;
+    private static final int PAGE_SIZE = 500;
+    private static final int MAX_REBUILD_THREADS = 8;
+
+    private final ContentIndex contentIndex;
+    private final FileRepository fileRepository;
+    private final DerivativeRepository derivativeRepository;
+    private final DerivativeService derivativeService;
+    private final FolderAccessIndex folderAccessIndex;
+
+    @Value("${edms.search.flush-docs:1000}")
+    private int flushDocs;
+
+    private ExecutorService indexer;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    // Files touched while a rebuild runs; applied again once its segments are swapped in
+    private final Set<Long> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    void start() {
+        indexer = Executors.newSingleThreadExecutor();
+    }
+
+    @PreDestroy
+    void stop() {
+        indexer.shutdownNow();
+        contentIndex.flushQuietly();
+    }
+
+    // Re-reads the files once the caller's transaction commits; ids that no longer exist are removed
+    public void indexFiles(Collection<Long> ids) {
+        List<Long> fileIds = List.copyOf(ids);
+        if (!fileIds.isEmpty()) {
+            TransactionHooks.afterCommit(() -> submit(() -> reindex(fileIds)));
+        }
+    }
+
+    public void removeFiles(Collection<Long> ids) {
+        List<Long> fileIds = List.copyOf(ids);
+        if (!fileIds.isEmpty()) {
+            TransactionHooks.afterCommit(() -> submit(() -> {
+                markChanged(fileIds);
+                contentIndex.remove(fileIds);
+            }));
+        }
+    }
+
+    // Extracted text arrives after the file itself; every file sharing the content picks it up
+    @EventListener
+    public void onDerivativeCreated(DerivativeCreatedEvent event) {
+        if (event.kind() == Derivative.Kind.TEXT) {
+            submit(() -> reindex(fileRepository.findIdsByContentHash(event.sourceHash())));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        if (contentIndex.isEmpty() && fileRepository.count() > 0) {
+            startRebuild();
+        }
+    }
+
+    public List<SearchResult> search(String query, Integer limit) {
+        List<String> terms = Arrays.stream(IndexedDocument.tokenize(query)).distinct().toList();
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+        int capped = limit == null ? DEFAULT_LIMIT : Math.max(1, Math.min(limit, MAX_LIMIT));
+        List<ContentIndex.Hit> hits = contentIndex.search(terms);
+        Acl acl = folderAccessIndex.current();
+
+        // Hits are verified a page at a time, so unreadable or stale ones do not shorten the result
+        List<SearchResult> results = new ArrayList<>(capped);
+        for (int from = 0; from < hits.size() && results.size() < capped; from += PAGE_SIZE) {
+            List<ContentIndex.Hit> page = hits.subList(from, Math.min(from + PAGE_SIZE, hits.size()));
+            Map<Long, FileRecord> records = fileRepository.findAllById(page.stream().map(ContentIndex.Hit::fileId).toList())
+                    .stream()
+                    .collect(Collectors.toMap(FileRecord::getId, Function.identity()));
+            for (ContentIndex.Hit hit : page) {
+                FileRecord record = records.get(hit.fileId());
+                if (record == null || !Objects.equals(record.getContentHash(), hit.contentHash())
+                        || !acl.canRead(record.getFolderId())) {
+                    continue;
+                }
+                results.add(new SearchResult(record.getId(), record.getName(), record.getContentType(),
+                        record.getFolderId(), record.getSize(), hit.score()));
+                if (results.size() == capped) {
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    public IndexStats getStats() {
+        return contentIndex.stats();
+    }
+
+    /**
+     * Rebuilds the index from the files table in the background. Returns false when a
+     * rebuild is already running.
+     */
+    public boolean startRebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return false;
+        }
+        changedDuringRebuild.clear();
+        Thread thread = new Thread(this::rebuild, "search-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    // Contiguous id slices are indexed in parallel, each into its own segments
+    private void rebuild() {
+        List<Segment> written = Collections.synchronizedList(new ArrayList<>());
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_REBUILD_THREADS));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            long started = System.nanoTime();
+            List<Long> ids = fileRepository.findAllIds();
+            int sliceSize = Math.max(PAGE_SIZE, (ids.size() + threads - 1) / threads);
+            List<Future<?>> slices = new ArrayList<>();
+            for (int from = 0; from < ids.size(); from += sliceSize) {
+                List<Long> slice = ids.subList(from, Math.min(from + sliceSize, ids.size()));
+                slices.add(pool.submit(() -> {
+                    indexSlice(slice, written);
+                    return null;
+                }));
+            }
+            for (Future<?> slice : slices) {
+                slice.get();
+            }
+            // The swap runs on the indexer, so no incremental change interleaves with it
+            indexer.submit(() -> {
+                contentIndex.replaceAll(List.copyOf(written));
+                rebuilding.set(false);
+                List<Long> changed = List.copyOf(changedDuringRebuild);
+                changedDuringRebuild.clear();
+                reindex(changed);
+                return null;
+            }).get();
+            logger.info("Rebuilt the content index over {} files in {} ms", ids.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (Exception e) {
+            logger.error("Content index rebuild failed; the previous index stays in place", e);
+            for (Segment segment : written) {
+                try {
+                    segment.deleteFiles();
+                } catch (IOException ignored) {
+                    // picked up as a stray file on the next start
+                }
+            }
+        } finally {
+            rebuilding.set(false);
+            pool.shutdownNow();
+        }
+    }
+
+    private void indexSlice(List<Long> ids, List<Segment> written) throws IOException {
+        List<IndexedDocument> pending = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += PAGE_SIZE) {
+            pending.addAll(load(ids.subList(from, Math.min(from + PAGE_SIZE, ids.size()))));
+            if (pending.size() >= flushDocs) {
+                written.add(contentIndex.writeSegment(pending));
+                pending.clear();
+            }
+        }
+        if (!pending.isEmpty()) {
+            written.add(contentIndex.writeSegment(pending));
+        }
+    }
+
+    private void reindex(List<Long> ids) {
+        markChanged(ids);
+        for (int from = 0; from < ids.size(); from += PAGE_SIZE) {
+            List<Long> page = ids.subList(from, Math.min(from + PAGE_SIZE, ids.size()));
+            List<IndexedDocument> documents = load(page);
+            Set<Long> missing = new HashSet<>(page);
+            for (IndexedDocument document : documents) {
+                missing.remove(document.fileId());
+                contentIndex.update(document);
+            }
+            contentIndex.remove(missing);
+        }
+    }
+
+    // File name plus extracted text, when the text derivative exists yet
+    private List<IndexedDocument> load(List<Long> ids) {
+        List<FileRecord> records = fileRepository.findAllById(ids);
+        Set<String> hashes = records.stream().map(FileRecord::getContentHash).filter(Objects::nonNull).collect(Collectors.toSet());
+        Map<String, Derivative> texts = hashes.isEmpty() ? Map.of() : derivativeRepository
+                .findBySourceHashInAndKind(hashes, Derivative.Kind.TEXT)
+                .stream()
+                .collect(Collectors.toMap(Derivative::getSourceHash, Function.identity(), (first, second) -> first));
+        List<IndexedDocument> documents = new ArrayList<>(records.size());
+        for (FileRecord record : records) {
+            documents.add(IndexedDocument.of(record.getId(), record.getContentHash(), record.getName(),
+                    readText(texts.get(record.getContentHash()))));
+        }
+        return documents;
+    }
+
+    private String readText(Derivative derivative) {
+        if (derivative == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(derivative.getSize(), Integer.MAX_VALUE - 8));
+            derivativeService.writeContent(derivative, out);
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            // Indexed by name only; the next change to the file tries again
+            logger.warn("Could not read extracted text {}", derivative.getContentHash(), e);
+            return null;
+        }
+    }
+
+    private void markChanged(Collection<Long> ids) {
+        if (rebuilding.get()) {
+            changedDuringRebuild.addAll(ids);
+        }
+    }
+
+    private void submit(Runnable task) {
+        try {
+            indexer.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.error("Content index update failed", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down; a rebuild brings the index back in line
+            logger.debug("Content indexer rejected an update", e);
+        }
+    }
+}
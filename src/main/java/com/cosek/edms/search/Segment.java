@@ -0,0 +1,458 @@
+package com.cosek.edms.search;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * One immutable segment of the content index. The doc table and the sorted term
+ * dictionary are loaded into memory; varint-coded postings stay on disk behind a
+ * read-only memory map. Only the deletion bitmap changes once a segment is written,
+ * and it is swapped for a fresh copy, never mutated.
+ */
+final class Segment {
+    private static final int MAGIC = 0x45444D49; // "EDMI"
+    private static final int VERSION = 1;
+
+    private final long generation;
+    private final Path directory;
+    private final long[] fileIds;
+    private final String[] hashes;
+    private final int[] lengths;
+    private final long totalLength;
+    private final String[] terms;
+    private final int[] docFreqs;
+    private final int[] offsets;
+    private final ByteBuffer postings;
+    private volatile BitSet deleted;
+
+    // Ordinals ascending, with the term frequency in the document at the same index
+    record Postings(int[] ordinals, int[] freqs, int size) {
+    }
+
+    private Segment(long generation, Path directory, long[] fileIds, String[] hashes, int[] lengths,
+                    String[] terms, int[] docFreqs, int[] offsets, ByteBuffer postings, BitSet deleted) {
+        this.generation = generation;
+        this.directory = directory;
+        this.fileIds = fileIds;
+        this.hashes = hashes;
+        this.lengths = lengths;
+        this.totalLength = Arrays.stream(lengths).asLongStream().sum();
+        this.terms = terms;
+        this.docFreqs = docFreqs;
+        this.offsets = offsets;
+        this.postings = postings;
+        this.deleted = deleted;
+    }
+
+    static Path segmentPath(Path directory, long generation) {
+        return directory.resolve("seg-" + generation + ".seg");
+    }
+
+    static Path deletesPath(Path directory, long generation) {
+        return directory.resolve("seg-" + generation + ".del");
+    }
+
+    static Segment open(Path directory, long generation) throws IOException {
+        Path path = segmentPath(directory, generation);
+        long[] fileIds;
+        String[] hashes;
+        int[] lengths;
+        String[] terms;
+        int[] docFreqs;
+        int[] offsets;
+        long postingsStart;
+        try (CountingInputStream counting = new CountingInputStream(new BufferedInputStream(Files.newInputStream(path)));
+             DataInputStream in = new DataInputStream(counting)) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not an index segment: " + path);
+            }
+            int docCount = in.readInt();
+            fileIds = new long[docCount];
+            hashes = new String[docCount];
+            lengths = new int[docCount];
+            for (int i = 0; i < docCount; i++) {
+                fileIds[i] = in.readLong();
+                lengths[i] = in.readInt();
+                hashes[i] = in.readUTF();
+            }
+            int termCount = in.readInt();
+            terms = new String[termCount];
+            docFreqs = new int[termCount];
+            offsets = new int[termCount];
+            for (int i = 0; i < termCount; i++) {
+                terms[i] = in.readUTF();
+                docFreqs[i] = in.readInt();
+                offsets[i] = in.readInt();
+            }
+            postingsStart = counting.count;
+        }
+
+        ByteBuffer postings;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel closes, and after a merge deletes the file
+            postings = channel.map(FileChannel.MapMode.READ_ONLY, postingsStart, channel.size() - postingsStart);
+        }
+
+        BitSet deleted = new BitSet();
+        Path deletes = deletesPath(directory, generation);
+        if (Files.exists(deletes)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(deletes)))) {
+                long[] words = new long[in.readInt()];
+                for (int i = 0; i < words.length; i++) {
+                    words[i] = in.readLong();
+                }
+                deleted = BitSet.valueOf(words);
+            }
+        }
+        return new Segment(generation, directory, fileIds, hashes, lengths, terms, docFreqs, offsets, postings, deleted);
+    }
+
+    static Segment write(Path directory, long generation, Collection<IndexedDocument> documents) throws IOException {
+        IndexedDocument[] sorted = documents.stream()
+                .sorted(Comparator.comparingLong(IndexedDocument::fileId))
+                .toArray(IndexedDocument[]::new);
+        long[] fileIds = new long[sorted.length];
+        String[] hashes = new String[sorted.length];
+        int[] lengths = new int[sorted.length];
+        Map<String, PostingsBuffer> inverted = new HashMap<>();
+        for (int ordinal = 0; ordinal < sorted.length; ordinal++) {
+            IndexedDocument document = sorted[ordinal];
+            fileIds[ordinal] = document.fileId();
+            hashes[ordinal] = document.contentHash();
+            lengths[ordinal] = document.length();
+            int current = ordinal;
+            document.termFreqs().forEach((term, freq) ->
+                    inverted.computeIfAbsent(term, key -> new PostingsBuffer()).add(current, freq));
+        }
+
+        try (Writer writer = new Writer(directory, generation)) {
+            for (String term : new TreeSet<>(inverted.keySet())) {
+                writer.addTerm(term, inverted.get(term));
+            }
+            return writer.finish(fileIds, hashes, lengths);
+        }
+    }
+
+    /**
+     * Rewrites the live documents of several segments into one, dropping deleted ones.
+     * Reads the sources against the given deletion snapshots, so it can run without locks.
+     */
+    static Segment merge(Path directory, long generation, List<Segment> sources, List<BitSet> deletes) throws IOException {
+        record Live(long fileId, int source, int ordinal) {
+        }
+        List<Live> live = new ArrayList<>();
+        int[][] remap = new int[sources.size()][];
+        for (int s = 0; s < sources.size(); s++) {
+            Segment source = sources.get(s);
+            remap[s] = new int[source.docCount()];
+            Arrays.fill(remap[s], -1);
+            for (int ordinal = 0; ordinal < source.docCount(); ordinal++) {
+                if (!deletes.get(s).get(ordinal)) {
+                    live.add(new Live(source.fileIds[ordinal], s, ordinal));
+                }
+            }
+        }
+        live.sort(Comparator.comparingLong(Live::fileId));
+        long[] fileIds = new long[live.size()];
+        String[] hashes = new String[live.size()];
+        int[] lengths = new int[live.size()];
+        for (int i = 0; i < live.size(); i++) {
+            Live document = live.get(i);
+            Segment source = sources.get(document.source());
+            fileIds[i] = document.fileId();
+            hashes[i] = source.hashes[document.ordinal()];
+            lengths[i] = source.lengths[document.ordinal()];
+            remap[document.source()][document.ordinal()] = i;
+        }
+
+        // k-way merge over the sorted dictionaries; each cursor is {source, term index}
+        PriorityQueue<int[]> cursors = new PriorityQueue<>(
+                Comparator.comparing((int[] cursor) -> sources.get(cursor[0]).terms[cursor[1]]));
+        for (int s = 0; s < sources.size(); s++) {
+            if (sources.get(s).terms.length > 0) {
+                cursors.add(new int[]{s, 0});
+            }
+        }
+        try (Writer writer = new Writer(directory, generation)) {
+            PostingsBuffer merged = new PostingsBuffer();
+            while (!cursors.isEmpty()) {
+                String term = sources.get(cursors.peek()[0]).terms[cursors.peek()[1]];
+                merged.clear();
+                while (!cursors.isEmpty() && term.equals(sources.get(cursors.peek()[0]).terms[cursors.peek()[1]])) {
+                    int[] cursor = cursors.poll();
+                    Postings postings = sources.get(cursor[0]).postingsAt(cursor[1]);
+                    for (int i = 0; i < postings.size(); i++) {
+                        int ordinal = remap[cursor[0]][postings.ordinals()[i]];
+                        if (ordinal >= 0) {
+                            merged.add(ordinal, postings.freqs()[i]);
+                        }
+                    }
+                    if (++cursor[1] < sources.get(cursor[0]).terms.length) {
+                        cursors.add(cursor);
+                    }
+                }
+                if (merged.size() > 0) {
+                    merged.sort();
+                    writer.addTerm(term, merged);
+                }
+            }
+            return writer.finish(fileIds, hashes, lengths);
+        }
+    }
+
+    long generation() {
+        return generation;
+    }
+
+    int docCount() {
+        return fileIds.length;
+    }
+
+    int liveCount() {
+        return fileIds.length - deleted.cardinality();
+    }
+
+    long totalLength() {
+        return totalLength;
+    }
+
+    long fileId(int ordinal) {
+        return fileIds[ordinal];
+    }
+
+    String contentHash(int ordinal) {
+        return hashes[ordinal];
+    }
+
+    int length(int ordinal) {
+        return lengths[ordinal];
+    }
+
+    int ordinalOf(long fileId) {
+        int ordinal = Arrays.binarySearch(fileIds, fileId);
+        return ordinal >= 0 ? ordinal : -1;
+    }
+
+    BitSet deleted() {
+        return deleted;
+    }
+
+    boolean isDeleted(int ordinal) {
+        return deleted.get(ordinal);
+    }
+
+    synchronized void delete(int ordinal) {
+        if (!deleted.get(ordinal)) {
+            BitSet copy = (BitSet) deleted.clone();
+            copy.set(ordinal);
+            deleted = copy;
+        }
+    }
+
+    int docFreq(String term) {
+        int index = Arrays.binarySearch(terms, term);
+        return index >= 0 ? docFreqs[index] : 0;
+    }
+
+    Postings postings(String term) {
+        int index = Arrays.binarySearch(terms, term);
+        return index >= 0 ? postingsAt(index) : null;
+    }
+
+    private Postings postingsAt(int index) {
+        ByteBuffer buffer = postings.duplicate();
+        buffer.position(offsets[index]);
+        int size = docFreqs[index];
+        int[] ordinals = new int[size];
+        int[] freqs = new int[size];
+        int ordinal = 0;
+        for (int i = 0; i < size; i++) {
+            ordinal += readVarInt(buffer);
+            ordinals[i] = ordinal;
+            freqs[i] = readVarInt(buffer);
+        }
+        return new Postings(ordinals, freqs, size);
+    }
+
+    void persistDeletes() throws IOException {
+        BitSet snapshot = deleted;
+        Path target = deletesPath(directory, generation);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        long[] words = snapshot.toLongArray();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    void deleteFiles() throws IOException {
+        Files.deleteIfExists(segmentPath(directory, generation));
+        Files.deleteIfExists(deletesPath(directory, generation));
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    // Growable (ordinal, freq) pairs for one term
+    static final class PostingsBuffer {
+        private int[] ordinals = new int[4];
+        private int[] freqs = new int[4];
+        private int size;
+
+        void add(int ordinal, int freq) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            ordinals[size] = ordinal;
+            freqs[size] = freq;
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        void sort() {
+            long[] packed = new long[size];
+            for (int i = 0; i < size; i++) {
+                packed[i] = ((long) ordinals[i] << 32) | (freqs[i] & 0xFFFFFFFFL);
+            }
+            Arrays.sort(packed);
+            for (int i = 0; i < size; i++) {
+                ordinals[i] = (int) (packed[i] >>> 32);
+                freqs[i] = (int) packed[i];
+            }
+        }
+    }
+
+    // Postings go to a side file first, because the dictionary written ahead of them needs their offsets
+    private static final class Writer implements Closeable {
+        private final Path directory;
+        private final long generation;
+        private final Path postingsTemp;
+        private final DataOutputStream postingsOut;
+        private final List<String> terms = new ArrayList<>();
+        private int[] docFreqs = new int[256];
+        private int[] offsets = new int[256];
+        private boolean finished;
+
+        Writer(Path directory, long generation) throws IOException {
+            this.directory = directory;
+            this.generation = generation;
+            this.postingsTemp = directory.resolve("seg-" + generation + ".postings.tmp");
+            this.postingsOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(postingsTemp)));
+        }
+
+        void addTerm(String term, PostingsBuffer postings) throws IOException {
+            int index = terms.size();
+            if (index == docFreqs.length) {
+                docFreqs = Arrays.copyOf(docFreqs, index * 2);
+                offsets = Arrays.copyOf(offsets, index * 2);
+            }
+            terms.add(term);
+            docFreqs[index] = postings.size;
+            offsets[index] = postingsOut.size();
+            int previous = 0;
+            for (int i = 0; i < postings.size; i++) {
+                writeVarInt(postings.ordinals[i] - previous);
+                writeVarInt(postings.freqs[i]);
+                previous = postings.ordinals[i];
+            }
+            // DataOutputStream stops counting at Integer.MAX_VALUE
+            if (postingsOut.size() == Integer.MAX_VALUE) {
+                throw new IOException("Segment postings exceed 2 GiB");
+            }
+        }
+
+        Segment finish(long[] fileIds, String[] hashes, int[] lengths) throws IOException {
+            postingsOut.close();
+            Path target = segmentPath(directory, generation);
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(fileIds.length);
+                for (int i = 0; i < fileIds.length; i++) {
+                    out.writeLong(fileIds[i]);
+                    out.writeInt(lengths[i]);
+                    out.writeUTF(hashes[i] != null ? hashes[i] : "");
+                }
+                out.writeInt(terms.size());
+                for (int i = 0; i < terms.size(); i++) {
+                    out.writeUTF(terms.get(i));
+                    out.writeInt(docFreqs[i]);
+                    out.writeInt(offsets[i]);
+                }
+                Files.copy(postingsTemp, out);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            finished = true;
+            return open(directory, generation);
+        }
+
+        private void writeVarInt(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                postingsOut.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            postingsOut.writeByte(value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                postingsOut.close();
+            }
+            Files.deleteIfExists(postingsTemp);
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
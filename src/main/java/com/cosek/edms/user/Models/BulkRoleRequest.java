@@ -0,0 +1,15 @@
+package com.cosek.edms.user.Models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkRoleRequest {
+    private List<Long> userIds;
+    private List<Long> roleIds;
+}
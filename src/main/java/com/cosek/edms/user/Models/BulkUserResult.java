@@ -0,0 +1,22 @@
+package com.cosek.edms.user.Models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class BulkUserResult {
+    public static final String CREATED = "CREATED";
+    public static final String DUPLICATE = "DUPLICATE";
+    public static final String INVALID = "INVALID";
+
+    private int index;          // Position of the row in the request
+    private String email;
+    private String status;
+    private Long id;
+    private String message;
+}
@@ -13,6 +13,7 @@ public class CreateUserRequest {
     private String phone;
     private String address;
     private String password;
+    private Long departmentId;
     private List<Long> roles;
     private String userType;
 }
@@ -0,0 +1,16 @@
+package com.cosek.edms.user.Models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class UserSummary {
+    private Long id;
+    private String name;
+    private String email;
+}
@@ -41,6 +41,10 @@ public class User implements UserDetails {
     private String address;
     private String password;
 
+    // Members get read access to their department's folders
+    @Column(name = "department_id")
+    private Long departmentId;
+
     @CreatedDate
     @Column(name = "createdDate", nullable = true, updatable = false)
     private LocalDateTime createdDate;
@@ -2,8 +2,11 @@ package com.cosek.edms.user;
 
 import com.cosek.edms.exception.NotFoundException;
 import com.cosek.edms.role.Role;
+import com.cosek.edms.user.Models.BulkRoleRequest;
+import com.cosek.edms.user.Models.BulkUserResult;
 import com.cosek.edms.user.Models.CreateUserRequest;
 import com.cosek.edms.user.Models.UpdateUserRequest;
+import com.cosek.edms.user.Models.UserSummary;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -25,6 +28,15 @@ public class UserController {
         return new ResponseEntity<>(response, HttpStatus.OK);
     }
 
+    // Typeahead lookup by email, first name or last name prefix
+    @GetMapping("/users/search")
+    public ResponseEntity<List<UserSummary>> searchUsers(
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "10") int limit
+    ) {
+        return ResponseEntity.ok(userService.searchUsers(query, limit));
+    }
+
     @GetMapping("/users/{id}")
     public ResponseEntity<User> findUser(@PathVariable Long id) {
         return ResponseEntity.ok(userService.findOneUser(id));
@@ -41,12 +53,40 @@ public class UserController {
         return new ResponseEntity<>(response, HttpStatus.CREATED);
     }
 
+    @PostMapping("/users/create-multiple")
+    public ResponseEntity<List<BulkUserResult>> createUsers(@RequestBody List<CreateUserRequest> requests) {
+        return new ResponseEntity<>(userService.createUsers(requests), HttpStatus.OK);
+    }
+
     @PutMapping("/users/{userID}/roles/{roleID}")
     public ResponseEntity<User> addRoleToUser(@PathVariable Long userID, @PathVariable Long roleID) throws NotFoundException {
         User response = userService.addRoleToUser(userID, roleID);
         return new ResponseEntity<>(response, HttpStatus.OK);
     }
 
+    @PutMapping("/users/roles/assign-multiple")
+    public ResponseEntity<?> assignRoles(@RequestBody BulkRoleRequest request) {
+        try {
+            return ResponseEntity.ok(userService.assignRoles(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+
+    @PutMapping("/users/roles/revoke-multiple")
+    public ResponseEntity<?> revokeRoles(@RequestBody BulkRoleRequest request) {
+        try {
+            return ResponseEntity.ok(userService.revokeRoles(request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/users/delete-multiple")
+    public ResponseEntity<Map<String, Object>> deleteUsers(@RequestBody List<Long> ids) {
+        return new ResponseEntity<>(userService.deleteUsers(ids), HttpStatus.OK);
+    }
+
     @DeleteMapping("/users/{id}")
     public ResponseEntity<Map<String, Object>> deleteUser(@PathVariable Long id) {
         Map<String, Object> response = userService.deleteUser(id);
@@ -1,11 +1,48 @@
 package com.cosek.edms.user;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
+
+    @Query("SELECT u.id, u.first_name, u.last_name, u.email FROM User u")
+    List<Object[]> findSummaries();
+
+    @Query("SELECT u.id, r.id FROM User u JOIN u.roles r")
+    List<Object[]> findRoleLinks();
+
+    @Query("SELECT u.id, r.id FROM User u JOIN u.roles r WHERE u.id IN :userIds")
+    List<Object[]> findRoleLinks(@Param("userIds") Collection<Long> userIds);
+
+    @Query("SELECT u.id, u.email FROM User u WHERE u.email IN :emails")
+    List<Object[]> findIdsByEmails(@Param("emails") Collection<String> emails);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "INSERT INTO user_role (user_id, role_id) " +
+            "SELECT u.id, r.id FROM users u CROSS JOIN roles r " +
+            "WHERE u.id IN (:userIds) AND r.id IN (:roleIds) " +
+            "AND NOT EXISTS (SELECT 1 FROM user_role ur WHERE ur.user_id = u.id AND ur.role_id = r.id)",
+            nativeQuery = true)
+    int assignRoles(@Param("userIds") Collection<Long> userIds, @Param("roleIds") Collection<Long> roleIds);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM user_role WHERE user_id IN (:userIds) AND role_id IN (:roleIds)", nativeQuery = true)
+    int revokeRoles(@Param("userIds") Collection<Long> userIds, @Param("roleIds") Collection<Long> roleIds);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM user_role WHERE user_id IN (:userIds)", nativeQuery = true)
+    int deleteRoleLinks(@Param("userIds") Collection<Long> userIds);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM users WHERE id IN (:userIds)", nativeQuery = true)
+    int deleteUsers(@Param("userIds") Collection<Long> userIds);
 }
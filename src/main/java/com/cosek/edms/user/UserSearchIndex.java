@@ -0,0 +1,162 @@
+package com.cosek.edms.user;
+
+import com.cosek.edms.helper.TransactionHooks;
+import com.cosek.edms.user.Models.UserSummary;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sorted in-memory prefix index over user email, first name and last name,
+ * backing the typeahead endpoint. UserService keeps it in sync on every mutation.
+ */
+@Component
+@RequiredArgsConstructor
+public class UserSearchIndex {
+    public static final int MAX_RESULTS = 50;
+    private static final int MAX_SCANNED = 10_000;
+    private static final int MAX_CACHED_QUERIES = 1_024;
+    private static final char SEPARATOR = '\u0000';
+
+    private final UserRepository userRepository;
+
+    // "token\0id" -> id, so equal tokens of different users stay distinct keys
+    private final ConcurrentSkipListMap<String, Long> tokens = new ConcurrentSkipListMap<>();
+    private final Map<Long, IndexedUser> users = new ConcurrentHashMap<>();
+    private final Map<String, CachedResponse> responseCache = new ConcurrentHashMap<>();
+    // Bumped on every change; a cached response only counts if it was computed in the current generation
+    private final AtomicLong generation = new AtomicLong();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        List<Object[]> rows = userRepository.findSummaries();
+        synchronized (this) {
+            tokens.clear();
+            users.clear();
+            for (Object[] row : rows) {
+                add((Long) row[0], (String) row[1], (String) row[2], (String) row[3]);
+            }
+            generation.incrementAndGet();
+            responseCache.clear();
+        }
+    }
+
+    public void put(User user) {
+        put(user.getId(), user.getFirst_name(), user.getLast_name(), user.getEmail());
+    }
+
+    public void put(Long id, String firstName, String lastName, String email) {
+        TransactionHooks.afterCommit(() -> {
+            synchronized (this) {
+                unlink(id);
+                add(id, firstName, lastName, email);
+                generation.incrementAndGet();
+                responseCache.clear();
+            }
+        });
+    }
+
+    public void remove(Collection<Long> ids) {
+        List<Long> removed = List.copyOf(ids);
+        TransactionHooks.afterCommit(() -> {
+            synchronized (this) {
+                removed.forEach(this::unlink);
+                generation.incrementAndGet();
+                responseCache.clear();
+            }
+        });
+    }
+
+    public UserSummary getSummary(Long id) {
+        IndexedUser user = users.get(id);
+        return user != null ? user.summary() : new UserSummary(id, null, null);
+    }
+
+    public List<UserSummary> search(String query, int limit) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int capped = Math.max(1, Math.min(limit, MAX_RESULTS));
+        String cacheKey = capped + "|" + String.join(" ", terms);
+
+        // Read before the scan, so a change that lands during it makes the response stale rather than cached as current
+        long scannedGeneration = generation.get();
+        CachedResponse cached = responseCache.get(cacheKey);
+        if (cached != null && cached.generation() == scannedGeneration) {
+            return cached.results();
+        }
+
+        // Scan the longest term's range; the remaining terms filter the candidates
+        String lead = terms.stream().max(Comparator.comparingInt(String::length)).get();
+        Set<Long> seen = new HashSet<>();
+        List<UserSummary> results = new ArrayList<>(capped);
+        int scanned = 0;
+        for (Map.Entry<String, Long> entry : tokens.tailMap(lead).entrySet()) {
+            if (!entry.getKey().startsWith(lead) || ++scanned > MAX_SCANNED) {
+                break;
+            }
+            IndexedUser user = users.get(entry.getValue());
+            if (user == null || !seen.add(entry.getValue()) || !user.matchesAll(terms)) {
+                continue;
+            }
+            results.add(user.summary());
+            if (results.size() == capped) {
+                break;
+            }
+        }
+
+        List<UserSummary> response = List.copyOf(results);
+        if (responseCache.size() >= MAX_CACHED_QUERIES) {
+            responseCache.clear();
+        }
+        if (generation.get() == scannedGeneration) {
+            responseCache.put(cacheKey, new CachedResponse(scannedGeneration, response));
+        }
+        return response;
+    }
+
+    private void add(Long id, String firstName, String lastName, String email) {
+        Set<String> userTokens = new HashSet<>();
+        userTokens.addAll(tokenize(firstName));
+        userTokens.addAll(tokenize(lastName));
+        if (email != null && !email.isBlank()) {
+            userTokens.add(email.trim().toLowerCase(Locale.ROOT));
+        }
+
+        String name = ((firstName == null ? "" : firstName) + " " + (lastName == null ? "" : lastName)).trim();
+        users.put(id, new IndexedUser(new UserSummary(id, name, email), userTokens));
+        userTokens.forEach(token -> tokens.put(token + SEPARATOR + id, id));
+    }
+
+    private void unlink(Long id) {
+        IndexedUser previous = users.remove(id);
+        if (previous != null) {
+            previous.tokens().forEach(token -> tokens.remove(token + SEPARATOR + id));
+        }
+    }
+
+    private static List<String> tokenize(String value) {
+        if (value == null || value.isBlank()) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(value.trim().toLowerCase(Locale.ROOT).split("\\s+"))
+                .filter(token -> !token.isEmpty())
+                .toList();
+    }
+
+    private record CachedResponse(long generation, List<UserSummary> results) {
+    }
+
+    private record IndexedUser(UserSummary summary, Set<String> tokens) {
+        boolean matchesAll(List<String> terms) {
+            return terms.stream().allMatch(term -> tokens.stream().anyMatch(token -> token.startsWith(term)));
+        }
+    }
+}
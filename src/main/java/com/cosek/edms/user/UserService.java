@@ -1,18 +1,33 @@
 package com.cosek.edms.user;
 
+import com.cosek.edms.config.PrincipalCache;
 import com.cosek.edms.exception.NotFoundException;
+import com.cosek.edms.permission.PermissionAccessIndex;
 import com.cosek.edms.permission.PermissionService;
 import com.cosek.edms.role.Role;
 import com.cosek.edms.role.RoleService;
+import com.cosek.edms.user.Models.BulkRoleRequest;
+import com.cosek.edms.user.Models.BulkUserResult;
 import com.cosek.edms.user.Models.CreateUserRequest;
 import com.cosek.edms.user.Models.UpdateUserRequest;
+import com.cosek.edms.user.Models.UserSummary;
+import jakarta.annotation.PreDestroy;
+import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import static com.cosek.edms.helper.Constants.FAILED_DELETION;
 import static com.cosek.edms.helper.Constants.SUCCESSFUL_DELETION;
 
 @Service
@@ -22,6 +37,19 @@ public class UserService {
     private final RoleService roleService;
     private final BCryptPasswordEncoder passwordEncoder;
     private final PermissionService permissionService;
+    private final JdbcTemplate jdbcTemplate;
+    private final AuditorAware<Long> auditorAware;
+    private final PrincipalCache principalCache;
+    private final UserSearchIndex userSearchIndex;
+    private final PermissionAccessIndex permissionAccessIndex;
+
+    // SQL Server caps a statement at 2100 parameters
+    private static final int IN_CLAUSE_LIMIT = 1000;
+    private static final int INSERT_BATCH_SIZE = 500;
+
+    // BCrypt is CPU bound, so bulk hashing gets one thread per core and no more
+    private final ExecutorService passwordHashingPool =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
 
     public User createUser(CreateUserRequest request) throws NotFoundException {
         // Check if the email is already in use
@@ -37,12 +65,166 @@ public class UserService {
                 .email(request.getEmail())
                 .phone(request.getPhone())
                 .address(request.getAddress())
+                .departmentId(request.getDepartmentId())
                 .password(passwordEncoder.encode(request.getPassword()))
                 .roles(Collections.emptySet()) // No roles initially
                 .build();
 
         // Save and return the user
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        userSearchIndex.put(saved);
+        return saved;
+    }
+
+    @Transactional
+    public List<BulkUserResult> createUsers(List<CreateUserRequest> requests) {
+        List<BulkUserResult> results = new ArrayList<>(requests.size());
+        Map<String, Integer> accepted = new LinkedHashMap<>();
+
+        // Validate rows and drop duplicates inside the request itself
+        for (int i = 0; i < requests.size(); i++) {
+            CreateUserRequest request = requests.get(i);
+            String email = request.getEmail() == null ? null : request.getEmail().trim();
+            BulkUserResult result = BulkUserResult.builder().index(i).email(email).build();
+            results.add(result);
+
+            if (email == null || email.isEmpty() || request.getPassword() == null || request.getPassword().isEmpty()) {
+                result.setStatus(BulkUserResult.INVALID);
+                result.setMessage("Email and password are required");
+            } else if (accepted.putIfAbsent(email.toLowerCase(Locale.ROOT), i) != null) {
+                result.setStatus(BulkUserResult.DUPLICATE);
+                result.setMessage("Email appears more than once in the request: " + email);
+            }
+        }
+
+        // One IN query per chunk instead of a findByEmail per row
+        for (Object[] row : findIdsByEmails(accepted.keySet())) {
+            Integer index = accepted.remove(((String) row[1]).toLowerCase(Locale.ROOT));
+            if (index != null) {
+                results.get(index).setStatus(BulkUserResult.DUPLICATE);
+                results.get(index).setMessage("Email is already in use: " + row[1]);
+            }
+        }
+
+        Set<Long> requestedRoles = new HashSet<>();
+        accepted.values().forEach(index -> {
+            if (requests.get(index).getRoles() != null) {
+                requestedRoles.addAll(requests.get(index).getRoles());
+            }
+        });
+        Set<Long> existingRoles = roleService.findExistingRoleIds(requestedRoles);
+
+        List<Integer> rows = new ArrayList<>(accepted.values());
+        if (rows.isEmpty()) {
+            return results;
+        }
+        List<String> hashed = hashPasswords(rows.stream().map(index -> requests.get(index).getPassword()).toList());
+        Map<Integer, String> hashes = new HashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            hashes.put(rows.get(i), hashed.get(i));
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Long auditor = auditorAware.getCurrentAuditor().orElse(null);
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO users (first_name, last_name, email, phone, address, password, department_id, " +
+                        "created_date, last_modified_date, created_by, last_modified_by) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                rows, INSERT_BATCH_SIZE, (ps, index) -> {
+                    CreateUserRequest request = requests.get(index);
+                    ps.setString(1, request.getFirst_name());
+                    ps.setString(2, request.getLast_name());
+                    ps.setString(3, results.get(index).getEmail());
+                    ps.setString(4, request.getPhone());
+                    ps.setString(5, request.getAddress());
+                    ps.setString(6, hashes.get(index));
+                    ps.setObject(7, request.getDepartmentId(), Types.BIGINT);
+                    ps.setTimestamp(8, now);
+                    ps.setTimestamp(9, now);
+                    ps.setObject(10, auditor, Types.BIGINT);
+                    ps.setObject(11, auditor, Types.BIGINT);
+                });
+
+        // IDENTITY keys are not returned from a batch, so read them back by email
+        Map<String, Long> ids = new HashMap<>();
+        findIdsByEmails(accepted.keySet())
+                .forEach(row -> ids.put(((String) row[1]).toLowerCase(Locale.ROOT), (Long) row[0]));
+
+        List<Object[]> userRoles = new ArrayList<>();
+        accepted.forEach((email, index) -> {
+            BulkUserResult result = results.get(index);
+            result.setId(ids.get(email));
+            result.setStatus(BulkUserResult.CREATED);
+            CreateUserRequest created = requests.get(index);
+            userSearchIndex.put(result.getId(), created.getFirst_name(), created.getLast_name(), result.getEmail());
+
+            List<Long> roles = requests.get(index).getRoles();
+            if (roles == null) {
+                return;
+            }
+            List<Long> unknown = new ArrayList<>();
+            new LinkedHashSet<>(roles).forEach(roleId -> {
+                if (existingRoles.contains(roleId)) {
+                    userRoles.add(new Object[]{result.getId(), roleId});
+                } else {
+                    unknown.add(roleId);
+                }
+            });
+            if (!unknown.isEmpty()) {
+                result.setMessage("Unknown role IDs skipped: " + unknown);
+            }
+        });
+        jdbcTemplate.batchUpdate("INSERT INTO user_role (user_id, role_id) VALUES (?, ?)", userRoles, INSERT_BATCH_SIZE,
+                (ps, pair) -> {
+                    ps.setLong(1, (Long) pair[0]);
+                    ps.setLong(2, (Long) pair[1]);
+                });
+        permissionAccessIndex.refreshUsers(userRoles.stream().map(pair -> (Long) pair[0]).distinct().toList());
+        return results;
+    }
+
+    private List<Object[]> findIdsByEmails(Collection<String> emails) {
+        List<Object[]> rows = new ArrayList<>();
+        for (List<String> chunk : partition(emails)) {
+            rows.addAll(userRepository.findIdsByEmails(chunk));
+        }
+        return rows;
+    }
+
+    private static <T> List<List<T>> partition(Collection<T> values) {
+        List<T> all = new ArrayList<>(values);
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < all.size(); from += IN_CLAUSE_LIMIT) {
+            chunks.add(all.subList(from, Math.min(from + IN_CLAUSE_LIMIT, all.size())));
+        }
+        return chunks;
+    }
+
+    private List<String> hashPasswords(List<String> passwords) {
+        List<Future<String>> futures = new ArrayList<>(passwords.size());
+        for (String password : passwords) {
+            futures.add(passwordHashingPool.submit(() -> passwordEncoder.encode(password)));
+        }
+
+        List<String> hashes = new ArrayList<>(passwords.size());
+        try {
+            for (Future<String> future : futures) {
+                hashes.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Interrupted while hashing passwords", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Failed to hash password", e.getCause());
+        }
+        return hashes;
+    }
+
+    @PreDestroy
+    public void shutdownHashingPool() {
+        passwordHashingPool.shutdownNow();
     }
 
     public User assignUserTypes(Long userId, List<String> userTypes) throws NotFoundException {
@@ -65,7 +247,10 @@ public class UserService {
         }
 
         user.setRoles(roles);
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        principalCache.evictUsers(List.of(userId));
+        permissionAccessIndex.refreshUsers(List.of(userId));
+        return saved;
     }
 
     public User unassignUserTypes(Long userId, List<String> userTypes) throws NotFoundException {
@@ -94,7 +279,10 @@ public class UserService {
         currentRoles.removeAll(rolesToRemove);
         user.setRoles(currentRoles);
 
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        principalCache.evictUsers(List.of(userId));
+        permissionAccessIndex.refreshUsers(List.of(userId));
+        return saved;
     }
 
     public User updateUser(UpdateUserRequest request, Long id) throws NotFoundException {
@@ -107,14 +295,22 @@ public class UserService {
         user.setEmail(request.getEmail());
         user.setPhone(request.getPhone());
         user.setAddress(request.getAddress());
+        user.setDepartmentId(request.getDepartmentId());
         user.setPassword(passwordEncoder.encode(request.getPassword()));
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        principalCache.evictUsers(List.of(id));
+        userSearchIndex.put(saved);
+        return saved;
     }
 
     public List<User> findAllUsers() {
         return userRepository.findAll();
     }
 
+    public List<UserSummary> searchUsers(String query, int limit) {
+        return userSearchIndex.search(query, limit);
+    }
+
     public User findOneUser(Long id) {
         return userRepository.findById(id).orElse(null);
     }
@@ -125,7 +321,10 @@ public class UserService {
         Set<Role> roles = user.getRoles();
         roles.add(role);
         user.setRoles(roles);
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        principalCache.evictUsers(List.of(userID));
+        permissionAccessIndex.refreshUsers(List.of(userID));
+        return saved;
     }
 
     public User updateRoles(Long userID, List<Role> roles) throws NotFoundException {
@@ -140,18 +339,91 @@ public class UserService {
         }
 
         user.setRoles(newRoles);
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        principalCache.evictUsers(List.of(userID));
+        permissionAccessIndex.refreshUsers(List.of(userID));
+        return saved;
     }
 
+    @Transactional
+    public Map<String, Object> assignRoles(BulkRoleRequest request) {
+        return updateRoleLinks(request, true);
+    }
 
-    public Map<String, Object> deleteUser(Long id) {
+    @Transactional
+    public Map<String, Object> revokeRoles(BulkRoleRequest request) {
+        return updateRoleLinks(request, false);
+    }
+
+    // Set-based INSERT/DELETE on user_role, so no user graph is loaded or rewritten
+    private Map<String, Object> updateRoleLinks(BulkRoleRequest request, boolean assign) {
+        Set<Long> userIds = distinctIds(request.getUserIds());
+        Set<Long> roleIds = distinctIds(request.getRoleIds());
+        if (userIds.isEmpty() || roleIds.isEmpty()) {
+            throw new IllegalArgumentException("User IDs and role IDs cannot be empty.");
+        }
+
+        Set<Long> unknownRoles = new HashSet<>(roleIds);
+        unknownRoles.removeAll(roleService.findExistingRoleIds(roleIds));
+        if (!unknownRoles.isEmpty()) {
+            throw new IllegalArgumentException("Unknown role IDs: " + unknownRoles);
+        }
+
+        int affected = 0;
+        for (List<Long> chunk : partition(userIds)) {
+            affected += assign
+                    ? userRepository.assignRoles(chunk, roleIds)
+                    : userRepository.revokeRoles(chunk, roleIds);
+        }
+        principalCache.evictUsers(userIds);
+        permissionAccessIndex.refreshUsers(userIds);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("updated", affected);
+        response.put("userIds", userIds);
+        response.put("roleIds", roleIds);
+        return response;
+    }
+
+    @Transactional
+    public Map<String, Object> deleteUsers(List<Long> ids) {
+        Set<Long> userIds = distinctIds(ids);
+        int deleted = removeUsers(userIds);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("messages", SUCCESSFUL_DELETION);
+        response.put("ids", userIds);
+        response.put("deleted", deleted);
+        return response;
+    }
 
-        userRepository.deleteById(id);
-        Optional<User> user = userRepository.findById(id);
+    private int removeUsers(Set<Long> userIds) {
+        int deleted = 0;
+        for (List<Long> chunk : partition(userIds)) {
+            userRepository.deleteRoleLinks(chunk);
+            deleted += userRepository.deleteUsers(chunk);
+        }
+        principalCache.evictUsers(userIds);
+        permissionAccessIndex.refreshUsers(userIds);
+        userSearchIndex.remove(userIds);
+        return deleted;
+    }
 
-        if (user.isPresent()) {
-            return deleteResponse(false, FAILED_DELETION, id);
+    private static Set<Long> distinctIds(List<Long> ids) {
+        Set<Long> distinct = new LinkedHashSet<>();
+        if (ids != null) {
+            ids.stream().filter(Objects::nonNull).forEach(distinct::add);
         }
+        return distinct;
+    }
+
+
+    @Transactional
+    public Map<String, Object> deleteUser(Long id) {
+        // The statements either remove the row or throw, so there is nothing to re-read
+        removeUsers(Set.of(id));
         return deleteResponse(true, SUCCESSFUL_DELETION, id);
     }
 
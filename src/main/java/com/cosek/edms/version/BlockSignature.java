@@ -0,0 +1,202 @@
+package com.cosek.edms.version;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * rsync-style signature of a base version: a rolling weak checksum and a strong hash
+ * for every full block. The weak checksums are kept sorted in flat arrays with a bit
+ * filter in front, so a miss, which is most positions of a scan, costs one bit test.
+ */
+final class BlockSignature {
+    static final int MIN_BLOCK = 1024;
+    static final int MAX_BLOCK = 64 * 1024;
+    private static final int MAX_BLOCKS = 1 << 20;
+    private static final int FILTER_BITS = 1 << 22;
+
+    private final int blockSize;
+    private final long baseSize;
+    // Sorted by weak checksum; blocks[i] is the block index behind weaks[i]
+    private final int[] weaks;
+    private final int[] blocks;
+    // First 16 bytes of each block's SHA-256, indexed by block
+    private final long[] strongHigh;
+    private final long[] strongLow;
+    private final BitSet filter;
+
+    private BlockSignature(int blockSize, long baseSize, int[] weaks, int[] blocks, long[] strongHigh, long[] strongLow) {
+        this.blockSize = blockSize;
+        this.baseSize = baseSize;
+        this.weaks = weaks;
+        this.blocks = blocks;
+        this.strongHigh = strongHigh;
+        this.strongLow = strongLow;
+        this.filter = new BitSet(FILTER_BITS);
+        for (int weak : weaks) {
+            filter.set(filterBit(weak));
+        }
+    }
+
+    // Around the square root of the size, as rsync does, within bounds that keep the arrays small
+    static int blockSizeFor(long baseSize) {
+        long root = Math.max(MIN_BLOCK, Math.min(MAX_BLOCK, (long) Math.sqrt(baseSize)));
+        int size = Integer.highestOneBit((int) root);
+        while (size < MAX_BLOCK && baseSize / size > MAX_BLOCKS) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    static Builder builder(long baseSize) {
+        return new Builder(blockSizeFor(baseSize), baseSize);
+    }
+
+    int blockSize() {
+        return blockSize;
+    }
+
+    long baseSize() {
+        return baseSize;
+    }
+
+    /**
+     * Block index whose content equals buffer[offset, offset + blockSize), or -1. The strong
+     * hash is only computed when the weak checksum hits.
+     */
+    int find(int weak, byte[] buffer, int offset, MessageDigest digest) {
+        if (!filter.get(filterBit(weak))) {
+            return -1;
+        }
+        int i = Arrays.binarySearch(weaks, weak);
+        if (i < 0) {
+            return -1;
+        }
+        while (i > 0 && weaks[i - 1] == weak) {
+            i--;
+        }
+        long[] strong = null;
+        for (; i < weaks.length && weaks[i] == weak; i++) {
+            if (strong == null) {
+                strong = strong(digest, buffer, offset, blockSize);
+            }
+            int block = blocks[i];
+            if (strongHigh[block] == strong[0] && strongLow[block] == strong[1]) {
+                return block;
+            }
+        }
+        return -1;
+    }
+
+    // rsync's checksum: a is the byte sum, b weights each byte by its distance from the end
+    static int weak(byte[] buffer, int offset, int length) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < length; i++) {
+            int x = buffer[offset + i] & 0xff;
+            a += x;
+            b += (length - i) * x;
+        }
+        return combine(a, b);
+    }
+
+    static int combine(int a, int b) {
+        return (a & 0xffff) | (b << 16);
+    }
+
+    static long[] strong(MessageDigest digest, byte[] buffer, int offset, int length) {
+        digest.reset();
+        digest.update(buffer, offset, length);
+        ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+        return new long[]{hash.getLong(), hash.getLong()};
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static int filterBit(int weak) {
+        return (weak ^ (weak >>> 10)) & (FILTER_BITS - 1);
+    }
+
+    // Fed the base content in order; a trailing partial block is not part of the signature
+    static final class Builder extends OutputStream {
+        private final int blockSize;
+        private final long baseSize;
+        private final byte[] block;
+        private final MessageDigest digest = sha256();
+        private int filled;
+        private int count;
+        private int[] weaks;
+        private long[] strongHigh;
+        private long[] strongLow;
+
+        private Builder(int blockSize, long baseSize) {
+            this.blockSize = blockSize;
+            this.baseSize = baseSize;
+            this.block = new byte[blockSize];
+            int expected = (int) Math.min(MAX_BLOCKS, baseSize / blockSize) + 1;
+            this.weaks = new int[expected];
+            this.strongHigh = new long[expected];
+            this.strongLow = new long[expected];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                int copied = Math.min(len, blockSize - filled);
+                System.arraycopy(b, off, block, filled, copied);
+                filled += copied;
+                off += copied;
+                len -= copied;
+                if (filled == blockSize) {
+                    add();
+                    filled = 0;
+                }
+            }
+        }
+
+        BlockSignature build() {
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (x, y) -> Integer.compare(weaks[x], weaks[y]));
+            int[] sortedWeaks = new int[count];
+            int[] blocks = new int[count];
+            for (int i = 0; i < count; i++) {
+                sortedWeaks[i] = weaks[order[i]];
+                blocks[i] = order[i];
+            }
+            return new BlockSignature(blockSize, baseSize, sortedWeaks, blocks,
+                    Arrays.copyOf(strongHigh, count), Arrays.copyOf(strongLow, count));
+        }
+
+        private void add() {
+            if (count == weaks.length) {
+                int grown = count * 2;
+                weaks = Arrays.copyOf(weaks, grown);
+                strongHigh = Arrays.copyOf(strongHigh, grown);
+                strongLow = Arrays.copyOf(strongLow, grown);
+            }
+            long[] strong = strong(digest, block, 0, blockSize);
+            weaks[count] = weak(block, 0, blockSize);
+            strongHigh[count] = strong[0];
+            strongLow[count] = strong[1];
+            count++;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.cosek.edms.version;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * Turns a target version, written in order, into a delta against the base described by
+ * a {@link BlockSignature}. The window rolls one byte at a time; a block that matches
+ * becomes a copy and everything in between is a literal.
+ * <p>
+ * Delta layout: the literal bytes in target order, then the op table, then a fixed
+ * footer. Literals are written out as soon as they are known, so only the op table is
+ * held in memory, never the target.
+ */
+final class DeltaEncoder extends OutputStream {
+    static final int MAGIC = 0x45444431; // "EDD1"
+    static final int FOOTER_SIZE = 4 + 8 + 8 + 8 + 4;
+    static final byte COPY = 0;
+    static final byte LITERAL = 1;
+    // Merged ops stay well inside an int
+    private static final int MAX_OP_LENGTH = 1 << 30;
+
+    private final BlockSignature signature;
+    private final int blockSize;
+    private final OutputStream out;
+    private final MessageDigest digest = BlockSignature.sha256();
+    private final byte[] buffer;
+    // Window start, end of buffered data and start of the literal run not yet written
+    private int start;
+    private int end;
+    private int literalStart;
+    private boolean windowValid;
+    private int a;
+    private int b;
+
+    private final ByteArrayOutputStream opBytes = new ByteArrayOutputStream();
+    private final DataOutputStream ops = new DataOutputStream(opBytes);
+    private int opCount;
+    private byte pendingType = -1;
+    private long pendingOffset;
+    private int pendingLength;
+
+    private long targetSize;
+    private long literalBytes;
+    private long copiedBytes;
+    private boolean finished;
+
+    DeltaEncoder(BlockSignature signature, OutputStream out) {
+        this.signature = signature;
+        this.blockSize = signature.blockSize();
+        this.out = out;
+        this.buffer = new byte[Math.max(4 * blockSize, 256 * 1024)];
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+        write(new byte[]{(byte) value}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int off, int len) throws IOException {
+        targetSize += len;
+        while (len > 0) {
+            if (end == buffer.length) {
+                compact();
+            }
+            int copied = Math.min(len, buffer.length - end);
+            System.arraycopy(bytes, off, buffer, end, copied);
+            end += copied;
+            off += copied;
+            len -= copied;
+            scan();
+        }
+    }
+
+    // Bytes of the target that will be copied from the base rather than stored
+    long copiedBytes() {
+        return copiedBytes;
+    }
+
+    /**
+     * Writes the trailing literal, the op table and the footer. The underlying stream is
+     * flushed but left open.
+     */
+    void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        start = end;
+        flushLiteral();
+        flushOp();
+        long opsOffset = literalBytes;
+        ops.flush();
+        opBytes.writeTo(out);
+        DataOutputStream footer = new DataOutputStream(out);
+        footer.writeInt(MAGIC);
+        footer.writeLong(signature.baseSize());
+        footer.writeLong(targetSize);
+        footer.writeLong(opsOffset);
+        footer.writeInt(opCount);
+        footer.flush();
+    }
+
+    private void scan() throws IOException {
+        while (end - start >= blockSize) {
+            if (!windowValid) {
+                // After a copy the window starts afresh; otherwise it rolls one byte at a time
+                a = 0;
+                b = 0;
+                for (int i = 0; i < blockSize; i++) {
+                    int x = buffer[start + i] & 0xff;
+                    a += x;
+                    b += (blockSize - i) * x;
+                }
+                windowValid = true;
+            }
+            int block = signature.find(BlockSignature.combine(a, b), buffer, start, digest);
+            if (block >= 0) {
+                flushLiteral();
+                addOp(COPY, (long) block * blockSize, blockSize);
+                copiedBytes += blockSize;
+                start += blockSize;
+                literalStart = start;
+                windowValid = false;
+                continue;
+            }
+            if (end - start == blockSize) {
+                // The next byte has not arrived yet
+                return;
+            }
+            int leaving = buffer[start] & 0xff;
+            int entering = buffer[start + blockSize] & 0xff;
+            a = a - leaving + entering;
+            b = b - blockSize * leaving + a;
+            start++;
+        }
+    }
+
+    // Writes out the pending literal and moves the unscanned tail to the front of the buffer
+    private void compact() throws IOException {
+        flushLiteral();
+        int remaining = end - start;
+        System.arraycopy(buffer, start, buffer, 0, remaining);
+        start = 0;
+        literalStart = 0;
+        end = remaining;
+    }
+
+    private void flushLiteral() throws IOException {
+        int length = start - literalStart;
+        if (length > 0) {
+            out.write(buffer, literalStart, length);
+            addOp(LITERAL, literalBytes, length);
+            literalBytes += length;
+        }
+        literalStart = start;
+    }
+
+    // Adjacent copies of adjacent blocks and back-to-back literals merge into one op
+    private void addOp(byte type, long offset, int length) throws IOException {
+        if (pendingType == type && pendingOffset + pendingLength == offset && pendingLength + length <= MAX_OP_LENGTH) {
+            pendingLength += length;
+            return;
+        }
+        flushOp();
+        pendingType = type;
+        pendingOffset = offset;
+        pendingLength = length;
+    }
+
+    private void flushOp() throws IOException {
+        if (pendingType < 0) {
+            return;
+        }
+        ops.writeByte(pendingType);
+        if (pendingType == COPY) {
+            ops.writeLong(pendingOffset);
+        }
+        ops.writeInt(pendingLength);
+        opCount++;
+        pendingType = -1;
+    }
+}
@@ -0,0 +1,263 @@
+package com.cosek.edms.version;
+
+import com.cosek.edms.file.ContentBlob;
+import com.cosek.edms.file.ContentBlobRepository;
+import com.cosek.edms.file.ContentStore;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reconstructs revisions from a full blob and a chain of deltas without materialising
+ * any of them. Each level is a {@link Source} that serves byte ranges; stored blobs are
+ * read through a forward cursor, so the mostly ascending copies of a delta cost one
+ * sequential read of the base rather than one range read per copy.
+ */
+final class DeltaReader {
+    private static final int PIPE_BUFFER = 64 * 1024;
+    // Gaps up to this size are skipped on the open cursor rather than reopening it
+    private static final long REOPEN_GAP = 1024 * 1024;
+
+    private final ContentStore contentStore;
+    private final ContentBlobRepository contentBlobRepository;
+    private final ExecutorService readers;
+
+    DeltaReader(ContentStore contentStore, ContentBlobRepository contentBlobRepository, ExecutorService readers) {
+        this.contentStore = contentStore;
+        this.contentBlobRepository = contentBlobRepository;
+        this.readers = readers;
+    }
+
+    interface Source extends Closeable {
+        long size();
+
+        void copyTo(long offset, long length, OutputStream out) throws IOException;
+
+        @Override
+        void close();
+    }
+
+    Source blob(String hash, long size) {
+        return new BlobSource(hash, size);
+    }
+
+    // Takes ownership of base, which is closed with the delta
+    Source delta(String deltaHash, Source base) throws IOException {
+        try {
+            ContentBlob blob = contentBlobRepository.findById(deltaHash)
+                    .orElseThrow(() -> new IOException("Delta " + deltaHash + " is not stored"));
+            return new DeltaSource(deltaHash, blob.getPlainSize(), base);
+        } catch (IOException | RuntimeException e) {
+            base.close();
+            throw e;
+        }
+    }
+
+    // Runs a read on the pool into a pipe; the failure is recorded before the pipe closes, so EOF is never mistaken for success
+    private final class Cursor {
+        private final PipedInputStream in = new PipedInputStream(PIPE_BUFFER);
+        private final Future<?> task;
+        private volatile IOException failure;
+        private long position;
+
+        Cursor(String hash, long offset, long length) throws IOException {
+            PipedOutputStream sink = new PipedOutputStream(in);
+            position = offset;
+            task = readers.submit(() -> {
+                try {
+                    contentStore.readRange(hash, offset, length, sink);
+                } catch (IOException e) {
+                    failure = e;
+                } catch (RuntimeException e) {
+                    failure = new IOException(e);
+                } finally {
+                    try {
+                        sink.close();
+                    } catch (IOException ignored) {
+                        // the reader has gone
+                    }
+                }
+            });
+        }
+
+        void skip(long count) throws IOException {
+            transfer(count, OutputStream.nullOutputStream());
+        }
+
+        void transfer(long count, OutputStream out) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(count, PIPE_BUFFER)];
+            long remaining = count;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(remaining, buffer.length));
+                if (read < 0) {
+                    throw failure != null ? failure : new EOFException("Stored content ended early");
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+            position += count;
+        }
+
+        void close() {
+            task.cancel(true);
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // nothing left to release
+            }
+        }
+    }
+
+    private final class BlobSource implements Source {
+        private final String hash;
+        private final long size;
+        private Cursor cursor;
+
+        BlobSource(String hash, long size) {
+            this.hash = hash;
+            this.size = size;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public void copyTo(long offset, long length, OutputStream out) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            if (offset < 0 || length < 0 || offset + length > size) {
+                throw new IOException("Range " + offset + "+" + length + " is outside " + hash);
+            }
+            if (cursor == null || offset < cursor.position || offset - cursor.position > REOPEN_GAP) {
+                close();
+                cursor = new Cursor(hash, offset, size - offset);
+            } else {
+                cursor.skip(offset - cursor.position);
+            }
+            cursor.transfer(length, out);
+        }
+
+        @Override
+        public void close() {
+            if (cursor != null) {
+                cursor.close();
+                cursor = null;
+            }
+        }
+    }
+
+    /**
+     * A delta applied to its base. The op table and footer are loaded up front; ops are
+     * found by binary search on their target offset, copies are served by the base and
+     * literals by a cursor over the start of the delta.
+     */
+    private final class DeltaSource implements Source {
+        private final Source base;
+        private final Source literals;
+        private final long size;
+        // Target offset where each op starts, with the total size appended
+        private final long[] starts;
+        // Base offset for copies, literal offset for literals
+        private final long[] sources;
+        private final boolean[] copies;
+
+        DeltaSource(String hash, long deltaSize, Source base) throws IOException {
+            if (deltaSize < DeltaEncoder.FOOTER_SIZE) {
+                throw new IOException("Delta " + hash + " is truncated");
+            }
+            DataInputStream footer = new DataInputStream(new ByteArrayInputStream(
+                    readRange(hash, deltaSize - DeltaEncoder.FOOTER_SIZE, DeltaEncoder.FOOTER_SIZE)));
+            int magic = footer.readInt();
+            long baseSize = footer.readLong();
+            long targetSize = footer.readLong();
+            long opsOffset = footer.readLong();
+            int opCount = footer.readInt();
+            long opsLength = deltaSize - DeltaEncoder.FOOTER_SIZE - opsOffset;
+            if (magic != DeltaEncoder.MAGIC || baseSize != base.size() || opsOffset < 0 || opsLength < 0
+                    || opCount < 0 || opsLength > Integer.MAX_VALUE || (long) opCount * 5 > opsLength) {
+                throw new IOException("Delta " + hash + " does not apply to its base");
+            }
+
+            DataInputStream ops = new DataInputStream(new ByteArrayInputStream(readRange(hash, opsOffset, opsLength)));
+            starts = new long[opCount + 1];
+            sources = new long[opCount];
+            copies = new boolean[opCount];
+            long target = 0;
+            long literal = 0;
+            for (int i = 0; i < opCount; i++) {
+                byte type = ops.readByte();
+                long source;
+                int length;
+                if (type == DeltaEncoder.COPY) {
+                    source = ops.readLong();
+                    length = ops.readInt();
+                    if (source < 0 || length <= 0 || source + length > baseSize) {
+                        throw new IOException("Delta " + hash + " copies outside its base");
+                    }
+                    copies[i] = true;
+                } else if (type == DeltaEncoder.LITERAL) {
+                    source = literal;
+                    length = ops.readInt();
+                    literal += length;
+                    if (length <= 0 || literal > opsOffset) {
+                        throw new IOException("Delta " + hash + " has more literal bytes than it stores");
+                    }
+                } else {
+                    throw new IOException("Delta " + hash + " has an unknown op " + type);
+                }
+                starts[i] = target;
+                sources[i] = source;
+                target += length;
+            }
+            if (target != targetSize) {
+                throw new IOException("Delta " + hash + " does not add up to its size");
+            }
+            starts[opCount] = targetSize;
+            this.size = targetSize;
+            this.base = base;
+            this.literals = new BlobSource(hash, opsOffset);
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public void copyTo(long offset, long length, OutputStream out) throws IOException {
+            if (offset < 0 || length < 0 || offset + length > size) {
+                throw new IOException("Range " + offset + "+" + length + " is outside the revision");
+            }
+            int op = Arrays.binarySearch(starts, offset);
+            op = op >= 0 ? op : -op - 2;
+            long position = offset;
+            long end = offset + length;
+            for (; position < end; op++) {
+                long skip = position - starts[op];
+                long taken = Math.min(end, starts[op + 1]) - position;
+                (copies[op] ? base : literals).copyTo(sources[op] + skip, taken, out);
+                position += taken;
+            }
+        }
+
+        @Override
+        public void close() {
+            literals.close();
+            base.close();
+        }
+
+        private byte[] readRange(String hash, long offset, long length) throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) length);
+            contentStore.readRange(hash, offset, length, buffer);
+            if (buffer.size() != length) {
+                throw new IOException("Delta " + hash + " is truncated");
+            }
+            return buffer.toByteArray();
+        }
+    }
+}
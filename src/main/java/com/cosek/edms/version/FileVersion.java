@@ -0,0 +1,67 @@
+package com.cosek.edms.version;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One revision of a file. Every row holds its own reference in content_blobs: on the
+ * full content while FULL or PENDING, on its delta against the previous revision once
+ * DELTA. The file's current content is always a full blob, referenced by the file itself.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "file_versions", indexes = {
+        @Index(name = "idx_file_versions_file", columnList = "file_id, version_number", unique = true),
+        @Index(name = "idx_file_versions_storage", columnList = "storage, id")
+})
+public class FileVersion {
+    public enum Storage {
+        // A snapshot; chains of deltas start from one
+        FULL,
+        // Still the full content, waiting for the compactor to replace it with a delta
+        PENDING,
+        DELTA
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "file_id", nullable = false)
+    private Long fileId;
+
+    @Column(name = "version_number", nullable = false)
+    private int versionNumber;
+
+    private String name;
+    private String contentType;
+
+    // Plaintext size of this revision
+    private long size;
+
+    // SHA-256 of this revision's plaintext, whatever form it is stored in
+    @Column(nullable = false, length = 64)
+    private String contentHash;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Storage storage;
+
+    @Column(name = "delta_hash", length = 64)
+    private String deltaHash;
+
+    // Set from the file's audit columns, so the first revision of an older file keeps its real date
+    @Column(name = "createdDate", updatable = false)
+    private LocalDateTime createdDate;
+
+    @Column(name = "createdBy", updatable = false)
+    private Long createdBy;
+}
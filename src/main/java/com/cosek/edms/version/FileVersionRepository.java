@@ -0,0 +1,29 @@
+package com.cosek.edms.version;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface FileVersionRepository extends JpaRepository<FileVersion, Long> {
+
+    List<FileVersion> findByFileIdOrderByVersionNumberDesc(Long fileId);
+
+    Optional<FileVersion> findByFileIdAndVersionNumber(Long fileId, int versionNumber);
+
+    Optional<FileVersion> findTopByFileIdOrderByVersionNumberDesc(Long fileId);
+
+    // The requested revision and everything before it, newest first, for walking back to a full blob
+    @Query("SELECT v FROM FileVersion v WHERE v.fileId = :fileId AND v.versionNumber <= :versionNumber ORDER BY v.versionNumber DESC")
+    List<FileVersion> findChain(@Param("fileId") Long fileId, @Param("versionNumber") int versionNumber);
+
+    // Revisions that a newer one has superseded; the current one shares the file's blob, so it stays full
+    @Query("SELECT v FROM FileVersion v WHERE v.storage = :storage AND v.id > :after " +
+            "AND EXISTS (SELECT 1 FROM FileVersion n WHERE n.fileId = v.fileId AND n.versionNumber > v.versionNumber) ORDER BY v.id")
+    List<FileVersion> findSuperseded(@Param("storage") FileVersion.Storage storage, @Param("after") Long after, Pageable pageable);
+}
@@ -0,0 +1,305 @@
+package com.cosek.edms.version;
+
+import com.cosek.edms.exception.NotFoundException;
+import com.cosek.edms.file.ContentBlobRepository;
+import com.cosek.edms.file.ContentStore;
+import com.cosek.edms.file.FileRecord;
+import com.cosek.edms.file.Models.StoredBlob;
+import com.cosek.edms.version.DeltaReader.Source;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Revision history of file content. Each replacement adds a revision that keeps the
+ * full blob until the next one supersedes it; the compactor then swaps it for an
+ * rsync-style delta against the revision before. Every snapshot-interval revisions
+ * one stays full, so rebuilding any revision applies at most interval - 1 deltas,
+ * and it is streamed through the chain rather than rebuilt on disk.
+ */
+@Service
+@RequiredArgsConstructor
+public class VersionService {
+    private static final Logger logger = LoggerFactory.getLogger(VersionService.class);
+    private static final int IN_CLAUSE_LIMIT = 1000;
+    private static final int PIPE_BUFFER = 64 * 1024;
+    static final String DELTA_CONTENT_TYPE = "application/x-edms-delta";
+
+    private static final String COMPACT_SQL = "UPDATE file_versions SET storage = 'DELTA', delta_hash = ? WHERE id = ? AND storage = 'PENDING'";
+    private static final String KEEP_FULL_SQL = "UPDATE file_versions SET storage = 'FULL' WHERE id = ? AND storage = 'PENDING'";
+
+    private final FileVersionRepository fileVersionRepository;
+    private final ContentBlobRepository contentBlobRepository;
+    private final ContentStore contentStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final AuditorAware<Long> auditorAware;
+
+    // Every n-th revision is kept whole, bounding the deltas applied to rebuild one
+    @Value("${edms.versions.snapshot-interval:10}")
+    private int snapshotInterval;
+
+    @Value("${edms.versions.compact-batch-size:50}")
+    private int compactBatchSize;
+
+    // A delta must save at least this fraction of the full size, or the revision stays full
+    @Value("${edms.versions.min-saving:0.1}")
+    private double minSaving;
+
+    private DeltaReader reader;
+    // Feeds the pipes that chain revisions together; a rebuild holds a couple of threads per delta
+    private final ExecutorService readers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "version-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    @PostConstruct
+    void start() {
+        reader = new DeltaReader(contentStore, contentBlobRepository, readers);
+    }
+
+    @PreDestroy
+    void stop() {
+        compactor.shutdownNow();
+        readers.shutdownNow();
+    }
+
+    /**
+     * Records the file's current content as revision 1 unless it already has revisions.
+     * Runs in the transaction that stores the file; files written before versioning get
+     * theirs on their first replacement.
+     */
+    public void recordInitial(FileRecord record) {
+        if (fileVersionRepository.findTopByFileIdOrderByVersionNumberDesc(record.getId()).isPresent()) {
+            return;
+        }
+        LocalDateTime date = record.getLastModifiedDateTime() != null ? record.getLastModifiedDateTime() : record.getCreatedDate();
+        Long author = record.getLastModifiedBy() != null ? record.getLastModifiedBy() : record.getCreatedBy();
+        insert(record, 1, date != null ? date : LocalDateTime.now(), author);
+    }
+
+    // Runs in the transaction that points the file at its new content
+    public FileVersion recordReplacement(FileRecord saved) {
+        int next = fileVersionRepository.findTopByFileIdOrderByVersionNumberDesc(saved.getId())
+                .map(latest -> latest.getVersionNumber() + 1)
+                .orElse(1);
+        return insert(saved, next, LocalDateTime.now(), auditorAware.getCurrentAuditor().orElse(null));
+    }
+
+    public List<FileVersion> findVersions(Long fileId) {
+        return fileVersionRepository.findByFileIdOrderByVersionNumberDesc(fileId);
+    }
+
+    public FileVersion findVersion(Long fileId, int versionNumber) throws NotFoundException {
+        return fileVersionRepository.findByFileIdAndVersionNumber(fileId, versionNumber)
+                .orElseThrow(() -> new NotFoundException("Version not found"));
+    }
+
+    public void writeContent(FileVersion version, OutputStream out) throws IOException {
+        if (version.getStorage() != FileVersion.Storage.DELTA) {
+            contentStore.read(version.getContentHash(), out);
+            return;
+        }
+        try (Source source = open(version.getFileId(), version.getVersionNumber())) {
+            source.copyTo(0, source.size(), out);
+        }
+    }
+
+    // Runs in the transaction that removes the files for good
+    public void removeFiles(List<Long> fileIds) {
+        List<String> released = new ArrayList<>();
+        for (int from = 0; from < fileIds.size(); from += IN_CLAUSE_LIMIT) {
+            List<Long> chunk = fileIds.subList(from, Math.min(from + IN_CLAUSE_LIMIT, fileIds.size()));
+            jdbcTemplate.queryForList("DELETE FROM file_versions OUTPUT deleted.storage, deleted.content_hash, deleted.delta_hash " +
+                    "WHERE file_id IN (" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")", chunk.toArray())
+                    .forEach(row -> released.add((String) row.get(
+                            FileVersion.Storage.DELTA.name().equals(row.get("storage")) ? "delta_hash" : "content_hash")));
+        }
+        contentStore.release(released);
+    }
+
+    // Only hands the work to the compactor's own thread; encoding large files must not hold the scheduler
+    @Scheduled(fixedDelayString = "${edms.versions.compact-interval:PT1M}", initialDelayString = "${edms.versions.compact-interval:PT1M}")
+    public void trigger() {
+        if (!compacting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            compactor.execute(() -> {
+                try {
+                    compactPending();
+                } catch (RuntimeException e) {
+                    logger.error("Version compaction stopped", e);
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            compacting.set(false);
+        }
+    }
+
+    // Failed revisions stay full and are tried again on the next run
+    void compactPending() {
+        long cursor = 0;
+        int compacted = 0;
+        List<FileVersion> batch;
+        do {
+            batch = fileVersionRepository.findSuperseded(FileVersion.Storage.PENDING, cursor, PageRequest.of(0, compactBatchSize));
+            for (FileVersion version : batch) {
+                cursor = version.getId();
+                try {
+                    if (compact(version)) {
+                        compacted++;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Could not compact version {} of file {}", version.getVersionNumber(), version.getFileId(), e);
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+            }
+        } while (batch.size() == compactBatchSize);
+        if (compacted > 0) {
+            logger.info("Stored {} file versions as deltas", compacted);
+        }
+    }
+
+    /**
+     * Encodes the revision against the one before while the delta is stored, both streamed:
+     * the previous revision is read once for its signature, then this one is piped through
+     * the encoder into the content store. The swap is guarded on the row still being pending.
+     */
+    private boolean compact(FileVersion version) throws IOException {
+        FileVersion previous = fileVersionRepository.findByFileIdAndVersionNumber(version.getFileId(), version.getVersionNumber() - 1).orElse(null);
+        if (previous == null || isSnapshot(version.getVersionNumber()) || version.getSize() < BlockSignature.MIN_BLOCK) {
+            jdbcTemplate.update(KEEP_FULL_SQL, version.getId());
+            return false;
+        }
+        BlockSignature signature;
+        try (Source base = open(previous.getFileId(), previous.getVersionNumber())) {
+            BlockSignature.Builder builder = BlockSignature.builder(base.size());
+            base.copyTo(0, base.size(), builder);
+            signature = builder.build();
+        }
+
+        PipedInputStream pipe = new PipedInputStream(PIPE_BUFFER);
+        PipedOutputStream sink = new PipedOutputStream(pipe);
+        DeltaEncoder encoder = new DeltaEncoder(signature, sink);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Future<?> encoding = readers.submit(() -> {
+            try {
+                contentStore.read(version.getContentHash(), encoder);
+                encoder.finish();
+            } catch (IOException | RuntimeException e) {
+                failure.set(e);
+            } finally {
+                try {
+                    sink.close();
+                } catch (IOException ignored) {
+                    // the store has stopped reading
+                }
+            }
+        });
+        try (pipe) {
+            return contentStore.store(pipe, DELTA_CONTENT_TYPE, blob -> settle(version, blob, failure.get()));
+        } catch (NotWorthStoring e) {
+            jdbcTemplate.update(KEEP_FULL_SQL, version.getId());
+            return false;
+        } finally {
+            encoding.cancel(true);
+        }
+    }
+
+    // Throwing rolls the store back, which also drops the freshly written delta
+    private boolean settle(FileVersion version, StoredBlob delta, Exception failure) {
+        if (failure != null) {
+            throw new IllegalStateException("Could not encode version " + version.getId(), failure);
+        }
+        if (delta.plainSize() > version.getSize() * (1 - minSaving)) {
+            throw new NotWorthStoring();
+        }
+        if (jdbcTemplate.update(COMPACT_SQL, delta.contentHash(), version.getId()) == 0) {
+            // Removed with its file meanwhile
+            throw new NotWorthStoring();
+        }
+        contentStore.release(List.of(version.getContentHash()));
+        return true;
+    }
+
+    // From the nearest full revision at or below the requested one, applying each delta in turn
+    private Source open(Long fileId, int versionNumber) throws IOException {
+        List<FileVersion> chain = fileVersionRepository.findChain(fileId, versionNumber);
+        Deque<FileVersion> deltas = new ArrayDeque<>();
+        int expected = versionNumber;
+        for (FileVersion version : chain) {
+            if (version.getVersionNumber() != expected) {
+                throw new IOException("Version " + expected + " of file " + fileId + " is missing");
+            }
+            expected--;
+            if (version.getStorage() != FileVersion.Storage.DELTA) {
+                Source source = reader.blob(version.getContentHash(), version.getSize());
+                while (!deltas.isEmpty()) {
+                    FileVersion delta = deltas.pop();
+                    source = reader.delta(delta.getDeltaHash(), source);
+                    if (source.size() != delta.getSize()) {
+                        source.close();
+                        throw new IOException("Version " + delta.getVersionNumber() + " of file " + fileId + " has the wrong size");
+                    }
+                }
+                return source;
+            }
+            deltas.push(version);
+        }
+        throw new IOException("Version " + versionNumber + " of file " + fileId + " has no full revision to start from");
+    }
+
+    private FileVersion insert(FileRecord record, int versionNumber, LocalDateTime date, Long author) {
+        FileVersion version = fileVersionRepository.save(FileVersion.builder()
+                .fileId(record.getId())
+                .versionNumber(versionNumber)
+                .name(record.getName())
+                .contentType(record.getContentType())
+                .size(record.getSize())
+                .contentHash(record.getContentHash())
+                .storage(isSnapshot(versionNumber) ? FileVersion.Storage.FULL : FileVersion.Storage.PENDING)
+                .createdDate(date)
+                .createdBy(author)
+                .build());
+        contentStore.retain(List.of(record.getContentHash()));
+        return version;
+    }
+
+    private boolean isSnapshot(int versionNumber) {
+        return (versionNumber - 1) % Math.max(1, snapshotInterval) == 0;
+    }
+
+    private static class NotWorthStoring extends RuntimeException {
+        NotWorthStoring() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.cosek.edms.file;
+
+import com.cosek.edms.config.EncryptionKeyProvider;
+import com.cosek.edms.crypto.DataKeyService;
+import com.cosek.edms.crypto.MasterKeyRing;
+import com.cosek.edms.file.Models.StoredBlob;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upload throughput of the blob store: every thread streams its own 100 MiB upload
+ * through {@link FileStorage#write}, so the probe, sealing and the write to disk are all
+ * measured. Each operation counts one MiB and the score is summed over threads, so ops/s
+ * reads as the total MiB/s across concurrent uploads. {@link #main} runs one upload at a
+ * time and then N at once (four unless given as the first argument).
+ *
+ * <pre>
+ * mvn -q test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-cp %classpath com.cosek.edms.file.FileStorageBenchmark 8"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(FileStorageBenchmark.UPLOAD_MIB)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FileStorageBenchmark {
+    static final int UPLOAD_MIB = 100;
+    private static final int MIB = 1024 * 1024;
+
+    private Path directory;
+    private FileStorage storage;
+    private byte[] block;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("edms-storage-bench");
+        MasterKeyRing masterKeyRing = new MasterKeyRing(directory.resolve("master-keys").toString());
+        masterKeyRing.load();
+        EncryptionKeyProvider keyProvider = new EncryptionKeyProvider(directory.resolve("keyfile.key").toString());
+        keyProvider.load();
+        storage = new FileStorage(directory.resolve("files").toString(), directory.resolve("uploads").toString(),
+                true, 1, keyProvider, new DataKeyService(masterKeyRing));
+        // Random bytes fail the compression probe, as most binary uploads do
+        block = new byte[MIB];
+        new Random(1).nextBytes(block);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public long upload() throws IOException {
+        StoredBlob blob = storage.write(new RepeatingInputStream(block, (long) UPLOAD_MIB * MIB), "application/octet-stream");
+        storage.delete(blob.storageKey());
+        return blob.storedSize();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int concurrent = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        for (int threads : new int[]{1, concurrent}) {
+            Options options = new OptionsBuilder()
+                    .include(FileStorageBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+    // A 100 MiB upload per thread without holding 100 MiB per thread in heap
+    private static class RepeatingInputStream extends InputStream {
+        private final byte[] block;
+        private final long size;
+        private long offset;
+
+        RepeatingInputStream(byte[] block, long size) {
+            this.block = block;
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (offset == size) {
+                return -1;
+            }
+            int position = (int) (offset % block.length);
+            int count = (int) Math.min(len, Math.min(size - offset, block.length - position));
+            System.arraycopy(block, position, b, off, count);
+            offset += count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.cosek.edms.file;
+
+import com.cosek.edms.config.EncryptionKeyProvider;
+import com.cosek.edms.crypto.DataKeyService;
+import com.cosek.edms.crypto.MasterKeyRing;
+import com.cosek.edms.file.Models.StoredBlob;
+import com.cosek.edms.helper.ChunkedCipher;
+import com.cosek.edms.helper.ContentCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static com.cosek.edms.helper.BlockCompression.BLOCK_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileStorageTest {
+    private final Random random = new Random(11);
+
+    @TempDir
+    Path dir;
+
+    private DataKeyService dataKeyService;
+    private FileStorage storage;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        MasterKeyRing masterKeyRing = new MasterKeyRing(dir.resolve("master-keys").toString());
+        masterKeyRing.load();
+        EncryptionKeyProvider keyProvider = new EncryptionKeyProvider(dir.resolve("keyfile.key").toString());
+        keyProvider.load();
+        dataKeyService = new DataKeyService(masterKeyRing);
+        ReflectionTestUtils.setField(dataKeyService, "cacheTtl", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(dataKeyService, "cacheSize", 100);
+        storage = new FileStorage(dir.resolve("files").toString(), dir.resolve("uploads").toString(),
+                true, 1, keyProvider, dataKeyService);
+    }
+
+    @Test
+    void compressibleContentRoundTrips() throws IOException {
+        for (int size : new int[]{1000, BLOCK_SIZE, 3 * BLOCK_SIZE, 10 * BLOCK_SIZE + 4321}) {
+            byte[] plain = text(size);
+            StoredBlob blob = write(plain, "text/plain");
+            assertEquals(ContentCodec.DEFLATE_BLOCKS, blob.codec());
+            assertEquals(size, blob.plainSize());
+            assertTrue(blob.storedSize() < size, "stored " + blob.storedSize() + " of " + size);
+            assertArrayEquals(plain, read(blob), "size " + size);
+        }
+    }
+
+    @Test
+    void rangesOfCompressedContent() throws IOException {
+        byte[] plain = text(5 * BLOCK_SIZE + 777);
+        StoredBlob blob = write(plain, "application/pdf");
+        assertEquals(ContentCodec.DEFLATE_BLOCKS, blob.codec());
+
+        long[][] ranges = {
+                {0, 1},
+                {0, 0},
+                {BLOCK_SIZE - 1, 2},
+                {BLOCK_SIZE, BLOCK_SIZE},
+                {2L * BLOCK_SIZE + 100, 4096},
+                {BLOCK_SIZE - 10, 3L * BLOCK_SIZE + 20},
+                {5L * BLOCK_SIZE, 777},
+                {plain.length - 1, 1},
+                {0, plain.length}
+        };
+        for (long[] range : ranges) {
+            assertArrayEquals(Arrays.copyOfRange(plain, (int) range[0], (int) (range[0] + range[1])),
+                    readRange(blob, range[0], range[1]), Arrays.toString(range));
+        }
+        assertThrows(IOException.class, () -> readRange(blob, plain.length - 1, 2));
+    }
+
+    // A range far from the start must not touch the first cipher chunks, so breaking them leaves it readable
+    @Test
+    void compressedRangeSeeksPastTheStart() throws IOException {
+        byte[] plain = text(40 * BLOCK_SIZE);
+        StoredBlob blob = write(plain, "text/plain");
+        flipByte(blob, ChunkedCipher.HEADER_SIZE + 10);
+
+        assertArrayEquals(Arrays.copyOfRange(plain, 39 * BLOCK_SIZE, 39 * BLOCK_SIZE + 4096),
+                readRange(blob, 39L * BLOCK_SIZE, 4096));
+        assertThrows(IOException.class, () -> readRange(blob, 0, 10));
+        assertThrows(IOException.class, () -> read(blob));
+    }
+
+    @Test
+    void emptyAndIncompressibleContent() throws IOException {
+        StoredBlob empty = write(new byte[0], "text/plain");
+        assertEquals(ContentCodec.NONE, empty.codec());
+        assertArrayEquals(new byte[0], read(empty));
+
+        byte[] noise = new byte[3 * BLOCK_SIZE];
+        random.nextBytes(noise);
+        StoredBlob blob = write(noise, "application/octet-stream");
+        assertEquals(ContentCodec.NONE, blob.codec());
+        assertArrayEquals(Arrays.copyOfRange(noise, 1000, 2 * BLOCK_SIZE), readRange(blob, 1000, 2 * BLOCK_SIZE - 1000));
+    }
+
+    // Blobs deflated as one stream before the block format still read, ranges included
+    @Test
+    void wholeStreamDeflateStaysReadable() throws IOException {
+        byte[] plain = text(3 * BLOCK_SIZE + 5);
+        StoredBlob blob = write(plain, "text/plain");
+        // Rewritten in the old layout under the same key and data key
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(1, true);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(deflated, deflater)) {
+            out.write(plain);
+        }
+        deflater.end();
+        try (FileChannel channel = FileChannel.open(blobPath(blob), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChunkedCipher.encrypt(dataKeyService.unwrap(blob.dataKey()),
+                    Channels.newChannel(new ByteArrayInputStream(deflated.toByteArray())), channel);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        storage.read(blob.storageKey(), ContentCodec.DEFLATE, blob.dataKey(), out);
+        assertArrayEquals(plain, out.toByteArray());
+        out.reset();
+        storage.readRange(blob.storageKey(), ContentCodec.DEFLATE, blob.dataKey(), BLOCK_SIZE, 100, out);
+        assertArrayEquals(Arrays.copyOfRange(plain, BLOCK_SIZE, BLOCK_SIZE + 100), out.toByteArray());
+    }
+
+    private StoredBlob write(byte[] plain, String contentType) throws IOException {
+        return storage.write(new ByteArrayInputStream(plain), contentType);
+    }
+
+    private byte[] read(StoredBlob blob) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        storage.read(blob.storageKey(), blob.codec(), blob.dataKey(), out);
+        return out.toByteArray();
+    }
+
+    private byte[] readRange(StoredBlob blob, long offset, long length) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        storage.readRange(blob.storageKey(), blob.codec(), blob.dataKey(), offset, length, out);
+        return out.toByteArray();
+    }
+
+    private Path blobPath(StoredBlob blob) {
+        return dir.resolve("files").resolve(blob.storageKey().substring(0, 2)).resolve(blob.storageKey());
+    }
+
+    private void flipByte(StoredBlob blob, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(blobPath(blob), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, position);
+            one.put(0, (byte) (one.get(0) ^ 1)).rewind();
+            channel.write(one, position);
+        }
+    }
+
+    // Words drawn from a small vocabulary: compressible, but with no two blocks alike
+    private byte[] text(int size) {
+        String[] words = {"invoice", "contract", "department", "approved", "records", "memo", "total", "2024", "annex"};
+        StringBuilder text = new StringBuilder(size + 16);
+        while (text.length() < size) {
+            text.append(words[random.nextInt(words.length)]).append(random.nextInt(10) == 0 ? '\n' : ' ');
+        }
+        return text.substring(0, size).getBytes(StandardCharsets.US_ASCII);
+    }
+}
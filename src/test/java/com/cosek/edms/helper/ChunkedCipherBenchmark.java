@@ -0,0 +1,91 @@
+package com.cosek.edms.helper;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sealing and opening throughput of the chunked AES-GCM format against the legacy
+ * whole-stream AES (ECB) path. Each operation is one MiB of plaintext, so ops/s reads
+ * as MiB/s. {@link #main} runs every benchmark with one caller thread, where a single
+ * large stream is sealed in parallel batches, and again with one thread per core.
+ *
+ * <pre>
+ * mvn -q test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test \
+ *     -Dexec.args="-cp %classpath com.cosek.edms.helper.ChunkedCipherBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(ChunkedCipherBenchmark.PAYLOAD_MIB)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkedCipherBenchmark {
+    static final int PAYLOAD_MIB = 16;
+
+    private SecretKey key;
+    private byte[] plain;
+    private byte[] chunked;
+    private byte[] legacy;
+
+    // Compressible-looking text would favour neither side; random bytes match typical binary uploads
+    @Setup
+    public void setUp() throws Exception {
+        key = EncryptionUtil.generateSecretKey();
+        plain = new byte[PAYLOAD_MIB * 1024 * 1024];
+        new Random(1).nextBytes(plain);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(plain.length + plain.length / 64);
+        ChunkedCipher.encrypt(key, Channels.newChannel(new ByteArrayInputStream(plain)), Channels.newChannel(out));
+        chunked = out.toByteArray();
+        out = new ByteArrayOutputStream(plain.length + 16);
+        EncryptionUtil.encrypt(key, new ByteArrayInputStream(plain), out);
+        legacy = out.toByteArray();
+    }
+
+    @Benchmark
+    public long sealChunked() throws IOException {
+        return ChunkedCipher.encrypt(key, Channels.newChannel(new ByteArrayInputStream(plain)),
+                Channels.newChannel(OutputStream.nullOutputStream()));
+    }
+
+    @Benchmark
+    public void openChunked() throws IOException {
+        ChunkedCipher.decrypt(key, Channels.newChannel(new ByteArrayInputStream(chunked)),
+                Channels.newChannel(OutputStream.nullOutputStream()));
+    }
+
+    @Benchmark
+    public void sealLegacy() throws Exception {
+        EncryptionUtil.encrypt(key, new ByteArrayInputStream(plain), OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void openLegacy() throws Exception {
+        EncryptionUtil.decrypt(key, new ByteArrayInputStream(legacy), OutputStream.nullOutputStream());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads : cores > 1 ? new int[]{1, cores} : new int[]{1}) {
+            Options options = new OptionsBuilder()
+                    .include(ChunkedCipherBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.cosek.edms.helper;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.cosek.edms.helper.ChunkedCipher.CHUNK_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedCipherTest {
+    private static final int V1_RECORD = CHUNK_SIZE + ChunkedCipher.TAG_SIZE;
+    private static final int V2_RECORD = CHUNK_SIZE + ChunkedCipher.NONCE_SIZE + ChunkedCipher.TAG_SIZE;
+
+    private final Random random = new Random(7);
+    private final SecretKey key = key();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sequentialRoundTrip() throws IOException {
+        for (int size : new int[]{1, 1000, CHUNK_SIZE - 1, CHUNK_SIZE + 1, 20 * CHUNK_SIZE + 12_345}) {
+            byte[] plain = bytes(size);
+            Path file = encryptV1(plain);
+            assertEquals(ChunkedCipher.VERSION, ChunkedCipher.readHeader(open(file)).version());
+            assertArrayEquals(plain, decrypt(file), "size " + size);
+        }
+    }
+
+    @Test
+    void emptyStream() throws IOException {
+        Path v1 = encryptV1(new byte[0]);
+        assertEquals(ChunkedCipher.HEADER_SIZE + ChunkedCipher.TAG_SIZE, Files.size(v1));
+        assertArrayEquals(new byte[0], decrypt(v1));
+
+        Path v2 = encryptV2(new byte[0], false);
+        assertEquals(ChunkedCipher.randomAccessSize(0), Files.size(v2));
+        assertArrayEquals(new byte[0], decrypt(v2));
+    }
+
+    // No empty trailing chunk is written, so the last full chunk has to carry the final flag
+    @Test
+    void exactMultipleOfChunkSize() throws IOException {
+        byte[] plain = bytes(3 * CHUNK_SIZE);
+        Path v1 = encryptV1(plain);
+        assertEquals(ChunkedCipher.HEADER_SIZE + 3L * V1_RECORD, Files.size(v1));
+        assertArrayEquals(plain, decrypt(v1));
+        assertArrayEquals(Arrays.copyOfRange(plain, 2 * CHUNK_SIZE, 3 * CHUNK_SIZE), decryptRange(v1, 2L * CHUNK_SIZE, CHUNK_SIZE));
+
+        Path v2 = encryptV2(plain, false);
+        assertEquals(ChunkedCipher.randomAccessSize(plain.length), Files.size(v2));
+        assertArrayEquals(plain, decrypt(v2));
+    }
+
+    @Test
+    void randomAccessRoundTripInAnyOrder() throws IOException {
+        byte[] plain = bytes(5 * CHUNK_SIZE + 777);
+        Path file = encryptV2(plain, true);
+        assertEquals(ChunkedCipher.VERSION_RANDOM_ACCESS, ChunkedCipher.readHeader(open(file)).version());
+        assertArrayEquals(plain, decrypt(file));
+        assertArrayEquals(Arrays.copyOfRange(plain, CHUNK_SIZE - 10, 4 * CHUNK_SIZE + 10),
+                decryptRange(file, CHUNK_SIZE - 10, 3L * CHUNK_SIZE + 20));
+    }
+
+    // Resumable uploads may seal the same chunk twice; the later one wins
+    @Test
+    void randomAccessChunkCanBeSealedAgain() throws IOException {
+        byte[] plain = bytes(2 * CHUNK_SIZE + 5);
+        Path file = encryptV2(bytes(plain.length), false);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ChunkedCipher.sealAt(key, channel, plain.length, 0, plain.length, Channels.newChannel(new ByteArrayInputStream(plain)));
+        }
+        assertArrayEquals(plain, decrypt(file));
+    }
+
+    @Test
+    void rangesAtChunkEdges() throws IOException {
+        byte[] plain = bytes(4 * CHUNK_SIZE + 100);
+        for (Path file : new Path[]{encryptV1(plain), encryptV2(plain, false)}) {
+            long[][] ranges = {
+                    {0, 1},
+                    {CHUNK_SIZE - 1, 1},
+                    {CHUNK_SIZE, 1},
+                    {CHUNK_SIZE - 1, 2},
+                    {CHUNK_SIZE, CHUNK_SIZE},
+                    {0, 4L * CHUNK_SIZE},
+                    {4L * CHUNK_SIZE, 100},
+                    {plain.length - 1, 1},
+                    {0, plain.length}
+            };
+            for (long[] range : ranges) {
+                assertArrayEquals(Arrays.copyOfRange(plain, (int) range[0], (int) (range[0] + range[1])),
+                        decryptRange(file, range[0], range[1]), file.getFileName() + " " + Arrays.toString(range));
+            }
+            assertThrows(IOException.class, () -> decryptRange(file, plain.length - 1, 2));
+        }
+    }
+
+    @Test
+    void truncatedStreamIsRejected() throws IOException {
+        byte[] plain = bytes(3 * CHUNK_SIZE + 50);
+        Path v1 = encryptV1(plain);
+        // Dropping the final chunk leaves a full chunk that was not sealed as the last one
+        truncate(v1, ChunkedCipher.HEADER_SIZE + 3L * V1_RECORD);
+        assertThrows(IOException.class, () -> decrypt(v1));
+        assertThrows(IOException.class, () -> decryptRange(v1, 2L * CHUNK_SIZE, 10));
+
+        Path v2 = encryptV2(plain, false);
+        truncate(v2, ChunkedCipher.HEADER_SIZE + 3L * V2_RECORD);
+        assertThrows(IOException.class, () -> decrypt(v2));
+
+        Path cut = encryptV1(plain);
+        truncate(cut, Files.size(cut) - 1);
+        assertThrows(IOException.class, () -> decrypt(cut));
+    }
+
+    @Test
+    void reorderedChunksAreRejected() throws IOException {
+        byte[] plain = bytes(3 * CHUNK_SIZE + 50);
+        Path v1 = encryptV1(plain);
+        swapRecords(v1, V1_RECORD, 0, 1);
+        assertThrows(IOException.class, () -> decrypt(v1));
+        assertThrows(IOException.class, () -> decryptRange(v1, 0, 10));
+
+        // Random nonces travel with each chunk, but the index is still authenticated
+        Path v2 = encryptV2(plain, false);
+        swapRecords(v2, V2_RECORD, 1, 2);
+        assertThrows(IOException.class, () -> decrypt(v2));
+        assertThrows(IOException.class, () -> decryptRange(v2, CHUNK_SIZE, 10));
+    }
+
+    @Test
+    void tamperedCiphertextIsRejected() throws IOException {
+        Path file = encryptV1(bytes(2 * CHUNK_SIZE));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, ChunkedCipher.HEADER_SIZE + 100);
+            one.put(0, (byte) (one.get(0) ^ 1)).rewind();
+            channel.write(one, ChunkedCipher.HEADER_SIZE + 100);
+        }
+        assertThrows(IOException.class, () -> decrypt(file));
+    }
+
+    private Path encryptV1(byte[] plain) throws IOException {
+        Path file = Files.createTempFile(dir, "v1-", ".bin");
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            assertEquals(plain.length, ChunkedCipher.encrypt(key, Channels.newChannel(new ByteArrayInputStream(plain)), out));
+        }
+        return file;
+    }
+
+    // Seals chunk by chunk, last to first when reversed, as parts of a resumable upload may arrive
+    private Path encryptV2(byte[] plain, boolean reversed) throws IOException {
+        Path file = Files.createTempFile(dir, "v2-", ".bin");
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ChunkedCipher.initRandomAccess(key, out, plain.length);
+            int chunks = (plain.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            for (int i = 0; i < chunks; i++) {
+                int index = reversed ? chunks - 1 - i : i;
+                int offset = index * CHUNK_SIZE;
+                int length = Math.min(CHUNK_SIZE, plain.length - offset);
+                ChunkedCipher.sealAt(key, out, plain.length, offset, length,
+                        Channels.newChannel(new ByteArrayInputStream(plain, offset, length)));
+            }
+        }
+        return file;
+    }
+
+    private byte[] decrypt(Path file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FileChannel in = open(file)) {
+            ChunkedCipher.decrypt(key, in, Channels.newChannel(out));
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] decryptRange(Path file, long offset, long length) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FileChannel in = open(file)) {
+            ChunkedCipher.decryptRange(key, in, offset, length, Channels.newChannel(out));
+        }
+        return out.toByteArray();
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    private static void swapRecords(Path file, int recordSize, int first, int second) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer a = ByteBuffer.allocate(recordSize);
+            ByteBuffer b = ByteBuffer.allocate(recordSize);
+            channel.read(a, ChunkedCipher.HEADER_SIZE + (long) first * recordSize);
+            channel.read(b, ChunkedCipher.HEADER_SIZE + (long) second * recordSize);
+            channel.write(b.flip(), ChunkedCipher.HEADER_SIZE + (long) first * recordSize);
+            channel.write(a.flip(), ChunkedCipher.HEADER_SIZE + (long) second * recordSize);
+        }
+    }
+
+    private byte[] bytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static SecretKey key() {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(256);
+            return generator.generateKey();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
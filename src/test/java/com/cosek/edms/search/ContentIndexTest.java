@@ -0,0 +1,245 @@
+package com.cosek.edms.search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContentIndexTest {
+    @TempDir
+    Path dir;
+
+    // 300 documents put the rare term's second posting 299 ordinals on, and one frequency past 127, both two-byte varints
+    @Test
+    void segmentRoundTrip() throws IOException {
+        List<IndexedDocument> documents = new ArrayList<>();
+        for (long id = 300; id >= 1; id--) {
+            String text = "common " + (id == 1 || id == 300 ? "rare " : "") + (id == 150 ? "busy ".repeat(300) : "");
+            documents.add(IndexedDocument.of(id * 10, "hash-" + id, text));
+        }
+        Segment.write(dir, 7, documents);
+        Segment segment = Segment.open(dir, 7);
+
+        assertEquals(300, segment.docCount());
+        assertEquals(300, segment.liveCount());
+        assertEquals(10, segment.fileId(0));
+        assertEquals(3000, segment.fileId(299));
+        assertEquals("hash-150", segment.contentHash(149));
+        assertEquals(301, segment.length(149));
+        assertEquals(documents.stream().mapToLong(IndexedDocument::length).sum(), segment.totalLength());
+        assertEquals(149, segment.ordinalOf(1500));
+        assertEquals(-1, segment.ordinalOf(1501));
+
+        assertEquals(300, segment.docFreq("common"));
+        Segment.Postings rare = segment.postings("rare");
+        assertEquals(2, rare.size());
+        assertArrayEquals(new int[]{0, 299}, Arrays.copyOf(rare.ordinals(), rare.size()));
+        Segment.Postings busy = segment.postings("busy");
+        assertEquals(149, busy.ordinals()[0]);
+        assertEquals(300, busy.freqs()[0]);
+        assertNull(segment.postings("missing"));
+        assertEquals(0, segment.docFreq("missing"));
+
+        segment.delete(5);
+        segment.delete(299);
+        segment.persistDeletes();
+        Segment reopened = Segment.open(dir, 7);
+        assertTrue(reopened.isDeleted(5));
+        assertTrue(reopened.isDeleted(299));
+        assertEquals(298, reopened.liveCount());
+    }
+
+    @Test
+    void segmentMergeDropsDeletedDocuments() throws IOException {
+        Segment first = Segment.write(dir, 1, List.of(doc(1, "alpha beta"), doc(3, "alpha")));
+        Segment second = Segment.write(dir, 2, List.of(doc(2, "beta gamma"), doc(4, "alpha gamma")));
+        first.delete(first.ordinalOf(3));
+
+        Segment merged = Segment.merge(dir, 3, List.of(first, second), List.of(first.deleted(), second.deleted()));
+
+        assertEquals(3, merged.docCount());
+        assertEquals(List.of(1L, 2L, 4L), List.of(merged.fileId(0), merged.fileId(1), merged.fileId(2)));
+        Segment.Postings alpha = merged.postings("alpha");
+        assertArrayEquals(new int[]{0, 2}, Arrays.copyOf(alpha.ordinals(), alpha.size()));
+        assertEquals(2, merged.docFreq("gamma"));
+        assertEquals(2, merged.docFreq("beta"));
+    }
+
+    @Test
+    void bm25RanksAcrossBufferAndSegments() throws IOException {
+        ContentIndex index = open(1000, 8);
+        index.update(doc(1, "invoice invoice payment"));
+        index.update(doc(2, "invoice " + "filler ".repeat(40)));
+        index.flush();
+        index.update(doc(3, "invoice payment due"));
+        index.update(doc(4, "payment only"));
+
+        // More occurrences rank first, then shorter documents; buffered ones are scored on the same collection
+        List<ContentIndex.Hit> buffered = index.search(List.of("invoice"));
+        assertEquals(List.of(1L, 3L, 2L), fileIds(buffered));
+        assertEquals(List.of(1L, 3L), fileIds(index.search(List.of("invoice", "payment"))));
+        assertEquals(List.of(), index.search(List.of("invoice", "nowhere")));
+
+        index.flush();
+        List<ContentIndex.Hit> flushed = index.search(List.of("invoice"));
+        assertEquals(fileIds(buffered), fileIds(flushed));
+        for (int i = 0; i < flushed.size(); i++) {
+            assertEquals(buffered.get(i).score(), flushed.get(i).score(), 1e-9);
+        }
+
+        // Re-indexing replaces the segment copy
+        index.update(doc(1, "receipt"));
+        assertEquals(List.of(3L, 2L), fileIds(index.search(List.of("invoice"))));
+        assertEquals(List.of(1L), fileIds(index.search(List.of("receipt"))));
+    }
+
+    @Test
+    void deletesArrivingDuringMergeAreKept() throws IOException {
+        ContentIndex index = open(1000, 2);
+        index.update(doc(1, "shared"));
+        index.update(doc(2, "shared"));
+        index.flush();
+        index.update(doc(3, "shared"));
+        index.update(doc(4, "shared"));
+        index.flush();
+        index.update(doc(5, "shared"));
+        index.update(doc(6, "shared"));
+        index.update(doc(7, "shared"));
+        index.flush();
+
+        ContentIndex.Merge merge = index.planMerge();
+        assertEquals(2, merge.sources().size());
+        index.remove(List.of(1L));
+        index.update(doc(3, "fresh"));
+        Segment merged = index.writeMerge(merge);
+        index.remove(List.of(4L));
+        assertTrue(index.commitMerge(merge, merged));
+
+        assertEquals(List.of(2L, 5L, 6L, 7L), sortedIds(index.search(List.of("shared"))));
+        assertEquals(List.of(3L), fileIds(index.search(List.of("fresh"))));
+        assertEquals(2, index.stats().segments());
+        assertEquals(3, index.stats().deletedDocuments());
+        for (Segment source : merge.sources()) {
+            assertFalse(Files.exists(Segment.segmentPath(dir, source.generation())));
+        }
+
+        // The late deletes were persisted with the merged segment
+        index.flush();
+        ContentIndex reopened = open(1000, 2);
+        assertEquals(List.of(2L, 5L, 6L, 7L), sortedIds(reopened.search(List.of("shared"))));
+        assertEquals(List.of(3L), fileIds(reopened.search(List.of("fresh"))));
+    }
+
+    @Test
+    void mergeAbandonedWhenIndexIsReplaced() throws IOException {
+        ContentIndex index = open(1000, 1);
+        index.update(doc(1, "old"));
+        index.flush();
+        index.update(doc(2, "old"));
+        index.flush();
+
+        ContentIndex.Merge merge = index.planMerge();
+        Segment merged = index.writeMerge(merge);
+        index.replaceAll(List.of(index.writeSegment(List.of(doc(9, "new")))));
+
+        assertFalse(index.commitMerge(merge, merged));
+        assertFalse(Files.exists(Segment.segmentPath(dir, merged.generation())));
+        assertEquals(List.of(9L), fileIds(index.search(List.of("new"))));
+    }
+
+    @Test
+    void replaceAllDropsEverythingIndexedBefore() throws IOException {
+        ContentIndex index = open(1000, 8);
+        index.update(doc(1, "before"));
+        index.update(doc(2, "before"));
+        index.flush();
+        index.remove(List.of(2L));
+        index.update(doc(3, "before"));
+        Segment old = onlySegment(index);
+
+        Segment fresh = index.writeSegment(List.of(doc(10, "after"), doc(11, "after before")));
+        index.replaceAll(List.of(fresh));
+
+        assertEquals(List.of(11L), fileIds(index.search(List.of("before"))));
+        assertEquals(List.of(10L, 11L), sortedIds(index.search(List.of("after"))));
+        assertEquals(0, index.stats().bufferedDocuments());
+        assertFalse(Files.exists(Segment.segmentPath(dir, old.generation())));
+
+        // Deletes after the swap reach the fresh segment, not the old one
+        index.remove(List.of(10L));
+        index.flush();
+        ContentIndex reopened = open(1000, 8);
+        assertEquals(List.of(11L), sortedIds(reopened.search(List.of("after"))));
+    }
+
+    @Test
+    void reopenFromManifestWithStrayFiles() throws IOException {
+        ContentIndex index = open(1000, 8);
+        index.update(doc(1, "kept"));
+        index.update(doc(2, "kept"));
+        index.flush();
+        index.update(doc(3, "kept"));
+        index.flush();
+        index.remove(List.of(2L));
+        index.flush();
+
+        // An unlisted segment, and the leftovers of a flush, a merge and a publish cut short
+        Files.writeString(dir.resolve("seg-99.seg"), "orphan");
+        Files.writeString(dir.resolve("seg-99.del"), "orphan");
+        Files.writeString(dir.resolve("seg-3.postings.tmp"), "partial");
+        Files.writeString(dir.resolve("seg-3.seg.tmp"), "partial");
+        Files.writeString(dir.resolve("segments.manifest.tmp"), "99");
+
+        ContentIndex reopened = open(1000, 8);
+        assertEquals(List.of(1L, 3L), sortedIds(reopened.search(List.of("kept"))));
+        assertEquals(2, reopened.stats().segments());
+        assertEquals(1, reopened.stats().deletedDocuments());
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(Set.of("segments.manifest", "seg-1.seg", "seg-1.del", "seg-2.seg"),
+                    files.map(file -> file.getFileName().toString()).collect(Collectors.toSet()));
+        }
+
+        // New generations continue past the manifest's, and deletes still find their documents
+        reopened.remove(List.of(1L));
+        reopened.update(doc(4, "kept"));
+        reopened.flush();
+        assertTrue(Files.exists(Segment.segmentPath(dir, 3)));
+        assertEquals(List.of(3L, 4L), sortedIds(open(1000, 8).search(List.of("kept"))));
+    }
+
+    private ContentIndex open(int flushDocs, int mergeFactor) throws IOException {
+        ContentIndex index = new ContentIndex();
+        ReflectionTestUtils.setField(index, "directory", dir);
+        ReflectionTestUtils.setField(index, "flushDocs", flushDocs);
+        ReflectionTestUtils.setField(index, "mergeFactor", mergeFactor);
+        index.open();
+        return index;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Segment onlySegment(ContentIndex index) {
+        List<Segment> segments = (List<Segment>) ReflectionTestUtils.getField(index, "segments");
+        assertEquals(1, segments.size());
+        return segments.get(0);
+    }
+
+    private static IndexedDocument doc(long fileId, String text) {
+        return IndexedDocument.of(fileId, "hash-" + fileId, text);
+    }
+
+    private static List<Long> fileIds(List<ContentIndex.Hit> hits) {
+        return hits.stream().map(ContentIndex.Hit::fileId).toList();
+    }
+
+    private static List<Long> sortedIds(List<ContentIndex.Hit> hits) {
+        return hits.stream().map(ContentIndex.Hit::fileId).sorted().toList();
+    }
+}
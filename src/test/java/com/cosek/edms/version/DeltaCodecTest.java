@@ -0,0 +1,205 @@
+package com.cosek.edms.version;
+
+import com.cosek.edms.file.ContentBlob;
+import com.cosek.edms.file.ContentBlobRepository;
+import com.cosek.edms.file.ContentStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+
+class DeltaCodecTest {
+    private final Map<String, byte[]> blobs = new HashMap<>();
+    private final Random random = new Random(42);
+    private ExecutorService readers;
+    private DeltaReader reader;
+
+    // Blobs live in the map; the content store and blob repository only serve them
+    @BeforeEach
+    void setUp() throws IOException {
+        ContentStore contentStore = Mockito.mock(ContentStore.class);
+        Mockito.doAnswer(invocation -> {
+            byte[] content = blobs.get(invocation.<String>getArgument(0));
+            long offset = invocation.getArgument(1);
+            long length = invocation.getArgument(2);
+            invocation.<OutputStream>getArgument(3).write(content, (int) offset, (int) length);
+            return null;
+        }).when(contentStore).readRange(anyString(), anyLong(), anyLong(), any());
+        ContentBlobRepository contentBlobRepository = Mockito.mock(ContentBlobRepository.class);
+        Mockito.when(contentBlobRepository.findById(anyString())).thenAnswer(invocation -> {
+            byte[] content = blobs.get(invocation.<String>getArgument(0));
+            return Optional.ofNullable(content).map(bytes -> ContentBlob.builder().plainSize(bytes.length).build());
+        });
+        readers = Executors.newCachedThreadPool();
+        reader = new DeltaReader(contentStore, contentBlobRepository, readers);
+    }
+
+    @AfterEach
+    void tearDown() {
+        readers.shutdownNow();
+    }
+
+    @Test
+    void identicalContentIsOneCopy() throws IOException {
+        byte[] base = bytes(200_000);
+        int blockSize = BlockSignature.blockSizeFor(base.length);
+        Encoded encoded = encode(base, base, 8192);
+
+        assertEquals(base.length / blockSize * blockSize, encoded.copied);
+        assertTrue(encoded.delta.length < blockSize + 64, "delta was " + encoded.delta.length + " bytes");
+        assertArrayEquals(base, decode(base, encoded.delta));
+    }
+
+    @Test
+    void insertInTheMiddle() throws IOException {
+        byte[] base = bytes(300_000);
+        byte[] target = concat(Arrays.copyOfRange(base, 0, 120_000), bytes(777), Arrays.copyOfRange(base, 120_000, base.length));
+        Encoded encoded = encode(base, target, 4096);
+
+        assertTrue(encoded.delta.length < 10_000, "delta was " + encoded.delta.length + " bytes");
+        assertArrayEquals(target, decode(base, encoded.delta));
+    }
+
+    @Test
+    void deleteFromTheMiddle() throws IOException {
+        byte[] base = bytes(300_000);
+        byte[] target = concat(Arrays.copyOfRange(base, 0, 50_000), Arrays.copyOfRange(base, 90_000, base.length));
+        Encoded encoded = encode(base, target, 65_536);
+
+        assertTrue(encoded.delta.length < 10_000, "delta was " + encoded.delta.length + " bytes");
+        assertArrayEquals(target, decode(base, encoded.delta));
+    }
+
+    // A one-byte shift puts every match off the block grid, and the 1 MB target crosses the 256 KB buffer several times
+    @Test
+    void shiftedContentMatchesAcrossBufferCompaction() throws IOException {
+        byte[] base = bytes(1_000_000);
+        int blockSize = BlockSignature.blockSizeFor(base.length);
+        byte[] target = concat(bytes(1), base);
+        Encoded encoded = encode(base, target, 3_333);
+
+        assertEquals(base.length / blockSize * blockSize, encoded.copied);
+        assertArrayEquals(target, decode(base, encoded.delta));
+    }
+
+    @Test
+    void baseShorterThanOneBlockIsAllLiteral() throws IOException {
+        byte[] base = bytes(500);
+        byte[] target = concat(base, bytes(100));
+        Encoded encoded = encode(base, target, 64);
+
+        assertEquals(0, encoded.copied);
+        assertArrayEquals(target, decode(base, encoded.delta));
+    }
+
+    @Test
+    void trailingPartialBlockIsCarriedAsLiteral() throws IOException {
+        int blockSize = BlockSignature.blockSizeFor(10 * 1024 + 300);
+        byte[] base = bytes(10 * blockSize + 300);
+        Encoded encoded = encode(base, base, 1000);
+
+        assertEquals(10L * blockSize, encoded.copied);
+        assertArrayEquals(base, decode(base, encoded.delta));
+    }
+
+    @Test
+    void emptyTarget() throws IOException {
+        byte[] base = bytes(5_000);
+        Encoded encoded = encode(base, new byte[0], 1);
+
+        assertEquals(DeltaEncoder.FOOTER_SIZE, encoded.delta.length);
+        assertArrayEquals(new byte[0], decode(base, encoded.delta));
+    }
+
+    @Test
+    void rangesCutThroughOps() throws IOException {
+        byte[] base = bytes(300_000);
+        byte[] target = concat(Arrays.copyOfRange(base, 0, 100_000), bytes(5_000), Arrays.copyOfRange(base, 200_000, base.length));
+        blobs.put("base", base);
+        blobs.put("delta", encode(base, target, 10_000).delta);
+
+        try (DeltaReader.Source source = reader.delta("delta", reader.blob("base", base.length))) {
+            for (long[] range : new long[][]{{99_000, 2_000}, {0, 1}, {104_999, 2}, {50_000, 150_000}, {target.length - 1, 1}}) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                source.copyTo(range[0], range[1], out);
+                assertArrayEquals(Arrays.copyOfRange(target, (int) range[0], (int) (range[0] + range[1])), out.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    void deltaForAnotherBaseIsRejected() throws IOException {
+        byte[] base = bytes(50_000);
+        blobs.put("other", bytes(40_000));
+        blobs.put("delta", encode(base, base, 4096).delta);
+
+        assertThrows(IOException.class, () -> reader.delta("delta", reader.blob("other", 40_000)));
+    }
+
+    @Test
+    void corruptFooterIsRejected() throws IOException {
+        byte[] base = bytes(50_000);
+        byte[] delta = encode(base, base, 4096).delta;
+        delta[delta.length - DeltaEncoder.FOOTER_SIZE] ^= 1;
+        blobs.put("base", base);
+        blobs.put("delta", delta);
+
+        assertThrows(IOException.class, () -> reader.delta("delta", reader.blob("base", base.length)));
+    }
+
+    private record Encoded(byte[] delta, long copied) {
+    }
+
+    // Feeds the signature and the target in uneven writes, as a stream from the content store would
+    private static Encoded encode(byte[] base, byte[] target, int writeSize) throws IOException {
+        BlockSignature.Builder builder = BlockSignature.builder(base.length);
+        for (int offset = 0; offset < base.length; offset += 7_919) {
+            builder.write(base, offset, Math.min(7_919, base.length - offset));
+        }
+        ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        DeltaEncoder encoder = new DeltaEncoder(builder.build(), delta);
+        for (int offset = 0; offset < target.length; offset += writeSize) {
+            encoder.write(target, offset, Math.min(writeSize, target.length - offset));
+        }
+        encoder.finish();
+        return new Encoded(delta.toByteArray(), encoder.copiedBytes());
+    }
+
+    private byte[] decode(byte[] base, byte[] delta) throws IOException {
+        blobs.put("base", base);
+        blobs.put("delta", delta);
+        try (DeltaReader.Source source = reader.delta("delta", reader.blob("base", base.length))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            source.copyTo(0, source.size(), out);
+            return out.toByteArray();
+        }
+    }
+
+    private byte[] bytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+}